@@ -0,0 +1,75 @@
+package com.stanfy.enroscar.io;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures {@link BuffersPool#get(int)}/{@link BuffersPool#release(byte[])} pairs
+ * performed by several threads at once.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class BuffersPoolBenchmark {
+
+  /** Pool implementation. */
+  @Param({"lock", "sizeClass"})
+  public String pool;
+
+  /** Buffers pool. */
+  private BuffersPool buffersPool;
+
+  @Setup
+  public void createPool() {
+    buffersPool = "sizeClass".equals(pool) ? new SizeClassBuffersPool() : new BuffersPool();
+  }
+
+  @Benchmark
+  @Threads(1)
+  public void getRelease8kSingleThread(final Blackhole bh) {
+    getRelease(IoUtils.BUFFER_SIZE_8K, bh);
+  }
+
+  @Benchmark
+  @Threads(4)
+  public void getRelease8k(final Blackhole bh) {
+    getRelease(IoUtils.BUFFER_SIZE_8K, bh);
+  }
+
+  @Benchmark
+  @Threads(4)
+  public void getReleaseMixedSizes(final Blackhole bh) {
+    getRelease(IoUtils.BUFFER_SIZE_16K, bh);
+    getRelease(IoUtils.BUFFER_SIZE_8K, bh);
+    getRelease(IoUtils.BUFFER_SIZE_8K / 2, bh);
+  }
+
+  @Benchmark
+  @Threads(4)
+  public void nestedGetRelease(final Blackhole bh) {
+    // decode: stream buffer + temp storage
+    byte[] first = buffersPool.get(IoUtils.BUFFER_SIZE_8K);
+    byte[] second = buffersPool.get(IoUtils.BUFFER_SIZE_16K);
+    bh.consume(first);
+    bh.consume(second);
+    buffersPool.release(second);
+    buffersPool.release(first);
+  }
+
+  private void getRelease(final int size, final Blackhole bh) {
+    byte[] buffer = buffersPool.get(size);
+    bh.consume(buffer);
+    buffersPool.release(buffer);
+  }
+
+}
@@ -0,0 +1,71 @@
+package com.stanfy.enroscar.io;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures {@link IoUtils#transfer(java.io.InputStream, java.io.OutputStream, BuffersPool)}.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+public class IoUtilsBenchmark {
+
+  /** Source data size. */
+  @Param({"4096", "65536", "1048576"})
+  public int size;
+
+  /** Whether to use a buffers pool. */
+  @Param({"true", "false"})
+  public boolean pooled;
+
+  /** Source data. */
+  private byte[] data;
+
+  /** Buffers pool. */
+  private final BuffersPool buffersPool = new BuffersPool();
+
+  /** Output that just counts bytes. */
+  private final CountingOutputStream output = new CountingOutputStream();
+
+  @Setup
+  public void prepareData() {
+    data = new byte[size];
+    new Random(1).nextBytes(data);
+  }
+
+  @Benchmark
+  public long transfer() throws IOException {
+    output.count = 0;
+    IoUtils.transfer(new ByteArrayInputStream(data), output, pooled ? buffersPool : null);
+    return output.count;
+  }
+
+  /** Output stream that does not retain written data. */
+  private static final class CountingOutputStream extends OutputStream {
+    /** Written bytes count. */
+    long count;
+
+    @Override
+    public void write(final int oneByte) {
+      count++;
+    }
+    @Override
+    public void write(final byte[] buffer, final int offset, final int count) {
+      this.count += count;
+    }
+  }
+
+}
@@ -0,0 +1,71 @@
+package com.stanfy.enroscar.io;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures read throughput of {@link PoolableBufferedInputStream}.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+public class PoolableBufferedInputStreamBenchmark {
+
+  /** Source data size. */
+  @Param({"65536", "1048576"})
+  public int size;
+
+  /** Size of chunks requested by a reader. */
+  @Param({"1", "512", "8192"})
+  public int chunk;
+
+  /** Source data. */
+  private byte[] data;
+  /** Reader buffer. */
+  private byte[] readBuffer;
+
+  /** Buffers pool. */
+  private final BuffersPool buffersPool = new BuffersPool();
+
+  @Setup
+  public void prepareData() {
+    data = new byte[size];
+    new Random(1).nextBytes(data);
+    readBuffer = new byte[chunk];
+  }
+
+  @Benchmark
+  public long read() throws IOException {
+    InputStream input = new PoolableBufferedInputStream(new ByteArrayInputStream(data), IoUtils.BUFFER_SIZE_8K, buffersPool);
+    long sum = 0;
+    try {
+      if (chunk == 1) {
+        int b;
+        while ((b = input.read()) != -1) {
+          sum += b;
+        }
+      } else {
+        int cnt;
+        while ((cnt = input.read(readBuffer)) != -1) {
+          sum += cnt;
+        }
+      }
+    } finally {
+      input.close();
+    }
+    return sum;
+  }
+
+}
@@ -0,0 +1,127 @@
+package com.stanfy.enroscar.io;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+
+import java.util.LinkedList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares {@link SerialExecutor} with the synchronized task queue executor
+ * previously used by Goro queues and {@code ApiMethods}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class SerialExecutorBenchmark {
+
+  /** Number of tasks submitted by one operation. */
+  private static final int TASKS_COUNT = 100;
+
+  /** Drain batch used by the batching serial executor. */
+  private static final int DRAIN_BATCH = 16;
+
+  /** Executor implementation. */
+  @Param({"synchronized", "serial", "serialBatch"})
+  public String executor;
+
+  /** Threads pool tasks are delegated to. */
+  private ExecutorService threadPool;
+
+  /** Serial executor under test. */
+  private Executor queue;
+
+  @Setup
+  public void createExecutor() {
+    threadPool = Executors.newFixedThreadPool(2);
+    if ("serial".equals(executor)) {
+      queue = new SerialExecutor(threadPool);
+    } else if ("serialBatch".equals(executor)) {
+      queue = new SerialExecutor(threadPool, DRAIN_BATCH);
+    } else {
+      queue = new SynchronizedTaskQueueExecutor(threadPool);
+    }
+  }
+
+  @TearDown
+  public void shutdown() {
+    threadPool.shutdown();
+  }
+
+  @Benchmark
+  @Threads(1)
+  public void submitSingleProducer() throws InterruptedException {
+    submitAndAwait();
+  }
+
+  @Benchmark
+  @Threads(4)
+  public void submitMultipleProducers() throws InterruptedException {
+    submitAndAwait();
+  }
+
+  private void submitAndAwait() throws InterruptedException {
+    final CountDownLatch latch = new CountDownLatch(TASKS_COUNT);
+    Runnable task = new Runnable() {
+      @Override
+      public void run() {
+        latch.countDown();
+      }
+    };
+    for (int i = 0; i < TASKS_COUNT; i++) {
+      queue.execute(task);
+    }
+    latch.await();
+  }
+
+  /** Copy of the task queue executor that was used before {@link SerialExecutor}. */
+  private static final class SynchronizedTaskQueueExecutor implements Executor {
+    /** Delegate executor. */
+    final Executor delegate;
+    /** Tasks queue. */
+    final LinkedList<Runnable> tasks = new LinkedList<>();
+    /** Active task. */
+    Runnable activeTask;
+
+    SynchronizedTaskQueueExecutor(final Executor delegate) {
+      this.delegate = delegate;
+    }
+
+    @Override
+    public synchronized void execute(final Runnable r) {
+      tasks.offer(new Runnable() {
+        @Override
+        public void run() {
+          try {
+            r.run();
+          } finally {
+            scheduleNext();
+          }
+        }
+      });
+      if (activeTask == null) {
+        scheduleNext();
+      }
+    }
+
+    synchronized void scheduleNext() {
+      activeTask = tasks.poll();
+      if (activeTask != null) {
+        delegate.execute(activeTask);
+      }
+    }
+  }
+
+}
@@ -0,0 +1,72 @@
+package com.stanfy.enroscar.net.cache;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.net.URI;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures metadata round-trips of {@link CacheEntry}.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class CacheEntryBenchmark {
+
+  /** Request URI. */
+  private static final String URI_STRING = "http://api.example.com/v1/feed/items?page=3&limit=50&fields=id,title,image";
+
+  /** Entry to write. */
+  private final CacheEntry entry = new CacheEntry();
+
+  /** Serialized entry. */
+  private byte[] serialized;
+
+  /** Output buffer. */
+  private final ByteArrayOutputStream output = new ByteArrayOutputStream(512);
+
+  @Setup
+  public void prepareEntry() throws IOException {
+    entry.set(URI.create(URI_STRING), "GET", null);
+    entry.writeTo(output);
+    serialized = output.toByteArray();
+  }
+
+  @Benchmark
+  public int write() throws IOException {
+    output.reset();
+    entry.writeTo(output);
+    return output.size();
+  }
+
+  @Benchmark
+  public CacheEntry read() throws IOException {
+    CacheEntry result = new CacheEntry();
+    result.readFrom(new ByteArrayInputStream(serialized));
+    return result;
+  }
+
+  @Benchmark
+  public boolean readAndMatch() throws IOException {
+    CacheEntry result = new CacheEntry();
+    result.readFrom(new ByteArrayInputStream(serialized));
+    return result.matches(entry) && result.canBeUsed();
+  }
+
+  @Benchmark
+  public boolean readHeaderAndMatch() throws IOException {
+    CacheEntry result = new CacheEntry();
+    result.readHeaderFrom(new ByteArrayInputStream(serialized));
+    return result.matches(entry) && result.canBeUsed();
+  }
+
+}
@@ -0,0 +1,33 @@
+package com.stanfy.enroscar.net.cache;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures cache key hashing with {@link Md5#getMd5(String)}.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class Md5Benchmark {
+
+  /** Hashed URL. */
+  @Param({
+      "http://example.com/a.png",
+      "http://api.example.com/v1/feed/items?page=3&limit=50&fields=id,title,image,description,author,comments_count"
+  })
+  public String url;
+
+  @Benchmark
+  public String md5() {
+    return Md5.getMd5(url);
+  }
+
+}
@@ -0,0 +1,28 @@
+package android.os;
+
+/** JVM stub of the Android class. Pretends to be the latest supported platform. */
+public class Build {
+
+  /** Version info. */
+  public static class VERSION {
+    /** SDK version. */
+    public static final int SDK_INT = VERSION_CODES.KITKAT;
+  }
+
+  /** Version codes. */
+  public static class VERSION_CODES {
+    /** Froyo. */
+    public static final int FROYO = 8;
+    /** Gingerbread. */
+    public static final int GINGERBREAD = 9;
+    /** Honeycomb. */
+    public static final int HONEYCOMB = 11;
+    /** ICS. */
+    public static final int ICE_CREAM_SANDWICH = 14;
+    /** Jelly Bean. */
+    public static final int JELLY_BEAN = 16;
+    /** KitKat. */
+    public static final int KITKAT = 19;
+  }
+
+}
@@ -0,0 +1,10 @@
+package android.text;
+
+/** JVM stub of the Android class. */
+public class TextUtils {
+
+  public static boolean isEmpty(final CharSequence str) {
+    return str == null || str.length() == 0;
+  }
+
+}
@@ -0,0 +1,23 @@
+package android.util;
+
+/** JVM stub of the Android class. Everything goes to {@link System#err}. */
+public final class Log {
+
+  private Log() { }
+
+  public static int d(final String tag, final String msg) { return println(tag, msg, null); }
+  public static int i(final String tag, final String msg) { return println(tag, msg, null); }
+  public static int w(final String tag, final String msg) { return println(tag, msg, null); }
+  public static int w(final String tag, final String msg, final Throwable tr) { return println(tag, msg, tr); }
+  public static int e(final String tag, final String msg) { return println(tag, msg, null); }
+  public static int e(final String tag, final String msg, final Throwable tr) { return println(tag, msg, tr); }
+
+  private static int println(final String tag, final String msg, final Throwable tr) {
+    System.err.println(tag + ": " + msg);
+    if (tr != null) {
+      tr.printStackTrace();
+    }
+    return 0;
+  }
+
+}
@@ -1,15 +1,25 @@
 package com.stanfy.enroscar.content;
 
 import android.content.ContentProvider;
+import android.content.ContentProviderOperation;
+import android.content.ContentProviderResult;
 import android.content.ContentUris;
 import android.content.ContentValues;
 import android.content.Context;
+import android.content.OperationApplicationException;
 import android.content.UriMatcher;
 import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
 import android.database.sqlite.SQLiteOpenHelper;
 import android.net.Uri;
+import android.util.Log;
 import android.util.SparseArray;
 
+import com.stanfy.enroscar.content.utils.DBInsertHelper;
+
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+
 /**
  * Content provider that uses strategies.
  * Provides you API similar to {@link UriMatcher} but allowing binding
@@ -18,6 +28,11 @@ import android.util.SparseArray;
  *   Override method {@code onStrategyMatcherCreate} in order to configure bindings 
  *   and {@code getDatabaseManager} in order to provide {@link SQLiteOpenHelper} instance.
  * </p>
+ * <p>
+ *   {@code bulkInsert} and {@code applyBatch} are routed to strategies that implement {@link BatchStrategy}.
+ *   Batches of other strategies are applied row by row.
+ *   After a batch is applied one change notification is sent for each affected URI.
+ * </p>
  *
  * @param <T> type of used SQLiteOpenHelper
  *
@@ -26,6 +41,9 @@ import android.util.SparseArray;
 public abstract class StrategiesContentProvider<T extends SQLiteOpenHelper>
     extends ContentProvider {
 
+  /** Name of the URI query parameter that limits the count of queried rows. */
+  public static final String QUERY_PARAMETER_LIMIT = "limit";
+
   /** URI matcher. */
   private StrategyMatcher<T> strategyMatcher;
 
@@ -99,6 +117,62 @@ public abstract class StrategiesContentProvider<T extends SQLiteOpenHelper>
         : 0;
   }
 
+  @Override
+  @SuppressWarnings("unchecked")
+  public int bulkInsert(final Uri uri, final ContentValues[] values) {
+    final Strategy<T> strategy = strategyMatcher.choose(uri);
+    if (strategy == null) { return 0; }
+    final int count = strategy instanceof BatchStrategy
+        ? ((BatchStrategy<T>) strategy).bulkInsert(getDatabaseManager(getContext()), uri, values)
+        : super.bulkInsert(uri, values);
+    if (count > 0) { notifyChange(uri); }
+    return count;
+  }
+
+  /**
+   * Operations are passed to a strategy if all of them are handled by the same {@link BatchStrategy}.
+   * Otherwise they are applied one by one.
+   */
+  @Override
+  @SuppressWarnings("unchecked")
+  public ContentProviderResult[] applyBatch(final ArrayList<ContentProviderOperation> operations)
+      throws OperationApplicationException {
+    final LinkedHashSet<Uri> uris = new LinkedHashSet<Uri>();
+    Strategy<T> strategy = null;
+    boolean sameStrategy = true;
+    final int count = operations.size();
+    for (int i = 0; i < count; i++) {
+      final Uri uri = operations.get(i).getUri();
+      uris.add(uri);
+      final Strategy<T> current = strategyMatcher.choose(uri);
+      if (i == 0) {
+        strategy = current;
+      } else if (current != strategy) {
+        sameStrategy = false;
+      }
+    }
+
+    final ContentProviderResult[] results = sameStrategy && strategy instanceof BatchStrategy
+        ? ((BatchStrategy<T>) strategy).applyBatch(getDatabaseManager(getContext()), this, operations)
+        : super.applyBatch(operations);
+
+    for (Uri uri : uris) {
+      notifyChange(uri);
+    }
+    return results;
+  }
+
+  /**
+   * Notify observers about changes made by a batch operation.
+   * @param uri changed URI
+   */
+  protected void notifyChange(final Uri uri) {
+    final Context context = getContext();
+    if (context != null) {
+      context.getContentResolver().notifyChange(uri, null);
+    }
+  }
+
   /**
    * A utility class that allows to register different content provider strategies
    * for different URLs.
@@ -175,6 +249,28 @@ public abstract class StrategiesContentProvider<T extends SQLiteOpenHelper>
                final String selection, final String[] selectionArgs);
   }
 
+  /**
+   * Strategy that applies batches of operations itself, e.g. in one transaction.
+   * @param <T> type of SQLiteOpenHelper
+   */
+  public interface BatchStrategy<T extends SQLiteOpenHelper> extends Strategy<T> {
+    /**
+     * @return count of inserted rows
+     * @see android.content.ContentProvider#bulkInsert(Uri, ContentValues[])
+     */
+    int bulkInsert(final T appDbManager, final Uri uri, final ContentValues[] values);
+
+    /**
+     * Apply a batch of operations. Single operations should be applied with
+     * {@link ContentProviderOperation#apply(ContentProvider, ContentProviderResult[], int)}.
+     * @param provider content provider instance
+     * @see android.content.ContentProvider#applyBatch(ArrayList)
+     */
+    ContentProviderResult[] applyBatch(final T appDbManager, final ContentProvider provider,
+                                       final ArrayList<ContentProviderOperation> operations)
+        throws OperationApplicationException;
+  }
+
   /**
    * Empty strategy, use it when you do not want to implement all the methods of {@link Strategy}.
    * @param <T> type of SQLiteOpenHelper
@@ -215,14 +311,30 @@ public abstract class StrategiesContentProvider<T extends SQLiteOpenHelper>
   /**
    * Simple strategy that delegates all the calls to corresponding
    * insert, update, delete methods of SQLiteDatabase.
+   * <p>
+   *   Batches are applied in one transaction, inserts use a statement compiled once per batch
+   *   (see {@link DBInsertHelper}). Transaction may be committed at yield points
+   *   (each {@value #YIELD_STEP} rows for {@code bulkInsert}, operations with
+   *   {@link ContentProviderOperation#isYieldAllowed()} for {@code applyBatch})
+   *   if the database is used by another thread.
+   * </p>
    * @param <T> db open helper type
    */
   @SuppressWarnings("ConstantConditions")
-  public static class TableStrategy<T extends SQLiteOpenHelper> implements Strategy<T> {
+  public static class TableStrategy<T extends SQLiteOpenHelper> implements BatchStrategy<T> {
+
+    /** Count of rows inserted between yield points. */
+    public static final int YIELD_STEP = 100;
+
+    /** Logging tag. */
+    private static final String TAG = "TableStrategy";
 
     /** Table name. */
     private final String tableName;
 
+    /** Insert helper of the batch applied in the current thread. */
+    private final ThreadLocal<DBInsertHelper> batchInsertHelper = new ThreadLocal<DBInsertHelper>();
+
     public TableStrategy(final String tableName) {
       this.tableName = tableName;
     }
@@ -232,7 +344,7 @@ public abstract class StrategiesContentProvider<T extends SQLiteOpenHelper>
                         final String selection, final String[] selectionArgs,
                         final String sortOrder) {
       return appDbManager.getWritableDatabase().query(tableName, projection, selection,
-          selectionArgs, null, null, sortOrder);
+          selectionArgs, null, null, sortOrder, uri.getQueryParameter(QUERY_PARAMETER_LIMIT));
     }
 
     @Override
@@ -242,10 +354,28 @@ public abstract class StrategiesContentProvider<T extends SQLiteOpenHelper>
 
     @Override
     public Uri insert(final T appDbManager, final Uri uri, final ContentValues values) {
-      long id = appDbManager.getWritableDatabase().insert(tableName, null, values);
+      final DBInsertHelper helper = batchInsertHelper.get();
+      long id = helper != null
+          ? insert(helper, values)
+          : appDbManager.getWritableDatabase().insert(tableName, null, values);
       return ContentUris.withAppendedId(uri, id);
     }
 
+    /**
+     * @param helper insert helper
+     * @param values row values
+     * @return row ID, -1 if an error occurred (the same as {@link SQLiteDatabase#insert(String, String, ContentValues)})
+     */
+    private long insert(final DBInsertHelper helper, final ContentValues values) {
+      try {
+        return helper.insert(values);
+      } catch (final IllegalArgumentException e) {
+        // unknown column
+        Log.e(TAG, "Error inserting " + values + " into table " + tableName, e);
+        return -1;
+      }
+    }
+
     @Override
     public int delete(final T appDbManager, final Uri uri, final String selection,
                       final String[] selectionArgs) {
@@ -258,6 +388,51 @@ public abstract class StrategiesContentProvider<T extends SQLiteOpenHelper>
       return appDbManager.getReadableDatabase().update(tableName, values, selection, selectionArgs);
     }
 
+    @Override
+    public int bulkInsert(final T appDbManager, final Uri uri, final ContentValues[] values) {
+      final SQLiteDatabase db = appDbManager.getWritableDatabase();
+      final DBInsertHelper helper = new DBInsertHelper(db, tableName);
+      int count = 0;
+      db.beginTransaction();
+      try {
+        for (int i = 0; i < values.length; i++) {
+          if (insert(helper, values[i]) != -1) { count++; }
+          if ((i + 1) % YIELD_STEP == 0) { db.yieldIfContendedSafely(); }
+        }
+        db.setTransactionSuccessful();
+      } finally {
+        db.endTransaction();
+        helper.close();
+      }
+      return count;
+    }
+
+    @Override
+    public ContentProviderResult[] applyBatch(final T appDbManager, final ContentProvider provider,
+                                              final ArrayList<ContentProviderOperation> operations)
+        throws OperationApplicationException {
+      final SQLiteDatabase db = appDbManager.getWritableDatabase();
+      final DBInsertHelper helper = new DBInsertHelper(db, tableName);
+      batchInsertHelper.set(helper);
+      db.beginTransaction();
+      try {
+        final int count = operations.size();
+        final ContentProviderResult[] results = new ContentProviderResult[count];
+        for (int i = 0; i < count; i++) {
+          final ContentProviderOperation operation = operations.get(i);
+          if (i > 0 && operation.isYieldAllowed()) { db.yieldIfContendedSafely(); }
+          // insert operations get to insert() and use the helper
+          results[i] = operation.apply(provider, results, i);
+        }
+        db.setTransactionSuccessful();
+        return results;
+      } finally {
+        db.endTransaction();
+        batchInsertHelper.remove();
+        helper.close();
+      }
+    }
+
   }
 
 }
@@ -9,14 +9,38 @@ import android.net.Uri;
 import android.os.Handler;
 import android.os.Looper;
 
+import com.stanfy.enroscar.content.StrategiesContentProvider;
+
+import java.util.Arrays;
+import java.util.List;
+
 /**
  * Loads data via content provider.
+ * <p>
+ *   In windowed mode (see {@link Builder#window(String, int)}) only a window of rows is queried and passed
+ *   to the factory. The window is located with keyset pagination on a key column and is moved with
+ *   {@link #setVisibleRange(int, int)}. Results are delivered as {@link WindowResponseData}.
+ * </p>
  */
 public class ContentLoader<T> extends BaseAsyncTaskLoader<ResponseData<T>> {
 
   /** Parameters. */
   private final Params params;
 
+  /** Window state, null if windowed mode is not enabled. Guarded by this. */
+  private final Window window;
+
+  /** Handler used to debounce change notifications. */
+  private final Handler handler = new Handler(Looper.getMainLooper());
+
+  /** Reload action. */
+  private final Runnable reload = new Runnable() {
+    @Override
+    public void run() {
+      onContentChanged();
+    }
+  };
+
   /** Factory instance. */
   private DataInstanceFactory<T> factory;
 
@@ -35,6 +59,7 @@ public class ContentLoader<T> extends BaseAsyncTaskLoader<ResponseData<T>> {
   ContentLoader(final Context context, final Params params) {
     super(context);
     this.params = params;
+    this.window = params.keyColumn != null ? new Window(params.pageSize + params.prefetchMargin) : null;
   }
 
   public static <T> Builder<T> of(final DataInstanceFactory<T> factory) {
@@ -45,7 +70,9 @@ public class ContentLoader<T> extends BaseAsyncTaskLoader<ResponseData<T>> {
   public ResponseData<T> loadInBackground() {
     ContentResolver resolver = getContext().getContentResolver();
 
-    Cursor cursor = resolver.query(params.uri, params.projection, params.selection, params.selectionArgs, params.sort);
+    Cursor cursor = window != null
+        ? queryWindow(resolver)
+        : resolver.query(params.uri, params.projection, params.selection, params.selectionArgs, params.sort);
 
     if (cursor == null) {
       throw new IllegalStateException("Content provider hasn't responded to " + params.uri);
@@ -60,15 +87,28 @@ public class ContentLoader<T> extends BaseAsyncTaskLoader<ResponseData<T>> {
 
     try {
 
+      final String[] keys = window != null ? readKeys(cursor) : null;
+
       T data = factory.createWithCursor(cursor);
       if (postProcessor != null) {
         data = postProcessor.process(getContext(), data);
       }
-      return new ResponseData<T>(data);
+      if (keys == null) {
+        return new ResponseData<T>(data);
+      }
+      synchronized (this) {
+        window.setLoaded(keys);
+        return new WindowResponseData<T>(data, window.offset, window.hasPrevious, window.hasNext);
+      }
 
     } catch (SQLiteException e) {
 
       this.error = e;
+      if (window != null) {
+        synchronized (this) {
+          window.setLoaded(window.keys);
+        }
+      }
 
       ResponseData<T> result = new ResponseData<T>();
       result.setErrorCode(params.errorCode);
@@ -92,14 +132,144 @@ public class ContentLoader<T> extends BaseAsyncTaskLoader<ResponseData<T>> {
     }
 
     super.deliverResult(data);
+
+    if (window != null) {
+      // visible range may have changed while loading
+      final int[] range;
+      synchronized (this) {
+        range = window.takeDeferredRange();
+      }
+      if (range != null) { setVisibleRange(range[0], range[1]); }
+    }
   }
 
   @Override
   protected void onReset() {
     super.onReset();
+    handler.removeCallbacks(reload);
     ensureContentObserverUnregistered();
   }
 
+  /**
+   * Tell the windowed loader which rows are visible. Window is moved and reloaded
+   * if visible rows plus prefetch margin are not loaded. Must be called from the main thread.
+   * @param first position of the first visible row in the whole data set (see {@link WindowResponseData#getOffset()})
+   * @param count count of visible rows
+   */
+  public void setVisibleRange(final int first, final int count) {
+    if (window == null) { throw new IllegalStateException("Windowed mode is not enabled"); }
+    final boolean move;
+    synchronized (this) {
+      move = window.moveTo(first, count, params.prefetchMargin, params.pageSize);
+    }
+    if (move) { onContentChanged(); }
+  }
+
+  /** Main thread. */
+  void onContentChanged(final Uri changedUri) {
+    if (changedUri != null && window != null && !affectsWindow(changedUri)) { return; }
+    if (params.debounceDelay > 0) {
+      handler.removeCallbacks(reload);
+      handler.postDelayed(reload, params.debounceDelay);
+    } else {
+      onContentChanged();
+    }
+  }
+
+  /** @return false if URI identifies a row that is not in the current window */
+  private boolean affectsWindow(final Uri changedUri) {
+    final List<String> segments = changedUri.getPathSegments();
+    final List<String> baseSegments = params.uri.getPathSegments();
+    if (segments.size() != baseSegments.size() + 1
+        || !changedUri.toString().startsWith(params.uri.toString())) {
+      return true;
+    }
+    synchronized (this) {
+      return window.contains(changedUri.getLastPathSegment(), params.descending);
+    }
+  }
+
+  private Cursor queryWindow(final ContentResolver resolver) {
+    final String startKey;
+    final int backward, limit;
+    synchronized (this) {
+      startKey = window.startKey;
+      backward = window.backwardRows;
+      limit = window.limit;
+      window.backwardRows = 0;
+    }
+
+    String from = startKey;
+    int shift = 0;
+    boolean reachedStart = startKey == null;
+    if (backward > 0 && startKey != null) {
+      // step back: read keys preceding the window start in the reverse order
+      final Cursor before = resolver.query(limitedUri(backward), new String[] {params.keyColumn},
+          keySelection(true), keySelectionArgs(startKey), keyOrder(true));
+      if (before != null) {
+        try {
+          shift = before.getCount();
+          if (shift < backward) {
+            reachedStart = true;
+            from = null;
+          } else if (before.moveToLast()) {
+            from = before.getString(0);
+          }
+        } finally {
+          before.close();
+        }
+      }
+    }
+
+    synchronized (this) {
+      window.startKey = from;
+      window.offset = reachedStart ? 0 : Math.max(0, window.offset - shift);
+      window.hasPrevious = !reachedStart;
+    }
+
+    final Uri uri = limitedUri(limit);
+    return from == null
+        ? resolver.query(uri, params.projection, params.selection, params.selectionArgs, keyOrder(false))
+        : resolver.query(uri, params.projection, keySelection(false), keySelectionArgs(from), keyOrder(false));
+  }
+
+  private String keySelection(final boolean before) {
+    final String operator = before ^ params.descending ? " < ?" : " >= ?";
+    final String keyCondition = params.keyColumn + operator;
+    return params.selection == null ? keyCondition : "(" + params.selection + ") AND " + keyCondition;
+  }
+
+  private String[] keySelectionArgs(final String key) {
+    final String[] args = params.selectionArgs;
+    if (args == null) { return new String[] {key}; }
+    final String[] result = new String[args.length + 1];
+    System.arraycopy(args, 0, result, 0, args.length);
+    result[args.length] = key;
+    return result;
+  }
+
+  private String keyOrder(final boolean reverse) {
+    return params.keyColumn + (reverse ^ params.descending ? " DESC" : " ASC");
+  }
+
+  /** Limit is passed as a query parameter, see {@link StrategiesContentProvider#QUERY_PARAMETER_LIMIT}. */
+  private Uri limitedUri(final int limit) {
+    return params.uri.buildUpon()
+        .appendQueryParameter(StrategiesContentProvider.QUERY_PARAMETER_LIMIT, String.valueOf(limit))
+        .build();
+  }
+
+  private String[] readKeys(final Cursor cursor) {
+    final int index = cursor.getColumnIndexOrThrow(params.keyColumn);
+    final String[] keys = new String[cursor.getCount()];
+    int i = 0;
+    while (cursor.moveToNext() && i < keys.length) {
+      keys[i++] = cursor.getString(index);
+    }
+    cursor.moveToPosition(-1);
+    return keys;
+  }
+
   private void ensureContentObserverUnregistered() {
     synchronized (this) {
       if (contentObserver != null) {
@@ -122,7 +292,12 @@ public class ContentLoader<T> extends BaseAsyncTaskLoader<ResponseData<T>> {
 
     @Override
     public void onChange(final boolean selfChange) {
-      onContentChanged();
+      onContentChanged(null);
+    }
+
+    @Override
+    public void onChange(final boolean selfChange, final Uri uri) {
+      onContentChanged(uri);
     }
 
   }
@@ -182,6 +357,48 @@ public class ContentLoader<T> extends BaseAsyncTaskLoader<ResponseData<T>> {
       return this;
     }
 
+    /**
+     * Enable windowed mode with ascending order.
+     * @see #window(String, boolean, int)
+     */
+    public Builder<T> window(final String keyColumn, final int pageSize) {
+      return window(keyColumn, false, pageSize);
+    }
+
+    /**
+     * Enable windowed mode. Rows are ordered by the key column, which must be unique and should be indexed.
+     * Sort order cannot be set in this mode. Window is loaded and moved by pages.
+     * Count of rows is limited with {@link StrategiesContentProvider#QUERY_PARAMETER_LIMIT} URI parameter,
+     * content provider should apply it.
+     * Row URIs in change notifications are expected to be {@code <uri>/<key>}.
+     * @param keyColumn key column name
+     * @param descending whether rows are sorted in descending order
+     * @param pageSize count of rows in a page
+     */
+    public Builder<T> window(final String keyColumn, final boolean descending, final int pageSize) {
+      if (pageSize <= 0) { throw new IllegalArgumentException("Bad page size " + pageSize); }
+      params.keyColumn = keyColumn;
+      params.descending = descending;
+      params.pageSize = pageSize;
+      return this;
+    }
+
+    /**
+     * Set count of rows loaded before and after visible rows in windowed mode.
+     */
+    public Builder<T> prefetchMargin(final int rows) {
+      params.prefetchMargin = rows;
+      return this;
+    }
+
+    /**
+     * Set delay used to join change notifications into one reload.
+     */
+    public Builder<T> debounce(final long millis) {
+      params.debounceDelay = millis;
+      return this;
+    }
+
     /**
      * Set error code that should be set to ResponseData if error happens.
      */
@@ -212,6 +429,17 @@ public class ContentLoader<T> extends BaseAsyncTaskLoader<ResponseData<T>> {
       if (params.uri == null) {
         throw new IllegalArgumentException("URI is not specified");
       }
+      if (params.keyColumn != null) {
+        if (params.sort != null) {
+          throw new IllegalArgumentException("Sort order is defined by the window key column");
+        }
+        if (params.projection != null && !Arrays.asList(params.projection).contains(params.keyColumn)) {
+          final String[] projection = new String[params.projection.length + 1];
+          System.arraycopy(params.projection, 0, projection, 0, params.projection.length);
+          projection[params.projection.length] = params.keyColumn;
+          params.projection = projection;
+        }
+      }
       ContentLoader<T> loader = new ContentLoader<T>(context, params);
       loader.factory = factory;
       loader.postProcessor = after;
@@ -248,6 +476,120 @@ public class ContentLoader<T> extends BaseAsyncTaskLoader<ResponseData<T>> {
     /** Whether to observe changes in descendent URIs. */
     boolean observeDescendentsChanges;
 
+    /** Window key column. */
+    String keyColumn;
+
+    /** Whether window rows are sorted in descending order. */
+    boolean descending;
+
+    /** Window page size. */
+    int pageSize;
+
+    /** Window prefetch margin. */
+    int prefetchMargin;
+
+    /** Change notifications debounce delay. */
+    long debounceDelay;
+
+  }
+
+  /** Window state. */
+  static final class Window {
+
+    /** Empty keys. */
+    private static final String[] NO_KEYS = new String[0];
+
+    /** Key of the first row, null if window starts from the first row. */
+    String startKey;
+    /** Count of rows to add before the start key with the next load. */
+    int backwardRows;
+    /** Max count of rows to load. */
+    int limit;
+    /** Position of the first row. */
+    int offset;
+    /** Keys of loaded rows. */
+    String[] keys = NO_KEYS;
+    /** Whether there are rows before and after the window. */
+    boolean hasPrevious, hasNext;
+
+    /** Whether window is being loaded. */
+    private boolean loading = true;
+    /** Visible range requested while loading. */
+    private int[] deferredRange;
+
+    Window(final int limit) {
+      this.limit = limit;
+    }
+
+    void setLoaded(final String[] keys) {
+      this.keys = keys;
+      this.hasNext = keys.length >= limit;
+      this.loading = false;
+    }
+
+    int[] takeDeferredRange() {
+      final int[] range = deferredRange;
+      deferredRange = null;
+      return range;
+    }
+
+    private static int toPages(final int rows, final int pageSize) {
+      return Math.max(1, (rows + pageSize - 1) / pageSize) * pageSize;
+    }
+
+    /**
+     * @return true if window must be reloaded
+     */
+    boolean moveTo(final int first, final int count, final int margin, final int pageSize) {
+      if (loading) {
+        deferredRange = new int[] {first, count};
+        return false;
+      }
+
+      final int loaded = keys.length;
+      final int relativeFirst = first - offset, relativeEnd = first + count - offset;
+      final int required = toPages(count + 2 * margin, pageSize);
+      final boolean headMissing = hasPrevious && relativeFirst - margin < 0;
+      final boolean tailMissing = hasNext && relativeEnd + margin > loaded;
+      if (!headMissing && !tailMissing) { return false; }
+
+      limit = Math.max(limit, required);
+      if (headMissing) {
+        backwardRows = toPages(margin - relativeFirst, pageSize);
+      } else {
+        final int drop = Math.min(Math.max(0, relativeFirst - margin), loaded - 1);
+        if (drop > 0) {
+          startKey = keys[drop];
+          offset += drop;
+          hasPrevious = true;
+        }
+      }
+      loading = true;
+      return true;
+    }
+
+    /**
+     * @param key changed row key
+     * @param descending sort order
+     * @return true if a row with the given key is or can be in the window
+     */
+    boolean contains(final String key, final boolean descending) {
+      final String[] keys = this.keys;
+      if (keys.length == 0) { return true; }
+      try {
+        final long value = Long.parseLong(key);
+        final int sign = descending ? -1 : 1;
+        final boolean afterStart = startKey == null
+            || sign * Long.signum(value - Long.parseLong(keys[0])) >= 0;
+        final boolean beforeEnd = !hasNext
+            || sign * Long.signum(value - Long.parseLong(keys[keys.length - 1])) <= 0;
+        return afterStart && beforeEnd;
+      } catch (final NumberFormatException e) {
+        // cannot compare
+        return true;
+      }
+    }
+
   }
 
   /** Post loading processor (for background thread). */
@@ -0,0 +1,36 @@
+package com.stanfy.enroscar.content.loader;
+
+/**
+ * Response of a windowed {@link ContentLoader}. Model contains only rows of the current window.
+ * @param <T> result object type
+ * @author Roman Mazur (Stanfy - http://stanfy.com)
+ */
+public class WindowResponseData<T> extends ResponseData<T> {
+
+  /** Position of the first window row in the whole data set. */
+  private final int offset;
+
+  /** Whether there are rows before and after the window. */
+  private final boolean hasPrevious, hasNext;
+
+  public WindowResponseData(final T model, final int offset, final boolean hasPrevious, final boolean hasNext) {
+    super(model);
+    this.offset = offset;
+    this.hasPrevious = hasPrevious;
+    this.hasNext = hasNext;
+  }
+
+  /**
+   * Offset is exact while the window is moved by scrolling.
+   * It may become approximate if rows are inserted or deleted before the window.
+   * @return position of the first window row in the whole data set
+   */
+  public int getOffset() { return offset; }
+
+  /** @return true if there are rows before the window */
+  public boolean hasPrevious() { return hasPrevious; }
+
+  /** @return true if there may be rows after the window */
+  public boolean hasNext() { return hasNext; }
+
+}
@@ -0,0 +1,78 @@
+package com.stanfy.enroscar.content.loader;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.fest.assertions.api.Assertions.assertThat;
+
+/**
+ * Tests for {@link ContentLoader.Window}.
+ */
+public class ContentLoaderWindowTest {
+
+  //CHECKSTYLE:OFF
+  /** Window under the test. */
+  private ContentLoader.Window window;
+
+  private static String[] keys(final int from, final int count) {
+    final String[] keys = new String[count];
+    for (int i = 0; i < count; i++) {
+      keys[i] = String.valueOf(from + i);
+    }
+    return keys;
+  }
+
+  @Before
+  public void init() {
+    window = new ContentLoader.Window(30);
+    window.setLoaded(keys(0, 30));
+  }
+
+  @Test
+  public void shouldNotMoveWhileVisibleRowsAndMarginAreLoaded() {
+    assertThat(window.hasNext).isTrue();
+    assertThat(window.moveTo(0, 10, 5, 10)).isFalse();
+    assertThat(window.moveTo(10, 10, 5, 10)).isFalse();
+  }
+
+  @Test
+  public void shouldMoveForwardByKey() {
+    assertThat(window.moveTo(20, 10, 5, 10)).isTrue();
+    assertThat(window.startKey).isEqualTo("15");
+    assertThat(window.offset).isEqualTo(15);
+    assertThat(window.hasPrevious).isTrue();
+  }
+
+  @Test
+  public void shouldDeferMovesWhileLoading() {
+    assertThat(window.moveTo(20, 10, 5, 10)).isTrue();
+    assertThat(window.moveTo(25, 10, 5, 10)).isFalse();
+    assertThat(window.takeDeferredRange()).isEqualTo(new int[] {25, 10});
+    assertThat(window.takeDeferredRange()).isNull();
+  }
+
+  @Test
+  public void shouldMoveBackwardByPages() {
+    window.moveTo(20, 10, 5, 10);
+    window.setLoaded(keys(15, 30));
+    assertThat(window.moveTo(12, 10, 5, 10)).isTrue();
+    assertThat(window.backwardRows).isEqualTo(10);
+    assertThat(window.startKey).isEqualTo("15");
+  }
+
+  @Test
+  public void shouldFilterRowChangesOutsideWindow() {
+    window.moveTo(20, 10, 5, 10);
+    window.setLoaded(keys(15, 30));
+    assertThat(window.contains("20", false)).isTrue();
+    assertThat(window.contains("3", false)).isFalse();
+    assertThat(window.contains("50", false)).isFalse();
+    assertThat(window.contains("not a number", false)).isTrue();
+
+    window.setLoaded(keys(15, 10));
+    assertThat(window.hasNext).isFalse();
+    assertThat(window.contains("50", false)).isTrue();
+  }
+  //CHECKSTYLE:ON
+
+}
@@ -1,8 +1,15 @@
 package com.stanfy.enroscar.content.loader.test;
 
+import android.content.ContentProviderOperation;
+import android.content.ContentProviderResult;
+import android.content.ContentUris;
+import android.content.ContentValues;
 import android.content.Context;
+import android.content.OperationApplicationException;
 import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
 import android.database.sqlite.SQLiteOpenHelper;
+import android.database.sqlite.SQLiteStatement;
 import android.net.Uri;
 
 import com.stanfy.enroscar.content.StrategiesContentProvider;
@@ -10,10 +17,26 @@ import com.stanfy.enroscar.content.StrategiesContentProvider;
 import org.junit.Before;
 import org.junit.Test;
 import org.junit.runner.RunWith;
+import org.mockito.InOrder;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
 import org.robolectric.RobolectricTestRunner;
 import org.robolectric.annotation.Config;
 
+import java.util.ArrayList;
+
 import static org.fest.assertions.api.Assertions.assertThat;
+import static org.junit.Assert.fail;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyInt;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.inOrder;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
 
 /**
  * Tests for StrategiesContentProvider.
@@ -28,11 +51,35 @@ public class StrategiesContentProviderTest {
   /** Test strategy. */
   private StrategiesContentProvider.Strategy<SQLiteOpenHelper> testStrategy;
 
+  /** Table URI. */
+  private static final Uri TABLE_URI = Uri.parse("content://test/table");
+
   /** Last requested URI. */
   private Uri lastUri;
+  /** Count of insert calls. */
+  private int insertsCount;
+
+  /** Notified URIs. */
+  private final ArrayList<Uri> notifiedUris = new ArrayList<Uri>();
+
+  /** Database. */
+  private SQLiteDatabase db;
+  /** Insert statement. */
+  private SQLiteStatement insertStatement;
+  /** Database manager. */
+  private SQLiteOpenHelper dbManager;
 
   @Before
   public void create() {
+    db = mock(SQLiteDatabase.class);
+    insertStatement = mock(SQLiteStatement.class);
+    when(insertStatement.executeInsert()).thenReturn(1L);
+    when(db.compileStatement(anyString())).thenReturn(insertStatement);
+    when(db.rawQuery(eq("PRAGMA table_info(test_table)"), any(String[].class))).thenAnswer(new TableInfo());
+    dbManager = mock(SQLiteOpenHelper.class);
+    when(dbManager.getWritableDatabase()).thenReturn(db);
+    when(dbManager.getReadableDatabase()).thenReturn(db);
+
     provider = new StrategiesContentProvider<SQLiteOpenHelper>() {
       @Override
       protected void onStrategyMatcherCreate(final StrategyMatcher<SQLiteOpenHelper> matcher) {
@@ -42,13 +89,25 @@ public class StrategiesContentProviderTest {
             lastUri = uri;
             return super.query(appDbManager, uri, projection, selection, selectionArgs, sortOrder);
           }
+          @Override
+          public Uri insert(final SQLiteOpenHelper appDbManager, final Uri uri, final ContentValues values) {
+            lastUri = uri;
+            insertsCount++;
+            return uri;
+          }
         };
         matcher.registerStrategy("test", "test", testStrategy);
+        matcher.registerStrategy("test", "table", new TableStrategy<SQLiteOpenHelper>("test_table"));
       }
 
       @Override
       protected SQLiteOpenHelper getDatabaseManager(final Context context) {
-        return null;
+        return dbManager;
+      }
+
+      @Override
+      protected void notifyChange(final Uri uri) {
+        notifiedUris.add(uri);
       }
     };
     provider.onCreate();
@@ -69,4 +128,137 @@ public class StrategiesContentProviderTest {
     assertThat(lastUri).describedAs("Incorrect strategy used").isNull();
   }
 
+  @Test
+  public void tableStrategyShouldApplyLimitParameter() {
+    final Uri uri = TABLE_URI.buildUpon()
+        .appendQueryParameter(StrategiesContentProvider.QUERY_PARAMETER_LIMIT, "10")
+        .build();
+    provider.query(uri, null, null, null, "id ASC");
+    verify(db).query("test_table", null, null, null, null, null, "id ASC", "10");
+
+    provider.query(TABLE_URI, null, null, null, null);
+    verify(db).query("test_table", null, null, null, null, null, null, null);
+  }
+
+  @Test
+  public void shouldUseStrategiesForBulkInsert() {
+    final ContentValues[] values = {new ContentValues(), new ContentValues(), new ContentValues()};
+    assertThat(provider.bulkInsert(Uri.parse("content://test/test"), values)).isEqualTo(values.length);
+    assertThat(insertsCount).isEqualTo(values.length);
+    assertThat(lastUri).isEqualTo(Uri.parse("content://test/test"));
+
+    insertsCount = 0;
+    assertThat(provider.bulkInsert(Uri.parse("content://test/test2"), values)).isZero();
+    assertThat(insertsCount).isZero();
+  }
+
+  @Test
+  public void bulkInsertShouldNotifyOnce() {
+    provider.bulkInsert(Uri.parse("content://test/test"), new ContentValues[] {new ContentValues(), new ContentValues()});
+    assertThat(notifiedUris).containsExactly(Uri.parse("content://test/test"));
+  }
+
+  @Test
+  public void applyBatchShouldNotifyEachUriOnce() throws Exception {
+    ArrayList<ContentProviderOperation> operations = new ArrayList<ContentProviderOperation>();
+    operations.add(ContentProviderOperation.newInsert(Uri.parse("content://test/test")).build());
+    operations.add(ContentProviderOperation.newUpdate(Uri.parse("content://test/other")).build());
+    operations.add(ContentProviderOperation.newInsert(Uri.parse("content://test/test")).build());
+
+    provider.applyBatch(operations);
+    assertThat(insertsCount).isEqualTo(2);
+    assertThat(notifiedUris).containsExactly(Uri.parse("content://test/test"), Uri.parse("content://test/other"));
+  }
+
+  private static ContentValues row(final String column) {
+    ContentValues values = new ContentValues();
+    values.put(column, "value");
+    return values;
+  }
+
+  @Test
+  public void tableStrategyShouldBulkInsertInTransaction() {
+    final int count = StrategiesContentProvider.TableStrategy.YIELD_STEP + 1;
+    ContentValues[] values = new ContentValues[count];
+    for (int i = 0; i < count; i++) {
+      values[i] = row("name");
+    }
+
+    assertThat(provider.bulkInsert(TABLE_URI, values)).isEqualTo(count);
+
+    InOrder order = inOrder(db, insertStatement);
+    order.verify(db).beginTransaction();
+    order.verify(insertStatement, times(StrategiesContentProvider.TableStrategy.YIELD_STEP)).executeInsert();
+    order.verify(db).yieldIfContendedSafely();
+    order.verify(insertStatement).executeInsert();
+    order.verify(db).setTransactionSuccessful();
+    order.verify(db).endTransaction();
+    // statement is compiled once per batch
+    verify(db).compileStatement(anyString());
+    verify(db, never()).insert(anyString(), anyString(), any(ContentValues.class));
+    assertThat(notifiedUris).containsExactly(TABLE_URI);
+  }
+
+  @Test
+  public void tableStrategyShouldSkipRowsWithUnknownColumns() {
+    ContentValues[] values = {row("name"), row("unknown"), row("name")};
+    assertThat(provider.bulkInsert(TABLE_URI, values)).isEqualTo(2);
+    verify(db).setTransactionSuccessful();
+  }
+
+  @Test
+  public void tableStrategyShouldApplyBatchInTransaction() throws Exception {
+    ArrayList<ContentProviderOperation> operations = new ArrayList<ContentProviderOperation>();
+    operations.add(ContentProviderOperation.newInsert(TABLE_URI).withValues(row("name")).build());
+    operations.add(ContentProviderOperation.newUpdate(TABLE_URI).withValues(row("name"))
+        .withYieldAllowed(true).build());
+    operations.add(ContentProviderOperation.newInsert(TABLE_URI).withValues(row("name")).build());
+
+    ContentProviderResult[] results = provider.applyBatch(operations);
+    assertThat(results).hasSize(operations.size());
+    assertThat(results[0].uri).isEqualTo(ContentUris.withAppendedId(TABLE_URI, 1));
+
+    InOrder order = inOrder(db, insertStatement);
+    order.verify(db).beginTransaction();
+    order.verify(insertStatement).executeInsert();
+    order.verify(db).yieldIfContendedSafely();
+    order.verify(db).update(eq("test_table"), any(ContentValues.class), anyString(), any(String[].class));
+    order.verify(insertStatement).executeInsert();
+    order.verify(db).setTransactionSuccessful();
+    order.verify(db).endTransaction();
+    verify(db).compileStatement(anyString());
+    verify(db, never()).insert(anyString(), anyString(), any(ContentValues.class));
+    assertThat(notifiedUris).containsExactly(TABLE_URI);
+  }
+
+  @Test
+  public void tableStrategyShouldRollbackFailedBatch() {
+    when(db.update(anyString(), any(ContentValues.class), anyString(), any(String[].class))).thenReturn(0);
+    ArrayList<ContentProviderOperation> operations = new ArrayList<ContentProviderOperation>();
+    operations.add(ContentProviderOperation.newInsert(TABLE_URI).withValues(row("name")).build());
+    operations.add(ContentProviderOperation.newUpdate(TABLE_URI).withValues(row("name")).withExpectedCount(1).build());
+
+    try {
+      provider.applyBatch(operations);
+      fail("OperationApplicationException expected");
+    } catch (final OperationApplicationException e) {
+      // expected
+    }
+    verify(db, never()).setTransactionSuccessful();
+    verify(db).endTransaction();
+  }
+
+  /** Answers table info request with a single 'name' column. */
+  private static class TableInfo implements Answer<Cursor> {
+    @Override
+    public Cursor answer(final InvocationOnMock invocation) {
+      Cursor cursor = mock(Cursor.class);
+      when(cursor.getCount()).thenReturn(1);
+      when(cursor.moveToNext()).thenReturn(true, false);
+      when(cursor.getString(anyInt())).thenReturn(null);
+      when(cursor.getString(1)).thenReturn("name");
+      return cursor;
+    }
+  }
+
 }
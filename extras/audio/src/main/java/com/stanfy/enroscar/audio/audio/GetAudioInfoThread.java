@@ -80,63 +80,18 @@ class GetAudioInfoThread extends Thread {
         throw new RuntimeException("no data");
       }
 
-      final int bufSize = 4096; // 4080 is the maximum size
+      // audio data is dropped, metadata is passed to the service
+      final IcyMetadataInputStream icyStream = new IcyMetadataInputStream(stream, metaDataOffset,
+          new IcyMetadataInputStream.MetadataListener() {
+            @Override
+            public void onMetadata(final String metadata) {
+              service.updateAudioInfo(metadata);
+            }
+          });
+      final int bufSize = 4096;
       final byte[] buffer = new byte[bufSize];
-      final int initialMetaLength = 1024;
-      final StringBuilder metaData = new StringBuilder(initialMetaLength);
-
-      int leftToSkip = metaDataOffset;
-      while (true) {
+      while (icyStream.read(buffer) != -1) {
         if (Thread.interrupted()) { throw new RuntimeException("interrtupted"); }
-
-        // skipping
-        while (leftToSkip > 0) {
-          final long actual = stream.skip(leftToSkip);
-          leftToSkip -= actual;
-        }
-
-        int count = 0;
-        int metaDataLength = 0;
-        metaData.delete(0, metaData.length());
-
-        int lastReadCount;
-
-        // read metadata
-        while ((lastReadCount = stream.read(buffer)) != -1) {
-          if (Thread.interrupted()) { throw new RuntimeException("interrtupted"); }
-          if (lastReadCount == 0) { continue; }
-
-          // length of the metadata - the first byte
-          if (count == 0) {
-            final int paragraph = 16;
-            metaDataLength = buffer[0] * paragraph;
-          }
-          final int startIndex = count == 0 ? 1 : 0;
-          int length = count == 0 ? lastReadCount - 1 : lastReadCount;
-
-          count += lastReadCount;
-
-          if (count > metaDataLength) {
-            length -= count - metaDataLength;
-            if (count == lastReadCount) { length++; }
-          }
-
-          if (length > 0) {
-            metaData.append(new String(buffer, startIndex, length, "UTF-8"));
-          }
-
-          if (count > metaDataLength) { break; }
-        }
-
-        if (lastReadCount == -1) { break; }
-
-        leftToSkip = metaDataOffset - (count - metaDataLength - 1);
-
-        // Set the data
-        if (metaData.length() > 0) {
-          service.updateAudioInfo(metaData.toString());
-        }
-
       }
 
     } catch (final IOException e) {
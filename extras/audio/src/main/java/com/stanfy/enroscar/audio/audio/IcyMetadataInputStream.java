@@ -0,0 +1,163 @@
+package com.stanfy.audio;
+
+import java.io.EOFException;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UnsupportedEncodingException;
+
+/**
+ * Input stream that strips ICY metadata blocks out of a Shoutcast/Icecast stream.
+ * Only audio data is returned by read methods, metadata is passed to the listener.
+ * Buffers are allocated once per stream. Metadata strings are created only when metadata changes.
+ * @author Roman Mazur (Stanfy - http://www.stanfy.com)
+ */
+class IcyMetadataInputStream extends FilterInputStream {
+
+  /** Metadata length unit. */
+  private static final int LENGTH_UNIT = 16;
+  /** Max metadata length. */
+  private static final int MAX_LENGTH = 255 * LENGTH_UNIT;
+  /** Skip buffer size. */
+  private static final int SKIP_BUFFER_SIZE = 4096;
+
+  /** Metadata encoding. */
+  private static final String ENCODING = "UTF-8";
+
+  /**
+   * Metadata listener.
+   */
+  interface MetadataListener {
+    /** @param metadata metadata string, e.g. {@code StreamTitle='Artist - Title';} */
+    void onMetadata(String metadata);
+  }
+
+  /** Metadata interval (icy-metaint). */
+  private final int interval;
+  /** Listener. */
+  private final MetadataListener listener;
+
+  /** Count of audio bytes before the next metadata block. */
+  private int audioLeft;
+
+  /** Metadata buffer. */
+  private final byte[] metadata = new byte[MAX_LENGTH];
+  /** Last dispatched metadata. */
+  private final byte[] lastMetadata = new byte[MAX_LENGTH];
+  /** Length of the last dispatched metadata. */
+  private int lastMetadataLength;
+
+  /** Single byte buffer. */
+  private final byte[] single = new byte[1];
+  /** Skip buffer. */
+  private byte[] skipBuffer;
+
+  /**
+   * @param in source stream positioned right after the response headers
+   * @param interval metadata interval (value of icy-metaint header)
+   * @param listener metadata listener
+   */
+  public IcyMetadataInputStream(final InputStream in, final int interval, final MetadataListener listener) {
+    super(in);
+    if (interval <= 0) { throw new IllegalArgumentException("Bad metadata interval " + interval); }
+    this.interval = interval;
+    this.listener = listener;
+    this.audioLeft = interval;
+  }
+
+  @Override
+  public int read() throws IOException {
+    int count;
+    do {
+      count = read(single, 0, 1);
+    } while (count == 0);
+    return count == -1 ? -1 : single[0] & 0xFF;
+  }
+
+  @Override
+  public int read(final byte[] buffer, final int offset, final int length) throws IOException {
+    if (length == 0) { return 0; }
+    if (audioLeft == 0 && !readMetadata()) { return -1; }
+    final int count = in.read(buffer, offset, Math.min(length, audioLeft));
+    if (count > 0) { audioLeft -= count; }
+    return count;
+  }
+
+  @Override
+  public long skip(final long count) throws IOException {
+    if (skipBuffer == null) { skipBuffer = new byte[SKIP_BUFFER_SIZE]; }
+    final byte[] buffer = skipBuffer;
+    long left = count;
+    while (left > 0) {
+      final int read = read(buffer, 0, (int) Math.min(left, buffer.length));
+      if (read == -1) { break; }
+      left -= read;
+    }
+    return count - left;
+  }
+
+  @Override
+  public int available() throws IOException {
+    return Math.min(in.available(), audioLeft);
+  }
+
+  @Override
+  public boolean markSupported() { return false; }
+
+  @Override
+  public synchronized void mark(final int readlimit) {
+    // not supported
+  }
+
+  @Override
+  public synchronized void reset() throws IOException {
+    throw new IOException("Mark is not supported");
+  }
+
+  /** @return false if stream is finished */
+  private boolean readMetadata() throws IOException {
+    final int lengthByte = in.read();
+    if (lengthByte == -1) { return false; }
+    final int length = lengthByte * LENGTH_UNIT;
+
+    final byte[] metadata = this.metadata;
+    int read = 0;
+    while (read < length) {
+      final int count = in.read(metadata, read, length - read);
+      if (count == -1) { throw new EOFException("Stream ended inside a metadata block"); }
+      read += count;
+    }
+    audioLeft = interval;
+
+    if (length > 0) { dispatch(length); }
+    return true;
+  }
+
+  private void dispatch(final int length) {
+    final byte[] metadata = this.metadata;
+    // metadata is padded with zeros
+    int end = length;
+    while (end > 0 && metadata[end - 1] == 0) { end--; }
+    if (end == 0 || sameAsLast(end)) { return; }
+
+    System.arraycopy(metadata, 0, lastMetadata, 0, end);
+    lastMetadataLength = end;
+    if (listener != null) {
+      try {
+        listener.onMetadata(new String(metadata, 0, end, ENCODING));
+      } catch (final UnsupportedEncodingException e) {
+        throw new RuntimeException(e);
+      }
+    }
+  }
+
+  private boolean sameAsLast(final int length) {
+    if (length != lastMetadataLength) { return false; }
+    final byte[] metadata = this.metadata, last = this.lastMetadata;
+    for (int i = 0; i < length; i++) {
+      if (metadata[i] != last[i]) { return false; }
+    }
+    return true;
+  }
+
+}
@@ -0,0 +1,309 @@
+package com.stanfy.audio;
+
+import java.io.BufferedInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.URL;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+
+import android.util.Log;
+
+/**
+ * Local loopback proxy for Shoutcast/Icecast streams.
+ * It fetches a stream once with ICY metadata enabled, strips metadata blocks and serves clean audio
+ * to a media player connected to {@link #getUrl()}. Metadata is passed to the listener.
+ * <p>
+ *   Only one client is served at a time: a new connection closes the previous one.
+ *   Only plain HTTP streams are supported.
+ * </p>
+ * @author Roman Mazur (Stanfy - http://www.stanfy.com)
+ */
+class IcyStreamProxy implements Runnable {
+
+  /** Logging tag. */
+  static final String TAG = "IcyStreamProxy";
+  /** Debug flag. */
+  static final boolean DEBUG = GetAudioInfoThread.DEBUG;
+
+  /** Connection timeout. */
+  private static final int TIMEOUT = 15000;
+  /** Max count of followed redirects. */
+  private static final int MAX_REDIRECTS = 5;
+  /** Buffer size. */
+  private static final int BUFFER_SIZE = 8192;
+  /** Max length of a header line. */
+  private static final int MAX_LINE_LENGTH = 4096;
+  /** HTTP status codes. */
+  private static final int HTTP_OK = 200, HTTP_MULT_CHOICE = 300, HTTP_BAD_REQUEST = 400;
+  /** Default content type. */
+  private static final String DEFAULT_CONTENT_TYPE = "audio/mpeg";
+  /** Headers encoding. */
+  private static final String HEADERS_ENCODING = "ISO-8859-1";
+
+  /** Stream URL. */
+  private final URL streamUrl;
+  /** Metadata listener. */
+  private final IcyMetadataInputStream.MetadataListener listener;
+
+  /** Server socket. */
+  private ServerSocket serverSocket;
+  /** Accepting thread. */
+  private Thread thread;
+  /** Running flag. */
+  private volatile boolean running;
+
+  /** Current session. */
+  private Session session;
+
+  /**
+   * @param streamUrl remote stream URL
+   * @param listener metadata listener
+   */
+  public IcyStreamProxy(final URL streamUrl, final IcyMetadataInputStream.MetadataListener listener) {
+    if (!"http".equals(streamUrl.getProtocol())) {
+      throw new IllegalArgumentException("Only HTTP streams are supported: " + streamUrl);
+    }
+    this.streamUrl = streamUrl;
+    this.listener = listener;
+  }
+
+  /** @return true if proxy can handle the URL */
+  public static boolean isSupported(final String url) {
+    return url != null && url.startsWith("http://");
+  }
+
+  /**
+   * Start listening for local connections.
+   * @return URL that should be passed to a media player
+   * @throws IOException if local socket cannot be opened
+   */
+  public synchronized String start() throws IOException {
+    if (running) { throw new IllegalStateException("Already started"); }
+    serverSocket = new ServerSocket(0, 1, InetAddress.getByName("127.0.0.1"));
+    running = true;
+    thread = new Thread(this, TAG);
+    thread.start();
+    return getUrl();
+  }
+
+  /** @return local URL */
+  public String getUrl() {
+    return "http://127.0.0.1:" + serverSocket.getLocalPort() + "/stream";
+  }
+
+  /** Stop the proxy and close all the connections. */
+  public void stop() {
+    running = false;
+    closeQuietly(serverSocket);
+    final Session session;
+    synchronized (this) {
+      session = this.session;
+      this.session = null;
+    }
+    if (session != null) { session.close(); }
+    if (thread != null) { thread.interrupt(); }
+  }
+
+  @Override
+  public void run() {
+    while (running) {
+      final Socket client;
+      try {
+        client = serverSocket.accept();
+      } catch (final IOException e) {
+        if (running && DEBUG) { Log.e(TAG, "Cannot accept connection", e); }
+        break;
+      }
+
+      final Session newSession = new Session(client);
+      final Session oldSession;
+      synchronized (this) {
+        if (!running) {
+          newSession.close();
+          break;
+        }
+        oldSession = session;
+        session = newSession;
+      }
+      if (oldSession != null) { oldSession.close(); }
+      new Thread(newSession, TAG + "-session").start();
+    }
+  }
+
+  static void closeQuietly(final Socket socket) {
+    if (socket == null) { return; }
+    try {
+      socket.close();
+    } catch (final IOException e) {
+      // ignore
+    }
+  }
+
+  static void closeQuietly(final ServerSocket socket) {
+    if (socket == null) { return; }
+    try {
+      socket.close();
+    } catch (final IOException e) {
+      // ignore
+    }
+  }
+
+  /**
+   * Read HTTP/ICY headers.
+   * @param input input stream
+   * @param line line buffer
+   * @param headers output map, names are lower cased
+   * @return status line
+   * @throws IOException if error happens
+   */
+  static String readHeaders(final InputStream input, final byte[] line, final Map<String, String> headers) throws IOException {
+    final String status = readLine(input, line);
+    if (status == null) { throw new IOException("Empty response"); }
+    String header;
+    while ((header = readLine(input, line)) != null && header.length() > 0) {
+      final int colon = header.indexOf(':');
+      if (colon > 0) {
+        headers.put(header.substring(0, colon).trim().toLowerCase(Locale.US), header.substring(colon + 1).trim());
+      }
+    }
+    return status;
+  }
+
+  private static String readLine(final InputStream input, final byte[] line) throws IOException {
+    int length = 0;
+    int b;
+    while ((b = input.read()) != -1) {
+      if (b == '\n') { break; }
+      if (b != '\r') {
+        if (length == line.length) { throw new IOException("Header line is too long"); }
+        line[length++] = (byte) b;
+      }
+    }
+    if (b == -1 && length == 0) { return null; }
+    return new String(line, 0, length, HEADERS_ENCODING);
+  }
+
+  static int parseStatusCode(final String status) throws IOException {
+    // HTTP/1.0 200 OK or ICY 200 OK
+    final int start = status.indexOf(' ');
+    if (start < 0) { throw new IOException("Bad status line " + status); }
+    int end = status.indexOf(' ', start + 1);
+    if (end < 0) { end = status.length(); }
+    try {
+      return Integer.parseInt(status.substring(start + 1, end));
+    } catch (final NumberFormatException e) {
+      throw new IOException("Bad status line " + status);
+    }
+  }
+
+  /**
+   * Client session.
+   */
+  private final class Session implements Runnable {
+
+    /** Client socket. */
+    private final Socket client;
+    /** Upstream socket. */
+    private volatile Socket upstream;
+    /** Closed flag. */
+    private volatile boolean closed;
+
+    /** Data buffer. */
+    private final byte[] buffer = new byte[BUFFER_SIZE];
+    /** Line buffer. */
+    private final byte[] line = new byte[MAX_LINE_LENGTH];
+    /** Headers. */
+    private final HashMap<String, String> headers = new HashMap<String, String>();
+
+    Session(final Socket client) {
+      this.client = client;
+    }
+
+    void close() {
+      closed = true;
+      closeQuietly(upstream);
+      closeQuietly(client);
+    }
+
+    @Override
+    public void run() {
+      try {
+        // skip the player request, we always serve the stream from its beginning
+        final InputStream clientInput = new BufferedInputStream(client.getInputStream(), MAX_LINE_LENGTH);
+        readHeaders(clientInput, line, headers);
+        headers.clear();
+
+        final InputStream remote = openUpstream();
+        if (remote == null) { return; }
+
+        final String contentType = headers.get("content-type");
+        final OutputStream output = client.getOutputStream();
+        output.write(("HTTP/1.0 200 OK\r\nContent-Type: " + (contentType != null ? contentType : DEFAULT_CONTENT_TYPE)
+            + "\r\nConnection: close\r\n\r\n").getBytes(HEADERS_ENCODING));
+
+        final String metaint = headers.get("icy-metaint");
+        final int interval = metaint != null ? Integer.parseInt(metaint) : 0;
+        final InputStream audio = interval > 0 ? new IcyMetadataInputStream(remote, interval, listener) : remote;
+        if (DEBUG) { Log.d(TAG, "Proxying " + streamUrl + ", metadata interval " + interval); }
+
+        final byte[] buffer = this.buffer;
+        int count;
+        while (!closed && (count = audio.read(buffer)) != -1) {
+          output.write(buffer, 0, count);
+        }
+        output.flush();
+      } catch (final IOException e) {
+        if (!closed && DEBUG) { Log.e(TAG, "Proxy session failed", e); }
+      } catch (final NumberFormatException e) {
+        if (DEBUG) { Log.e(TAG, "Bad icy-metaint", e); }
+      } finally {
+        close();
+      }
+    }
+
+    /** @return stream positioned after the response headers, headers are put to {@link #headers} */
+    private InputStream openUpstream() throws IOException {
+      URL url = streamUrl;
+      for (int i = 0; i <= MAX_REDIRECTS && !closed; i++) {
+        final int port = url.getPort() != -1 ? url.getPort() : url.getDefaultPort();
+        final Socket socket = new Socket();
+        upstream = socket;
+        if (closed) {
+          closeQuietly(socket);
+          return null;
+        }
+        socket.connect(new InetSocketAddress(url.getHost(), port), TIMEOUT);
+        socket.setSoTimeout(TIMEOUT);
+
+        final String path = url.getFile().length() > 0 ? url.getFile() : "/";
+        final OutputStream out = socket.getOutputStream();
+        out.write(("GET " + path + " HTTP/1.0\r\nHost: " + url.getHost() + "\r\nIcy-MetaData: 1\r\n"
+            + "Connection: close\r\n\r\n").getBytes(HEADERS_ENCODING));
+        out.flush();
+
+        final InputStream input = new BufferedInputStream(socket.getInputStream(), BUFFER_SIZE);
+        headers.clear();
+        final int code = parseStatusCode(readHeaders(input, line, headers));
+        if (code >= HTTP_MULT_CHOICE && code < HTTP_BAD_REQUEST && headers.containsKey("location")) {
+          closeQuietly(socket);
+          url = new URL(url, headers.get("location"));
+          if (!"http".equals(url.getProtocol())) { throw new IOException("Unsupported redirect to " + url); }
+          continue;
+        }
+        if (code != HTTP_OK) { throw new IOException("Bad response code " + code + " for " + url); }
+        return input;
+      }
+      if (closed) { return null; }
+      throw new IOException("Too many redirects for " + streamUrl);
+    }
+
+  }
+
+}
@@ -2,6 +2,7 @@ package com.stanfy.audio;
 
 import java.io.IOException;
 import java.lang.ref.WeakReference;
+import java.net.URL;
 import java.util.Timer;
 import java.util.TimerTask;
 import java.util.regex.Matcher;
@@ -107,6 +108,8 @@ public class StreamingPlaybackService extends Service implements OnPreparedListe
   private final boolean notifyStatusBar;
   /** Get info option. */
   private final boolean getInfo;
+  /** Use a local proxy to get info from the played stream. */
+  private final boolean metadataProxy;
 
   /** Allow pause flag. */
   private boolean allowPause;
@@ -116,6 +119,8 @@ public class StreamingPlaybackService extends Service implements OnPreparedListe
 
   /** Info getter. */
   private GetAudioInfoThread infoGetter;
+  /** Metadata proxy. */
+  private IcyStreamProxy proxy;
 
   /** Thread handler. */
   private InternalHandler handler;
@@ -131,8 +136,19 @@ public class StreamingPlaybackService extends Service implements OnPreparedListe
   }
 
   protected StreamingPlaybackService(final boolean notifyStatusBar, final boolean getInfo) {
+    this(notifyStatusBar, getInfo, false);
+  }
+
+  /**
+   * @param notifyStatusBar whether to show a status bar notification
+   * @param getInfo whether to get audio info from stream metadata
+   * @param metadataProxy if true, HTTP streams are played via a local proxy that extracts metadata
+   *                      from the played stream, otherwise a second connection is opened to get metadata
+   */
+  protected StreamingPlaybackService(final boolean notifyStatusBar, final boolean getInfo, final boolean metadataProxy) {
     this.notifyStatusBar = notifyStatusBar;
     this.getInfo = getInfo;
+    this.metadataProxy = metadataProxy;
   }
 
   @Override
@@ -340,12 +356,34 @@ public class StreamingPlaybackService extends Service implements OnPreparedListe
   }
 
   protected void startInfoGetter() {
-    if (getInfo && infoGetter == null) {
+    // proxy delivers metadata itself
+    if (getInfo && infoGetter == null && proxy == null) {
       infoGetter = new GetAudioInfoThread(this);
       infoGetter.start();
     }
   }
 
+  protected void stopProxy() {
+    if (proxy != null) {
+      proxy.stop();
+      proxy = null;
+    }
+  }
+
+  private String prepareDataSource(final Uri uri) throws IOException {
+    final String url = prepareUrl(uri);
+    if (!getInfo || !metadataProxy || !IcyStreamProxy.isSupported(url)) { return url; }
+    proxy = new IcyStreamProxy(new URL(url), new IcyMetadataInputStream.MetadataListener() {
+      @Override
+      public void onMetadata(final String metadata) {
+        updateAudioInfo(metadata);
+      }
+    });
+    final String proxyUrl = proxy.start();
+    if (DEBUG) { Log.d(TAG, "Play " + url + " via " + proxyUrl); }
+    return proxyUrl;
+  }
+
   protected String prepareUrl(final Uri uri) {
     String convertedUrl = uri.toString();
     // It's strange but media player can't play some encoded URIs
@@ -363,7 +401,7 @@ public class StreamingPlaybackService extends Service implements OnPreparedListe
     stopInfoGetter();
     if (url == null) { return; }
     try {
-      mediaPlayer.setDataSource(prepareUrl(url));
+      mediaPlayer.setDataSource(prepareDataSource(url));
       mediaPlayer.prepareAsync();
       preparing = true;
       if (!wifiLock.isHeld()) { wifiLock.acquire(); }
@@ -385,6 +423,7 @@ public class StreamingPlaybackService extends Service implements OnPreparedListe
       mediaPlayer.release();
       mediaPlayer = null;
     }
+    stopProxy();
   }
 
   public void stop() {
@@ -0,0 +1,191 @@
+package com.stanfy.audio;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+
+import static org.fest.assertions.api.Assertions.assertThat;
+
+/**
+ * Tests for {@link IcyStreamProxy} and {@link IcyMetadataInputStream}.
+ */
+public class IcyStreamProxyTest {
+
+  //CHECKSTYLE:OFF
+  /** Metadata interval. */
+  private static final int INTERVAL = 16;
+  /** Count of audio chunks. */
+  private static final int CHUNKS = 6;
+  //CHECKSTYLE:ON
+
+  /** Fake Shoutcast server. */
+  private FakeShoutcastServer server;
+  /** Received metadata. */
+  private final List<String> metadata = Collections.synchronizedList(new ArrayList<String>());
+  /** Listener. */
+  private final IcyMetadataInputStream.MetadataListener listener = new IcyMetadataInputStream.MetadataListener() {
+    @Override
+    public void onMetadata(final String value) {
+      metadata.add(value);
+    }
+  };
+
+  @Before
+  public void startServer() throws IOException {
+    server = new FakeShoutcastServer();
+    server.start();
+  }
+
+  @After
+  public void stopServer() throws IOException {
+    server.close();
+  }
+
+  private static byte[] audio() {
+    final byte[] audio = new byte[INTERVAL * CHUNKS];
+    for (int i = 0; i < audio.length; i++) {
+      audio[i] = (byte) i;
+    }
+    return audio;
+  }
+
+  private static String title(final int chunk) {
+    // the same title is repeated for two chunks, the third chunk has no metadata
+    if (chunk % 3 == 2) { return null; }
+    return "StreamTitle='Artist - Song " + chunk / 3 + "';";
+  }
+
+  /** Audio interleaved with metadata blocks. */
+  private static byte[] icyBody() throws IOException {
+    final byte[] audio = audio();
+    final ByteArrayOutputStream out = new ByteArrayOutputStream();
+    for (int chunk = 0; chunk < CHUNKS; chunk++) {
+      out.write(audio, chunk * INTERVAL, INTERVAL);
+      final String title = title(chunk);
+      if (title == null) {
+        out.write(0);
+      } else {
+        final byte[] bytes = title.getBytes("UTF-8");
+        final int blocks = (bytes.length + INTERVAL - 1) / INTERVAL;
+        out.write(blocks);
+        out.write(bytes);
+        out.write(new byte[blocks * INTERVAL - bytes.length]);
+      }
+    }
+    return out.toByteArray();
+  }
+
+  private static byte[] readAll(final InputStream input) throws IOException {
+    final ByteArrayOutputStream out = new ByteArrayOutputStream();
+    final byte[] buffer = new byte[7]; // not aligned with metadata blocks
+    int count;
+    while ((count = input.read(buffer)) != -1) {
+      out.write(buffer, 0, count);
+    }
+    return out.toByteArray();
+  }
+
+  @Test
+  public void demuxerShouldStripMetadata() throws IOException {
+    final InputStream input = new IcyMetadataInputStream(new ByteArrayInputStream(icyBody()), INTERVAL, listener);
+    assertThat(readAll(input)).isEqualTo(audio());
+    assertThat(metadata).containsExactly("StreamTitle='Artist - Song 0';", "StreamTitle='Artist - Song 1';");
+  }
+
+  @Test
+  public void demuxerShouldSkipAudioOnly() throws IOException {
+    final InputStream input = new IcyMetadataInputStream(new ByteArrayInputStream(icyBody()), INTERVAL, listener);
+    assertThat(input.skip(INTERVAL + 1)).isEqualTo(INTERVAL + 1);
+    assertThat(input.read()).isEqualTo(INTERVAL + 1);
+  }
+
+  @Test
+  public void proxyShouldServeCleanAudio() throws IOException {
+    final IcyStreamProxy proxy = new IcyStreamProxy(new URL("http://127.0.0.1:" + server.getPort() + "/radio"), listener);
+    final String url = proxy.start();
+    try {
+      assertThat(url).startsWith("http://127.0.0.1:");
+
+      final HttpURLConnection connection = (HttpURLConnection) new URL(url).openConnection();
+      assertThat(connection.getResponseCode()).isEqualTo(HttpURLConnection.HTTP_OK);
+      assertThat(connection.getContentType()).isEqualTo("audio/mpeg");
+      assertThat(readAll(connection.getInputStream())).isEqualTo(audio());
+      connection.disconnect();
+
+      assertThat(metadata).containsExactly("StreamTitle='Artist - Song 0';", "StreamTitle='Artist - Song 1';");
+      assertThat(server.requestHeaders.get("icy-metadata")).isEqualTo("1");
+      assertThat(server.connections).isEqualTo(1);
+    } finally {
+      proxy.stop();
+    }
+  }
+
+  @Test
+  public void shouldParseIcyStatusLine() throws IOException {
+    assertThat(IcyStreamProxy.parseStatusCode("ICY 200 OK")).isEqualTo(HttpURLConnection.HTTP_OK);
+    assertThat(IcyStreamProxy.parseStatusCode("HTTP/1.0 302 Found")).isEqualTo(HttpURLConnection.HTTP_MOVED_TEMP);
+  }
+
+  /**
+   * Serves a single ICY response per connection.
+   */
+  private static final class FakeShoutcastServer extends Thread {
+
+    /** Socket. */
+    private final ServerSocket socket;
+    /** Headers of the last request. */
+    final HashMap<String, String> requestHeaders = new HashMap<String, String>();
+    /** Connections count. */
+    volatile int connections;
+
+    FakeShoutcastServer() throws IOException {
+      super("FakeShoutcastServer");
+      socket = new ServerSocket(0, 1, InetAddress.getByName("127.0.0.1"));
+    }
+
+    int getPort() { return socket.getLocalPort(); }
+
+    void close() throws IOException {
+      socket.close();
+    }
+
+    @Override
+    public void run() {
+      try {
+        while (true) {
+          final Socket client = socket.accept();
+          connections++;
+          try {
+            //CHECKSTYLE:OFF
+            IcyStreamProxy.readHeaders(client.getInputStream(), new byte[1024], requestHeaders);
+            //CHECKSTYLE:ON
+            final OutputStream out = client.getOutputStream();
+            out.write(("ICY 200 OK\r\ncontent-type: audio/mpeg\r\nicy-metaint: " + INTERVAL + "\r\n\r\n").getBytes("ISO-8859-1"));
+            out.write(icyBody());
+            out.flush();
+          } finally {
+            client.close();
+          }
+        }
+      } catch (final IOException e) {
+        // closed
+      }
+    }
+  }
+
+}
@@ -0,0 +1,11 @@
+package com.stanfy.enroscar.goro;
+
+/**
+ * Marker for listeners that accept coalesced events.
+ * When listeners events are batched (see {@link Goro#setListenersBatching(boolean)}),
+ * such a listener receives only the last lifecycle event of a task from each batch:
+ * e.g. schedule, start and finish events that got into one batch collapse into one
+ * {@link #onTaskFinish(java.util.concurrent.Callable, Object)} call.
+ */
+public interface CoalescingGoroListener extends GoroListener {
+}
@@ -9,6 +9,7 @@ import java.util.concurrent.ExecutionException;
 import java.util.concurrent.Executor;
 import java.util.concurrent.Future;
 import java.util.concurrent.FutureTask;
+import java.util.concurrent.TimeUnit;
 
 /**
  * Service that handles tasks in multiple queues.
@@ -18,6 +19,16 @@ public class Goro {
   /** Default queue name. */
   public static final String DEFAULT_QUEUE = "default";
 
+  /** Priority of tasks scheduled without explicit priority. */
+  public static final int PRIORITY_DEFAULT = 0;
+  /** Priority for user-visible tasks. */
+  public static final int PRIORITY_HIGH = 10;
+  /** Priority for background tasks, like synchronization. */
+  public static final int PRIORITY_LOW = -10;
+
+  /** Deadline value meaning that task has no deadline. */
+  public static final long NO_DEADLINE = -1;
+
   /** Listeners handler. */
   final ListenersHandler listenersHandler = new ListenersHandler();
 
@@ -74,6 +85,20 @@ public class Goro {
     return new Goro(delegateExecutor);
   }
 
+  /**
+   * Limit number of tasks from all the queues that run simultaneously.
+   * By default queues run independently and every queue may have one active task.
+   * When the limit is set, tasks from different queues wait for a free slot and the most urgent one
+   * (by priority, then by deadline) is started first.
+   * Tasks must not wait for tasks in other queues in this mode: if all the slots are taken by waiting tasks,
+   * queues deadlock.
+   * Must be called before any task is scheduled.
+   * @param maxActiveTasks maximum number of active tasks, 0 means no limit
+   */
+  public void setMaxActiveTasks(final int maxActiveTasks) {
+    queues.setMaxActiveTasks(maxActiveTasks);
+  }
+
   /**
    * Adds a task execution listener.
    * @param listener listener instance
@@ -90,6 +115,17 @@ public class Goro {
     listenersHandler.removeTaskListener(listener);
   }
 
+  /**
+   * Enable or disable batching of listeners events.
+   * When enabled, task events are buffered and delivered to listeners in the main thread
+   * once per frame instead of posting a message for every event.
+   * It reduces main thread load when many tasks are scheduled at once.
+   * @param batching whether to batch listeners events
+   * @see CoalescingGoroListener
+   */
+  public void setListenersBatching(final boolean batching) {
+    listenersHandler.setBatching(batching);
+  }
 
   /**
    * Add a task to the default queue.
@@ -110,11 +146,32 @@ public class Goro {
    * @return task future instance
    */
   public <T> Future<T> schedule(final String queueName, final Callable<T> task) {
+    return schedule(queueName, task, PRIORITY_DEFAULT, NO_DEADLINE);
+  }
+
+  /**
+   * Add a task to the specified queue using defined priority and deadline.
+   * Tasks waiting in the same queue are ordered by priority (higher first), then by deadline
+   * (earlier first), then by scheduling order. Tasks from different queues are passed to
+   * the delegate executor according to the same policy.
+   * Tasks scheduled with null queue name are passed to the delegate executor immediately.
+   * @param queueName name of a queue to use, may be null
+   * @param task task instance
+   * @param priority task priority, e.g. {@link #PRIORITY_HIGH}
+   * @param deadline time in milliseconds since this call within which the task should be started,
+   *                 {@link #NO_DEADLINE} if there is no deadline
+   * @return task future instance
+   */
+  public <T> Future<T> schedule(final String queueName, final Callable<T> task,
+                                final int priority, final long deadline) {
     if (task == null) {
       throw new IllegalArgumentException("Task must not be null");
     }
+    if (deadline < 0 && deadline != NO_DEADLINE) {
+      throw new IllegalArgumentException("Bad deadline " + deadline);
+    }
 
-    GoroFuture<T> future = new GoroFuture<>(this, task);
+    GoroFuture<T> future = new GoroFuture<>(this, task, queueName, priority, deadline);
     listenersHandler.postSchedule(task, queueName);
     queues.getExecutor(queueName).execute(future);
     return future;
@@ -134,7 +191,7 @@ public class Goro {
   /**
    * Future implementation.
    */
-  private static class GoroFuture<T> extends FutureTask<T> {
+  private static class GoroFuture<T> extends FutureTask<T> implements Queues.PrioritizedTask {
 
     /** Weak reference to Goro. */
     private final WeakReference<Goro> goroRef;
@@ -142,10 +199,43 @@ public class Goro {
     /** Task. */
     private Callable<T> task;
 
-    GoroFuture(final Goro goro, final Callable<T> task) {
+    /** Queue name. */
+    private final String queue;
+    /** Priority. */
+    private final int priority;
+    /** Scheduling time. */
+    private final long scheduleTime = System.nanoTime();
+    /** Deadline. */
+    private final long deadline;
+
+    /** Number of tasks that remained in the queue when this task left it. */
+    private volatile int queueDepth;
+
+    GoroFuture(final Goro goro, final Callable<T> task, final String queue,
+               final int priority, final long deadline) {
       super(task);
       this.task = task;
       this.goroRef = new WeakReference<>(goro);
+      this.queue = queue;
+      this.priority = priority;
+      this.deadline = deadline == NO_DEADLINE
+          ? Long.MAX_VALUE
+          : scheduleTime + TimeUnit.MILLISECONDS.toNanos(deadline);
+    }
+
+    @Override
+    public int getPriority() {
+      return priority;
+    }
+
+    @Override
+    public long getDeadline() {
+      return deadline;
+    }
+
+    @Override
+    public void onDequeue(final int queueDepth) {
+      this.queueDepth = queueDepth;
     }
 
     @Override
@@ -155,8 +245,10 @@ public class Goro {
 
       // if task is null, it's already canceled
 
-      // invoke onTaskStart
+      // invoke onTaskDequeue and onTaskStart
       if (goro != null && task != null) {
+        long waitTime = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - scheduleTime);
+        goro.listenersHandler.postDequeue(task, queue, queueDepth, waitTime);
         goro.listenersHandler.postStart(task);
       }
 
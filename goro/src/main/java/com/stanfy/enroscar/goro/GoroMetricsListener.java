@@ -0,0 +1,20 @@
+package com.stanfy.enroscar.goro;
+
+import java.util.concurrent.Callable;
+
+/**
+ * Listener to Goro tasks that also receives queues metrics.
+ * Use it to detect tasks starvation.
+ */
+public interface GoroMetricsListener extends GoroListener {
+
+  /**
+   * Called before {@link #onTaskStart(Callable)} when a task has left its queue.
+   * @param task task instance
+   * @param queue queue name, may be null
+   * @param queueDepth number of tasks that remained in the queue
+   * @param waitTime time in milliseconds the task waited for execution since it was scheduled
+   */
+  void onTaskDequeue(Callable<?> task, String queue, int queueDepth, long waitTime);
+
+}
@@ -5,20 +5,45 @@ import android.os.Looper;
 import android.os.Message;
 
 import java.util.ArrayList;
+import java.util.IdentityHashMap;
 import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 /**
  * Handler for calling listener methods. Works in the main thread.
+ * <p>
+ *   In batching mode events are put into a lock-free buffer that is drained by one main thread
+ *   message per frame instead of sending a message for every event.
+ *   Listeners implementing {@link CoalescingGoroListener} receive only the last lifecycle event
+ *   of each task contained in a drained batch.
+ * </p>
  */
 class ListenersHandler extends Handler {
 
   /** Message code. */
   private static final int MSG_START = 1, MSG_FINISH = 2, MSG_ERROR = 3, MSG_CANCEL = 4,
-                           MSG_SCHEDULE = 5;
+                           MSG_SCHEDULE = 5, MSG_DEQUEUE = 6, MSG_DRAIN = 7;
+
+  /** Delay in milliseconds between the first buffered event and buffer draining. */
+  static final long BATCH_INTERVAL = 16;
 
   /** Task listeners collection. */
   private final ArrayList<GoroListener> taskListeners = new ArrayList<>();
 
+  /** Whether events are batched. */
+  private volatile boolean batching;
+
+  /** Buffered events. */
+  private final ConcurrentLinkedQueue<MessageData> events = new ConcurrentLinkedQueue<>();
+  /** Whether drain message is sent. */
+  private final AtomicBoolean drainScheduled = new AtomicBoolean();
+
+  /** Drained events. Used in the main thread only. */
+  private final ArrayList<MessageData> batch = new ArrayList<>();
+  /** Index of the last lifecycle event of each task in the batch. Used in the main thread only. */
+  private final IdentityHashMap<Callable<?>, Integer> lastEvents = new IdentityHashMap<>();
+
   public ListenersHandler() {
     super(Looper.getMainLooper());
   }
@@ -41,38 +66,58 @@ class ListenersHandler extends Handler {
     }
   }
 
+  public void setBatching(final boolean batching) {
+    this.batching = batching;
+  }
+
+  public boolean isBatching() {
+    return batching;
+  }
+
   public void postSchedule(final Callable<?> task, final String queue) {
-    Message msg = obtainMessage(MSG_SCHEDULE);
-    msg.obj = new MessageData(task, null, queue);
-    sendMessage(msg);
+    post(new MessageData(MSG_SCHEDULE, task, null, queue));
+  }
+
+  public void postDequeue(final Callable<?> task, final String queue, final int queueDepth, final long waitTime) {
+    MessageData data = new MessageData(MSG_DEQUEUE, task, waitTime, queue);
+    data.queueDepth = queueDepth;
+    post(data);
   }
 
   public void postStart(final Callable<?> task) {
-    Message msg = obtainMessage(MSG_START);
-    msg.obj = new MessageData(task, null, null);
-    sendMessage(msg);
+    post(new MessageData(MSG_START, task, null, null));
   }
 
   public void postFinish(final Callable<?> task, Object result) {
-    Message msg = obtainMessage(MSG_FINISH);
-    msg.obj = new MessageData(task, result, null);
-    sendMessage(msg);
+    post(new MessageData(MSG_FINISH, task, result, null));
   }
 
   public void postError(final Callable<?> task, Throwable error) {
-    Message msg = obtainMessage(MSG_ERROR);
-    msg.obj = new MessageData(task, error, null);
-    sendMessage(msg);
+    post(new MessageData(MSG_ERROR, task, error, null));
   }
 
   public void postCancel(final Callable<?> task) {
-    Message msg = obtainMessage(MSG_CANCEL);
-    msg.obj = new MessageData(task, null, null);
-    sendMessage(msg);
+    post(new MessageData(MSG_CANCEL, task, null, null));
+  }
+
+  private void post(final MessageData data) {
+    if (!batching && events.isEmpty()) {
+      sendMessage(obtainMessage(data.what, data));
+      return;
+    }
+    events.offer(data);
+    if (drainScheduled.compareAndSet(false, true)) {
+      sendEmptyMessageDelayed(MSG_DRAIN, batching ? BATCH_INTERVAL : 0);
+    }
   }
 
   @Override
   public void handleMessage(@SuppressWarnings("NullableProblems") final Message msg) {
+    if (msg.what == MSG_DRAIN) {
+      drain();
+      return;
+    }
+
     if (taskListeners.isEmpty()) {
       return;
     }
@@ -82,57 +127,115 @@ class ListenersHandler extends Handler {
       throw new IllegalArgumentException("Data cannot be null");
     }
 
-    switch (msg.what) {
-      case MSG_SCHEDULE:
+    for (GoroListener listener : taskListeners) {
+      dispatch(listener, data);
+    }
+  }
+
+  private void drain() {
+    drainScheduled.set(false);
+    ArrayList<MessageData> batch = this.batch;
+    MessageData data = events.poll();
+    while (data != null) {
+      batch.add(data);
+      data = events.poll();
+    }
+
+    try {
+      if (taskListeners.isEmpty()) {
+        return;
+      }
+
+      IdentityHashMap<Callable<?>, Integer> lastEvents = this.lastEvents;
+      boolean coalesce = false;
+      for (GoroListener listener : taskListeners) {
+        if (listener instanceof CoalescingGoroListener) {
+          coalesce = true;
+          break;
+        }
+      }
+      if (coalesce) {
+        for (int i = 0; i < batch.size(); i++) {
+          MessageData event = batch.get(i);
+          if (event.isLifecycleEvent()) {
+            lastEvents.put(event.task, i);
+          }
+        }
+      }
+
+      int count = batch.size();
+      for (int i = 0; i < count; i++) {
+        MessageData event = batch.get(i);
+        boolean last = !coalesce || !event.isLifecycleEvent() || lastEvents.get(event.task) == i;
         for (GoroListener listener : taskListeners) {
-          listener.onTaskSchedule(data.task, data.queue);
+          if (last || !(listener instanceof CoalescingGoroListener)) {
+            dispatch(listener, event);
+          }
         }
+      }
+    } finally {
+      batch.clear();
+      lastEvents.clear();
+    }
+  }
+
+  private static void dispatch(final GoroListener listener, final MessageData data) {
+    switch (data.what) {
+      case MSG_SCHEDULE:
+        listener.onTaskSchedule(data.task, data.queue);
         break;
 
-      case MSG_START:
-        for (GoroListener listener : taskListeners) {
-          listener.onTaskStart(data.task);
+      case MSG_DEQUEUE:
+        if (listener instanceof GoroMetricsListener) {
+          ((GoroMetricsListener) listener).onTaskDequeue(data.task, data.queue, data.queueDepth,
+              (Long) data.resultOrError);
         }
         break;
 
+      case MSG_START:
+        listener.onTaskStart(data.task);
+        break;
+
       case MSG_FINISH:
-        for (GoroListener listener : taskListeners) {
-          listener.onTaskFinish(data.task, data.resultOrError);
-        }
+        listener.onTaskFinish(data.task, data.resultOrError);
         break;
 
       case MSG_ERROR:
-        for (GoroListener listener : taskListeners) {
-          listener.onTaskError(data.task, (Throwable) data.resultOrError);
-        }
+        listener.onTaskError(data.task, (Throwable) data.resultOrError);
         break;
 
       case MSG_CANCEL:
-        for (GoroListener listener : taskListeners) {
-          listener.onTaskCancel(data.task);
-        }
+        listener.onTaskCancel(data.task);
         break;
 
       default:
-        throw new IllegalArgumentException("Unexpected message " + msg);
+        throw new IllegalArgumentException("Unexpected event " + data.what);
     }
-
   }
 
   /** Message data. */
   private static class MessageData {
+    /** Event code. */
+    final int what;
     /** Queue name. */
     final String queue;
     /** Task instance. */
     final Callable<?> task;
     /** Error instance. */
     final Object resultOrError;
+    /** Queue depth. */
+    int queueDepth;
 
-    public MessageData(final Callable<?> task, final Object resultOrError, final String queue) {
+    public MessageData(final int what, final Callable<?> task, final Object resultOrError, final String queue) {
+      this.what = what;
       this.task = task;
       this.resultOrError = resultOrError;
       this.queue = queue;
     }
+
+    boolean isLifecycleEvent() {
+      return what != MSG_DEQUEUE;
+    }
   }
 
 }
@@ -4,17 +4,26 @@ import android.annotation.SuppressLint;
 import android.os.AsyncTask;
 import android.os.Build;
 
+import com.stanfy.enroscar.io.SerialExecutor;
+
 import java.util.HashMap;
-import java.util.LinkedList;
+import java.util.PriorityQueue;
 import java.util.concurrent.Executor;
 import java.util.concurrent.LinkedBlockingQueue;
 import java.util.concurrent.ThreadFactory;
 import java.util.concurrent.ThreadPoolExecutor;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
  * Internal queues.
+ * <p>
+ *   Tasks within a queue are ordered by priority, then by deadline, then by scheduling order.
+ *   Queues run independently of each other. If the number of active tasks is limited,
+ *   tasks taken from different queues are ordered by the same policy when they wait for
+ *   the delegate executor.
+ * </p>
  */
 interface Queues {
 
@@ -24,6 +33,12 @@ interface Queues {
    */
   void setDelegateExecutor(Executor mainExecutor);
 
+  /**
+   * Limit number of tasks from all the queues that are passed to the delegate executor simultaneously.
+   * @param maxActiveTasks maximum number of active tasks, 0 means no limit
+   */
+  void setMaxActiveTasks(int maxActiveTasks);
+
   /**
    * @param queueName queue name
    * @return executor that performs all the tasks in a given queue
@@ -48,6 +63,12 @@ interface Queues {
     /** Used threads pool. */
     private Executor delegateExecutor;
 
+    /** Maximum number of queued tasks passed to the delegate executor simultaneously, 0 means no limit. */
+    private int maxActiveTasks;
+
+    /** Orders tasks from different queues before passing them to the delegate executor. */
+    private PriorityDispatcher dispatcher;
+
     private static Executor getDefaultThreadPoolExecutor() {
       if (defaultThreadPoolExecutor == null) {
         Executor executor = getAsyncTaskThreadPool();
@@ -89,6 +110,19 @@ interface Queues {
       }
     }
 
+    @Override
+    public void setMaxActiveTasks(final int maxActiveTasks) {
+      if (maxActiveTasks < 0) {
+        throw new IllegalArgumentException("Bad max active tasks count " + maxActiveTasks);
+      }
+      synchronized (executorsMap) {
+        if (!executorsMap.isEmpty()) {
+          throw new IllegalStateException("Active tasks limit cannot be changed after any queue is created");
+        }
+        this.maxActiveTasks = maxActiveTasks;
+      }
+    }
+
     @Override
     public Executor getExecutor(final String queueName) {
       synchronized (executorsMap) {
@@ -102,7 +136,10 @@ interface Queues {
 
         Executor exec = executorsMap.get(queueName);
         if (exec == null) {
-          exec = new TaskQueueExecutor(delegateExecutor);
+          if (maxActiveTasks > 0 && dispatcher == null) {
+            dispatcher = new PriorityDispatcher(delegateExecutor, maxActiveTasks);
+          }
+          exec = new TaskQueueExecutor(dispatcher != null ? dispatcher : delegateExecutor);
           executorsMap.put(queueName, exec);
         }
         return exec;
@@ -111,42 +148,204 @@ interface Queues {
 
   }
 
-  /** Executor for the task queue. */
-  final class TaskQueueExecutor implements Executor {
+  /**
+   * Task that defines its scheduling parameters.
+   */
+  interface PrioritizedTask extends Runnable {
+
+    /** @return task priority, tasks with higher priority are executed first */
+    int getPriority();
+
+    /**
+     * @return {@link System#nanoTime()} based time the task should be started before,
+     *         {@link Long#MAX_VALUE} if there is no deadline
+     */
+    long getDeadline();
+
+    /**
+     * Called when the task leaves its queue.
+     * @param queueDepth number of tasks remaining in the queue
+     */
+    void onDequeue(int queueDepth);
+
+  }
+
+  /** Wrapper that orders tasks. */
+  final class QueuedTask implements Runnable, Comparable<QueuedTask> {
+
+    /** Sequence used to keep scheduling order of tasks with equal priorities and deadlines. */
+    private static final AtomicLong SEQUENCE = new AtomicLong();
+
+    /** Actual command. */
+    final Runnable command;
+
+    /** Task priority. */
+    final int priority;
+    /** Task deadline. */
+    final long deadline;
+    /** Scheduling order. */
+    final long sequence;
+
+    QueuedTask(final Runnable command) {
+      this.command = command;
+      this.sequence = SEQUENCE.getAndIncrement();
+      if (command instanceof PrioritizedTask) {
+        PrioritizedTask task = (PrioritizedTask) command;
+        this.priority = task.getPriority();
+        this.deadline = task.getDeadline();
+      } else {
+        this.priority = Goro.PRIORITY_DEFAULT;
+        this.deadline = Long.MAX_VALUE;
+      }
+    }
+
+    /**
+     * @param command actual command
+     * @param order task whose ordering parameters are used
+     */
+    QueuedTask(final Runnable command, final QueuedTask order) {
+      this.command = command;
+      this.sequence = order.sequence;
+      this.priority = order.priority;
+      this.deadline = order.deadline;
+    }
+
+    void onDequeue(final int queueDepth) {
+      if (command instanceof PrioritizedTask) {
+        ((PrioritizedTask) command).onDequeue(queueDepth);
+      }
+    }
+
+    @Override
+    public int compareTo(@SuppressWarnings("NullableProblems") final QueuedTask another) {
+      if (priority != another.priority) {
+        return priority > another.priority ? -1 : 1;
+      }
+      if (deadline != another.deadline) {
+        if (deadline == Long.MAX_VALUE || another.deadline == Long.MAX_VALUE) {
+          return deadline == Long.MAX_VALUE ? 1 : -1;
+        }
+        // nanoTime values must be compared by their difference
+        return deadline - another.deadline < 0 ? -1 : 1;
+      }
+      return sequence < another.sequence ? -1 : (sequence == another.sequence ? 0 : 1);
+    }
+
+    @Override
+    public void run() {
+      command.run();
+    }
+
+  }
+
+  /** Executor that limits number of tasks passed to the delegate and picks the most urgent ones first. */
+  final class PriorityDispatcher implements Executor {
     /** Delegate executor. */
     final Executor delegate;
-    /** Tasks queue. */
-    final LinkedList<Runnable> tasks = new LinkedList<>();
-    /** Active task. */
-    Runnable activeTask;
+    /** Maximum number of active tasks. */
+    final int maxActive;
+    /** Tasks waiting for the delegate. */
+    final PriorityQueue<QueuedTask> pending = new PriorityQueue<>();
+    /** Number of tasks passed to the delegate. */
+    int active;
 
-    public TaskQueueExecutor(final Executor delegate)  {
+    public PriorityDispatcher(final Executor delegate, final int maxActive) {
+      if (maxActive <= 0) {
+        throw new IllegalArgumentException("Bad max active tasks count " + maxActive);
+      }
       this.delegate = delegate;
+      this.maxActive = maxActive;
     }
 
     @SuppressWarnings("NullableProblems")
     @Override
-    public synchronized void execute(final Runnable r) {
-      tasks.offer(new Runnable() {
+    public void execute(final Runnable r) {
+      QueuedTask task = r instanceof QueuedTask ? (QueuedTask) r : new QueuedTask(r);
+      synchronized (this) {
+        if (active >= maxActive) {
+          pending.offer(task);
+          return;
+        }
+        active++;
+      }
+      dispatch(task);
+    }
+
+    private void dispatch(final QueuedTask task) {
+      delegate.execute(new Runnable() {
         @Override
         public void run() {
           try {
-            r.run();
+            task.run();
           } finally {
-            scheduleNext();
+            dispatchNext();
           }
         }
       });
-      if (activeTask == null) {
-        scheduleNext();
+    }
+
+    void dispatchNext() {
+      QueuedTask next;
+      synchronized (this) {
+        next = pending.poll();
+        if (next == null) {
+          active--;
+          return;
+        }
+      }
+      dispatch(next);
+    }
+
+  }
+
+  /**
+   * Executor for the task queue.
+   * Tasks are taken from the lock-free queue of {@link SerialExecutor} and ordered
+   * by a priority queue that is accessed by the drain owner only.
+   * Each task is dispatched separately so that the delegate can order tasks from different queues.
+   */
+  final class TaskQueueExecutor extends SerialExecutor {
+    /** Ordered tasks. */
+    private final PriorityQueue<QueuedTask> tasks = new PriorityQueue<>();
+
+    public TaskQueueExecutor(final Executor delegate)  {
+      super(delegate, 1);
+    }
+
+    @SuppressWarnings("NullableProblems")
+    @Override
+    public void execute(final Runnable r) {
+      super.execute(new QueuedTask(r));
+    }
+
+    private void pollAll() {
+      Runnable task = pollQueue();
+      while (task != null) {
+        tasks.offer((QueuedTask) task);
+        task = pollQueue();
       }
     }
 
-    synchronized void scheduleNext() {
-      activeTask = tasks.poll();
-      if (activeTask != null) {
-        delegate.execute(activeTask);
+    @Override
+    protected Runnable next() {
+      pollAll();
+      QueuedTask next = tasks.poll();
+      if (next != null) {
+        next.onDequeue(tasks.size());
       }
+      return next;
+    }
+
+    @Override
+    protected boolean hasPolledTasks() {
+      return !tasks.isEmpty();
+    }
+
+    @Override
+    protected void dispatch(final Runnable drainTask) {
+      pollAll();
+      QueuedTask first = tasks.peek();
+      super.dispatch(first != null ? new QueuedTask(drainTask, first) : drainTask);
     }
 
   }
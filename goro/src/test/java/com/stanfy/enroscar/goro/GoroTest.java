@@ -155,4 +155,57 @@ public class GoroTest {
     assertThat(testingQueues.getLastQueueName()).isNull();
   }
 
+  @Test
+  public void shouldInvokeDequeueOnMetricsListeners() {
+    GoroMetricsListener metricsListener = mock(GoroMetricsListener.class);
+    goro.addTaskListener(metricsListener);
+    Callable<?> task = mock(Callable.class);
+    goro.schedule("q", task, Goro.PRIORITY_HIGH, 100);
+    goro.schedule("q", mock(Callable.class));
+    testingQueues.executeAll();
+
+    InOrder order = inOrder(metricsListener);
+    order.verify(metricsListener).onTaskDequeue(eq(task), eq("q"), eq(0), anyLong());
+    order.verify(metricsListener).onTaskStart(task);
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void scheduleShouldThrowOnBadDeadline() {
+    goro.schedule("1", mock(Callable.class), Goro.PRIORITY_DEFAULT, -2);
+  }
+
+  @Test
+  public void shouldDeliverBatchedEvents() throws Exception {
+    goro.setListenersBatching(true);
+    goro.addTaskListener(listener);
+    Callable<?> task = mock(Callable.class);
+    goro.schedule(task);
+    testingQueues.executeAll();
+    verify(listener, never()).onTaskSchedule(task, Goro.DEFAULT_QUEUE);
+
+    Robolectric.runUiThreadTasksIncludingDelayedTasks();
+    InOrder order = inOrder(listener);
+    order.verify(listener).onTaskSchedule(task, Goro.DEFAULT_QUEUE);
+    order.verify(listener).onTaskStart(task);
+    order.verify(listener).onTaskFinish(task, null);
+  }
+
+  @Test
+  public void shouldCoalesceBatchedEventsForCoalescingListeners() throws Exception {
+    goro.setListenersBatching(true);
+    CoalescingGoroListener coalescingListener = mock(CoalescingGoroListener.class);
+    goro.addTaskListener(coalescingListener);
+    Callable<?> task = mock(Callable.class);
+    Object result = new Object();
+    doReturn(result).when(task).call();
+
+    goro.schedule(task);
+    testingQueues.executeAll();
+    Robolectric.runUiThreadTasksIncludingDelayedTasks();
+
+    verify(coalescingListener, never()).onTaskSchedule(task, Goro.DEFAULT_QUEUE);
+    verify(coalescingListener, never()).onTaskStart(task);
+    verify(coalescingListener).onTaskFinish(task, result);
+  }
+
 }
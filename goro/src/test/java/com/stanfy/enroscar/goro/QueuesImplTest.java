@@ -3,6 +3,9 @@ package com.stanfy.enroscar.goro;
 import org.junit.Before;
 import org.junit.Test;
 
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
 import java.util.concurrent.Executor;
 import java.util.concurrent.Executors;
 
@@ -66,4 +69,110 @@ public class QueuesImplTest {
     assertThat(queuesImpl.getExecutor(null)).isSameAs(mainExecutor);
   }
 
+  @Test
+  public void shouldOrderTasksInQueueByPriorityAndDeadline() {
+    ArrayList<Runnable> delegated = new ArrayList<>();
+    queuesImpl.setDelegateExecutor(collectingExecutor(delegated));
+    Executor queue = queuesImpl.getExecutor("1");
+    List<String> order = new ArrayList<>();
+
+    queue.execute(task(order, "first", Goro.PRIORITY_DEFAULT, Long.MAX_VALUE));
+    queue.execute(task(order, "low", Goro.PRIORITY_LOW, Long.MAX_VALUE));
+    queue.execute(task(order, "default", Goro.PRIORITY_DEFAULT, Long.MAX_VALUE));
+    queue.execute(task(order, "deadline", Goro.PRIORITY_DEFAULT, System.nanoTime()));
+    queue.execute(task(order, "high", Goro.PRIORITY_HIGH, Long.MAX_VALUE));
+
+    runAll(delegated);
+    assertThat(order).isEqualTo(Arrays.asList("high", "deadline", "first", "default", "low"));
+  }
+
+  @Test
+  public void shouldPickMostUrgentTaskAcrossQueues() {
+    final int maxActive = 2;
+    ArrayList<Runnable> delegated = new ArrayList<>();
+    queuesImpl.setDelegateExecutor(collectingExecutor(delegated));
+    queuesImpl.setMaxActiveTasks(maxActive);
+    List<String> order = new ArrayList<>();
+
+    for (int i = 0; i < maxActive; i++) {
+      queuesImpl.getExecutor("busy" + i).execute(task(order, "busy", Goro.PRIORITY_DEFAULT, Long.MAX_VALUE));
+    }
+    queuesImpl.getExecutor("low").execute(task(order, "low", Goro.PRIORITY_LOW, Long.MAX_VALUE));
+    queuesImpl.getExecutor("high").execute(task(order, "high", Goro.PRIORITY_HIGH, Long.MAX_VALUE));
+    assertThat(delegated).hasSize(maxActive);
+
+    runAll(delegated);
+    assertThat(order.subList(maxActive, order.size()))
+        .isEqualTo(Arrays.asList("high", "low"));
+  }
+
+  @Test
+  public void queuesShouldRunIndependentlyByDefault() {
+    final int queuesCount = 10;
+    ArrayList<Runnable> delegated = new ArrayList<>();
+    queuesImpl.setDelegateExecutor(collectingExecutor(delegated));
+    for (int i = 0; i < queuesCount; i++) {
+      queuesImpl.getExecutor("queue" + i).execute(mock(Runnable.class));
+    }
+    assertThat(delegated).hasSize(queuesCount);
+  }
+
+  @Test(expected = IllegalStateException.class)
+  public void shouldNotAllowActiveTasksLimitChangeAfterQueueCreation() {
+    queuesImpl.getExecutor("1");
+    queuesImpl.setMaxActiveTasks(1);
+  }
+
+  @Test
+  public void shouldReportQueueDepth() {
+    ArrayList<Runnable> delegated = new ArrayList<>();
+    queuesImpl.setDelegateExecutor(collectingExecutor(delegated));
+    Executor queue = queuesImpl.getExecutor("1");
+    Queues.PrioritizedTask task = mock(Queues.PrioritizedTask.class);
+    queue.execute(task);
+    queue.execute(mock(Runnable.class));
+    runAll(delegated);
+    verify(task).onDequeue(1);
+  }
+
+  private static Executor collectingExecutor(final List<Runnable> tasks) {
+    return new Executor() {
+      @Override
+      public void execute(@SuppressWarnings("NullableProblems") final Runnable command) {
+        tasks.add(command);
+      }
+    };
+  }
+
+  private static void runAll(final List<Runnable> tasks) {
+    while (!tasks.isEmpty()) {
+      tasks.remove(0).run();
+    }
+  }
+
+  private static Queues.PrioritizedTask task(final List<String> order, final String name,
+                                             final int priority, final long deadline) {
+    return new Queues.PrioritizedTask() {
+      @Override
+      public int getPriority() {
+        return priority;
+      }
+
+      @Override
+      public long getDeadline() {
+        return deadline;
+      }
+
+      @Override
+      public void onDequeue(final int queueDepth) {
+        // nothing
+      }
+
+      @Override
+      public void run() {
+        order.add(name);
+      }
+    };
+  }
+
 }
@@ -27,6 +27,11 @@ public class TestingQueues implements Queues {
     delegateExecutor = delegate;
   }
 
+  @Override
+  public void setMaxActiveTasks(final int maxActiveTasks) {
+    // not supported
+  }
+
   @Override
   public Executor getExecutor(String queueName) {
     lastQueueName = queueName;
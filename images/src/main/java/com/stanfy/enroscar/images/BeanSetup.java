@@ -1,6 +1,7 @@
 package com.stanfy.enroscar.images;
 
 import com.stanfy.enroscar.beans.BeansManager;
+import com.stanfy.enroscar.images.cache.BitmapPool;
 import com.stanfy.enroscar.images.cache.ImageFileCache;
 import com.stanfy.enroscar.images.cache.SupportLruImageMemoryCache;
 import com.stanfy.enroscar.io.BuffersPool;
@@ -18,6 +19,7 @@ public class BeanSetup {
       editor.put(BuffersPool.class);
     }
     editor.put(ImageFileCache.class);
+    editor.put(BitmapPool.class);
     editor.put(SupportLruImageMemoryCache.class);
     editor.put(ImagesManager.CONNECTION_BUILDER_FACTORY_NAME, UrlConnectionBuilderFactory.DEFAULT);
     editor.put(ImagesManager.class);
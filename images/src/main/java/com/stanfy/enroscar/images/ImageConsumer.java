@@ -4,6 +4,8 @@ import android.content.Context;
 import android.graphics.Bitmap;
 import android.graphics.drawable.Drawable;
 
+import com.stanfy.enroscar.images.decorator.CacheableImageDecorator;
+
 /**
  * Image consumer receives an image loaded by {@link ImagesManager}. 
  * <p>
@@ -23,6 +25,8 @@ public abstract class ImageConsumer {
   ImagesLoadListener listener;
   /** Current loader. */
   ImageLoader currentLoader;
+  /** Bitmap set by images manager. */
+  Bitmap displayedBitmap;
 
   /** @param context context instance */
   public ImageConsumer(final Context context) {
@@ -102,8 +106,12 @@ public abstract class ImageConsumer {
   protected void prepareImageRequest(final ImageRequest request) {
     request.setRequiredHeight(getRequiredHeight());
     request.setRequiredWidth(getRequiredWidth());
+    request.setDecorator(getDecorator());
   }
 
+  /** @return decorator applied to images before memory caching, null by default */
+  public CacheableImageDecorator getDecorator() { return null; }
+
   public boolean allowSmallImagesFromCache() { return false; }
 
 }
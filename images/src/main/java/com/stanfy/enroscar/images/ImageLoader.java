@@ -1,21 +1,32 @@
 package com.stanfy.enroscar.images;
 
 import android.graphics.Bitmap;
+import android.graphics.Canvas;
+import android.graphics.Color;
+import android.graphics.Paint;
+import android.graphics.Rect;
 import android.util.Log;
 
+import com.stanfy.enroscar.images.cache.BitmapPool;
+import com.stanfy.enroscar.images.decorator.CacheableImageDecorator;
+
 import java.io.IOException;
 import java.net.MalformedURLException;
 import java.util.ArrayList;
 import java.util.concurrent.Callable;
-import java.util.concurrent.FutureTask;
+import java.util.concurrent.Executor;
 
 import static com.stanfy.enroscar.images.ImagesManager.*;
 
 /**
  * Image loader task.
+ * Image is loaded to the disk cache by the I/O stage task and then decoded by the decoding stage task.
  * @author Roman Mazur - Stanfy (http://www.stanfy.com)
  */
-class ImageLoader implements Callable<Void> {
+class ImageLoader {
+
+  /** Paint used to scale images. */
+  private static final Paint SCALE_PAINT = new Paint(Paint.FILTER_BITMAP_FLAG);
 
   /** Image URL. */
   final ImageRequest request;
@@ -23,8 +34,10 @@ class ImageLoader implements Callable<Void> {
   /** Images manager. */
   private final ImagesManager imagesManager;
 
-  /** Future task instance. */
-  final FutureTask<Void> future;
+  /** Loading stage task. */
+  private final ImageTask loadTask;
+  /** Decoding stage task. */
+  private final ImageTask decodeTask;
 
   /** Targets. */
   private final ArrayList<ImageConsumer> targets = new ArrayList<ImageConsumer>();
@@ -35,24 +48,60 @@ class ImageLoader implements Callable<Void> {
   /** Result error. */
   private Throwable error;
 
+  /** Whether image has been loaded from network. */
+  private volatile boolean fromNetwork;
+
+  /** Whether loader has finished its work. */
+  private volatile boolean finished;
+
+  /** Whether the result bitmap is not held by this loader anymore and can be reused after eviction. */
+  private boolean resultReleased;
+
   /**
    * @param request image loading request
    * @param imagesManager manager instance
    */
   public ImageLoader(final ImageRequest request, final ImagesManager imagesManager) {
+    this(request, imagesManager, false);
+  }
+
+  /**
+   * @param request image loading request
+   * @param imagesManager manager instance
+   * @param prefetch whether image is loaded without any consumer waiting for it
+   */
+  ImageLoader(final ImageRequest request, final ImagesManager imagesManager, final boolean prefetch) {
     this.request = request;
     this.imagesManager = imagesManager;
-    this.future = new FutureTask<Void>(this);
+    final int priority = prefetch ? ImageTask.PRIORITY_PREFETCH : ImageTask.PRIORITY_VISIBLE;
+    this.loadTask = new ImageTask(new Stage(true), priority);
+    this.decodeTask = new ImageTask(new Stage(false), priority);
+  }
+
+  // main thread
+  void start() {
+    imagesManager.getImageTaskExecutor().execute(loadTask);
+  }
+
+  boolean isCanceled() {
+    return loadTask.isCancelled() || decodeTask.isCancelled();
+  }
+
+  boolean isDone() {
+    return finished || isCanceled();
   }
 
 
   // main thread
   public boolean addTarget(final ImageConsumer imageHolder) {
-    if (future.isCancelled()) { return false; } // we should start a new task
-
-    imageHolder.onStart(this, request.url);
+    if (isCanceled()) { return false; } // we should start a new task
 
     synchronized (targets) {
+      // result bitmap may be evicted and reused already
+      if (resultReleased) { return false; }
+
+      imageHolder.onStart(this, request.url);
+
       if (result != null) {
         imagesManager.setResultImage(imageHolder, result, false);
         imageHolder.onFinish(request.url, result);
@@ -61,12 +110,33 @@ class ImageLoader implements Callable<Void> {
       } else {
         imageHolder.currentLoader = this;
         targets.add(imageHolder);
+        // the latest requested image goes first
+        reschedule(imagesManager.getImageTaskExecutor(), loadTask);
+        reschedule(imagesManager.getImageDecodeExecutor(), decodeTask);
       }
     }
 
     return true;
   }
 
+  // main thread
+  private static void reschedule(final Executor executor, final ImageTask task) {
+    if (Threading.dequeue(executor, task)) {
+      task.setPriority(ImageTask.PRIORITY_VISIBLE);
+      executor.execute(task);
+    }
+  }
+
+  // main thread
+  private void cancelTasks() {
+    // remove from queues so that workers are not occupied with them
+    Threading.dequeue(imagesManager.getImageTaskExecutor(), loadTask);
+    Threading.dequeue(imagesManager.getImageDecodeExecutor(), decodeTask);
+    loadTask.cancel(true);
+    decodeTask.cancel(true);
+    imagesManager.currentLoads.remove(request.getKey(), this);
+  }
+
   // main thread
   public void removeTarget(final ImageConsumer consumer) {
     if (DEBUG) { Log.d(TAG, "Cancel request: " + request.getKey() + "\nLoader: " + this); }
@@ -78,26 +148,58 @@ class ImageLoader implements Callable<Void> {
       targets.remove(consumer);
 
       if (targets.isEmpty()) {
-        if (!future.cancel(true)) {
-          if (DEBUG) { Log.d(TAG, "Can't cancel task so let's try to remove loader manually"); }
-          imagesManager.currentLoads.remove(request.getKey(), this);
-        }
+        cancelTasks();
       }
 
     }
   }
 
-  // worker thread
-  private void safeImageSet(final ImageResult result) {
+  // main thread
+  boolean cancelIfNoTargets() {
+    synchronized (targets) {
+      if (!targets.isEmpty()) { return false; }
+      if (DEBUG) { Log.d(TAG, "Cancel prefetch: " + request.getKey()); }
+      cancelTasks();
+      return true;
+    }
+  }
+
+  /** @return prefetch handle that cancels this loader if no consumer has joined it */
+  ImagePrefetch asPrefetch() {
+    return new ImagePrefetch() {
+      @Override
+      public boolean cancel() {
+        return cancelIfNoTargets();
+      }
+      @Override
+      public boolean isDone() {
+        return ImageLoader.this.isDone();
+      }
+    };
+  }
+
+  /**
+   * Worker thread.
+   * @param result loaded image
+   * @return bitmap that should be stored as a downsampled variant after delivery, null if it's not required
+   */
+  private Bitmap safeImageSet(final ImageResult result) {
     if (DEBUG) { Log.v(ImagesManager.TAG, "Post setting drawable for " + request.getKey()); }
 
+    final Bitmap variant = prepareResult(result);
     synchronized (targets) {
       if (this.result != null) { throw new IllegalStateException("Result is already set"); }
+      // memory cache may evict the bitmap before consumers acquire it on the main thread
+      holdBitmap(result.getBitmap());
+      if (variant == result.getBitmap()) {
+        // it must not be reused until the variant is written
+        holdBitmap(variant);
+      }
       memCacheImage(result);
       this.result = result;
     }
 
-    post(new Runnable() {
+    final boolean posted = post(new Runnable() {
       @Override
       public void run() {
         if (imagesManager.debug) {
@@ -119,8 +221,49 @@ class ImageLoader implements Callable<Void> {
           Log.w(TAG, "set drawable: have no targets in list");
         }
 
+        releaseResult(result);
       }
     });
+    if (!posted) {
+      // nobody waits for the result
+      releaseResult(result);
+    }
+    return variant;
+  }
+
+  // worker thread
+  private void storeVariant(final Bitmap variant, final ImageResult result) {
+    try {
+      request.storeVariant(variant);
+    } finally {
+      if (variant == result.getBitmap()) {
+        releaseBitmap(variant);
+      } else {
+        // decorated image is displayed
+        request.recycle(variant);
+      }
+    }
+  }
+
+  private void holdBitmap(final Bitmap bitmap) {
+    final BitmapPool pool = imagesManager.getBitmapPool();
+    if (pool != null) {
+      pool.acquire(bitmap);
+    }
+  }
+
+  private void releaseBitmap(final Bitmap bitmap) {
+    final BitmapPool pool = imagesManager.getBitmapPool();
+    if (pool != null) {
+      pool.release(bitmap);
+    }
+  }
+
+  private void releaseResult(final ImageResult result) {
+    synchronized (targets) {
+      resultReleased = true;
+    }
+    releaseBitmap(result.getBitmap());
   }
 
   // main thread
@@ -154,20 +297,59 @@ class ImageLoader implements Callable<Void> {
 
     if (dstW <= 0 || dstH <= 0) { return map; }
 
-    final Bitmap scaled = Bitmap.createScaledBitmap(map, dstW, dstH, true);
+    final Bitmap scaled = scale(map, dstW, dstH);
     scaled.setDensity(imagesManager.getResources().getDisplayMetrics().densityDpi);
     return scaled;
   }
 
-  private void memCacheImage(final ImageResult result) {
+  private Bitmap scale(final Bitmap map, final int dstW, final int dstH) {
+    final BitmapPool pool = imagesManager.getBitmapPool();
+    final Bitmap.Config config = map.getConfig() != null ? map.getConfig() : Bitmap.Config.ARGB_8888;
+    final Bitmap target = pool != null ? pool.getExact(dstW, dstH, config) : null;
+    if (target == null) {
+      return Bitmap.createScaledBitmap(map, dstW, dstH, true);
+    }
+    target.eraseColor(Color.TRANSPARENT);
+    new Canvas(target).drawBitmap(map, null, new Rect(0, 0, dstW, dstH), SCALE_PAINT);
+    return target;
+  }
+
+  /**
+   * @param result loaded image
+   * @return scaled bitmap that should be stored as a downsampled variant, null if it's not required
+   */
+  private Bitmap prepareResult(final ImageResult result) {
+    Bitmap variant = null;
     if (result.getType() != ImageSourceType.MEMORY) {
       Bitmap input = result.getBitmap();
       Bitmap resultBitmap = prepare(input);
       if (resultBitmap != input) {
         result.setBitmap(resultBitmap);
-        input.recycle();
+        request.recycle(input);
+      }
+      // next time a smaller image is decoded without scaling
+      if (request.isVariantRequired(resultBitmap)) {
+        variant = resultBitmap;
+      }
+
+      // decorate here, so that the decorated image is cached in memory
+      final CacheableImageDecorator decorator = request.getDecorator();
+      if (decorator != null) {
+        final Bitmap decorated = decorator.decorate(resultBitmap);
+        if (decorated != null && decorated != resultBitmap) {
+          result.setBitmap(decorated);
+          if (variant == null) {
+            request.recycle(resultBitmap);
+          }
+        }
       }
-      imagesManager.memCacheImage(request.url, resultBitmap);
+    }
+    return variant;
+  }
+
+  private void memCacheImage(final ImageResult result) {
+    if (result.getType() != ImageSourceType.MEMORY) {
+      imagesManager.memCacheImage(request.getCacheKey(), result.getBitmap());
     }
   }
 
@@ -227,32 +409,68 @@ class ImageLoader implements Callable<Void> {
     return consumer;
   }
 
-  private void post(final Runnable action) {
+  private boolean post(final Runnable action) {
     ImageConsumer consumer = findMainTarget();
     if (consumer != null) {
       consumer.post(action);
+      return true;
     }
+    return false;
   }
 
-  @Override
-  public Void call() {
-    if (DEBUG) { Log.d(TAG, "Start image task"); }
+  // worker thread
+  private void startDecoding() {
+    synchronized (targets) {
+      decodeTask.setPriority(targets.isEmpty() ? ImageTask.PRIORITY_PREFETCH : ImageTask.PRIORITY_VISIBLE);
+      imagesManager.getImageDecodeExecutor().execute(decodeTask);
+    }
+  }
+
+  // worker thread
+  private void run(final boolean loadStage) {
+    if (DEBUG) { Log.d(TAG, "Start image task, load stage: " + loadStage); }
+    boolean done = true;
     try {
 
       if (!imagesManager.waitForPause()) {
         // interrupted
         cancel();
-        return null;
+        return;
+      }
+
+      ImageResult result = null;
+      if (loadStage) {
+        if (!imagesManager.isPresentOnDisk(request.url)) {
+          // response that is not cached is decoded right away from the same stream
+          result = request.loadToDisk();
+          fromNetwork = true;
+        }
+        if (result == null && imagesManager.isPresentOnDisk(request.url)) {
+          done = false;
+          startDecoding();
+          return;
+        }
       }
 
-      final ImageResult result = request.readImage();
+      if (result == null) {
+        // decoding stage, or the response has not been cached after all: decode it directly from network
+        result = request.readImage();
+      }
       if (result == null) {
         throw new IllegalStateException("Image is not returned!");
       }
-      safeImageSet(result);
+      if (fromNetwork) {
+        result.setType(ImageSourceType.NETWORK);
+      }
+      final Bitmap variant = safeImageSet(result);
 
       finish();
 
+      // encoding and writing takes time, so it's done after the result is delivered
+      if (variant != null) {
+        storeVariant(variant, result);
+      }
+
     } catch (final MalformedURLException e) {
 
       Log.e(TAG, "Bad URL: " + request.url + ". Loading canceled.", e);
@@ -270,14 +488,32 @@ class ImageLoader implements Callable<Void> {
 
     } finally {
 
-      final boolean removed = imagesManager.currentLoads.remove(request.getKey(), this);
-      if (DEBUG) {
-        Log.d(TAG, "Current loaders count: " + imagesManager.currentLoads.size());
-        if (!removed) { Log.w(TAG, "Incorrect loader in currents for " + request.getKey()); }
+      if (done) {
+        finished = true;
+        final boolean removed = imagesManager.currentLoads.remove(request.getKey(), this);
+        if (DEBUG) {
+          Log.d(TAG, "Current loaders count: " + imagesManager.currentLoads.size());
+          if (!removed) { Log.w(TAG, "Incorrect loader in currents for " + request.getKey()); }
+        }
       }
 
     }
-    return null;
+  }
+
+  /** Loader stage. */
+  private final class Stage implements Callable<Void> {
+    /** Stage type. */
+    private final boolean load;
+
+    public Stage(final boolean load) {
+      this.load = load;
+    }
+
+    @Override
+    public Void call() {
+      run(load);
+      return null;
+    }
   }
 
 }
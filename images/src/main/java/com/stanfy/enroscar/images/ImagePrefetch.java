@@ -0,0 +1,22 @@
+package com.stanfy.enroscar.images;
+
+/**
+ * Handle of an image prefetch task.
+ * @see ImagesManager#prefetchImage(String, int, int)
+ * @author Roman Mazur (Stanfy - http://stanfy.com)
+ */
+public interface ImagePrefetch {
+
+  /**
+   * Cancel prefetching. Nothing happens if some consumer has already joined the task.
+   * Must be called from the main thread.
+   * @return true if the task has been canceled
+   */
+  boolean cancel();
+
+  /**
+   * @return whether the task is finished or canceled
+   */
+  boolean isDone();
+
+}
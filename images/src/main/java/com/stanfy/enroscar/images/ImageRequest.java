@@ -1,21 +1,30 @@
 package com.stanfy.enroscar.images;
 
 import android.graphics.Bitmap;
+import android.annotation.TargetApi;
 import android.graphics.BitmapFactory;
+import android.os.Build;
 import android.util.DisplayMetrics;
 import android.util.Log;
 
 import com.stanfy.enroscar.beans.BeansManager;
+import com.stanfy.enroscar.images.cache.BitmapPool;
+import com.stanfy.enroscar.images.cache.ImageFileCache;
+import com.stanfy.enroscar.images.decorator.CacheableImageDecorator;
 import com.stanfy.enroscar.io.FlushedInputStream;
 import com.stanfy.enroscar.io.IoUtils;
 import com.stanfy.enroscar.net.UrlConnectionBuilderFactory;
-import com.stanfy.enroscar.net.cache.EnhancedResponseCache;
+import com.stanfy.enroscar.net.UrlConnectionWrapper;
+import com.stanfy.enroscar.net.cache.CacheControlUrlConnection;
 
-import java.io.FileOutputStream;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
 import java.io.IOException;
 import java.io.InputStream;
-import java.io.OutputStream;
+import java.net.ResponseCache;
 import java.net.URLConnection;
+import java.util.Arrays;
+import java.util.List;
 
 import static com.stanfy.enroscar.images.ImagesManager.TAG;
 
@@ -30,6 +39,8 @@ public class ImageRequest {
   private static final int BOUNDS_INFO_MARK = 65536;
   /** Buffer size for image IO operations. */
   private static final int IMAGES_BUFFER_SIZE = IoUtils.BUFFER_SIZE_16K;
+  /** Formats that can be decoded into an existing bitmap before KitKat. */
+  private static final List<String> REUSABLE_MIME_TYPES = Arrays.asList("image/jpeg", "image/png");
 
   /** Images manager. */
   private final ImagesManager manager;
@@ -49,6 +60,14 @@ public class ImageRequest {
   /** Image format. */
   private Bitmap.Config format = Bitmap.Config.ARGB_8888;
 
+  /** Decorator applied before memory caching. */
+  private CacheableImageDecorator decorator;
+
+  /** Size of the original image (known after bounds decoding). */
+  private int sourceWidth, sourceHeight;
+  /** Whether image has been decoded from a downsampled variant. */
+  private boolean fromVariant;
+
   /**
    * @param manager images manager instance
    * @param url image URL
@@ -100,12 +119,30 @@ public class ImageRequest {
     this.format = format;
   }
 
+  public CacheableImageDecorator getDecorator() {
+    return decorator;
+  }
+
+  /** @param decorator decorator applied in a worker thread, decorated image is cached in memory */
+  public void setDecorator(final CacheableImageDecorator decorator) {
+    this.decorator = decorator;
+  }
+
   public String getKey() {
-    return url + "!" + getRequiredHeight() + "x" + getRequiredHeight();
+    return getCacheKey() + "!" + getRequiredWidth() + "x" + getRequiredHeight();
   }
 
+  /**
+   * Memory cache key. Decorated images are cached separately for each decorator.
+   * Target size is distinguished by the memory cache itself.
+   * @return memory cache key
+   */
   public String getCacheKey() {
-    return url;
+    return getCacheKey(url, decorator != null ? decorator.getId() : null);
+  }
+
+  static String getCacheKey(final String url, final String decoratorId) {
+    return decoratorId == null ? url : url + "#" + decoratorId;
   }
 
   public boolean hasAllowedSize() {
@@ -114,7 +151,7 @@ public class ImageRequest {
 
   /**
    * Store image to the disk cache.
-   * If max allowed size is set image may be rescaled on disk.
+   * If max allowed size is set, a downsampled variant of the image is also stored.
    * @throws IOException if error happens
    */
   public void storeToDisk() throws IOException {
@@ -127,11 +164,14 @@ public class ImageRequest {
       return;
     }
 
-    ImageResult result = decodeStream(getRemoteInputStream(), true);
-    if (result.getType() == ImageSourceType.NETWORK && result.getBitmap() != null) {
+    ImageResult result = decodeStream(getRemoteInputStream(), true, false);
+    if (result.getBitmap() != null) {
       // image was scaled
       writeBitmapToDisk(result.getBitmap());
     }
+    if (result.getBitmap() != null) {
+      recycle(result.getBitmap());
+    }
   }
 
   /**
@@ -139,7 +179,138 @@ public class ImageRequest {
    * @throws IOException if error happens
    */
   public ImageResult readImage() throws IOException {
-    return decodeStream(getRemoteInputStream(), false);
+    final ImageFileCache.Variant variant = findVariant();
+    if (variant != null) {
+      final ImageResult result = readVariant(variant);
+      if (result != null) {
+        return result;
+      }
+    }
+
+    final boolean cached = isCached();
+    return decodeRemoteStream(getRemoteInputStream(), cached);
+  }
+
+  /**
+   * @param input image stream, closed by this method
+   * @param reopenable whether the stream can be opened once again without downloading the image
+   * @return decoding result
+   * @throws IOException if error happens
+   */
+  private ImageResult decodeRemoteStream(final InputStream input, final boolean reopenable) throws IOException {
+    if (!reopenable) {
+      // decoding cannot be retried without bitmap reuse
+      return decodeStream(input, false, false);
+    }
+    try {
+      return decodeStream(input, false, true);
+    } catch (final BitmapReuseException e) {
+      if (manager.debug) { Log.w(TAG, "Could not reuse bitmap for " + getKey(), e); }
+      return decodeStream(getRemoteInputStream(), false, false);
+    }
+  }
+
+  /** @return whether the image can be read from the disk cache */
+  private boolean isCached() {
+    ImageFileCache cache = getImageFileCache();
+    return cache != null ? cache.containsActual(url) : manager.isPresentOnDisk(url);
+  }
+
+  private ImageFileCache getImageFileCache() {
+    ResponseCache cache = manager.getImagesResponseCache();
+    return cache instanceof ImageFileCache ? (ImageFileCache) cache : null;
+  }
+
+  private ImageFileCache.Variant findVariant() {
+    ImageFileCache cache = getImageFileCache();
+    if (cache == null || skipScaleBeforeMemCache) { return null; }
+    return cache.findVariant(url, getRequiredWidth(), getRequiredHeight());
+  }
+
+  /**
+   * Decode a downsampled variant as is: without bounds decoding and scaling.
+   * @param variant image variant
+   * @return decoding result, null if variant file has been removed
+   * @throws IOException if error happens
+   */
+  private ImageResult readVariant(final ImageFileCache.Variant variant) throws IOException {
+    final InputStream input;
+    try {
+      input = manager.getBuffersPool().bufferize(new FileInputStream(variant.getFile()), IMAGES_BUFFER_SIZE);
+    } catch (final FileNotFoundException e) {
+      return null;
+    }
+
+    final BitmapFactory.Options options = createBitmapOptions();
+    Bitmap bitmap = null;
+    try {
+      BitmapPool pool = manager.getBitmapPool();
+      if (pool != null && (Build.VERSION.SDK_INT >= Build.VERSION_CODES.KITKAT || !variant.isWebp())) {
+        setInBitmap(options, pool.get(variant.getWidth(), variant.getHeight(), format));
+      }
+      try {
+        bitmap = decode(input, options);
+      } catch (final BitmapReuseException e) {
+        return null;
+      }
+      if (bitmap == null) { return null; }
+      if (manager.debug) { Log.d(TAG, "Image variant decoded: " + variant.getFile()); }
+      fromVariant = true;
+      return new ImageResult(bitmap, ImageSourceType.DISK);
+    } catch (final OutOfMemoryError e) {
+      final IOException wrapped = new IOException("out of memory for " + getKey());
+      wrapped.initCause(e);
+      throw wrapped;
+    } finally {
+      releaseInBitmap(options, bitmap);
+      recycle(options);
+      IoUtils.closeQuietly(input);
+    }
+  }
+
+  /**
+   * @param bitmap decoded and scaled image
+   * @return whether the bitmap should be stored as a downsampled variant: it's smaller than the original image
+   */
+  boolean isVariantRequired(final Bitmap bitmap) {
+    return !fromVariant && sourceWidth > 0 && sourceHeight > 0
+        && (bitmap.getWidth() < sourceWidth || bitmap.getHeight() < sourceHeight);
+  }
+
+  /**
+   * Store a downsampled variant of the image. Performs disk operations.
+   * @param bitmap decoded and scaled image
+   * @see #isVariantRequired(Bitmap)
+   */
+  void storeVariant(final Bitmap bitmap) {
+    try {
+      writeBitmapToDisk(bitmap);
+    } catch (final IOException e) {
+      Log.w(TAG, "Cannot store image variant for " + getKey(), e);
+    }
+  }
+
+  /**
+   * Load an image to the disk cache without decoding it.
+   * If the response is not written to the cache, it's decoded from the same stream
+   * instead of being downloaded again later.
+   * @return decoded image if the response is not cached, null otherwise
+   * @throws IOException if error happens
+   */
+  ImageResult loadToDisk() throws IOException {
+    final URLConnection connection = newUrlConnection();
+    final InputStream input = connection.getInputStream();
+    final CacheControlUrlConnection cacheControl =
+        UrlConnectionWrapper.getWrapper(connection, CacheControlUrlConnection.class);
+    if (cacheControl == null || !cacheControl.isResponseCached()) {
+      return decodeRemoteStream(input, false);
+    }
+    IoUtils.consumeStream(input, manager.getBuffersPool());
+    if (manager.debug && !isCached()) {
+      // cache writing has been aborted, image is going to be downloaded again
+      Log.w(TAG, "Image has not been cached: " + getKey());
+    }
+    return null;
   }
 
   private InputStream getRemoteInputStream() throws IOException {
@@ -158,10 +329,12 @@ public class ImageRequest {
         .create();
   }
 
-  private ImageResult decodeStream(final InputStream is, boolean onlyIfNeedsRescale) throws IOException {
+  private ImageResult decodeStream(final InputStream is, final boolean onlyIfNeedsRescale, final boolean reuseBitmap)
+      throws IOException {
     final BitmapFactory.Options options = createBitmapOptions();
 
     final InputStream src = prepareInputStream(is);
+    Bitmap bitmap = null;
 
     try {
 
@@ -173,7 +346,11 @@ public class ImageRequest {
 
       if (options.inSampleSize > 1 || !onlyIfNeedsRescale) {
         // actually decode
-        result.setBitmap(doStreamDecode(src, options));
+        if (reuseBitmap) {
+          setInBitmap(options, findReusableBitmap(options));
+        }
+        bitmap = decode(src, options);
+        result.setBitmap(bitmap);
       } else {
         // consume input in order to cache it
         IoUtils.consumeStream(src, manager.getBuffersPool());
@@ -193,6 +370,7 @@ public class ImageRequest {
 
     } finally {
 
+      releaseInBitmap(options, bitmap);
       recycle(options);
       src.close();
 
@@ -200,6 +378,46 @@ public class ImageRequest {
 
   }
 
+  private Bitmap decode(final InputStream input, final BitmapFactory.Options options) throws IOException {
+    if (!hasInBitmap(options)) {
+      return doStreamDecode(input, options);
+    }
+    try {
+      return doStreamDecode(input, options);
+    } catch (final IllegalArgumentException e) {
+      throw new BitmapReuseException(e);
+    }
+  }
+
+  /**
+   * @param options options filled by bounds decoding
+   * @return bitmap to decode into, null if there is no suitable one
+   */
+  @TargetApi(Build.VERSION_CODES.HONEYCOMB)
+  private Bitmap findReusableBitmap(final BitmapFactory.Options options) {
+    BitmapPool pool = manager.getBitmapPool();
+    if (pool == null || !BitmapPool.isEnabled() || options.outWidth <= 0 || options.outHeight <= 0) {
+      return null;
+    }
+    if (Build.VERSION.SDK_INT < Build.VERSION_CODES.KITKAT
+        && (options.inSampleSize > 1 || !REUSABLE_MIME_TYPES.contains(options.outMimeType))) {
+      return null;
+    }
+    final int sample = options.inSampleSize;
+    return pool.get((options.outWidth + sample - 1) / sample, (options.outHeight + sample - 1) / sample, format);
+  }
+
+  /**
+   * Give a bitmap that is not used anymore to the pool.
+   * @param bitmap bitmap instance
+   */
+  void recycle(final Bitmap bitmap) {
+    BitmapPool pool = manager.getBitmapPool();
+    if (pool == null || !pool.put(bitmap)) {
+      bitmap.recycle();
+    }
+  }
+
   Bitmap doStreamDecode(final InputStream input, final BitmapFactory.Options options) throws IOException {
     return BitmapFactory.decodeStream(input, null, options);
   }
@@ -208,9 +426,42 @@ public class ImageRequest {
     BitmapFactory.Options options = new BitmapFactory.Options();
     options.inTempStorage = manager.getBuffersPool().get(IMAGES_BUFFER_SIZE);
     options.inPreferredConfig = format;
+    if (BitmapPool.isEnabled()) {
+      // decoded bitmaps can be reused later
+      setMutable(options);
+    }
     return options;
   }
 
+  @TargetApi(Build.VERSION_CODES.HONEYCOMB)
+  private static void setMutable(final BitmapFactory.Options options) {
+    options.inMutable = true;
+  }
+
+  @TargetApi(Build.VERSION_CODES.HONEYCOMB)
+  private static boolean hasInBitmap(final BitmapFactory.Options options) {
+    return BitmapPool.isEnabled() && options.inBitmap != null;
+  }
+
+  @TargetApi(Build.VERSION_CODES.HONEYCOMB)
+  private static void setInBitmap(final BitmapFactory.Options options, final Bitmap bitmap) {
+    if (bitmap != null) {
+      options.inBitmap = bitmap;
+    }
+  }
+
+  /**
+   * Give a bitmap taken from the pool back if decoding has failed.
+   * @param options decoding options
+   * @param decoded decoding result
+   */
+  @TargetApi(Build.VERSION_CODES.HONEYCOMB)
+  private void releaseInBitmap(final BitmapFactory.Options options, final Bitmap decoded) {
+    if (hasInBitmap(options) && options.inBitmap != decoded) {
+      recycle(options.inBitmap);
+    }
+  }
+
   private void recycle(final BitmapFactory.Options options) {
     manager.getBuffersPool().release(options.inTempStorage);
   }
@@ -239,6 +490,8 @@ public class ImageRequest {
       long mark = markableStream.savePosition(BOUNDS_INFO_MARK);
       doStreamDecode(markableStream, options);
 
+      sourceWidth = options.outWidth;
+      sourceHeight = options.outHeight;
       result = ImagesManager.calculateSampleFactor(options.outWidth, options.outHeight,
           getRequiredWidth(), getRequiredHeight());
 
@@ -251,14 +504,20 @@ public class ImageRequest {
   }
 
   void writeBitmapToDisk(final Bitmap bitmap) throws IOException {
-    EnhancedResponseCache cache = (EnhancedResponseCache) manager.getImagesResponseCache();
-    OutputStream output = new FileOutputStream(cache.getLocalPath(url));
-    output = manager.getBuffersPool().bufferize(output, IMAGES_BUFFER_SIZE);
-    try {
-      final int quality = 100;
-      bitmap.compress(Bitmap.CompressFormat.PNG, quality, output);
-    } finally {
-      IoUtils.closeQuietly(output);
+    ImageFileCache cache = getImageFileCache();
+    if (cache != null) {
+      cache.putVariant(url, sourceWidth, sourceHeight, bitmap);
+    }
+  }
+
+  /** Thrown when an image cannot be decoded into a reused bitmap. */
+  private static class BitmapReuseException extends IOException {
+    /** serialVersionUID. */
+    private static final long serialVersionUID = -3853475379125497467L;
+
+    public BitmapReuseException(final Throwable cause) {
+      super("Cannot decode into existing bitmap");
+      initCause(cause);
     }
   }
 
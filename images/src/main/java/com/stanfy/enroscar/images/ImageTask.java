@@ -0,0 +1,65 @@
+package com.stanfy.enroscar.images;
+
+import java.util.Comparator;
+import java.util.concurrent.Callable;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Image loading task that can be ordered by priority.
+ * Tasks with the same priority are executed in LIFO order: the most recent request is the most likely to be visible.
+ * @author Roman Mazur (Stanfy - http://www.stanfy.com)
+ */
+final class ImageTask extends FutureTask<Void> {
+
+  /** Priority of tasks that are not related to images (e.g. {@link ImagesManager#ensureImages(java.util.List, java.util.concurrent.Executor)}). */
+  static final int PRIORITY_BACKGROUND = 0;
+  /** Priority of prefetch tasks. */
+  static final int PRIORITY_PREFETCH = 1;
+  /** Priority of images requested by consumers. */
+  static final int PRIORITY_VISIBLE = 2;
+
+  /** Orders tasks in the executor queue: higher priority first, then the latest first. */
+  static final Comparator<Runnable> ORDER = new Comparator<Runnable>() {
+    @Override
+    public int compare(final Runnable lhs, final Runnable rhs) {
+      final int p1 = priorityOf(lhs), p2 = priorityOf(rhs);
+      if (p1 != p2) { return p1 > p2 ? -1 : 1; }
+      final long s1 = sequenceOf(lhs), s2 = sequenceOf(rhs);
+      return s1 > s2 ? -1 : (s1 == s2 ? 0 : 1);
+    }
+  };
+
+  /** Sequence generator. */
+  private static final AtomicLong SEQUENCE = new AtomicLong();
+
+  /** Priority. */
+  private int priority;
+  /** Sequence number. */
+  private long sequence;
+
+  ImageTask(final Callable<Void> callable, final int priority) {
+    super(callable);
+    setPriority(priority);
+  }
+
+  private static int priorityOf(final Runnable r) {
+    return r instanceof ImageTask ? ((ImageTask) r).priority : PRIORITY_BACKGROUND;
+  }
+
+  private static long sequenceOf(final Runnable r) {
+    return r instanceof ImageTask ? ((ImageTask) r).sequence : 0;
+  }
+
+  /**
+   * Must not be called while the task is in the executor queue.
+   * @param priority new priority
+   */
+  void setPriority(final int priority) {
+    this.priority = priority;
+    this.sequence = SEQUENCE.incrementAndGet();
+  }
+
+  int getPriority() { return priority; }
+
+}
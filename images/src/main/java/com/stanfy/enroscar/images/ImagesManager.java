@@ -9,6 +9,7 @@ import android.graphics.drawable.ColorDrawable;
 import android.graphics.drawable.Drawable;
 import android.os.Looper;
 import android.text.TextUtils;
+import android.util.DisplayMetrics;
 import android.util.Log;
 import android.view.View;
 import android.view.ViewTreeObserver;
@@ -16,6 +17,7 @@ import android.view.ViewTreeObserver;
 import com.stanfy.enroscar.beans.BeansContainer;
 import com.stanfy.enroscar.beans.EnroscarBean;
 import com.stanfy.enroscar.beans.InitializingBean;
+import com.stanfy.enroscar.images.cache.BitmapPool;
 import com.stanfy.enroscar.images.cache.ImageMemoryCache;
 import com.stanfy.enroscar.io.BuffersPool;
 import com.stanfy.enroscar.net.cache.EnhancedResponseCache;
@@ -59,6 +61,9 @@ public class ImagesManager implements InitializingBean {
   // TODO make private
   final ConcurrentHashMap<String, ImageLoader> currentLoads = new ConcurrentHashMap<String, ImageLoader>(Threading.imagesWorkersCount);
 
+  /** Identifiers of decorators used for memory cache keys. */
+  private final ConcurrentHashMap<String, Boolean> decoratorIds = new ConcurrentHashMap<String, Boolean>();
+
   /** Application context. */
   private final Context context;
 
@@ -66,6 +71,8 @@ public class ImagesManager implements InitializingBean {
   private BuffersPool buffersPool;
   /** Memory cache. */
   private ImageMemoryCache memCache;
+  /** Bitmaps pool (optional). */
+  private BitmapPool bitmapPool;
   /** Images response cache. */
   private EnhancedResponseCache imagesResponseCache;
   /** Consumer factory. */
@@ -89,6 +96,14 @@ public class ImagesManager implements InitializingBean {
     Threading.configureImageTasksExecutor(count);
   }
 
+  /**
+   * Set count of working threads used to decode images.
+   * @param count count of threads
+   */
+  public static void configureImageDecodeExecutorsCount(final int count) {
+    Threading.configureImageDecodeExecutor(count);
+  }
+
 
   /** @return application context */
   public Context getContext() {
@@ -111,6 +126,8 @@ public class ImagesManager implements InitializingBean {
 
   BuffersPool getBuffersPool() { return buffersPool; }
 
+  BitmapPool getBitmapPool() { return bitmapPool; }
+
   @Override
   public void onInitializationFinished(final BeansContainer beansContainer) {
     this.buffersPool = beansContainer.getBean(BuffersPool.class.getName(), BuffersPool.class);
@@ -119,6 +136,10 @@ public class ImagesManager implements InitializingBean {
       throw new IllegalStateException("Buffers pool and images memory cache must be initialized before images manager.");
     }
 
+    if (beansContainer.containsBean(BitmapPool.BEAN_NAME)) {
+      this.bitmapPool = beansContainer.getBean(BitmapPool.BEAN_NAME, BitmapPool.class);
+    }
+
     this.imagesResponseCache = (EnhancedResponseCache) beansContainer.getBean(CACHE_BEAN_NAME, ResponseCache.class);
     if (imagesResponseCache == null) {
       Log.w(TAG, "Response cache for images is not defined");
@@ -198,6 +219,9 @@ public class ImagesManager implements InitializingBean {
    */
   public boolean clearCache(final String url) {
     memCache.remove(url);
+    for (String decoratorId : decoratorIds.keySet()) {
+      memCache.remove(ImageRequest.getCacheKey(url, decoratorId));
+    }
     try {
       return imagesResponseCache.deleteGetEntry(url);
     } catch (final IOException e) {
@@ -284,6 +308,10 @@ public class ImagesManager implements InitializingBean {
     final ImageResult res = getFromMemCache(request, consumer);
     if (res == null) { return null; }
     decorateResult(consumer, res);
+    if (bitmapPool != null) {
+      // bitmap is given to the application code, it must not be reused
+      bitmapPool.retain(res.getBitmap());
+    }
     return res.getBitmap();
   }
 
@@ -353,10 +381,15 @@ public class ImagesManager implements InitializingBean {
   }
 
   /**
-   * @return an executor for image tasks
+   * @return an executor for image tasks (network loading)
    */
   protected Executor getImageTaskExecutor() { return Threading.getImageTasksExecutor(); }
 
+  /**
+   * @return an executor for image decoding tasks
+   */
+  protected Executor getImageDecodeExecutor() { return Threading.getImageDecodeExecutor(); }
+
   /**
    * @param holder image consumer
    * @return drawable to display while image is being loaded
@@ -388,9 +421,23 @@ public class ImagesManager implements InitializingBean {
   protected final void setResultImage(final ImageConsumer consumer, final ImageResult result, final boolean animate) {
     decorateResult(consumer, result);
     consumer.setImage(createDrawable(result.getBitmap()), animate);
+    setDisplayedBitmap(consumer, result.getBitmap());
     consumer.reset();
   }
 
+  /**
+   * Track bitmaps displayed by consumers so that they are not reused while being displayed.
+   * @param consumer image consumer
+   * @param bitmap bitmap that is displayed by the consumer now
+   */
+  private void setDisplayedBitmap(final ImageConsumer consumer, final Bitmap bitmap) {
+    if (bitmapPool != null) {
+      bitmapPool.release(consumer.displayedBitmap);
+      bitmapPool.acquire(bitmap);
+    }
+    consumer.displayedBitmap = bitmap;
+  }
+
   /**
    * Set preloader.
    * @param consumer image consumer instance
@@ -400,6 +447,7 @@ public class ImagesManager implements InitializingBean {
       Drawable d = getLoadingDrawable(consumer);
       if (!consumer.hasUndefinedSize() || (d.getIntrinsicWidth() != 0 && d.getIntrinsicHeight() != 0)) {
         consumer.setLoadingImage(d);
+        setDisplayedBitmap(consumer, null);
       }
     }
   }
@@ -416,7 +464,11 @@ public class ImagesManager implements InitializingBean {
       return null;
     }
 
-    final Bitmap map = memCache.getElement(cacheKey);
+    Bitmap map = memCache.getElement(cacheKey, consumer.getTargetWidth(), consumer.getTargetHeight());
+    if (map == null) {
+      // the largest variant may still suit
+      map = memCache.getElement(cacheKey);
+    }
     if (map == null) {
       if (debug) { Log.v(TAG, "Not in mem " + cacheKey); }
       return null;
@@ -446,6 +498,9 @@ public class ImagesManager implements InitializingBean {
     if (loader == null) {
 
       if (DEBUG) { Log.d(TAG, "Start a new task"); }
+      if (request.getDecorator() != null) {
+        decoratorIds.put(request.getDecorator().getId(), Boolean.TRUE);
+      }
       loader = new ImageLoader(request, this);
       if (!loader.addTarget(consumer)) {
         throw new IllegalStateException("Cannot add target to the new loader");
@@ -453,8 +508,7 @@ public class ImagesManager implements InitializingBean {
 
       currentLoads.put(key, loader);
       if (debug) { Log.d(TAG, "Current loaders count: " + currentLoads.size()); }
-      final Executor executor = getImageTaskExecutor();
-      executor.execute(loader.future);
+      loader.start();
 
     } else if (debug) {
       Log.d(TAG, "Joined to the existing task " + key);
@@ -462,13 +516,43 @@ public class ImagesManager implements InitializingBean {
   }
 
   /**
-   * Add image to memory cache.
+   * Load an image into the memory cache in advance, without any consumer waiting for it.
+   * Prefetch tasks are executed with lower priority than images requested by consumers.
+   * If a consumer requests the same image with the same size later, it joins the prefetch task
+   * and the task gets the consumer priority.
+   * Must be called from the main thread.
    * @param url image URL
+   * @param width required image width, screen width is used if it's not positive
+   * @param height required image height, screen height is used if it's not positive
+   * @return prefetch handle, null if the image is already in memory or is being loaded
+   */
+  public ImagePrefetch prefetchImage(final String url, final int width, final int height) {
+    checkThread();
+    if (TextUtils.isEmpty(url) || memCache.contains(url)) { return null; }
+
+    DisplayMetrics metrics = getResources().getDisplayMetrics();
+    ImageRequest request = new ImageRequest(this, url, -1);
+    request.setRequiredWidth(width > 0 ? width : metrics.widthPixels);
+    request.setRequiredHeight(height > 0 ? height : metrics.heightPixels);
+
+    final String key = request.getKey();
+    if (currentLoads.containsKey(key)) { return null; }
+
+    if (debug) { Log.d(TAG, "Prefetch " + key); }
+    ImageLoader loader = new ImageLoader(request, this, true);
+    currentLoads.put(key, loader);
+    loader.start();
+    return loader.asPrefetch();
+  }
+
+  /**
+   * Add image to memory cache.
+   * @param key cache key (see {@link ImageRequest#getCacheKey()})
    * @param bitmap bitmap
    */
-  protected void memCacheImage(final String url, final Bitmap bitmap) {
-    if (DEBUG) { Log.d(TAG, "Memcache for " + url); }
-    memCache.putElement(url, bitmap);
+  protected void memCacheImage(final String key, final Bitmap bitmap) {
+    if (DEBUG) { Log.d(TAG, "Memcache for " + key); }
+    memCache.putElement(key, bitmap);
   }
 
   static int calculateSampleFactor(final int inW, final int inH, final int width, final int height) {
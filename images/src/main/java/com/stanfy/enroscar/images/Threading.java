@@ -1,8 +1,7 @@
 package com.stanfy.enroscar.images;
 
-import java.util.concurrent.BlockingQueue;
 import java.util.concurrent.Executor;
-import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.PriorityBlockingQueue;
 import java.util.concurrent.ThreadPoolExecutor;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicInteger;
@@ -11,26 +10,36 @@ import android.os.Process;
 
 /**
  * Thread utilities used by images manager.
+ * Images are loaded in two stages: network loading (I/O bound) and decoding (CPU bound).
+ * Each stage has its own pool. Both pools take tasks in order defined by {@link ImageTask#ORDER}.
  * @author Roman Mazur (Stanfy - http://www.stanfy.com)
  */
 final class Threading {
+  /** Initial queue capacity. */
+  private static final int QUEUE_CAPACITY = 32;
+  /** Max count of decoding workers. */
+  private static final int MAX_DECODE_WORKERS = 2;
+
   /** Thread factory. */
-  private static final ThreadFactory THREAD_FACTORY = new ThreadFactory();
-  /** Tasks queue. */
-  private static final LinkedBlockingQueue<Runnable> IMAGE_TASKS_QUEUE = new LinkedBlockingQueue<Runnable>();
+  private static final ThreadFactory THREAD_FACTORY = new ThreadFactory("ImageWorker", Process.THREAD_PRIORITY_BACKGROUND);
+  /** Thread factory for decoding tasks. */
+  private static final ThreadFactory DECODE_THREAD_FACTORY = new ThreadFactory("ImageDecoder", Process.THREAD_PRIORITY_BACKGROUND);
   /** Workers count. */
   static int imagesWorkersCount = 2;
+  /** Decoding workers count. */
+  static int decodeWorkersCount = Math.max(1, Math.min(MAX_DECODE_WORKERS, Runtime.getRuntime().availableProcessors()));
 
   /** executors. */
-  private static Executor imageTasksExecutor;
+  private static Executor imageTasksExecutor, imageDecodeExecutor;
 
   /** Hidden constructor. */
   private Threading() { /* just hide */ }
 
   public static Thread createThread(final Runnable worker) { return THREAD_FACTORY.newThread(worker); }
 
-  private static ThreadPoolExecutor createExecutor(final int wCount, final BlockingQueue<Runnable> queue) {
-    return new ThreadPoolExecutor(wCount, wCount, Long.MAX_VALUE, TimeUnit.MILLISECONDS, queue);
+  private static ThreadPoolExecutor createExecutor(final int wCount, final ThreadFactory factory) {
+    return new ThreadPoolExecutor(wCount, wCount, Long.MAX_VALUE, TimeUnit.MILLISECONDS,
+        new PriorityBlockingQueue<Runnable>(QUEUE_CAPACITY, ImageTask.ORDER), factory);
   }
 
   /**
@@ -41,15 +50,42 @@ final class Threading {
   }
 
   /**
-   * @return the image tasks executor
+   * @param workersCount max count of decoding workers
+   */
+  public static void configureImageDecodeExecutor(final int workersCount) {
+    decodeWorkersCount = workersCount;
+  }
+
+  /**
+   * @return the image tasks executor (network loading)
    */
-  public static Executor getImageTasksExecutor() {
+  public static synchronized Executor getImageTasksExecutor() {
     if (imageTasksExecutor == null) {
-      imageTasksExecutor = createExecutor(imagesWorkersCount, IMAGE_TASKS_QUEUE);
+      imageTasksExecutor = createExecutor(imagesWorkersCount, THREAD_FACTORY);
     }
     return imageTasksExecutor;
   }
 
+  /**
+   * @return the image decoding executor
+   */
+  public static synchronized Executor getImageDecodeExecutor() {
+    if (imageDecodeExecutor == null) {
+      imageDecodeExecutor = createExecutor(decodeWorkersCount, DECODE_THREAD_FACTORY);
+    }
+    return imageDecodeExecutor;
+  }
+
+  /**
+   * Remove a task from executor queue if it's not started yet.
+   * @param executor executor instance
+   * @param task task to remove
+   * @return true if task has been removed
+   */
+  static boolean dequeue(final Executor executor, final Runnable task) {
+    return executor instanceof ThreadPoolExecutor && ((ThreadPoolExecutor) executor).remove(task);
+  }
+
   /**
    * A custom thread factory.
    * @author Roman Mazur - Stanfy (http://www.stanfy.com)
@@ -57,20 +93,33 @@ final class Threading {
   private static class ThreadFactory implements java.util.concurrent.ThreadFactory {
     /** Threads counter. */
     private final AtomicInteger counter = new AtomicInteger(1);
+    /** Thread name prefix. */
+    private final String name;
+    /** Thread priority. */
+    private final int priority;
+
+    public ThreadFactory(final String name, final int priority) {
+      this.name = name;
+      this.priority = priority;
+    }
+
     @Override
-    public Thread newThread(final Runnable worker) { return new ImageThread(worker, counter.getAndIncrement()); }
+    public Thread newThread(final Runnable worker) { return new ImageThread(worker, name + " #" + counter.getAndIncrement(), priority); }
   }
 
   /**
    * @author Roman Mazur (Stanfy - http://www.stanfy.com)
    */
   private static class ImageThread extends Thread {
-    public ImageThread(final Runnable worker, final int counter) {
-      super(worker, "ImageWorker #" + counter);
+    /** Thread priority. */
+    private final int priority;
+    public ImageThread(final Runnable worker, final String name, final int priority) {
+      super(worker, name);
+      this.priority = priority;
     }
     @Override
     public void run() {
-      Process.setThreadPriority(Process.THREAD_PRIORITY_BACKGROUND);
+      Process.setThreadPriority(priority);
       super.run();
     }
   }
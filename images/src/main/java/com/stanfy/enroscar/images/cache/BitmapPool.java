@@ -0,0 +1,260 @@
+package com.stanfy.enroscar.images.cache;
+
+import android.annotation.SuppressLint;
+import android.annotation.TargetApi;
+import android.app.ActivityManager;
+import android.content.Context;
+import android.graphics.Bitmap;
+import android.os.Build;
+import android.util.Log;
+
+import com.stanfy.enroscar.beans.BeansContainer;
+import com.stanfy.enroscar.beans.EnroscarBean;
+import com.stanfy.enroscar.beans.FlushableBean;
+import com.stanfy.enroscar.utils.Bitmaps;
+
+import java.util.ArrayList;
+import java.util.SortedMap;
+import java.util.TreeMap;
+import java.util.WeakHashMap;
+
+/**
+ * Pool of bitmaps that can be reused for decoding ({@link android.graphics.BitmapFactory.Options#inBitmap}).
+ * Bitmaps are bucketed by their allocation size.
+ * <p>
+ *   A bitmap put to the pool while it's displayed by some image consumer becomes available
+ *   only after it's released by all the consumers. Bitmaps that were given to the application
+ *   code (see {@link #retain(Bitmap)}) are never reused.
+ * </p>
+ * <p>Pool is disabled before Honeycomb.</p>
+ * @author Roman Mazur (Stanfy - http://stanfy.com)
+ */
+@EnroscarBean(value = BitmapPool.BEAN_NAME, contextDependent = true)
+public class BitmapPool implements FlushableBean {
+
+  /** Bean name. */
+  public static final String BEAN_NAME = "BitmapPool";
+
+  /** 1 MB. */
+  private static final int MB = 1024 * 1024;
+
+  /** Max ratio between a reused bitmap size and the required size. */
+  private static final int MAX_OVERSIZE = 2;
+
+  /** Whether reuse is supported. */
+  private static final boolean ENABLED = Build.VERSION.SDK_INT >= Build.VERSION_CODES.HONEYCOMB;
+  /** Whether bitmaps of any size can be reused (otherwise only the same size). */
+  private static final boolean ANY_SIZE = Build.VERSION.SDK_INT >= Build.VERSION_CODES.KITKAT;
+
+  /** Maximum size in bytes. */
+  private final int maxSize;
+
+  /** Current size in bytes. */
+  private int size;
+
+  /** Free bitmaps by allocation size. */
+  private final TreeMap<Integer, ArrayList<Bitmap>> buckets = new TreeMap<Integer, ArrayList<Bitmap>>();
+
+  /** Display counts. */
+  private final WeakHashMap<Bitmap, int[]> displayed = new WeakHashMap<Bitmap, int[]>();
+  /** Bitmaps put to the pool while being displayed. */
+  private final WeakHashMap<Bitmap, Boolean> pending = new WeakHashMap<Bitmap, Boolean>();
+  /** Bitmaps that must not be reused. */
+  private final WeakHashMap<Bitmap, Boolean> retained = new WeakHashMap<Bitmap, Boolean>();
+
+  public BitmapPool(final Context context) {
+    this(context, 0);
+  }
+
+  public BitmapPool(final Context context, final int size) {
+    int poolSize = size;
+    if (poolSize == 0) {
+      int memClass = ((ActivityManager)context.getSystemService(Context.ACTIVITY_SERVICE)).getMemoryClass();
+      if (memClass == 0) { // can be in tests
+        memClass = 3;
+      }
+
+      final int part = 16;
+      poolSize = memClass * MB / part;
+    }
+    this.maxSize = poolSize;
+  }
+
+  /** @return whether bitmaps can be reused on this platform */
+  public static boolean isEnabled() { return ENABLED; }
+
+  /**
+   * Offer a bitmap for reuse.
+   * @param bitmap bitmap that is not referenced by the caller anymore
+   * @return false if bitmap cannot be reused and can be recycled
+   */
+  public synchronized boolean put(final Bitmap bitmap) {
+    if (!ENABLED || bitmap == null || bitmap.isRecycled() || !bitmap.isMutable()
+        || retained.containsKey(bitmap)) {
+      return false;
+    }
+    if (displayed.containsKey(bitmap)) {
+      pending.put(bitmap, Boolean.TRUE);
+      return true;
+    }
+    addFree(bitmap);
+    return true;
+  }
+
+  /**
+   * @param width required width
+   * @param height required height
+   * @param config required config
+   * @return bitmap that can be used as {@link android.graphics.BitmapFactory.Options#inBitmap} in order to decode
+   *         an image of the required size, null if there is no such a bitmap
+   */
+  public synchronized Bitmap get(final int width, final int height, final Bitmap.Config config) {
+    if (!ENABLED || width <= 0 || height <= 0) { return null; }
+    final int required = width * height * bytesPerPixel(config);
+
+    if (ANY_SIZE) {
+      SortedMap<Integer, ArrayList<Bitmap>> tail = buckets.tailMap(required);
+      if (tail.isEmpty() || tail.firstKey() > required * MAX_OVERSIZE) { return null; }
+      return take(tail.firstKey(), 0);
+    }
+
+    ArrayList<Bitmap> list = buckets.get(required);
+    if (list == null) { return null; }
+    final int count = list.size();
+    for (int i = 0; i < count; i++) {
+      Bitmap bitmap = list.get(i);
+      if (bitmap.getWidth() == width && bitmap.getHeight() == height && bitmap.getConfig() == config) {
+        return take(required, i);
+      }
+    }
+    return null;
+  }
+
+  /**
+   * @param width required width
+   * @param height required height
+   * @param config required config
+   * @return mutable bitmap of exactly the required size and config with undefined content, null if there is no such a bitmap
+   */
+  @TargetApi(Build.VERSION_CODES.KITKAT)
+  public synchronized Bitmap getExact(final int width, final int height, final Bitmap.Config config) {
+    Bitmap bitmap = get(width, height, config);
+    if (bitmap != null && ANY_SIZE
+        && (bitmap.getWidth() != width || bitmap.getHeight() != height || bitmap.getConfig() != config)) {
+      bitmap.reconfigure(width, height, config);
+    }
+    return bitmap;
+  }
+
+  /**
+   * Mark a bitmap as displayed by an image consumer. Must be paired with {@link #release(Bitmap)}.
+   * @param bitmap bitmap instance
+   */
+  public synchronized void acquire(final Bitmap bitmap) {
+    if (!ENABLED || bitmap == null) { return; }
+    int[] count = displayed.get(bitmap);
+    if (count == null) {
+      count = new int[1];
+      displayed.put(bitmap, count);
+    }
+    count[0]++;
+  }
+
+  /**
+   * Mark a bitmap as not displayed by an image consumer anymore.
+   * @param bitmap bitmap instance
+   */
+  public synchronized void release(final Bitmap bitmap) {
+    if (!ENABLED || bitmap == null) { return; }
+    int[] count = displayed.get(bitmap);
+    if (count == null) { return; }
+    if (--count[0] > 0) { return; }
+    displayed.remove(bitmap);
+    if (pending.remove(bitmap) != null && !bitmap.isRecycled()) {
+      addFree(bitmap);
+    }
+  }
+
+  /**
+   * Exclude a bitmap from reuse. Used for bitmaps that are given to the application code.
+   * @param bitmap bitmap instance
+   */
+  public synchronized void retain(final Bitmap bitmap) {
+    if (!ENABLED || bitmap == null) { return; }
+    retained.put(bitmap, Boolean.TRUE);
+    pending.remove(bitmap);
+  }
+
+  /** @return current size of free bitmaps in bytes */
+  public synchronized int size() { return size; }
+
+  /** @return maximum size of free bitmaps in bytes */
+  public int maxSize() { return maxSize; }
+
+  public synchronized void clear() {
+    buckets.clear();
+    pending.clear();
+    size = 0;
+  }
+
+  @Override
+  public void flushResources(final BeansContainer beansContainer) {
+    clear();
+    Log.i(BEAN_NAME, "Bitmap pool flushed");
+  }
+
+  private void addFree(final Bitmap bitmap) {
+    final int bitmapSize = Bitmaps.bitmapSize(bitmap);
+    if (bitmapSize > maxSize) { return; }
+    ArrayList<Bitmap> list = buckets.get(bitmapSize);
+    if (list == null) {
+      list = new ArrayList<Bitmap>(1);
+      buckets.put(bitmapSize, list);
+    }
+    list.add(bitmap);
+    size += bitmapSize;
+    trimToSize();
+  }
+
+  private Bitmap take(final int key, final int index) {
+    ArrayList<Bitmap> list = buckets.get(key);
+    Bitmap bitmap = list.remove(index);
+    if (list.isEmpty()) {
+      buckets.remove(key);
+    }
+    size -= key;
+    return bitmap;
+  }
+
+  /** Drop the largest bitmaps first. */
+  private void trimToSize() {
+    while (size > maxSize) {
+      Integer key = buckets.lastKey();
+      take(key, 0);
+    }
+  }
+
+  @SuppressLint("NewApi")
+  private static int bytesPerPixel(final Bitmap.Config config) {
+    if (config == null) { return 4; }
+    switch (config) {
+      case ALPHA_8:
+        return 1;
+      case RGB_565:
+      case ARGB_4444:
+        return 2;
+      default:
+        return 4;
+    }
+  }
+
+  /** @return count of free bitmaps */
+  public synchronized int count() {
+    int result = 0;
+    for (ArrayList<Bitmap> list : buckets.values()) {
+      result += list.size();
+    }
+    return result;
+  }
+
+}
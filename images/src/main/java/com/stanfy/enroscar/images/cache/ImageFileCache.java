@@ -4,11 +4,23 @@
 package com.stanfy.enroscar.images.cache;
 
 import java.io.File;
+import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.OutputStream;
 import java.io.Writer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
 
 import android.content.Context;
+import android.graphics.Bitmap;
 import android.os.Environment;
 import android.util.Log;
 
@@ -16,12 +28,19 @@ import com.stanfy.enroscar.beans.Bean;
 import com.stanfy.enroscar.beans.BeansContainer;
 import com.stanfy.enroscar.beans.EnroscarBean;
 import com.stanfy.enroscar.images.ImagesManager;
+import com.stanfy.enroscar.io.IoUtils;
 import com.stanfy.enroscar.net.cache.BaseFileResponseCache;
 import com.stanfy.enroscar.net.cache.CacheEntry;
 import com.stanfy.enroscar.net.cache.CacheTimeRule;
 
 /**
  * File-based cache used by images manager.
+ * <p>
+ *   Besides original images, cache keeps downsampled variants of them in a separate directory
+ *   (see {@link #putVariant(String, int, int, Bitmap)}). Variants are encoded with the configured format
+ *   and quality and can be decoded without any scaling. They are invalidated when the original entry
+ *   is updated or removed.
+ * </p>
  * @author Roman Mazur (Stanfy - http://stanfy.com)
  */
 @EnroscarBean(value = ImagesManager.CACHE_BEAN_NAME, contextDependent = true)
@@ -30,9 +49,46 @@ public class ImageFileCache extends BaseFileResponseCache implements Bean {
   /** Default images cache size (10M). */
   public static final long MAX_SIZE = 10 * 1024 * 1024;
 
+  /** Default quality of image variants. */
+  public static final int DEFAULT_VARIANTS_QUALITY = 85;
+
+  /** Suffix of the variants directory name. */
+  private static final String VARIANTS_DIR_SUFFIX = "-variants";
+  /** Suffix of temporary files. */
+  private static final String TMP_SUFFIX = ".tmp";
+  /** Variant file name pattern: key_WxH_SWxSH.ext. */
+  private static final Pattern VARIANT_NAME = Pattern.compile("([^_]+)_(\\d+)x(\\d+)_(\\d+)x(\\d+)\\.(\\w+)");
+  /** Load factor for variants usage map. */
+  private static final float LOAD_FACTOR = 0.75f;
+
+  /** Orders files by modification time. */
+  private static final Comparator<File> BY_MODIFICATION_TIME = new Comparator<File>() {
+    @Override
+    public int compare(final File lhs, final File rhs) {
+      final long l = lhs.lastModified(), r = rhs.lastModified();
+      return l < r ? -1 : (l == r ? 0 : 1);
+    }
+  };
+
   /** Application context. */
   private final Context context;
-  
+
+  /** Variants format. */
+  private Bitmap.CompressFormat variantsFormat = Bitmap.CompressFormat.JPEG;
+  /** Variants quality. */
+  private int variantsQuality = DEFAULT_VARIANTS_QUALITY;
+  /** Max size of variants. */
+  private long variantsMaxSize;
+
+  /** Variants by cache key. */
+  private final HashMap<String, ArrayList<Variant>> variants = new HashMap<String, ArrayList<Variant>>();
+  /** All variants in access order: the least recently used one goes first. */
+  private final LinkedHashMap<File, Variant> variantsUsage = new LinkedHashMap<File, Variant>(0, LOAD_FACTOR, true);
+  /** Current size of variants. */
+  private long variantsSize;
+  /** Whether variants directory has been scanned. */
+  private boolean variantsLoaded;
+
   public ImageFileCache(final Context context) {
     this.context = context;
   }
@@ -53,12 +109,306 @@ public class ImageFileCache extends BaseFileResponseCache implements Bean {
     if (getMaxSize() == 0) {
       setMaxSize(MAX_SIZE);
     }
+    if (variantsMaxSize == 0) {
+      variantsMaxSize = getMaxSize() / 2;
+    }
     super.onInitializationFinished(beansContainer);
   }
+
+  /**
+   * Set format of image variants. Images with alpha channel are stored as PNG if JPEG format is set.
+   * @param format compress format
+   * @param quality compress quality (0 - 100)
+   */
+  public void setVariantsFormat(final Bitmap.CompressFormat format, final int quality) {
+    this.variantsFormat = format;
+    this.variantsQuality = quality;
+  }
+
+  /** @param maxSize max size of image variants in bytes */
+  public void setVariantsMaxSize(final long maxSize) { this.variantsMaxSize = maxSize; }
+
+  /** @return max size of image variants in bytes */
+  public long getVariantsMaxSize() { return variantsMaxSize; }
+
+  /** @return current size of image variants in bytes */
+  public synchronized long getVariantsSize() { return variantsSize; }
+
+  /** @return directory with image variants */
+  public File getVariantsDirectory() {
+    File dir = getWorkingDirectory();
+    return new File(dir.getParentFile(), dir.getName() + VARIANTS_DIR_SUFFIX);
+  }
+
+  /**
+   * Find the smallest variant that can be displayed with the required size without scaling up.
+   * Variants of an original image that is expired according to the cache time rules are removed.
+   * Performs disk operations.
+   * @param url image URL
+   * @param width required width, non-positive value means any width
+   * @param height required height, non-positive value means any height
+   * @return image variant, null if there is no suitable variant
+   */
+  public Variant findVariant(final String url, final int width, final int height) {
+    final String key = getCacheKey(url);
+    if (key == null) { return null; }
+
+    synchronized (this) {
+      ensureVariantsLoaded();
+      if (!variants.containsKey(key)) { return null; }
+    }
+
+    // expired original is going to be loaded again, its variants must not be used
+    final long originalTime = containsActual(url) ? new File(getLocalPath(url)).lastModified() : 0;
+
+    synchronized (this) {
+      ArrayList<Variant> list = variants.get(key);
+      if (list == null) { return null; }
+      Variant result = null;
+      for (int i = list.size() - 1; i >= 0; i--) {
+        Variant variant = list.get(i);
+        if (originalTime == 0 || variant.time < originalTime) {
+          // original has been removed, updated or expired
+          removeVariant(list, i);
+          continue;
+        }
+        if (variant.suits(width, height) && (result == null || variant.area() < result.area())) {
+          result = variant;
+        }
+      }
+      if (list.isEmpty()) {
+        variants.remove(key);
+      }
+      if (result != null) {
+        // mark as recently used
+        variantsUsage.get(result.file);
+      }
+      return result;
+    }
+  }
+
+  /**
+   * Store a downsampled variant of a cached image. Nothing is stored if original image is not cached.
+   * Performs disk operations.
+   * @param url image URL
+   * @param sourceWidth width of the original image
+   * @param sourceHeight height of the original image
+   * @param bitmap downsampled image
+   * @throws IOException if error happens
+   */
+  public void putVariant(final String url, final int sourceWidth, final int sourceHeight, final Bitmap bitmap)
+      throws IOException {
+    final String key = getCacheKey(url);
+    if (key == null || !contains(url)) { return; }
+
+    Bitmap.CompressFormat format = variantsFormat;
+    if (format == Bitmap.CompressFormat.JPEG && bitmap.hasAlpha()) {
+      format = Bitmap.CompressFormat.PNG;
+    }
+
+    final File dir = getVariantsDirectory();
+    if (!dir.exists() && !dir.mkdirs()) {
+      throw new IOException("Cannot create " + dir);
+    }
+    final String name = key + "_" + bitmap.getWidth() + "x" + bitmap.getHeight()
+        + "_" + sourceWidth + "x" + sourceHeight + "." + format.name().toLowerCase(Locale.US);
+    final File file = new File(dir, name);
+    final File tmp = new File(dir, name + TMP_SUFFIX);
+
+    OutputStream output = getBuffersPool().bufferize(new FileOutputStream(tmp), IoUtils.BUFFER_SIZE_8K);
+    boolean written = false;
+    try {
+      written = bitmap.compress(format, variantsQuality, output);
+    } finally {
+      IoUtils.closeQuietly(output);
+      if (!written || !tmp.renameTo(file)) {
+        tmp.delete();
+        written = false;
+      }
+    }
+    if (!written) {
+      throw new IOException("Cannot write variant " + file);
+    }
+
+    final Variant variant = Variant.parse(file);
+    if (variant == null) { return; }
+    synchronized (this) {
+      ensureVariantsLoaded();
+      addVariant(variant);
+      trimVariants();
+    }
+  }
+
+  @Override
+  public boolean deleteGetEntry(final String url) throws IOException {
+    final boolean result = super.deleteGetEntry(url);
+    final String key = getCacheKey(url);
+    if (key != null) {
+      synchronized (this) {
+        ensureVariantsLoaded();
+        ArrayList<Variant> list = variants.remove(key);
+        if (list != null) {
+          for (int i = list.size() - 1; i >= 0; i--) {
+            removeVariant(list, i);
+          }
+        }
+      }
+    }
+    return result;
+  }
+
+  @Override
+  public void delete() throws IOException {
+    super.delete();
+    synchronized (this) {
+      variants.clear();
+      variantsUsage.clear();
+      variantsSize = 0;
+      variantsLoaded = false;
+      deleteDirectory(getVariantsDirectory());
+    }
+  }
+
+  private static void deleteDirectory(final File dir) {
+    File[] files = dir.listFiles();
+    if (files != null) {
+      for (File file : files) {
+        file.delete();
+      }
+    }
+    dir.delete();
+  }
+
+  private void ensureVariantsLoaded() {
+    if (variantsLoaded) { return; }
+    variantsLoaded = true;
+    File[] files = getVariantsDirectory().listFiles();
+    if (files == null) { return; }
+    // restore usage order
+    Arrays.sort(files, BY_MODIFICATION_TIME);
+    for (File file : files) {
+      Variant variant = Variant.parse(file);
+      if (variant == null) {
+        // garbage or temporary file
+        file.delete();
+      } else {
+        addVariant(variant);
+      }
+    }
+    trimVariants();
+  }
+
+  private void addVariant(final Variant variant) {
+    ArrayList<Variant> list = variants.get(variant.key);
+    if (list == null) {
+      list = new ArrayList<Variant>(1);
+      variants.put(variant.key, list);
+    }
+    for (int i = list.size() - 1; i >= 0; i--) {
+      if (list.get(i).file.equals(variant.file)) {
+        // replaced
+        variantsSize -= list.remove(i).length;
+      }
+    }
+    list.add(variant);
+    variantsUsage.put(variant.file, variant);
+    variantsSize += variant.length;
+  }
+
+  private void removeVariant(final ArrayList<Variant> list, final int index) {
+    Variant variant = list.remove(index);
+    variantsUsage.remove(variant.file);
+    variantsSize -= variant.length;
+    variant.file.delete();
+  }
+
+  /** Remove the least recently used variants. */
+  private void trimVariants() {
+    final Iterator<Variant> iterator = variantsUsage.values().iterator();
+    while (variantsSize > variantsMaxSize && iterator.hasNext()) {
+      final Variant eldest = iterator.next();
+      iterator.remove();
+      variantsSize -= eldest.length;
+      eldest.file.delete();
+      final ArrayList<Variant> list = variants.get(eldest.key);
+      if (list != null) {
+        list.remove(eldest);
+        if (list.isEmpty()) {
+          variants.remove(eldest.key);
+        }
+      }
+    }
+  }
   
   @Override
   protected CacheEntry createCacheEntry() { return new ImageCacheEntry(); }
 
+  /** Downsampled image variant. */
+  public static final class Variant {
+    /** Cache key of the original. */
+    final String key;
+    /** File. */
+    final File file;
+    /** Variant size. */
+    final int width, height;
+    /** Original image size. */
+    final int sourceWidth, sourceHeight;
+    /** Compress format. */
+    final String format;
+    /** File length. */
+    final long length;
+    /** Creation time. */
+    final long time;
+
+    private Variant(final Matcher m, final File file) {
+      this.key = m.group(1);
+      this.width = Integer.parseInt(m.group(2));
+      this.height = Integer.parseInt(m.group(3));
+      this.sourceWidth = Integer.parseInt(m.group(4));
+      this.sourceHeight = Integer.parseInt(m.group(5));
+      this.format = m.group(6);
+      this.file = file;
+      this.length = file.length();
+      this.time = file.lastModified();
+    }
+
+    static Variant parse(final File file) {
+      Matcher m = VARIANT_NAME.matcher(file.getName());
+      if (!m.matches()) { return null; }
+      try {
+        return new Variant(m, file);
+      } catch (final NumberFormatException e) {
+        return null;
+      }
+    }
+
+    public File getFile() { return file; }
+    public int getWidth() { return width; }
+    public int getHeight() { return height; }
+
+    /** @return whether the variant is compressed with WEBP */
+    public boolean isWebp() { return "webp".equals(format); }
+
+    long area() { return (long) width * height; }
+
+    /**
+     * @param width required width, non-positive value means any width
+     * @param height required height, non-positive value means any height
+     * @return whether variant is large enough to display the original image scaled to the required size
+     */
+    boolean suits(final int width, final int height) {
+      double scale = 1;
+      if (width > 0) {
+        scale = Math.min(scale, (double) width / sourceWidth);
+      }
+      if (height > 0) {
+        scale = Math.min(scale, (double) height / sourceHeight);
+      }
+      // allow rounding error
+      return this.width >= (int) (sourceWidth * scale) - 1 && this.height >= (int) (sourceHeight * scale) - 1;
+    }
+  }
+
   /** Image cache entry. */
   public static class ImageCacheEntry extends CacheEntry {
     /** Image type identifier. */
@@ -74,6 +424,16 @@ public class ImageFileCache extends BaseFileResponseCache implements Bean {
       imageType = readInt(in);
     }
 
+    @Override
+    protected void writeBinaryMetaData(final OutputStream out) throws IOException {
+      writeVarInt(out, imageType);
+    }
+
+    @Override
+    protected void readBinaryMetaData(final InputStream in) throws IOException {
+      imageType = readVarInt(in);
+    }
+
   }
 
   /** Cache rule. */
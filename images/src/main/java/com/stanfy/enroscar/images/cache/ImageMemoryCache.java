@@ -6,6 +6,7 @@ import com.stanfy.enroscar.beans.FlushableBean;
 
 /**
  * Interface of images memory cache.
+ * Cache may keep several variants (resolutions) of an image with the same URL.
  * @author Roman Mazur (Stanfy - http://www.stanfy.com)
  */
 public interface ImageMemoryCache extends FlushableBean {
@@ -14,6 +15,7 @@ public interface ImageMemoryCache extends FlushableBean {
   String BEAN_NAME = "ImageMemoryCache";
 
   /**
+   * Put an image variant. Variant with the same dimensions is replaced.
    * @param url URL
    * @param image image instance
    */
@@ -21,12 +23,26 @@ public interface ImageMemoryCache extends FlushableBean {
 
   /**
    * @param url URL
-   * @return image bitmap
+   * @return the largest cached image variant
    */
   Bitmap getElement(String url);
 
+  /**
+   * @param url URL
+   * @param width required width, non-positive value means any width
+   * @param height required height, non-positive value means any height
+   * @return the smallest cached image variant that is at least as large as the required size,
+   *         null if there is no such a variant
+   */
+  Bitmap getElement(String url, int width, int height);
+
   boolean contains(String url);
 
+  /**
+   * Remove all the variants of an image.
+   * @param url URL
+   * @return the largest removed variant
+   */
   Bitmap remove(String url);
 
   void clear();
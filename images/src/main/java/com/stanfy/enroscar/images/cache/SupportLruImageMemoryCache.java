@@ -3,26 +3,53 @@ package com.stanfy.enroscar.images.cache;
 import android.app.ActivityManager;
 import android.content.Context;
 import android.graphics.Bitmap;
-import android.support.v4.util.LruCache;
 import android.util.Log;
 
-import com.stanfy.enroscar.beans.Bean;
 import com.stanfy.enroscar.beans.BeansContainer;
 import com.stanfy.enroscar.beans.EnroscarBean;
+import com.stanfy.enroscar.beans.InitializingBean;
 import com.stanfy.enroscar.utils.Bitmaps;
 
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
 /**
- * Memory cache based on {@link LruCache}.
+ * LRU memory cache that keeps several resolutions of an image under one byte budget.
+ * <p>
+ *   When the budget is exceeded, variants that have a smaller variant of the same URL in the cache
+ *   are evicted first (in LRU order). Then the least recently used variants are evicted.
+ * </p>
+ * <p>
+ *   Evicted and replaced bitmaps are given to {@link BitmapPool} if it's defined.
+ * </p>
  * @author Roman Mazur (Stanfy - http://stanfy.com)
  */
 @EnroscarBean(value = ImageMemoryCache.BEAN_NAME, contextDependent = true)
-public class SupportLruImageMemoryCache implements ImageMemoryCache, Bean {
+public class SupportLruImageMemoryCache implements ImageMemoryCache, InitializingBean {
 
   /** 1 MB. */
   private static final int MB = 1024 * 1024;
 
-  /** LRU cache instance. */
-  private final LruCache<String, Bitmap> cache;
+  /** Load factor. */
+  private static final float LOAD_FACTOR = 0.75f;
+
+  /** Maximum size in bytes. */
+  private final int maxSize;
+
+  /** Current size in bytes. */
+  private int size;
+
+  /** Image variants in access order. */
+  private final LinkedHashMap<Variant, Bitmap> variants = new LinkedHashMap<Variant, Bitmap>(0, LOAD_FACTOR, true);
+
+  /** Variants of each URL sorted by area. */
+  private final HashMap<String, ArrayList<Variant>> urlVariants = new HashMap<String, ArrayList<Variant>>();
+
+  /** Pool for evicted bitmaps. */
+  private BitmapPool bitmapPool;
 
   public SupportLruImageMemoryCache(final Context context) {
     this(context, 0);
@@ -41,35 +68,167 @@ public class SupportLruImageMemoryCache implements ImageMemoryCache, Bean {
     }
 
     Log.i(BEAN_NAME, "Images cache size: " + cacheSize + "(" + (cacheSize / MB) + " MB)");
-    this.cache = new LruCache<String, Bitmap>(cacheSize) {
-      @Override
-      protected int sizeOf(final String key, final Bitmap value) {
-        return Bitmaps.bitmapSize(value);
-      };
-    };
+    this.maxSize = cacheSize;
   }
 
+  @Override
+  public void onInitializationFinished(final BeansContainer beansContainer) {
+    if (bitmapPool == null && beansContainer.containsBean(BitmapPool.BEAN_NAME)) {
+      bitmapPool = beansContainer.getBean(BitmapPool.BEAN_NAME, BitmapPool.class);
+    }
+  }
+
+  /** @param bitmapPool pool for evicted bitmaps */
+  public void setBitmapPool(final BitmapPool bitmapPool) { this.bitmapPool = bitmapPool; }
+
   @Override
   public void putElement(final String url, final Bitmap image) {
-    cache.put(url, image);
+    if (url == null || image == null) {
+      throw new NullPointerException("url == null || image == null");
+    }
+
+    Variant variant = new Variant(url, image.getWidth(), image.getHeight());
+    synchronized (this) {
+      Bitmap previous = variants.put(variant, image);
+      if (previous != null) {
+        size -= Bitmaps.bitmapSize(previous);
+        if (previous != image) {
+          recycle(previous);
+        }
+      } else {
+        addVariant(variant);
+      }
+      size += Bitmaps.bitmapSize(image);
+      trimToSize(maxSize, variant);
+    }
   }
 
   @Override
-  public Bitmap getElement(final String url) { return cache.get(url); }
+  public synchronized Bitmap getElement(final String url) {
+    ArrayList<Variant> list = urlVariants.get(url);
+    return list != null ? variants.get(list.get(list.size() - 1)) : null;
+  }
 
   @Override
-  public boolean contains(final String url) {
-    return cache.get(url) != null;
+  public synchronized Bitmap getElement(final String url, final int width, final int height) {
+    ArrayList<Variant> list = urlVariants.get(url);
+    if (list == null) {
+      return null;
+    }
+    int count = list.size();
+    //noinspection ForLoopReplaceableByForEach
+    for (int i = 0; i < count; i++) {
+      Variant variant = list.get(i);
+      if ((width <= 0 || variant.width >= width) && (height <= 0 || variant.height >= height)) {
+        return variants.get(variant);
+      }
+    }
+    return null;
   }
 
   @Override
-  public Bitmap remove(final String url) {
-    return cache.remove(url);
+  public synchronized boolean contains(final String url) {
+    return urlVariants.containsKey(url);
   }
 
   @Override
-  public void clear() {
-    cache.evictAll();
+  public synchronized Bitmap remove(final String url) {
+    ArrayList<Variant> list = urlVariants.remove(url);
+    if (list == null) {
+      return null;
+    }
+    // the largest variant is returned, others are given to the pool
+    final int last = list.size() - 1;
+    Bitmap result = null;
+    for (int i = 0; i <= last; i++) {
+      Bitmap bitmap = variants.remove(list.get(i));
+      size -= Bitmaps.bitmapSize(bitmap);
+      if (i == last) {
+        result = bitmap;
+      } else {
+        recycle(bitmap);
+      }
+    }
+    return result;
+  }
+
+  @Override
+  public synchronized void clear() {
+    variants.clear();
+    urlVariants.clear();
+    size = 0;
+  }
+
+  /** @return current size of cached images in bytes */
+  public synchronized int size() { return size; }
+
+  /** @return maximum size of cached images in bytes */
+  public int maxSize() { return maxSize; }
+
+  private void addVariant(final Variant variant) {
+    ArrayList<Variant> list = urlVariants.get(variant.url);
+    if (list == null) {
+      list = new ArrayList<Variant>(1);
+      urlVariants.put(variant.url, list);
+    }
+    long area = variant.area();
+    int index = list.size();
+    while (index > 0 && list.get(index - 1).area() > area) {
+      index--;
+    }
+    list.add(index, variant);
+  }
+
+  private void removeVariant(final Variant variant) {
+    ArrayList<Variant> list = urlVariants.get(variant.url);
+    list.remove(variant);
+    if (list.isEmpty()) {
+      urlVariants.remove(variant.url);
+    }
+  }
+
+  /** @return whether there is a smaller variant of the same image */
+  private boolean isOversized(final Variant variant) {
+    return urlVariants.get(variant.url).get(0) != variant;
+  }
+
+  /**
+   * @param maxSize maximum size in bytes
+   * @param added variant that has just been added, it's evicted only by the LRU rule
+   */
+  private void trimToSize(final int maxSize, final Variant added) {
+    if (size <= maxSize) {
+      return;
+    }
+
+    // oversized variants first
+    Iterator<Map.Entry<Variant, Bitmap>> i = variants.entrySet().iterator();
+    while (size > maxSize && i.hasNext()) {
+      Map.Entry<Variant, Bitmap> entry = i.next();
+      if (!entry.getKey().equals(added) && isOversized(entry.getKey())) {
+        i.remove();
+        evicted(entry);
+      }
+    }
+
+    i = variants.entrySet().iterator();
+    while (size > maxSize && i.hasNext()) {
+      Map.Entry<Variant, Bitmap> entry = i.next();
+      i.remove();
+      evicted(entry);
+    }
+  }
+
+  private void evicted(final Map.Entry<Variant, Bitmap> entry) {
+    size -= Bitmaps.bitmapSize(entry.getValue());
+    removeVariant(entry.getKey());
+    recycle(entry.getValue());
+  }
+
+  private void recycle(final Bitmap bitmap) {
+    if (bitmapPool != null) {
+      bitmapPool.put(bitmap);
+    }
   }
 
   @Override
@@ -78,4 +237,35 @@ public class SupportLruImageMemoryCache implements ImageMemoryCache, Bean {
     Log.i(BEAN_NAME, "Images memory cache flushed");
   }
 
+  /** Image variant key. */
+  private static final class Variant {
+    /** Image URL. */
+    final String url;
+    /** Image size. */
+    final int width, height;
+
+    Variant(final String url, final int width, final int height) {
+      this.url = url;
+      this.width = width;
+      this.height = height;
+    }
+
+    long area() {
+      return (long) width * height;
+    }
+
+    @Override
+    public boolean equals(final Object o) {
+      if (this == o) { return true; }
+      if (!(o instanceof Variant)) { return false; }
+      Variant v = (Variant) o;
+      return width == v.width && height == v.height && url.equals(v.url);
+    }
+
+    @Override
+    public int hashCode() {
+      return (url.hashCode() * 31 + width) * 31 + height;
+    }
+  }
+
 }
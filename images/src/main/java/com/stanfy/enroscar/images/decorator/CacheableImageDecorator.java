@@ -0,0 +1,29 @@
+package com.stanfy.enroscar.images.decorator;
+
+import android.graphics.Bitmap;
+
+/**
+ * Decorator that is applied by images manager in a worker thread right after an image is decoded.
+ * Decorated image is put to the memory cache, so that views draw it without any decoration work.
+ * <p>
+ *   Implementations must be thread-safe. Decoration effect must not depend on the drawable state.
+ * </p>
+ * @author Roman Mazur (Stanfy - http://www.stanfy.com)
+ */
+public interface CacheableImageDecorator {
+
+  /**
+   * Identifier is a part of the memory cache key.
+   * Decorators with equal identifiers must produce equal results.
+   * @return decorator identifier
+   */
+  String getId();
+
+  /**
+   * Decorate an image.
+   * @param source source bitmap, it's already scaled to the required size, it must not be modified
+   * @return decorated bitmap (new instance)
+   */
+  Bitmap decorate(Bitmap source);
+
+}
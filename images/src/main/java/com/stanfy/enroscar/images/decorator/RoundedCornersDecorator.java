@@ -0,0 +1,25 @@
+package com.stanfy.enroscar.images.decorator;
+
+/**
+ * Cacheable decorator that rounds image corners.
+ * Unlike {@link com.stanfy.enroscar.images.views.ImageView#setCornersRadius(int)} corners are applied
+ * to the image itself, not to the view bounds.
+ * @author Roman Mazur (Stanfy - http://www.stanfy.com)
+ */
+public class RoundedCornersDecorator extends ThreadLocalImageDecorator {
+
+  /** Radius. */
+  private final float radius;
+
+  /** @param radius corners radius in pixels */
+  public RoundedCornersDecorator(final float radius) {
+    super("corners:" + radius);
+    this.radius = radius;
+  }
+
+  @Override
+  protected ImageDecorator createDecorator() {
+    return new MaskImageDecorator(radius);
+  }
+
+}
@@ -0,0 +1,65 @@
+package com.stanfy.enroscar.images.decorator;
+
+import android.graphics.Bitmap;
+import android.graphics.Canvas;
+
+/**
+ * Adapts a usual {@link ImageDecorator} for decoration in worker threads.
+ * Each thread gets its own decorator instance created with {@link #createDecorator()}.
+ * @author Roman Mazur (Stanfy - http://www.stanfy.com)
+ */
+public abstract class ThreadLocalImageDecorator implements CacheableImageDecorator {
+
+  /** Drawable state passed to decorators. */
+  private static final int[] EMPTY_STATE = new int[0];
+
+  /** Identifier. */
+  private final String id;
+
+  /** Decorators. */
+  private final ThreadLocal<ImageDecorator> decorators = new ThreadLocal<ImageDecorator>() {
+    @Override
+    protected ImageDecorator initialValue() {
+      return createDecorator();
+    }
+  };
+
+  /** @param id decorator identifier, see {@link #getId()} */
+  protected ThreadLocalImageDecorator(final String id) {
+    this.id = id;
+  }
+
+  /** @return new decorator instance */
+  protected abstract ImageDecorator createDecorator();
+
+  @Override
+  public String getId() { return id; }
+
+  @Override
+  public Bitmap decorate(final Bitmap source) {
+    final int w = source.getWidth(), h = source.getHeight();
+    final Bitmap result = Bitmap.createBitmap(w, h, Bitmap.Config.ARGB_8888);
+    result.setDensity(source.getDensity());
+    final Canvas canvas = new Canvas(result);
+    canvas.drawBitmap(source, 0, 0, null);
+
+    final ImageDecorator decorator = decorators.get();
+    decorator.setup(w, h, EMPTY_STATE, 0, w, h);
+    final Bitmap decorated = decorator.decorateBitmap(result, canvas);
+    if (decorated == result || decorated == null) {
+      return result;
+    }
+
+    // decorators may return their own buffers
+    if (decorated.getWidth() == w && decorated.getHeight() == h) {
+      result.eraseColor(0);
+      canvas.drawBitmap(decorated, 0, 0, null);
+      return result;
+    }
+    result.recycle();
+    final Bitmap copy = decorated.copy(Bitmap.Config.ARGB_8888, true);
+    copy.setDensity(source.getDensity());
+    return copy;
+  }
+
+}
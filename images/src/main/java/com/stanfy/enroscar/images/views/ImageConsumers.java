@@ -13,6 +13,7 @@ import com.stanfy.enroscar.images.ImageRequest;
 import com.stanfy.enroscar.images.ImagesManager;
 import com.stanfy.enroscar.images.ViewImageConsumer;
 import com.stanfy.enroscar.images.ViewImageConsumerFactory;
+import com.stanfy.enroscar.images.decorator.CacheableImageDecorator;
 
 /**
  * Image holders.
@@ -56,6 +57,11 @@ public final class ImageConsumers implements ViewImageConsumerFactory {
       request.setSkipScaleBeforeMemCache(((LoadableImageView)getView()).isSkipScaleBeforeCache());
     }
 
+    @Override
+    public CacheableImageDecorator getDecorator() {
+      return ((LoadableImageView)getView()).getCacheableDecorator();
+    }
+
     @Override
     public boolean allowSmallImagesFromCache() {
       return ((LoadableImageView)getView()).isAllowSmallImagesInCache();
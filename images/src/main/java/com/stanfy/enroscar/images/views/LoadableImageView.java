@@ -12,6 +12,7 @@ import com.stanfy.enroscar.images.ImagesLoadListenerProvider;
 import com.stanfy.enroscar.images.ImagesManager;
 import com.stanfy.enroscar.images.R;
 import com.stanfy.enroscar.images.ViewImageConsumer;
+import com.stanfy.enroscar.images.decorator.CacheableImageDecorator;
 
 /**
  * Image view that can load a remote image.
@@ -30,6 +31,8 @@ public class LoadableImageView extends ImageView implements ImagesLoadListenerPr
   private boolean skipLoadingImage;
   /** Use transition option. */
   private int useTransition;
+  /** Decorator applied before memory caching. */
+  private CacheableImageDecorator cacheableDecorator;
 
   /** Images load listener. */
   private ImagesLoadListener listener;
@@ -106,6 +109,22 @@ public class LoadableImageView extends ImageView implements ImagesLoadListenerPr
     return skipScaleBeforeCache;
   }
 
+  /**
+   * Set a decorator that is applied to the loaded image in a worker thread.
+   * Decorated image is cached in memory, so unlike {@link #setImageDecorator(com.stanfy.enroscar.images.decorator.ImageDecorator)}
+   * no decoration work is done while drawing.
+   * Must be set before the image is requested.
+   * @param cacheableDecorator decorator instance
+   */
+  public void setCacheableDecorator(final CacheableImageDecorator cacheableDecorator) {
+    this.cacheableDecorator = cacheableDecorator;
+  }
+
+  /** @return decorator applied before memory caching */
+  public CacheableImageDecorator getCacheableDecorator() {
+    return cacheableDecorator;
+  }
+
   /** @param skipLoadingImage the skipLoadingImage to set */
   public void setSkipLoadingImage(final boolean skipLoadingImage) {
     this.skipLoadingImage = skipLoadingImage;
@@ -6,6 +6,8 @@ import android.graphics.BitmapFactory;
 import android.util.Base64;
 
 import com.google.mockwebserver.MockResponse;
+import com.stanfy.enroscar.images.cache.ImageFileCache;
+import com.stanfy.enroscar.images.decorator.RoundedCornersDecorator;
 import com.stanfy.enroscar.io.IoUtils;
 
 import org.hamcrest.BaseMatcher;
@@ -16,8 +18,10 @@ import org.mockito.stubbing.Answer;
 import org.robolectric.Robolectric;
 import org.robolectric.annotation.Config;
 
+import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
+import java.net.URL;
 
 import static com.stanfy.enroscar.images.TestUtils.*;
 import static org.fest.assertions.api.ANDROID.assertThat;
@@ -55,6 +59,19 @@ public class ImageRequestTest extends AbstractImagesTest {
     assertThat(request.hasAllowedSize()).isTrue();
   }
 
+  @Test
+  public void decoratorShouldBePartOfKeys() {
+    ImageRequest request = new ImageRequest(manager, "any", -1);
+    request.setRequiredWidth(10);
+    request.setRequiredHeight(20);
+    assertThat(request.getCacheKey()).isEqualTo("any");
+    assertThat(request.getKey()).isEqualTo("any!10x20");
+
+    request.setDecorator(new RoundedCornersDecorator(5));
+    assertThat(request.getCacheKey()).isEqualTo("any#corners:5.0");
+    assertThat(request.getKey()).isEqualTo("any#corners:5.0!10x20");
+  }
+
   @Test
   public void shouldNotThrowIfUndefinedRequiredSize() throws IOException {
     ImageRequest request = new ImageRequest(manager, defaultUrl, -1);
@@ -225,4 +242,157 @@ public class ImageRequestTest extends AbstractImagesTest {
     assertThat(diskResult.getType()).isSameAs(ImageSourceType.DISK);
   }
 
+  @Test
+  public void loadToDiskShouldNotDecodeCachedResponse() throws IOException {
+    final ImageRequest request = spy(new ImageRequest(manager, defaultUrl, -1));
+    assertThat(request.loadToDisk()).isNull();
+    verify(request, times(0)).doStreamDecode(any(InputStream.class), any(BitmapFactory.Options.class));
+    assertThat(manager.isPresentOnDisk(defaultUrl)).isTrue();
+    assertThat(server.getRequestCount()).isEqualTo(1);
+  }
+
+  @Test
+  public void loadToDiskShouldDecodeNotCachedResponseFromTheSameStream() throws IOException {
+    final ImageRequest request = spy(new ImageRequest(manager, defaultUrl, -1));
+    // connection without cache control: response is not accepted by the images cache
+    doReturn(new URL(defaultUrl).openConnection()).when(request).newUrlConnection();
+
+    final ImageResult result = request.loadToDisk();
+    assertThat(result).isNotNull();
+    assertThat(result.getBitmap()).isNotNull();
+    assertThat(server.getRequestCount()).isEqualTo(1);
+  }
+
+  @Test
+  public void notCachedResponseShouldBeDecodedWithoutBitmapReuse() throws IOException {
+    manager.getBitmapPool().put(Bitmap.createBitmap(TEST_BITMAP_SIZE, TEST_BITMAP_SIZE, Bitmap.Config.ARGB_8888));
+
+    final ImageRequest request = spy(new ImageRequest(manager, defaultUrl, -1));
+    doReturn(new URL(defaultUrl).openConnection()).when(request).newUrlConnection();
+    doAnswer(new Answer<Bitmap>() {
+      @Override
+      public Bitmap answer(final InvocationOnMock invocation) throws Throwable {
+        BitmapFactory.Options options = (BitmapFactory.Options) invocation.getArguments()[1];
+        options.outWidth = TEST_BITMAP_SIZE;
+        options.outHeight = TEST_BITMAP_SIZE;
+        options.outMimeType = "image/png";
+        if (options.inJustDecodeBounds) {
+          return null;
+        }
+        // a failed reuse could not be retried without downloading the image again
+        assertThat(options.inBitmap).isNull();
+        return Bitmap.createBitmap(TEST_BITMAP_SIZE, TEST_BITMAP_SIZE, Bitmap.Config.ARGB_8888);
+      }
+    }).when(request).doStreamDecode(any(InputStream.class), any(BitmapFactory.Options.class));
+
+    assertThat(request.loadToDisk().getBitmap()).isNotNull();
+    assertThat(server.getRequestCount()).isEqualTo(1);
+  }
+
+  @Test
+  public void failedDecodingShouldReturnReusedBitmapToPool() throws Exception {
+    // bitmaps are reused only for images that can be read again from the disk
+    putCachedContent(manager, defaultUrl);
+    final Bitmap reused = Bitmap.createBitmap(TEST_BITMAP_SIZE, TEST_BITMAP_SIZE, Bitmap.Config.ARGB_8888);
+    manager.getBitmapPool().put(reused);
+
+    final ImageRequest request = spy(new ImageRequest(manager, defaultUrl, -1));
+    doAnswer(new Answer<Bitmap>() {
+      @Override
+      public Bitmap answer(final InvocationOnMock invocation) throws Throwable {
+        BitmapFactory.Options options = (BitmapFactory.Options) invocation.getArguments()[1];
+        if (options.inJustDecodeBounds) {
+          options.outWidth = TEST_BITMAP_SIZE;
+          options.outHeight = TEST_BITMAP_SIZE;
+          options.outMimeType = "image/png";
+          return null;
+        }
+        assertThat(options.inBitmap).isSameAs(reused);
+        throw new IOException("test");
+      }
+    }).when(request).doStreamDecode(any(InputStream.class), any(BitmapFactory.Options.class));
+
+    try {
+      request.readImage();
+      fail("IOException expected");
+    } catch (IOException e) {
+      assertThat(e).hasMessage("test");
+    }
+    assertThat(manager.getBitmapPool().get(TEST_BITMAP_SIZE, TEST_BITMAP_SIZE, Bitmap.Config.ARGB_8888)).isSameAs(reused);
+  }
+
+  @Test
+  public void variantShouldBeRequiredOnlyForScaledImages() throws IOException {
+    ImageRequest request = new ImageRequest(manager, defaultUrl, -1);
+    request.readImage();
+    Bitmap small = Bitmap.createBitmap(TEST_BITMAP_SIZE / 2, TEST_BITMAP_SIZE / 2, Bitmap.Config.ARGB_8888);
+    Bitmap full = Bitmap.createBitmap(TEST_BITMAP_SIZE, TEST_BITMAP_SIZE, Bitmap.Config.ARGB_8888);
+    assertThat(request.isVariantRequired(small)).isTrue();
+    assertThat(request.isVariantRequired(full)).isFalse();
+  }
+
+  private ImageFileCache.Variant putVariant() throws Exception {
+    putCachedContent(manager, defaultUrl);
+    ImageFileCache cache = (ImageFileCache) manager.getImagesResponseCache();
+    cache.putVariant(defaultUrl, TEST_BITMAP_SIZE, TEST_BITMAP_SIZE,
+        Bitmap.createBitmap(TEST_BITMAP_SIZE / 2, TEST_BITMAP_SIZE / 2, Bitmap.Config.ARGB_8888));
+    ImageFileCache.Variant variant = cache.findVariant(defaultUrl, TEST_BITMAP_SIZE / 2, 0);
+    assertThat(variant).isNotNull();
+    assertThat(cache.findVariant(defaultUrl, TEST_BITMAP_SIZE, 0)).isNull();
+    return variant;
+  }
+
+  @Test
+  public void variantShouldBeDecodedForSmallerSize() throws Exception {
+    putVariant();
+    ImageRequest request = spy(new ImageRequest(manager, defaultUrl, -1));
+    request.setRequiredWidth(TEST_BITMAP_SIZE / 2);
+    request.setRequiredHeight(TEST_BITMAP_SIZE / 2);
+
+    ImageResult result = request.readImage();
+    assertThat(result.getType()).isSameAs(ImageSourceType.DISK);
+    // variant is decoded as is, without bounds decoding
+    verify(request, times(1)).doStreamDecode(any(InputStream.class), any(BitmapFactory.Options.class));
+    verify(request, times(0)).newUrlConnection();
+    assertThat(request.isVariantRequired(result.getBitmap())).isFalse();
+  }
+
+  @Test
+  public void leastRecentlyUsedVariantShouldBeTrimmed() throws Exception {
+    //CHECKSTYLE:OFF
+    putCachedContent(manager, defaultUrl);
+    ImageFileCache cache = (ImageFileCache) manager.getImagesResponseCache();
+    cache.putVariant(defaultUrl, TEST_BITMAP_SIZE, TEST_BITMAP_SIZE, Bitmap.createBitmap(50, 50, Bitmap.Config.ARGB_8888));
+    cache.putVariant(defaultUrl, TEST_BITMAP_SIZE, TEST_BITMAP_SIZE, Bitmap.createBitmap(40, 40, Bitmap.Config.ARGB_8888));
+    File used = cache.findVariant(defaultUrl, 45, 0).getFile();
+    File notUsed = cache.findVariant(defaultUrl, 40, 0).getFile();
+    // touch 50x50 variant
+    assertThat(cache.findVariant(defaultUrl, 45, 0).getFile()).isEqualTo(used);
+
+    cache.setVariantsMaxSize(cache.getVariantsSize());
+    cache.putVariant(defaultUrl, TEST_BITMAP_SIZE, TEST_BITMAP_SIZE, Bitmap.createBitmap(30, 30, Bitmap.Config.ARGB_8888));
+    //CHECKSTYLE:ON
+
+    assertThat(notUsed.exists()).isFalse();
+    assertThat(used.exists()).isTrue();
+    assertThat(cache.getVariantsSize()).isLessThanOrEqualTo(cache.getVariantsMaxSize());
+  }
+
+  @Test
+  public void variantsOfExpiredImageShouldBeRemoved() throws Exception {
+    File variantFile = putVariant().getFile();
+    ImageFileCache cache = spy((ImageFileCache) manager.getImagesResponseCache());
+    doReturn(false).when(cache).containsActual(defaultUrl);
+    manager = spy(manager);
+    doReturn(cache).when(manager).getImagesResponseCache();
+
+    ImageRequest request = spy(new ImageRequest(manager, defaultUrl, -1));
+    request.setRequiredWidth(TEST_BITMAP_SIZE / 2);
+    request.setRequiredHeight(TEST_BITMAP_SIZE / 2);
+    request.readImage();
+
+    verify(request).newUrlConnection();
+    assertThat(variantFile.exists()).isFalse();
+  }
+
 }
@@ -0,0 +1,61 @@
+package com.stanfy.enroscar.images;
+
+import org.junit.Test;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.PriorityBlockingQueue;
+
+import static org.fest.assertions.api.Assertions.assertThat;
+
+/**
+ * Tests for {@link ImageTask}.
+ */
+public class ImageTaskTest {
+
+  private static ImageTask task(final int priority) {
+    return new ImageTask(new Callable<Void>() {
+      @Override
+      public Void call() {
+        return null;
+      }
+    }, priority);
+  }
+
+  @Test
+  public void queueShouldPreferVisibleAndLatestTasks() {
+    PriorityBlockingQueue<Runnable> queue = new PriorityBlockingQueue<Runnable>(4, ImageTask.ORDER);
+    Runnable background = new Runnable() {
+      @Override
+      public void run() { }
+    };
+    ImageTask prefetch = task(ImageTask.PRIORITY_PREFETCH);
+    ImageTask visible1 = task(ImageTask.PRIORITY_VISIBLE);
+    ImageTask visible2 = task(ImageTask.PRIORITY_VISIBLE);
+    queue.add(background);
+    queue.add(visible1);
+    queue.add(prefetch);
+    queue.add(visible2);
+
+    assertThat(queue.poll()).isSameAs(visible2);
+    assertThat(queue.poll()).isSameAs(visible1);
+    assertThat(queue.poll()).isSameAs(prefetch);
+    assertThat(queue.poll()).isSameAs(background);
+  }
+
+  @Test
+  public void raisedPriorityShouldMoveTaskForward() {
+    PriorityBlockingQueue<Runnable> queue = new PriorityBlockingQueue<Runnable>(4, ImageTask.ORDER);
+    ImageTask prefetch = task(ImageTask.PRIORITY_PREFETCH);
+    ImageTask visible = task(ImageTask.PRIORITY_VISIBLE);
+    queue.add(prefetch);
+    queue.add(visible);
+
+    assertThat(queue.remove(prefetch)).isTrue();
+    prefetch.setPriority(ImageTask.PRIORITY_VISIBLE);
+    queue.add(prefetch);
+
+    assertThat(queue.poll()).isSameAs(prefetch);
+    assertThat(queue.poll()).isSameAs(visible);
+  }
+
+}
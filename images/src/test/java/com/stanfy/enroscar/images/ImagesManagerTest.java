@@ -4,6 +4,7 @@ import android.graphics.Bitmap;
 import android.os.Build;
 
 import com.stanfy.enroscar.beans.BeansManager;
+import com.stanfy.enroscar.images.cache.BitmapPool;
 import com.stanfy.enroscar.images.cache.SupportLruImageMemoryCache;
 
 import org.hamcrest.BaseMatcher;
@@ -13,6 +14,7 @@ import org.robolectric.Robolectric;
 import org.robolectric.annotation.Config;
 
 import java.io.IOException;
+import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
 import java.util.concurrent.Executor;
@@ -35,25 +37,96 @@ public class ImagesManagerTest extends AbstractImagesTest {
     ImagesManager imagesManager = BeansManager.get(Robolectric.application).getContainer().getBean(ImagesManager.class);
     SupportLruImageMemoryCache memCache = BeansManager.get(Robolectric.application).getContainer().getBean(SupportLruImageMemoryCache.class);
 
-    memCache.putElement("http://123.com", Bitmap.createBitmap(size - 1, size + 1, Bitmap.Config.ARGB_8888));
+    replaceElement(memCache, "http://123.com", Bitmap.createBitmap(size - 1, size + 1, Bitmap.Config.ARGB_8888));
     assertThat(imagesManager.getMemCached("http://123.com", new Consumer(size, size))).isNotNull();
 
-    memCache.putElement("http://123.com", Bitmap.createBitmap(size / 2, size + 1, Bitmap.Config.ARGB_8888));
+    replaceElement(memCache, "http://123.com", Bitmap.createBitmap(size / 2, size + 1, Bitmap.Config.ARGB_8888));
     assertThat(imagesManager.getMemCached("http://123.com", new Consumer(size, size))).isNull();
 
-    memCache.putElement("http://123.com", Bitmap.createBitmap(size / 2, size / 2, Bitmap.Config.ARGB_8888));
+    replaceElement(memCache, "http://123.com", Bitmap.createBitmap(size / 2, size / 2, Bitmap.Config.ARGB_8888));
     assertThat(imagesManager.getMemCached("http://123.com", new Consumer(size, size))).isNull();
 
-    memCache.putElement("http://123.com", Bitmap.createBitmap(size / 2, size / 2, Bitmap.Config.ARGB_8888));
+    replaceElement(memCache, "http://123.com", Bitmap.createBitmap(size / 2, size / 2, Bitmap.Config.ARGB_8888));
     assertThat(imagesManager.getMemCached("http://123.com", new Consumer(0, 0))).isNotNull();
 
-    memCache.putElement("http://123.com", Bitmap.createBitmap(size * 2, size * 2, Bitmap.Config.ARGB_8888));
+    replaceElement(memCache, "http://123.com", Bitmap.createBitmap(size * 2, size * 2, Bitmap.Config.ARGB_8888));
     assertThat(imagesManager.getMemCached("http://123.com", new Consumer(0, size))).isNotNull();
 
-    memCache.putElement("http://123.com", Bitmap.createBitmap(size / 2, size / 2, Bitmap.Config.ARGB_8888));
+    replaceElement(memCache, "http://123.com", Bitmap.createBitmap(size / 2, size / 2, Bitmap.Config.ARGB_8888));
     assertThat(imagesManager.getMemCached("http://123.com", new Consumer(0, size))).isNull();
   }
 
+  private static void replaceElement(final SupportLruImageMemoryCache memCache, final String url, final Bitmap bitmap) {
+    memCache.remove(url);
+    memCache.putElement(url, bitmap);
+  }
+
+  @Test
+  public void getFromMemCacheShouldChooseSmallestSuitableVariant() {
+    ImagesManager imagesManager = BeansManager.get(Robolectric.application).getContainer().getBean(ImagesManager.class);
+    SupportLruImageMemoryCache memCache = BeansManager.get(Robolectric.application).getContainer().getBean(SupportLruImageMemoryCache.class);
+    memCache.clear();
+
+    Bitmap small = Bitmap.createBitmap(10, 10, Bitmap.Config.ARGB_8888);
+    Bitmap medium = Bitmap.createBitmap(50, 50, Bitmap.Config.ARGB_8888);
+    Bitmap large = Bitmap.createBitmap(200, 200, Bitmap.Config.ARGB_8888);
+    memCache.putElement("http://123.com", large);
+    memCache.putElement("http://123.com", small);
+    memCache.putElement("http://123.com", medium);
+
+    assertThat(memCache.getElement("http://123.com", 40, 40)).isSameAs(medium);
+    assertThat(memCache.getElement("http://123.com", 10, 0)).isSameAs(small);
+    assertThat(memCache.getElement("http://123.com", 0, 0)).isSameAs(small);
+    assertThat(memCache.getElement("http://123.com", 300, 10)).isNull();
+    assertThat(memCache.getElement("http://123.com")).isSameAs(large);
+
+    assertThat(imagesManager.getMemCached("http://123.com", new Consumer(50, 50))).isSameAs(medium);
+    assertThat(imagesManager.getMemCached("http://123.com", new Consumer(200, 200))).isSameAs(large);
+
+    assertThat(memCache.remove("http://123.com")).isSameAs(large);
+    assertThat(memCache.contains("http://123.com")).isFalse();
+    assertThat(memCache.size()).isZero();
+  }
+
+  @Test
+  public void memCacheShouldEvictOversizedVariantsFirst() {
+    Bitmap small = Bitmap.createBitmap(10, 10, Bitmap.Config.ARGB_8888);
+    Bitmap large = Bitmap.createBitmap(20, 20, Bitmap.Config.ARGB_8888);
+    Bitmap other = Bitmap.createBitmap(10, 10, Bitmap.Config.ARGB_8888);
+    Bitmap third = Bitmap.createBitmap(10, 10, Bitmap.Config.ARGB_8888);
+    final int bytesPerPixel = 4;
+    SupportLruImageMemoryCache memCache = new SupportLruImageMemoryCache(Robolectric.application,
+        (10 * 10 + 20 * 20 + 10 * 10) * bytesPerPixel);
+
+    memCache.putElement("http://2.com", small);
+    memCache.putElement("http://2.com", large);
+    memCache.putElement("http://1.com", other);
+    memCache.putElement("http://3.com", third);
+
+    // large variant is evicted instead of the least recently used small one
+    assertThat(memCache.getElement("http://2.com")).isSameAs(small);
+    assertThat(memCache.getElement("http://1.com")).isSameAs(other);
+    assertThat(memCache.getElement("http://3.com")).isSameAs(third);
+    assertThat(memCache.size()).isEqualTo(3 * 10 * 10 * bytesPerPixel);
+  }
+
+  @Test
+  public void memCacheRemoveShouldGiveNotReturnedVariantsToPool() {
+    Bitmap small = Bitmap.createBitmap(10, 10, Bitmap.Config.ARGB_8888);
+    Bitmap large = Bitmap.createBitmap(20, 20, Bitmap.Config.ARGB_8888);
+    BitmapPool pool = mock(BitmapPool.class);
+    SupportLruImageMemoryCache memCache = new SupportLruImageMemoryCache(Robolectric.application);
+    memCache.setBitmapPool(pool);
+
+    memCache.putElement("http://2.com", small);
+    memCache.putElement("http://2.com", large);
+
+    assertThat(memCache.remove("http://2.com")).isSameAs(large);
+    verify(pool).put(small);
+    verify(pool, never()).put(large);
+    assertThat(memCache.size()).isZero();
+  }
+
   @Test
   public void calculateSampleFactorShouldRespectDynamicSize() {
     //CHECKSTYLE:OFF
@@ -107,6 +180,31 @@ public class ImagesManagerTest extends AbstractImagesTest {
     }), isNull(Executor.class));
   }
 
+  @Test
+  public void prefetchShouldSkipLoadedImagesAndBeCancelable() {
+    final List<Runnable> tasks = new ArrayList<Runnable>();
+    manager = spy(manager);
+    doReturn(new Executor() {
+      @Override
+      public void execute(final Runnable command) {
+        tasks.add(command);
+      }
+    }).when(manager).getImageTaskExecutor();
+
+    SupportLruImageMemoryCache memCache = BeansManager.get(Robolectric.application).getContainer().getBean(SupportLruImageMemoryCache.class);
+    memCache.putElement("http://cached.com", Bitmap.createBitmap(10, 10, Bitmap.Config.ARGB_8888));
+    assertThat(manager.prefetchImage("http://cached.com", 10, 10)).isNull();
+
+    ImagePrefetch prefetch = manager.prefetchImage("http://prefetch.com", 10, 10);
+    assertThat(prefetch).isNotNull();
+    assertThat(tasks).hasSize(1);
+    assertThat(manager.prefetchImage("http://prefetch.com", 10, 10)).isNull();
+
+    assertThat(prefetch.cancel()).isTrue();
+    assertThat(prefetch.isDone()).isTrue();
+    assertThat(manager.currentLoads).isEmpty();
+  }
+
   @Test
   public void ensureImagesShouldDelegateToRequestAndIgnoreErrors() throws IOException {
     ImageRequest request = spy(new ImageRequest(manager, "1", 1));
@@ -0,0 +1,83 @@
+package com.stanfy.enroscar.images.cache;
+
+import android.graphics.Bitmap;
+import android.os.Build;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.Robolectric;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+
+import static org.fest.assertions.api.Assertions.assertThat;
+
+/**
+ * Tests for {@link BitmapPool}.
+ */
+@RunWith(RobolectricTestRunner.class)
+@Config(emulateSdk = Build.VERSION_CODES.JELLY_BEAN_MR2)
+public class BitmapPoolTest {
+
+  /** Bytes per pixel. */
+  private static final int BPP = 4;
+
+  /** Pool instance. */
+  private BitmapPool pool;
+
+  @Before
+  public void init() {
+    pool = new BitmapPool(Robolectric.application, 2 * 10 * 10 * BPP);
+  }
+
+  private static Bitmap bitmap(final int size) {
+    return Bitmap.createBitmap(size, size, Bitmap.Config.ARGB_8888);
+  }
+
+  @Test
+  public void shouldReuseBitmapsOfTheSameSize() {
+    Bitmap bitmap = bitmap(10);
+    assertThat(pool.put(bitmap)).isTrue();
+    assertThat(pool.size()).isEqualTo(10 * 10 * BPP);
+
+    assertThat(pool.get(5, 5, Bitmap.Config.ARGB_8888)).isNull();
+    assertThat(pool.get(10, 10, Bitmap.Config.ARGB_8888)).isSameAs(bitmap);
+    assertThat(pool.get(10, 10, Bitmap.Config.ARGB_8888)).isNull();
+    assertThat(pool.size()).isZero();
+  }
+
+  @Test
+  public void displayedBitmapsShouldBeReusedAfterRelease() {
+    Bitmap bitmap = bitmap(10);
+    pool.acquire(bitmap);
+    pool.acquire(bitmap);
+    pool.put(bitmap);
+    assertThat(pool.count()).isZero();
+
+    pool.release(bitmap);
+    assertThat(pool.count()).isZero();
+    pool.release(bitmap);
+    assertThat(pool.get(10, 10, Bitmap.Config.ARGB_8888)).isSameAs(bitmap);
+  }
+
+  @Test
+  public void retainedBitmapsShouldNotBeReused() {
+    Bitmap bitmap = bitmap(10);
+    pool.retain(bitmap);
+    assertThat(pool.put(bitmap)).isFalse();
+    assertThat(pool.count()).isZero();
+  }
+
+  @Test
+  public void shouldTrimToMaxSize() {
+    pool.put(bitmap(10));
+    pool.put(bitmap(10));
+    pool.put(bitmap(10));
+    assertThat(pool.count()).isEqualTo(2);
+    assertThat(pool.size()).isEqualTo(pool.maxSize());
+
+    pool.put(bitmap(20));
+    assertThat(pool.count()).isEqualTo(2);
+  }
+
+}
@@ -0,0 +1,49 @@
+package com.stanfy.enroscar.images.cache;
+
+import android.os.Build;
+
+import com.stanfy.enroscar.images.cache.ImageFileCache.Variant;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+
+import java.io.File;
+
+import static org.fest.assertions.api.Assertions.assertThat;
+
+/**
+ * Tests for {@link ImageFileCache}.
+ */
+@RunWith(RobolectricTestRunner.class)
+@Config(emulateSdk = Build.VERSION_CODES.JELLY_BEAN_MR2)
+public class ImageFileCacheTest {
+
+  @Test
+  public void variantShouldBeParsedFromFileName() {
+    Variant variant = Variant.parse(new File("abc_100x50_400x200.jpeg"));
+    assertThat(variant).isNotNull();
+    assertThat(variant.key).isEqualTo("abc");
+    assertThat(variant.getWidth()).isEqualTo(100);
+    assertThat(variant.getHeight()).isEqualTo(50);
+    assertThat(variant.isWebp()).isFalse();
+    assertThat(Variant.parse(new File("abc_100x50_400x200.webp")).isWebp()).isTrue();
+
+    assertThat(Variant.parse(new File("abc_100x50_400x200.jpeg.tmp"))).isNull();
+    assertThat(Variant.parse(new File("abc.0"))).isNull();
+  }
+
+  @Test
+  public void variantShouldSuitSizesItIsNotScaledUpFor() {
+    //CHECKSTYLE:OFF
+    Variant variant = Variant.parse(new File("abc_100x50_400x200.jpeg"));
+    assertThat(variant.suits(100, 100)).isTrue();
+    assertThat(variant.suits(50, 0)).isTrue();
+    assertThat(variant.suits(0, 50)).isTrue();
+    assertThat(variant.suits(200, 100)).isFalse();
+    assertThat(variant.suits(0, 0)).isFalse();
+    //CHECKSTYLE:ON
+  }
+
+}
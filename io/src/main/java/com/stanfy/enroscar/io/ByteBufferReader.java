@@ -0,0 +1,105 @@
+package com.stanfy.enroscar.io;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.Reader;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CodingErrorAction;
+
+/**
+ * Reader that decodes characters directly from a byte buffer.
+ * @see IoUtils#newReader(java.io.InputStream, Charset)
+ * @author Roman Mazur (Stanfy - http://stanfy.com)
+ */
+class ByteBufferReader extends Reader {
+
+  /** End of file code. */
+  private static final int EOF = -1;
+
+  /** Source bytes. */
+  private final ByteBuffer source;
+
+  /** Decoder. */
+  private final CharsetDecoder decoder;
+
+  /** Stream to close. */
+  private final Closeable closeable;
+
+  /** Low surrogate that did not fit into the previous read. */
+  private char pending;
+  /** Whether {@link #pending} is set. */
+  private boolean hasPending;
+
+  /** Whether decoder has been flushed. */
+  private boolean flushed;
+
+  ByteBufferReader(final ByteBuffer source, final Charset charset, final Closeable closeable) {
+    this.source = source;
+    this.closeable = closeable;
+    this.decoder = charset.newDecoder()
+        .onMalformedInput(CodingErrorAction.REPLACE)
+        .onUnmappableCharacter(CodingErrorAction.REPLACE);
+  }
+
+  @Override
+  public int read(final char[] cbuf, final int off, final int len) throws IOException {
+    if (len == 0) {
+      return 0;
+    }
+
+    int start = off;
+    if (hasPending) {
+      cbuf[start++] = pending;
+      hasPending = false;
+      if (len == 1) {
+        return 1;
+      }
+    }
+
+    final CharBuffer out = CharBuffer.wrap(cbuf, start, len - (start - off));
+    decode(out);
+    final int count = out.position() - off;
+    if (count > 0) {
+      return count;
+    }
+    if (flushed || !source.hasRemaining()) {
+      return EOF;
+    }
+
+    // there is no room for a surrogate pair
+    final CharBuffer pair = CharBuffer.allocate(2);
+    decode(pair);
+    pair.flip();
+    cbuf[off] = pair.get();
+    if (pair.hasRemaining()) {
+      pending = pair.get();
+      hasPending = true;
+    }
+    return 1;
+  }
+
+  private void decode(final CharBuffer out) {
+    // decoder cannot be used after it's flushed
+    if (flushed) {
+      return;
+    }
+    decoder.decode(source, out, true);
+    if (!source.hasRemaining() && out.hasRemaining()) {
+      flushed = decoder.flush(out).isUnderflow();
+    }
+  }
+
+  @Override
+  public boolean ready() {
+    return hasPending || source.hasRemaining();
+  }
+
+  @Override
+  public void close() throws IOException {
+    closeable.close();
+  }
+
+}
@@ -0,0 +1,22 @@
+package com.stanfy.enroscar.io;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+/**
+ * Input stream that can expose its remaining content as a {@link ByteBuffer} without copying it.
+ * Stream wrappers that do not transform data may implement this interface delegating to the wrapped stream.
+ * @see IoUtils#getByteBuffer(java.io.InputStream)
+ * @author Roman Mazur (Stanfy - http://stanfy.com)
+ */
+public interface ByteBufferSource {
+
+  /**
+   * Buffer position is the current stream position, its limit is the end of stream content.
+   * Reading from the buffer does not affect the stream.
+   * @return read-only buffer with remaining stream content, null if it's not available
+   * @throws IOException if an I/O error happens
+   */
+  ByteBuffer asByteBuffer() throws IOException;
+
+}
@@ -3,10 +3,15 @@ package com.stanfy.enroscar.io;
 import java.io.BufferedInputStream;
 import java.io.ByteArrayOutputStream;
 import java.io.Closeable;
+import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.InputStreamReader;
 import java.io.OutputStream;
+import java.io.Reader;
 import java.net.URLConnection;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
 import java.nio.charset.Charset;
 import java.util.zip.GZIPInputStream;
 import java.util.zip.Inflater;
@@ -72,6 +77,15 @@ public final class IoUtils {
    * @throws IOException if an error happens
    */
   public static String streamToString(final InputStream stream, final String charset, final BuffersPool buffersPool) throws IOException {
+    final ByteBuffer buffer = getByteBuffer(stream);
+    if (buffer != null) {
+      try {
+        return Charset.forName(charset).decode(buffer).toString();
+      } finally {
+        closeQuietly(stream);
+      }
+    }
+
     ByteArrayOutputStream output = new ByteArrayOutputStream();
     transfer(stream, output, buffersPool);
     return new String(output.toByteArray(), charset);
@@ -100,6 +114,16 @@ public final class IoUtils {
    * @throws IOException if an error happens
    */
   public static void transfer(final InputStream input, final OutputStream output, final BuffersPool buffersPool) throws IOException {
+    final ByteBuffer source = getByteBuffer(input);
+    if (source != null) {
+      try {
+        transfer(source, output, buffersPool);
+      } finally {
+        closeQuietly(input);
+      }
+      return;
+    }
+
     final InputStream in = buffersPool == null
         ? new BufferedInputStream(input, BUFFER_SIZE_8K)
         : new PoolableBufferedInputStream(input, BUFFER_SIZE_8K, buffersPool);
@@ -123,6 +147,57 @@ public final class IoUtils {
     }
   }
 
+  private static void transfer(final ByteBuffer source, final OutputStream output, final BuffersPool buffersPool) throws IOException {
+    if (output instanceof FileOutputStream) {
+      final FileChannel channel = ((FileOutputStream) output).getChannel();
+      while (source.hasRemaining()) {
+        channel.write(source);
+      }
+      return;
+    }
+
+    final byte[] buffer = buffersPool == null
+        ? new byte[BUFFER_SIZE_8K]
+        : buffersPool.get(BUFFER_SIZE_8K);
+    try {
+      while (source.hasRemaining()) {
+        final int cnt = Math.min(buffer.length, source.remaining());
+        source.get(buffer, 0, cnt);
+        output.write(buffer, 0, cnt);
+      }
+      output.flush();
+    } finally {
+      if (buffersPool != null) {
+        buffersPool.release(buffer);
+      }
+    }
+  }
+
+  /**
+   * @param input input stream
+   * @return buffer with remaining stream content if the stream is a {@link ByteBufferSource}, null otherwise
+   * @throws IOException if an error happens
+   */
+  public static ByteBuffer getByteBuffer(final InputStream input) throws IOException {
+    return input instanceof ByteBufferSource ? ((ByteBufferSource) input).asByteBuffer() : null;
+  }
+
+  /**
+   * Create a reader for the input stream. If the stream is a {@link ByteBufferSource}
+   * characters are decoded directly from its buffer.
+   * Input stream is closed when the reader is closed.
+   * @param input input stream
+   * @param charset characters set
+   * @return reader instance
+   * @throws IOException if an error happens
+   */
+  public static Reader newReader(final InputStream input, final Charset charset) throws IOException {
+    final ByteBuffer buffer = getByteBuffer(input);
+    return buffer != null
+        ? new ByteBufferReader(buffer, charset, input)
+        : new InputStreamReader(input, charset);
+  }
+
   /**
    * Consume the stream and close it.
    * This implementation calls {@link InputStream#read(byte[])} method and ignores any read bytes.
@@ -0,0 +1,75 @@
+package com.stanfy.enroscar.io;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * Input stream that reads a file mapped into memory.
+ * Its content can be accessed without intermediate heap copies via {@link #asByteBuffer()}.
+ * Channel is closed when this stream is closed.
+ * @author Roman Mazur (Stanfy - http://stanfy.com)
+ */
+public class MappedFileInputStream extends InputStream implements ByteBufferSource {
+
+  /** End of file code. */
+  private static final int EOF = -1;
+  /** Byte mask. */
+  private static final int BYTE_MASK = 0xFF;
+
+  /** File channel. */
+  private final FileChannel channel;
+
+  /** Mapped file content. */
+  private final ByteBuffer buffer;
+
+  public MappedFileInputStream(final FileChannel channel) throws IOException {
+    this.channel = channel;
+    this.buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+  }
+
+  @Override
+  public ByteBuffer asByteBuffer() {
+    return buffer.asReadOnlyBuffer();
+  }
+
+  @Override
+  public int read() throws IOException {
+    return buffer.hasRemaining() ? buffer.get() & BYTE_MASK : EOF;
+  }
+
+  @Override
+  public int read(final byte[] b, final int off, final int len) throws IOException {
+    if (len == 0) {
+      return 0;
+    }
+    final int count = Math.min(len, buffer.remaining());
+    if (count == 0) {
+      return EOF;
+    }
+    buffer.get(b, off, count);
+    return count;
+  }
+
+  @Override
+  public long skip(final long n) throws IOException {
+    if (n <= 0) {
+      return 0;
+    }
+    final int count = (int) Math.min(n, buffer.remaining());
+    buffer.position(buffer.position() + count);
+    return count;
+  }
+
+  @Override
+  public int available() throws IOException {
+    return buffer.remaining();
+  }
+
+  @Override
+  public void close() throws IOException {
+    channel.close();
+  }
+
+}
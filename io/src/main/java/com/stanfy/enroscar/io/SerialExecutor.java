@@ -0,0 +1,167 @@
+package com.stanfy.enroscar.io;
+
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Executor that runs tasks one by one delegating them to another executor.
+ * <p>
+ *   Submission does not take locks: tasks are put into a multi-producer single-consumer queue
+ *   and an atomic flag defines whether there is a drain task passed to the delegate executor.
+ *   One drain task runs up to {@code drainBatch} queued tasks back to back, then it's
+ *   passed to the delegate again if there are more tasks.
+ * </p>
+ * <p>
+ *   Exception thrown by a task is propagated to the delegate executor, the rest of the tasks
+ *   are executed with the next drain task.
+ * </p>
+ */
+public class SerialExecutor implements Executor {
+
+  /** Delegate executor. */
+  private final Executor delegate;
+
+  /** Maximum number of tasks run by one drain task. */
+  private final int drainBatch;
+
+  /** Whether drain task is scheduled or running. Its owner is the only queue consumer. */
+  private final AtomicBoolean running = new AtomicBoolean();
+
+  /** Last added node. */
+  private final AtomicReference<Node> tail;
+  /** Node preceding the first queued task. Accessed by the drain owner only. */
+  private Node head;
+
+  /** Drain task. */
+  private final Runnable drainTask = new Runnable() {
+    @Override
+    public void run() {
+      drain();
+    }
+  };
+
+  public SerialExecutor(final Executor delegate) {
+    this(delegate, 1);
+  }
+
+  /**
+   * @param delegate executor that actually runs tasks
+   * @param drainBatch maximum number of tasks executed within one delegate dispatch
+   */
+  public SerialExecutor(final Executor delegate, final int drainBatch) {
+    if (delegate == null) {
+      throw new IllegalArgumentException("Null delegate executor");
+    }
+    if (drainBatch <= 0) {
+      throw new IllegalArgumentException("Bad drain batch " + drainBatch);
+    }
+    this.delegate = delegate;
+    this.drainBatch = drainBatch;
+    this.head = new Node(null);
+    this.tail = new AtomicReference<>(head);
+  }
+
+  @SuppressWarnings("NullableProblems")
+  @Override
+  public void execute(final Runnable command) {
+    if (command == null) {
+      throw new NullPointerException("Null task");
+    }
+    Node node = new Node(command);
+    tail.getAndSet(node).next = node;
+    if (!running.get() && running.compareAndSet(false, true)) {
+      dispatchDrain();
+    }
+  }
+
+  /**
+   * Takes the next task from the queue.
+   * Can be called by the drain owner only: from {@link #next()} and
+   * {@link #dispatch(Runnable)}.
+   * @return next queued task, null if the queue is empty
+   */
+  protected final Runnable pollQueue() {
+    Node first = head.next;
+    if (first == null) {
+      if (tail.get() == head) {
+        return null;
+      }
+      // producer has swapped the tail but has not linked the node yet
+      do {
+        Thread.yield();
+        first = head.next;
+      } while (first == null);
+    }
+    Runnable task = first.task;
+    first.task = null;
+    head = first;
+    return task;
+  }
+
+  /**
+   * Called by the drain task in order to get the next task to run.
+   * Subclasses may reorder tasks here.
+   * @return next task or null if there are no more tasks
+   */
+  protected Runnable next() {
+    return pollQueue();
+  }
+
+  /**
+   * @return whether subclass keeps tasks already taken with {@link #pollQueue()}
+   */
+  protected boolean hasPolledTasks() {
+    return false;
+  }
+
+  /**
+   * Passes the drain task to the delegate executor.
+   * Called by the drain owner.
+   * @param drainTask task that runs queued tasks
+   */
+  protected void dispatch(final Runnable drainTask) {
+    delegate.execute(drainTask);
+  }
+
+  private void dispatchDrain() {
+    try {
+      dispatch(drainTask);
+    } catch (RuntimeException e) {
+      running.set(false);
+      throw e;
+    }
+  }
+
+  private void drain() {
+    try {
+      for (int i = 0; i < drainBatch; i++) {
+        Runnable task = next();
+        if (task == null) {
+          break;
+        }
+        task.run();
+      }
+    } finally {
+      Node last = head;
+      boolean polled = hasPolledTasks();
+      running.set(false);
+      if ((polled || tail.get() != last) && running.compareAndSet(false, true)) {
+        dispatchDrain();
+      }
+    }
+  }
+
+  /** Queue node. */
+  private static final class Node {
+    /** Next node. */
+    volatile Node next;
+    /** Task. */
+    Runnable task;
+
+    Node(final Runnable task) {
+      this.task = task;
+    }
+  }
+
+}
@@ -0,0 +1,209 @@
+package com.stanfy.enroscar.io;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Buffers pool that does not use a global lock.
+ * Requested capacities are rounded up to power-of-two size classes. Every class is backed by a fixed
+ * array of slots that are taken and filled with compare-and-set operations, and each thread starts
+ * scanning the slots from its own stripe.
+ * <p>
+ * Amount of bytes retained by every class is limited, extra released buffers are
+ * left to the garbage collector. Buffers larger than the biggest size class are never retained.
+ * Buffers are not cached per thread, so nothing is kept for threads that have finished.
+ * </p>
+ * @see BuffersPool
+ * @author Roman Mazur - Stanfy (http://www.stanfy.com)
+ */
+public class SizeClassBuffersPool extends BuffersPool {
+
+  /** Default cap of bytes retained by one size class. */
+  public static final int DEFAULT_MAX_RETAINED_BYTES = 256 * 1024;
+
+  /** Shift of the smallest size class (1K). */
+  static final int MIN_CLASS_SHIFT = 10;
+  /** Shift of the biggest size class (256K). */
+  static final int MAX_CLASS_SHIFT = 18;
+
+  /** Number of size classes. */
+  private static final int CLASSES_COUNT = MAX_CLASS_SHIFT - MIN_CLASS_SHIFT + 1;
+
+  /** Default pool configuration. */
+  private static final int[][] DESCRIPTION_DEFAULT = {
+      {4, IoUtils.BUFFER_SIZE_16K}, {2, IoUtils.BUFFER_SIZE_8K}
+  };
+
+  /** Shared slots of each size class. */
+  private final AtomicReferenceArray<?>[] slots = new AtomicReferenceArray<?>[CLASSES_COUNT];
+
+  /** Stats counter. */
+  private final AtomicInteger usedBuffersCount = new AtomicInteger(), allocatedBuffersCount = new AtomicInteger();
+
+  public SizeClassBuffersPool() {
+    this(DESCRIPTION_DEFAULT);
+  }
+
+  public SizeClassBuffersPool(final int[][] initDescription) {
+    this(initDescription, DEFAULT_MAX_RETAINED_BYTES);
+  }
+
+  /**
+   * @param initDescription preallocated buffers description, see {@link BuffersPool#BuffersPool(int[][])}
+   * @param maxRetainedBytes maximum amount of bytes retained by one size class;
+   *                         at least one buffer of each class is always retained
+   */
+  public SizeClassBuffersPool(final int[][] initDescription, final int maxRetainedBytes) {
+    super(new int[0][]);
+    if (maxRetainedBytes < 0) {
+      throw new IllegalArgumentException("Negative limit: " + maxRetainedBytes);
+    }
+
+    for (int i = 0; i < CLASSES_COUNT; i++) {
+      int count = Math.max(1, maxRetainedBytes >> (MIN_CLASS_SHIFT + i));
+      slots[i] = new AtomicReferenceArray<byte[]>(count);
+    }
+
+    for (int i = initDescription.length - 1; i >= 0; i--) {
+      int count = initDescription[i][0];
+      int shift = ceilShift(initDescription[i][1]);
+      if (shift > MAX_CLASS_SHIFT) {
+        continue;
+      }
+      for (int k = count - 1; k >= 0; k--) {
+        allocatedBuffersCount.incrementAndGet();
+        push(shift - MIN_CLASS_SHIFT, new byte[1 << shift], 0);
+      }
+    }
+  }
+
+  /** @return size class shift that can satisfy the requested capacity */
+  private static int ceilShift(final int capacity) {
+    if (capacity <= 1 << MIN_CLASS_SHIFT) {
+      return MIN_CLASS_SHIFT;
+    }
+    return Integer.SIZE - Integer.numberOfLeadingZeros(capacity - 1);
+  }
+
+  @SuppressWarnings("unchecked")
+  private AtomicReferenceArray<byte[]> slots(final int index) {
+    return (AtomicReferenceArray<byte[]>) slots[index];
+  }
+
+  private byte[] pop(final int index, final int probe) {
+    AtomicReferenceArray<byte[]> array = slots(index);
+    int length = array.length();
+    int start = probe % length;
+    for (int i = 0; i < length; i++) {
+      int pos = start + i;
+      if (pos >= length) {
+        pos -= length;
+      }
+      byte[] buffer = array.get(pos);
+      if (buffer != null && array.compareAndSet(pos, buffer, null)) {
+        return buffer;
+      }
+    }
+    return null;
+  }
+
+  private boolean push(final int index, final byte[] buffer, final int probe) {
+    AtomicReferenceArray<byte[]> array = slots(index);
+    int length = array.length();
+    int start = probe % length;
+    for (int i = 0; i < length; i++) {
+      int pos = start + i;
+      if (pos >= length) {
+        pos -= length;
+      }
+      if (array.get(pos) == null && array.compareAndSet(pos, null, buffer)) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  /** @return index of the first slot the current thread scans */
+  private static int probe() {
+    long id = Thread.currentThread().getId();
+    return (int) ((id ^ (id >>> Integer.SIZE)) & Integer.MAX_VALUE);
+  }
+
+  @Override
+  public byte[] get(final int minCapacity) {
+    usedBuffersCount.incrementAndGet();
+
+    int shift = ceilShift(minCapacity);
+    if (shift > MAX_CLASS_SHIFT) {
+      allocatedBuffersCount.incrementAndGet();
+      return new byte[minCapacity];
+    }
+
+    byte[] buffer = pop(shift - MIN_CLASS_SHIFT, probe());
+    if (buffer != null) {
+      return buffer;
+    }
+
+    allocatedBuffersCount.incrementAndGet();
+    return new byte[1 << shift];
+  }
+
+  @Override
+  public void release(final byte[] buffer) {
+    if (buffer == null) {
+      return;
+    }
+
+    final int capacity = buffer.length;
+    if (capacity == 0) {
+      return;
+    }
+
+    usedBuffersCount.decrementAndGet();
+
+    // a buffer can serve requests up to the biggest power of two that does not exceed its length
+    int shift = Integer.SIZE - 1 - Integer.numberOfLeadingZeros(capacity);
+    if (shift < MIN_CLASS_SHIFT || shift > MAX_CLASS_SHIFT) {
+      return;
+    }
+
+    push(shift - MIN_CLASS_SHIFT, buffer, probe());
+  }
+
+  @Override
+  public int getAllocatedBuffersCount() {
+    return allocatedBuffersCount.get();
+  }
+
+  @Override
+  public int getUsedBuffersCount() {
+    return usedBuffersCount.get();
+  }
+
+  /** @return number of size classes that have retained buffers */
+  @Override
+  int getBuffersMapSize() {
+    int result = 0;
+    for (int i = 0; i < CLASSES_COUNT; i++) {
+      AtomicReferenceArray<byte[]> array = slots(i);
+      for (int k = array.length() - 1; k >= 0; k--) {
+        if (array.get(k) != null) {
+          result++;
+          break;
+        }
+      }
+    }
+    return result;
+  }
+
+  @Override
+  public void flush() {
+    for (int i = 0; i < CLASSES_COUNT; i++) {
+      AtomicReferenceArray<byte[]> array = slots(i);
+      for (int k = array.length() - 1; k >= 0; k--) {
+        array.set(k, null);
+      }
+    }
+  }
+
+}
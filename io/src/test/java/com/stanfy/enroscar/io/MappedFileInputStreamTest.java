@@ -0,0 +1,114 @@
+package com.stanfy.enroscar.io;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.Reader;
+import java.nio.ByteBuffer;
+
+import static org.fest.assertions.api.Assertions.assertThat;
+
+/**
+ * Tests for {@link MappedFileInputStream} and byte buffer aware methods of {@link IoUtils}.
+ */
+public class MappedFileInputStreamTest {
+
+  /** Test file. */
+  private File file;
+
+  /** Test content. */
+  private String content;
+
+  @Before
+  public void writeFile() throws IOException {
+    StringBuilder text = new StringBuilder();
+    for (int i = 0; i < 1000; i++) {
+      text.append("test \u0434\u0430\u043d\u0456 \ud83d\ude00 ").append(i);
+    }
+    content = text.toString();
+
+    file = File.createTempFile("mapped", "test");
+    FileOutputStream output = new FileOutputStream(file);
+    output.write(content.getBytes(IoUtils.UTF_8_NAME));
+    output.close();
+  }
+
+  @After
+  public void deleteFile() {
+    //noinspection ResultOfMethodCallIgnored
+    file.delete();
+  }
+
+  private MappedFileInputStream open() throws IOException {
+    return new MappedFileInputStream(new FileInputStream(file).getChannel());
+  }
+
+  @Test
+  public void shouldExposeRemainingContent() throws IOException {
+    MappedFileInputStream input = open();
+    assertThat(input.read()).isEqualTo('t');
+    ByteBuffer buffer = IoUtils.getByteBuffer(input);
+    assertThat(buffer).isNotNull();
+    assertThat(buffer.remaining()).isEqualTo((int) file.length() - 1);
+    assertThat(buffer.isReadOnly()).isTrue();
+    buffer.get();
+    assertThat(input.read()).isEqualTo('e');
+    input.close();
+  }
+
+  @Test
+  public void streamToStringShouldDecodeBuffer() throws IOException {
+    assertThat(IoUtils.streamToString(open(), null)).isEqualTo(content);
+  }
+
+  @Test
+  public void readerShouldDecodeBuffer() throws IOException {
+    Reader reader = IoUtils.newReader(open(), IoUtils.UTF_8);
+    assertThat(reader).isInstanceOf(ByteBufferReader.class);
+    StringBuilder result = new StringBuilder();
+    // small buffer to check surrogate pairs handling
+    char[] chars = new char[1];
+    int cnt;
+    while ((cnt = reader.read(chars)) != -1) {
+      result.append(chars, 0, cnt);
+    }
+    reader.close();
+    assertThat(result.toString()).isEqualTo(content);
+  }
+
+  @Test
+  public void readerShouldReturnEofAfterFlush() throws IOException {
+    Reader reader = IoUtils.newReader(open(), IoUtils.UTF_8);
+    StringBuilder result = new StringBuilder();
+    char[] chars = new char[IoUtils.BUFFER_SIZE_8K];
+    int cnt;
+    while ((cnt = reader.read(chars)) != -1) {
+      result.append(chars, 0, cnt);
+    }
+    // e.g. Gson checks for the end of document with one more read
+    assertThat(reader.read(chars)).isEqualTo(-1);
+    assertThat(reader.read()).isEqualTo(-1);
+    reader.close();
+    assertThat(result.toString()).isEqualTo(content);
+  }
+
+  @Test
+  public void transferShouldCopyBuffer() throws IOException {
+    ByteArrayOutputStream output = new ByteArrayOutputStream();
+    IoUtils.transfer(open(), output, new BuffersPool());
+    assertThat(new String(output.toByteArray(), IoUtils.UTF_8_NAME)).isEqualTo(content);
+
+    File copy = File.createTempFile("mapped", "copy");
+    IoUtils.transfer(open(), new FileOutputStream(copy), null);
+    assertThat(copy.length()).isEqualTo(file.length());
+    //noinspection ResultOfMethodCallIgnored
+    copy.delete();
+  }
+
+}
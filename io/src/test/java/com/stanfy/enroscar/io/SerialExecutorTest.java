@@ -0,0 +1,148 @@
+package com.stanfy.enroscar.io;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.fest.assertions.api.Assertions.assertThat;
+
+/**
+ * Tests for {@link SerialExecutor}.
+ */
+public class SerialExecutorTest {
+
+  /** Tasks passed to the delegate. */
+  private ArrayList<Runnable> delegated;
+
+  /** Executed tasks. */
+  private List<Integer> executed;
+
+  @Before
+  public void init() {
+    delegated = new ArrayList<>();
+    executed = new ArrayList<>();
+  }
+
+  private SerialExecutor executor(final int drainBatch) {
+    return new SerialExecutor(new Executor() {
+      @Override
+      public void execute(@SuppressWarnings("NullableProblems") final Runnable command) {
+        delegated.add(command);
+      }
+    }, drainBatch);
+  }
+
+  private Runnable task(final int id) {
+    return new Runnable() {
+      @Override
+      public void run() {
+        executed.add(id);
+      }
+    };
+  }
+
+  @Test
+  public void shouldDispatchOneDrainTaskAtOnce() {
+    SerialExecutor executor = executor(1);
+    executor.execute(task(1));
+    executor.execute(task(2));
+    assertThat(delegated).hasSize(1);
+
+    delegated.remove(0).run();
+    assertThat(executed).containsExactly(1);
+    assertThat(delegated).hasSize(1);
+
+    delegated.remove(0).run();
+    assertThat(executed).containsExactly(1, 2);
+    assertThat(delegated).isEmpty();
+  }
+
+  @Test
+  public void shouldRunSeveralTasksWithinDrainBatch() {
+    SerialExecutor executor = executor(2);
+    for (int i = 0; i < 3; i++) {
+      executor.execute(task(i));
+    }
+
+    delegated.remove(0).run();
+    assertThat(executed).containsExactly(0, 1);
+    delegated.remove(0).run();
+    assertThat(executed).containsExactly(0, 1, 2);
+    assertThat(delegated).isEmpty();
+  }
+
+  @Test
+  public void shouldContinueAfterTaskFailure() {
+    SerialExecutor executor = executor(2);
+    executor.execute(new Runnable() {
+      @Override
+      public void run() {
+        throw new IllegalStateException("test");
+      }
+    });
+    executor.execute(task(1));
+
+    try {
+      delegated.remove(0).run();
+    } catch (IllegalStateException e) {
+      assertThat(e).hasMessage("test");
+    }
+    delegated.remove(0).run();
+    assertThat(executed).containsExactly(1);
+  }
+
+  @Test
+  public void shouldExecuteTasksSeriallyInSubmissionOrder() throws Exception {
+    final int producers = 4, count = 10000;
+    ExecutorService pool = Executors.newFixedThreadPool(producers);
+    final SerialExecutor executor = new SerialExecutor(pool, 4);
+    final AtomicInteger active = new AtomicInteger();
+    final AtomicBoolean failed = new AtomicBoolean();
+    final int[] last = new int[producers];
+    final CountDownLatch done = new CountDownLatch(producers * count);
+
+    ArrayList<Thread> threads = new ArrayList<>();
+    for (int p = 0; p < producers; p++) {
+      final int producer = p;
+      last[p] = -1;
+      Thread thread = new Thread() {
+        @Override
+        public void run() {
+          for (int i = 0; i < count; i++) {
+            final int index = i;
+            executor.execute(new Runnable() {
+              @Override
+              public void run() {
+                if (active.incrementAndGet() != 1 || last[producer] != index - 1) {
+                  failed.set(true);
+                }
+                last[producer] = index;
+                active.decrementAndGet();
+                done.countDown();
+              }
+            });
+          }
+        }
+      };
+      threads.add(thread);
+      thread.start();
+    }
+    for (Thread thread : threads) {
+      thread.join();
+    }
+
+    assertThat(done.await(10, TimeUnit.SECONDS)).isTrue();
+    assertThat(failed.get()).isFalse();
+    pool.shutdown();
+  }
+
+}
@@ -0,0 +1,158 @@
+package com.stanfy.enroscar.io;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Random;
+
+import static org.fest.assertions.api.Assertions.assertThat;
+
+/**
+ * Tests for {@link SizeClassBuffersPool}.
+ */
+public class SizeClassBuffersPoolTest {
+
+  /** Buffers pool instance. */
+  private SizeClassBuffersPool buffersPool;
+
+  /** Random. */
+  private final Random r = new Random();
+
+  @Before
+  public void createPool() {
+    buffersPool = new SizeClassBuffersPool(new int[][] {
+        {1, 4096}, {2, 2048}
+    }, 8 * 1024);
+  }
+
+  @Test
+  public void shouldReportCorrectStatsAfterCreation() {
+    assertThat(buffersPool.getAllocatedBuffersCount()).isEqualTo(3);
+    assertThat(buffersPool.getUsedBuffersCount()).isZero();
+    assertThat(buffersPool.getBuffersMapSize()).isEqualTo(2);
+  }
+
+  @Test
+  public void shouldRoundUpToSizeClass() {
+    assertThat(buffersPool.get(1).length).isEqualTo(1024);
+    assertThat(buffersPool.get(1025).length).isEqualTo(2048);
+    assertThat(buffersPool.get(4096).length).isEqualTo(4096);
+    assertThat(buffersPool.get(0).length).isEqualTo(1024);
+  }
+
+  @Test
+  public void shouldUsePreallocatedBuffers() {
+    int allocated = buffersPool.getAllocatedBuffersCount();
+    buffersPool.get(3000);
+    buffersPool.get(2000);
+    buffersPool.get(2000);
+    assertThat(buffersPool.getAllocatedBuffersCount()).isEqualTo(allocated);
+    assertThat(buffersPool.getUsedBuffersCount()).isEqualTo(3);
+    assertThat(buffersPool.getBuffersMapSize()).isZero();
+  }
+
+  @Test
+  public void shouldReuseReleasedBuffers() {
+    byte[] buffer = buffersPool.get(20000);
+    int allocated = buffersPool.getAllocatedBuffersCount();
+    buffersPool.release(buffer);
+    assertThat(buffersPool.get(17000)).isSameAs(buffer);
+    assertThat(buffersPool.getAllocatedBuffersCount()).isEqualTo(allocated);
+  }
+
+  @Test
+  public void shouldNotRetainHugeBuffers() {
+    int size = (1 << SizeClassBuffersPool.MAX_CLASS_SHIFT) + 1;
+    byte[] buffer = buffersPool.get(size);
+    assertThat(buffer.length).isEqualTo(size);
+    buffersPool.release(buffer);
+    assertThat(buffersPool.get(size)).isNotSameAs(buffer);
+  }
+
+  @Test
+  public void shouldLimitRetainedBytes() {
+    // 8K / 4K = 2 buffers are retained
+    byte[][] buffers = new byte[5][];
+    for (int i = 0; i < buffers.length; i++) {
+      buffers[i] = buffersPool.get(4096);
+    }
+    for (byte[] buffer : buffers) {
+      buffersPool.release(buffer);
+    }
+    int allocated = buffersPool.getAllocatedBuffersCount();
+    for (int i = 0; i < buffers.length; i++) {
+      buffersPool.get(4096);
+    }
+    assertThat(buffersPool.getAllocatedBuffersCount()).isEqualTo(allocated + 3);
+  }
+
+  @Test
+  public void flushShouldClearRetainedBuffers() {
+    byte[] buffer = buffersPool.get(1024);
+    buffersPool.release(buffersPool.get(4096));
+    buffersPool.flush();
+    assertThat(buffersPool.getBuffersMapSize()).isZero();
+    assertThat(buffersPool.getUsedBuffersCount()).isEqualTo(1);
+
+    int allocated = buffersPool.getAllocatedBuffersCount();
+    buffersPool.get(4096);
+    assertThat(buffersPool.getAllocatedBuffersCount()).isEqualTo(allocated + 1);
+
+    buffersPool.release(buffer);
+  }
+
+  @Test
+  public void bufferizeShouldWork() throws IOException {
+    InputStream input = buffersPool.bufferize(new ByteArrayInputStream("test".getBytes()));
+    assertThat(IoUtils.streamToString(input, buffersPool)).isEqualTo("test");
+    assertThat(buffersPool.getUsedBuffersCount()).isZero();
+  }
+
+  @Test
+  public void threadsTest() throws Exception {
+    final int usersCount = 10;
+
+    final ArrayList<UserThread> threads = new ArrayList<UserThread>(usersCount);
+    for (int i = 0; i < usersCount; i++) {
+      final UserThread t = new UserThread();
+      threads.add(t);
+      t.start();
+    }
+
+    for (final UserThread t : threads) {
+      t.join();
+      assertThat(t.error).isNull();
+    }
+
+    assertThat(buffersPool.getUsedBuffersCount()).isZero();
+  }
+
+  /** User thread. */
+  private class UserThread extends Thread {
+
+    /** Caught error. */
+    private Throwable error;
+
+    @Override
+    public void run() {
+      final int count = 1000;
+      try {
+        for (int i = 0; i < count; i++) {
+          int size = r.nextInt(64 * 1024);
+          byte[] buffer = buffersPool.get(size);
+          if (buffer.length < size) {
+            throw new AssertionError("Buffer is too small: " + buffer.length + " < " + size);
+          }
+          buffersPool.release(buffer);
+        }
+      } catch (Throwable e) {
+        error = e;
+      }
+    }
+  }
+
+}
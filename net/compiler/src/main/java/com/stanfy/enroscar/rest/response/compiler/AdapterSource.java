@@ -0,0 +1,150 @@
+package com.stanfy.enroscar.rest.response.compiler;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.List;
+
+/**
+ * Source of a generated type adapter factory.
+ * @author Roman Mazur (Stanfy - http://stanfy.com)
+ */
+final class AdapterSource {
+
+  /** Package name. */
+  private final String packageName;
+  /** Generated class simple name. */
+  private final String className;
+  /** Model class canonical name. */
+  private final String modelName;
+  /** Model fields. */
+  private final List<ModelField> fields;
+
+  AdapterSource(final String packageName, final String className, final String modelName, final List<ModelField> fields) {
+    this.packageName = packageName;
+    this.className = className;
+    this.modelName = modelName;
+    this.fields = fields;
+  }
+
+  private static String quote(final String value) {
+    final StringBuilder result = new StringBuilder("\"");
+    for (int i = 0; i < value.length(); i++) {
+      final char c = value.charAt(i);
+      if (c == '"' || c == '\\') {
+        result.append('\\').append(c);
+      } else if (c < ' ' || c > '~') {
+        result.append(String.format("\\u%04x", (int) c));
+      } else {
+        result.append(c);
+      }
+    }
+    return result.append('"').toString();
+  }
+
+  void write(final Writer out) throws IOException {
+    final StringBuilder s = new StringBuilder();
+    s.append("// Generated by ").append(ModelAdapterProcessor.class.getSimpleName()).append(". Do not modify!\n");
+    if (!packageName.isEmpty()) {
+      s.append("package ").append(packageName).append(";\n");
+    }
+    s.append('\n')
+     .append("import java.io.IOException;\n\n")
+     .append("import com.google.gson.Gson;\n")
+     .append("import com.google.gson.TypeAdapter;\n")
+     .append("import com.google.gson.TypeAdapterFactory;\n")
+     .append("import com.google.gson.reflect.TypeToken;\n")
+     .append("import com.google.gson.stream.JsonReader;\n")
+     .append("import com.google.gson.stream.JsonToken;\n")
+     .append("import com.google.gson.stream.JsonWriter;\n\n")
+
+     .append("/** Type adapter factory for {@link ").append(modelName).append("}. */\n")
+     .append("public final class ").append(className).append(" implements TypeAdapterFactory {\n\n")
+
+     .append("  @Override\n")
+     .append("  @SuppressWarnings(\"unchecked\")\n")
+     .append("  public <T> TypeAdapter<T> create(final Gson gson, final TypeToken<T> type) {\n")
+     .append("    return type.getRawType() == ").append(modelName).append(".class ? (TypeAdapter<T>) new Adapter(gson) : null;\n")
+     .append("  }\n\n")
+
+     .append("  /** Adapter. */\n")
+     .append("  private static final class Adapter extends TypeAdapter<").append(modelName).append("> {\n\n");
+
+    for (int i = 0; i < fields.size(); i++) {
+      final ModelField field = fields.get(i);
+      s.append("    /** Adapter for ").append(field.name).append(". */\n")
+       .append("    private final TypeAdapter<").append(field.adapterType).append("> adapter").append(i).append(";\n");
+    }
+    if (!fields.isEmpty()) {
+      s.append('\n');
+    }
+
+    s.append("    Adapter(final Gson gson) {\n");
+    for (int i = 0; i < fields.size(); i++) {
+      final ModelField field = fields.get(i);
+      s.append("      adapter").append(i).append(" = gson.getAdapter(");
+      if (field.generic) {
+        s.append("new TypeToken<").append(field.type).append(">() { }");
+      } else {
+        s.append(field.type).append(".class");
+      }
+      s.append(");\n");
+    }
+    s.append("    }\n\n");
+
+    // write
+    s.append("    @Override\n")
+     .append("    public void write(final JsonWriter out, final ").append(modelName).append(" value) throws IOException {\n")
+     .append("      if (value == null) {\n")
+     .append("        out.nullValue();\n")
+     .append("        return;\n")
+     .append("      }\n")
+     .append("      out.beginObject();\n");
+    for (int i = 0; i < fields.size(); i++) {
+      final ModelField field = fields.get(i);
+      s.append("      out.name(").append(quote(field.serializedName)).append(");\n")
+       .append("      adapter").append(i).append(".write(out, value.").append(field.name).append(");\n");
+    }
+    s.append("      out.endObject();\n")
+     .append("    }\n\n");
+
+    // read
+    s.append("    @Override\n")
+     .append("    public ").append(modelName).append(" read(final JsonReader in) throws IOException {\n")
+     .append("      if (in.peek() == JsonToken.NULL) {\n")
+     .append("        in.nextNull();\n")
+     .append("        return null;\n")
+     .append("      }\n")
+     .append("      final ").append(modelName).append(" value = new ").append(modelName).append("();\n")
+     .append("      in.beginObject();\n")
+     .append("      while (in.hasNext()) {\n")
+     .append("        final String name = in.nextName();\n")
+     .append("        ");
+    for (int i = 0; i < fields.size(); i++) {
+      final ModelField field = fields.get(i);
+      s.append("if (").append(quote(field.serializedName)).append(".equals(name)) {\n");
+      if (field.isPrimitive()) {
+        // the same as Gson does: null does not change a primitive field
+        s.append("          final ").append(field.adapterType).append(" fieldValue = adapter").append(i).append(".read(in);\n")
+         .append("          if (fieldValue != null) {\n")
+         .append("            value.").append(field.name).append(" = fieldValue;\n")
+         .append("          }\n");
+      } else {
+        s.append("          value.").append(field.name).append(" = adapter").append(i).append(".read(in);\n");
+      }
+      s.append("        } else ");
+    }
+    s.append("{\n")
+     .append("          in.skipValue();\n")
+     .append("        }\n")
+     .append("      }\n")
+     .append("      in.endObject();\n")
+     .append("      return value;\n")
+     .append("    }\n\n")
+
+     .append("  }\n\n")
+     .append("}\n");
+
+    out.write(s.toString());
+  }
+
+}
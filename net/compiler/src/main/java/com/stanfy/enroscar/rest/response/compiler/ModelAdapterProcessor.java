@@ -0,0 +1,282 @@
+package com.stanfy.enroscar.rest.response.compiler;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import javax.annotation.processing.AbstractProcessor;
+import javax.annotation.processing.RoundEnvironment;
+import javax.annotation.processing.SupportedAnnotationTypes;
+import javax.lang.model.SourceVersion;
+import javax.lang.model.element.AnnotationMirror;
+import javax.lang.model.element.AnnotationValue;
+import javax.lang.model.element.Element;
+import javax.lang.model.element.ElementKind;
+import javax.lang.model.element.ExecutableElement;
+import javax.lang.model.element.Modifier;
+import javax.lang.model.element.NestingKind;
+import javax.lang.model.element.PackageElement;
+import javax.lang.model.element.TypeElement;
+import javax.lang.model.element.VariableElement;
+import javax.lang.model.type.ArrayType;
+import javax.lang.model.type.DeclaredType;
+import javax.lang.model.type.PrimitiveType;
+import javax.lang.model.type.TypeKind;
+import javax.lang.model.type.TypeMirror;
+import javax.lang.model.type.WildcardType;
+import javax.lang.model.util.ElementFilter;
+import javax.tools.Diagnostic;
+import javax.tools.JavaFileObject;
+
+/**
+ * Generates Gson type adapter factories for classes annotated with <code>com.stanfy.enroscar.rest.response.Model</code>.
+ * <p>
+ *   For a model class <code>Item</code> a class <code>Item$$GsonAdapter</code> is generated in the same package.
+ *   It's found by <code>ModelAdapters</code> at runtime and reads or writes fields directly, without reflection.
+ *   Fields are named the same way as Gson does it by default: with field names or
+ *   <code>SerializedName</code> values. Static and transient fields are skipped.
+ * </p>
+ * <p>
+ *   Adapter is not generated (and Gson reflective adapter is used) if the model is abstract or generic,
+ *   does not have an accessible no-arguments constructor, or some of its fields are private, final,
+ *   generic or inaccessible from the model package.
+ *   A note explaining the reason is printed during compilation.
+ * </p>
+ * @author Roman Mazur (Stanfy - http://stanfy.com)
+ */
+@SupportedAnnotationTypes(ModelAdapterProcessor.MODEL_ANNOTATION)
+public class ModelAdapterProcessor extends AbstractProcessor {
+
+  /** Model annotation name. */
+  static final String MODEL_ANNOTATION = "com.stanfy.enroscar.rest.response.Model";
+
+  /** Gson field name annotation. */
+  static final String SERIALIZED_NAME_ANNOTATION = "com.google.gson.annotations.SerializedName";
+
+  /** Suffix of generated class names, must be the same as <code>ModelAdapters.ADAPTER_CLASS_SUFFIX</code>. */
+  static final String ADAPTER_CLASS_SUFFIX = "$$GsonAdapter";
+
+  @Override
+  public SourceVersion getSupportedSourceVersion() {
+    return SourceVersion.latestSupported();
+  }
+
+  @Override
+  public boolean process(final Set<? extends TypeElement> annotations, final RoundEnvironment roundEnv) {
+    final TypeElement modelAnnotation = processingEnv.getElementUtils().getTypeElement(MODEL_ANNOTATION);
+    if (modelAnnotation == null) {
+      return false;
+    }
+    for (final TypeElement model : ElementFilter.typesIn(roundEnv.getElementsAnnotatedWith(modelAnnotation))) {
+      final List<ModelField> fields = new ArrayList<ModelField>();
+      final String problem = collectFields(model, fields);
+      if (problem != null) {
+        processingEnv.getMessager().printMessage(Diagnostic.Kind.NOTE,
+            "Gson reflective adapter will be used for " + model.getQualifiedName() + ": " + problem, model);
+        continue;
+      }
+      try {
+        write(model, fields);
+      } catch (final IOException e) {
+        processingEnv.getMessager().printMessage(Diagnostic.Kind.ERROR,
+            "Cannot write adapter for " + model.getQualifiedName() + ": " + e.getMessage(), model);
+      }
+    }
+    // other processors may be interested in models too
+    return false;
+  }
+
+  /**
+   * @param model model class
+   * @param fields list to put serialized fields to, in the order Gson writes them
+   * @return description of a problem that prevents adapter generation, null if there are no problems
+   */
+  private String collectFields(final TypeElement model, final List<ModelField> fields) {
+    if (model.getKind() != ElementKind.CLASS) {
+      return "not a class";
+    }
+    final Set<Modifier> modifiers = model.getModifiers();
+    if (modifiers.contains(Modifier.ABSTRACT)) {
+      return "class is abstract";
+    }
+    if (!model.getTypeParameters().isEmpty()) {
+      return "class is generic";
+    }
+    if (model.getNestingKind() == NestingKind.MEMBER && !modifiers.contains(Modifier.STATIC)) {
+      return "inner class is not static";
+    }
+    final PackageElement pkg = processingEnv.getElementUtils().getPackageOf(model);
+    if (!isAccessible(model, pkg)) {
+      return "class is not accessible from its package";
+    }
+    if (!hasDefaultConstructor(model)) {
+      return "no accessible constructor without arguments";
+    }
+
+    final Set<String> names = new HashSet<String>();
+    TypeElement current = model;
+    while (current != null && !Object.class.getName().equals(current.getQualifiedName().toString())) {
+      final boolean samePackage = processingEnv.getElementUtils().getPackageOf(current).equals(pkg);
+      for (final VariableElement field : ElementFilter.fieldsIn(current.getEnclosedElements())) {
+        final Set<Modifier> fieldModifiers = field.getModifiers();
+        if (fieldModifiers.contains(Modifier.STATIC) || fieldModifiers.contains(Modifier.TRANSIENT)) {
+          continue;
+        }
+        final String fieldName = current.getSimpleName() + "." + field.getSimpleName();
+        if (fieldModifiers.contains(Modifier.PRIVATE) || !samePackage && !fieldModifiers.contains(Modifier.PUBLIC)) {
+          return "field " + fieldName + " is not accessible";
+        }
+        if (fieldModifiers.contains(Modifier.FINAL)) {
+          return "field " + fieldName + " is final";
+        }
+        final String type = typeName(field.asType(), pkg);
+        if (type == null) {
+          return "type of field " + fieldName + " cannot be referenced";
+        }
+        final String name = serializedName(field);
+        if (!names.add(name)) {
+          return "several fields are named " + name;
+        }
+        final TypeMirror fieldType = field.asType();
+        final String adapterType = fieldType.getKind().isPrimitive()
+            ? processingEnv.getTypeUtils().boxedClass((PrimitiveType) fieldType).getQualifiedName().toString()
+            : type;
+        fields.add(new ModelField(field.getSimpleName().toString(), name, type, adapterType, hasTypeArguments(fieldType)));
+      }
+      final TypeMirror superclass = current.getSuperclass();
+      current = superclass.getKind() == TypeKind.DECLARED ? (TypeElement) ((DeclaredType) superclass).asElement() : null;
+    }
+    return null;
+  }
+
+  private boolean hasDefaultConstructor(final TypeElement model) {
+    for (final ExecutableElement constructor : ElementFilter.constructorsIn(model.getEnclosedElements())) {
+      if (constructor.getParameters().isEmpty()) {
+        return !constructor.getModifiers().contains(Modifier.PRIVATE);
+      }
+    }
+    return false;
+  }
+
+  /**
+   * @param type type element
+   * @param pkg package of the generated class
+   * @return whether the type can be referenced from the package
+   */
+  private boolean isAccessible(final TypeElement type, final PackageElement pkg) {
+    final boolean samePackage = processingEnv.getElementUtils().getPackageOf(type).equals(pkg);
+    Element element = type;
+    while (element instanceof TypeElement) {
+      final Set<Modifier> modifiers = element.getModifiers();
+      if (modifiers.contains(Modifier.PRIVATE) || !samePackage && !modifiers.contains(Modifier.PUBLIC)) {
+        return false;
+      }
+      element = element.getEnclosingElement();
+    }
+    return true;
+  }
+
+  /**
+   * @param type type mirror
+   * @param pkg package of the generated class
+   * @return type name that can be used in the generated source, null if the type cannot be referenced
+   */
+  private String typeName(final TypeMirror type, final PackageElement pkg) {
+    switch (type.getKind()) {
+    case BOOLEAN:
+    case BYTE:
+    case SHORT:
+    case INT:
+    case LONG:
+    case CHAR:
+    case FLOAT:
+    case DOUBLE:
+      return type.getKind().name().toLowerCase();
+
+    case ARRAY:
+      final String component = typeName(((ArrayType) type).getComponentType(), pkg);
+      return component != null ? component + "[]" : null;
+
+    case DECLARED:
+      final DeclaredType declared = (DeclaredType) type;
+      final TypeElement element = (TypeElement) declared.asElement();
+      if (!isAccessible(element, pkg)) {
+        return null;
+      }
+      final StringBuilder name = new StringBuilder(element.getQualifiedName());
+      final List<? extends TypeMirror> arguments = declared.getTypeArguments();
+      if (!arguments.isEmpty()) {
+        name.append('<');
+        for (int i = 0; i < arguments.size(); i++) {
+          final String argument = typeName(arguments.get(i), pkg);
+          if (argument == null) {
+            return null;
+          }
+          if (i > 0) {
+            name.append(", ");
+          }
+          name.append(argument);
+        }
+        name.append('>');
+      }
+      return name.toString();
+
+    case WILDCARD:
+      final WildcardType wildcard = (WildcardType) type;
+      if (wildcard.getExtendsBound() != null) {
+        final String bound = typeName(wildcard.getExtendsBound(), pkg);
+        return bound != null ? "? extends " + bound : null;
+      }
+      if (wildcard.getSuperBound() != null) {
+        final String bound = typeName(wildcard.getSuperBound(), pkg);
+        return bound != null ? "? super " + bound : null;
+      }
+      return "?";
+
+    default:
+      // type variables and others
+      return null;
+    }
+  }
+
+  private static boolean hasTypeArguments(final TypeMirror type) {
+    if (type.getKind() == TypeKind.ARRAY) {
+      return hasTypeArguments(((ArrayType) type).getComponentType());
+    }
+    return type.getKind() == TypeKind.DECLARED && !((DeclaredType) type).getTypeArguments().isEmpty();
+  }
+
+  private static String serializedName(final VariableElement field) {
+    for (final AnnotationMirror annotation : field.getAnnotationMirrors()) {
+      final TypeElement annotationType = (TypeElement) annotation.getAnnotationType().asElement();
+      if (SERIALIZED_NAME_ANNOTATION.equals(annotationType.getQualifiedName().toString())) {
+        for (final Map.Entry<? extends ExecutableElement, ? extends AnnotationValue> entry
+            : annotation.getElementValues().entrySet()) {
+          if ("value".equals(entry.getKey().getSimpleName().toString())) {
+            return (String) entry.getValue().getValue();
+          }
+        }
+      }
+    }
+    return field.getSimpleName().toString();
+  }
+
+  private void write(final TypeElement model, final List<ModelField> fields) throws IOException {
+    final String packageName = processingEnv.getElementUtils().getPackageOf(model).getQualifiedName().toString();
+    final String binaryName = processingEnv.getElementUtils().getBinaryName(model).toString();
+    final String adapterName = binaryName + ADAPTER_CLASS_SUFFIX;
+    final JavaFileObject file = processingEnv.getFiler().createSourceFile(adapterName, model);
+    final Writer out = file.openWriter();
+    try {
+      new AdapterSource(packageName, adapterName.substring(packageName.isEmpty() ? 0 : packageName.length() + 1),
+          model.getQualifiedName().toString(), fields).write(out);
+    } finally {
+      out.close();
+    }
+  }
+
+}
@@ -0,0 +1,30 @@
+package com.stanfy.enroscar.rest.response.compiler;
+
+/**
+ * Serialized model field.
+ * @author Roman Mazur (Stanfy - http://stanfy.com)
+ */
+final class ModelField {
+
+  /** Java field name. */
+  final String name;
+  /** JSON name. */
+  final String serializedName;
+  /** Field type name. */
+  final String type;
+  /** Type name of the adapter value (boxed type for primitives). */
+  final String adapterType;
+  /** Whether the type is parameterized and needs a type token. */
+  final boolean generic;
+
+  ModelField(final String name, final String serializedName, final String type, final String adapterType, final boolean generic) {
+    this.name = name;
+    this.serializedName = serializedName;
+    this.type = type;
+    this.adapterType = adapterType;
+    this.generic = generic;
+  }
+
+  boolean isPrimitive() { return !type.equals(adapterType); }
+
+}
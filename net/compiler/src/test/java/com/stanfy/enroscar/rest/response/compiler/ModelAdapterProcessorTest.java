@@ -0,0 +1,166 @@
+package com.stanfy.enroscar.rest.response.compiler;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.URI;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import javax.tools.JavaCompiler;
+import javax.tools.JavaFileObject;
+import javax.tools.SimpleJavaFileObject;
+import javax.tools.StandardJavaFileManager;
+import javax.tools.ToolProvider;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+import com.google.gson.TypeAdapterFactory;
+
+/**
+ * Tests for {@link ModelAdapterProcessor}.
+ */
+public class ModelAdapterProcessorTest {
+
+  /** Model annotation source. */
+  private static final String MODEL = "package com.stanfy.enroscar.rest.response;\n"
+      + "import java.lang.annotation.*;\n"
+      + "@Target(ElementType.TYPE) @Retention(RetentionPolicy.RUNTIME)\n"
+      + "public @interface Model { Class<?> wrapper() default Model.class; String analyzer() default \"\"; }\n";
+
+  /** Output directory. */
+  private File output;
+
+  @Before
+  public void createOutput() throws IOException {
+    output = File.createTempFile("processor", "test");
+    assertTrue(output.delete() && output.mkdirs());
+  }
+
+  @After
+  public void deleteOutput() {
+    delete(output);
+  }
+
+  private static void delete(final File file) {
+    final File[] children = file.listFiles();
+    if (children != null) {
+      for (final File child : children) {
+        delete(child);
+      }
+    }
+    //noinspection ResultOfMethodCallIgnored
+    file.delete();
+  }
+
+  private static JavaFileObject source(final String name, final String code) {
+    return new SimpleJavaFileObject(URI.create("string:///" + name.replace('.', '/') + ".java"), JavaFileObject.Kind.SOURCE) {
+      @Override
+      public CharSequence getCharContent(final boolean ignoreEncodingErrors) {
+        return code;
+      }
+    };
+  }
+
+  private ClassLoader compile(final JavaFileObject... sources) throws IOException {
+    final JavaCompiler compiler = ToolProvider.getSystemJavaCompiler();
+    final StandardJavaFileManager fileManager = compiler.getStandardFileManager(null, null, null);
+    try {
+      final List<JavaFileObject> units = new ArrayList<JavaFileObject>(Arrays.asList(sources));
+      units.add(source("com.stanfy.enroscar.rest.response.Model", MODEL));
+      final JavaCompiler.CompilationTask task = compiler.getTask(null, fileManager, null,
+          Arrays.asList("-d", output.getPath(), "-s", output.getPath(), "-classpath", System.getProperty("java.class.path")),
+          null, units);
+      task.setProcessors(Arrays.asList(new ModelAdapterProcessor()));
+      assertTrue("compilation failed", task.call());
+    } finally {
+      fileManager.close();
+    }
+    return new URLClassLoader(new URL[] {output.toURI().toURL()}, getClass().getClassLoader());
+  }
+
+  private static Gson gson(final ClassLoader loader, final String adapterName) throws Exception {
+    final TypeAdapterFactory factory = (TypeAdapterFactory) loader.loadClass(adapterName).newInstance();
+    return new GsonBuilder().registerTypeAdapterFactory(factory).create();
+  }
+
+  @Test
+  public void shouldGenerateAdapter() throws Exception {
+    final ClassLoader loader = compile(
+        source("test.Base", "package test;\n"
+            + "public class Base { public long id; }\n"),
+        source("test.Item", "package test;\n"
+            + "import com.google.gson.annotations.SerializedName;\n"
+            + "@com.stanfy.enroscar.rest.response.Model\n"
+            + "public class Item extends Base {\n"
+            + "  static int counter;\n"
+            + "  transient String cache = \"cache\";\n"
+            + "  int count = 7;\n"
+            + "  @SerializedName(\"full_name\") String name;\n"
+            + "  java.util.List<String> tags;\n"
+            + "  int[] values;\n"
+            + "  Item child;\n"
+            + "  public String toString() {\n"
+            + "    return id + \" \" + count + \" \" + name + \" \" + tags + \" \" + java.util.Arrays.toString(values) + \" \" + cache"
+            + " + \" (\" + child + \")\";\n"
+            + "  }\n"
+            + "}\n")
+    );
+
+    final Class<?> itemClass = loader.loadClass("test.Item");
+    final Gson gson = gson(loader, "test.Item$$GsonAdapter");
+    assertEquals("test.Item$$GsonAdapter", gson.getAdapter(itemClass).getClass().getEnclosingClass().getName());
+
+    final Object item = gson.fromJson("{\"id\": 1, \"count\": null, \"full_name\": \"a\", \"tags\": [\"x\", \"y\"],"
+        + " \"values\": [1, 2], \"unknown\": {\"id\": 5}, \"child\": {\"id\": 2, \"count\": 3}}", itemClass);
+    assertEquals("1 7 a [x, y] [1, 2] cache (2 3 null null null cache (null))", item.toString());
+
+    assertEquals("{\"count\":3,\"id\":2}", gson.toJson(gson.fromJson("{\"id\": 2, \"count\": 3}", itemClass)));
+    assertNull(gson.fromJson("null", itemClass));
+  }
+
+  @Test
+  public void shouldGenerateAdapterForNestedClass() throws Exception {
+    final ClassLoader loader = compile(
+        source("test.Outer", "package test;\n"
+            + "public class Outer {\n"
+            + "  @com.stanfy.enroscar.rest.response.Model\n"
+            + "  public static class Nested { String value; public String toString() { return value; } }\n"
+            + "}\n")
+    );
+    final Gson gson = gson(loader, "test.Outer$Nested$$GsonAdapter");
+    assertEquals("abc", gson.fromJson("{\"value\": \"abc\"}", loader.loadClass("test.Outer$Nested")).toString());
+  }
+
+  @Test
+  public void shouldSkipModelsThatNeedReflection() throws Exception {
+    compile(
+        source("test.PrivateField", "package test;\n"
+            + "@com.stanfy.enroscar.rest.response.Model public class PrivateField { private String value; }\n"),
+        source("test.FinalField", "package test;\n"
+            + "@com.stanfy.enroscar.rest.response.Model public class FinalField { final String value = null; }\n"),
+        source("test.NoConstructor", "package test;\n"
+            + "@com.stanfy.enroscar.rest.response.Model public class NoConstructor { NoConstructor(int a) { } }\n"),
+        source("test.Generic", "package test;\n"
+            + "@com.stanfy.enroscar.rest.response.Model public class Generic<T> { T value; }\n"),
+        source("test.GenericParent", "package test;\n"
+            + "@com.stanfy.enroscar.rest.response.Model public class GenericParent extends Generic<String> { }\n")
+    );
+    for (final String name : Arrays.asList("PrivateField", "FinalField", "NoConstructor", "Generic", "GenericParent")) {
+      assertTrue(new File(output, "test/" + name + ".class").exists());
+      assertFalse(name, new File(output, "test/" + name + "$$GsonAdapter.class").exists());
+    }
+  }
+
+}
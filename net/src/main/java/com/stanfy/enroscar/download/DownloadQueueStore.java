@@ -0,0 +1,117 @@
+package com.stanfy.enroscar.download;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import android.net.Uri;
+import android.util.Log;
+
+import com.stanfy.enroscar.download.DownloadsService.Request;
+import com.stanfy.enroscar.io.IoUtils;
+
+/**
+ * Stores queued download requests, so that they can be restored after the service is restarted.
+ * Only fields of {@link Request} are stored.
+ * @author Roman Mazur (Stanfy - http://www.stanfy.com)
+ */
+final class DownloadQueueStore {
+
+  /** Logging tag. */
+  private static final String TAG = DownloadsService.TAG;
+
+  /** Format version. */
+  private static final int VERSION = 1;
+
+  /** Queue file. */
+  private final File file;
+
+  DownloadQueueStore(final File file) {
+    this.file = file;
+  }
+
+  private static void writeString(final DataOutputStream out, final String value) throws IOException {
+    out.writeBoolean(value != null);
+    if (value != null) { out.writeUTF(value); }
+  }
+
+  private static String readString(final DataInputStream in) throws IOException {
+    return in.readBoolean() ? in.readUTF() : null;
+  }
+
+  private static void writeUri(final DataOutputStream out, final Uri value) throws IOException {
+    writeString(out, value != null ? value.toString() : null);
+  }
+
+  private static Uri readUri(final DataInputStream in) throws IOException {
+    final String value = readString(in);
+    return value != null ? Uri.parse(value) : null;
+  }
+
+  /**
+   * Atomically replaces the stored queue.
+   * @param requests requests to store
+   */
+  synchronized void write(final List<Request> requests) {
+    final File tmp = new File(file.getPath() + ".tmp");
+    DataOutputStream out = null;
+    try {
+      out = new DataOutputStream(new FileOutputStream(tmp));
+      out.writeInt(VERSION);
+      out.writeInt(requests.size());
+      for (final Request r : requests) {
+        out.writeLong(r.getId());
+        writeString(out, r.getTitle());
+        writeString(out, r.getDescription());
+        writeUri(out, r.getUri());
+        writeUri(out, r.getDestinationUri());
+        out.writeInt(r.getSegments());
+        out.writeInt(r.getPriority());
+      }
+      out.close();
+      out = null;
+      if (!tmp.renameTo(file)) {
+        Log.w(TAG, "Cannot replace downloads queue file " + file);
+      }
+    } catch (final IOException e) {
+      Log.w(TAG, "Cannot save downloads queue", e);
+    } finally {
+      IoUtils.closeQuietly(out);
+    }
+  }
+
+  /** @return stored requests, empty list if there are no requests or they cannot be read */
+  synchronized List<Request> read() {
+    final ArrayList<Request> result = new ArrayList<Request>();
+    if (!file.exists()) { return result; }
+    DataInputStream in = null;
+    try {
+      in = new DataInputStream(new FileInputStream(file));
+      if (in.readInt() != VERSION) { return result; }
+      final int count = in.readInt();
+      for (int i = 0; i < count; i++) {
+        final Request r = new Request();
+        r.setId(in.readLong());
+        r.setTitle(readString(in));
+        r.setDescription(readString(in));
+        r.setUri(readUri(in));
+        r.setDestinationUri(readUri(in));
+        r.setSegments(in.readInt());
+        r.setPriority(in.readInt());
+        result.add(r);
+      }
+    } catch (final IOException e) {
+      Log.w(TAG, "Cannot read downloads queue", e);
+      result.clear();
+    } finally {
+      IoUtils.closeQuietly(in);
+    }
+    return result;
+  }
+
+}
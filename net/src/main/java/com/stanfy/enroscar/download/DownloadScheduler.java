@@ -0,0 +1,129 @@
+package com.stanfy.enroscar.download;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.TreeSet;
+
+import com.stanfy.enroscar.download.DownloadsService.Request;
+
+/**
+ * Decides which download requests can be started.
+ * Requests with higher priority are started first, requests with the same priority are started in FIFO order.
+ * Number of running downloads is limited globally and per host.
+ * Not thread safe: {@link DownloadsService} uses it from the main thread only.
+ * @author Roman Mazur (Stanfy - http://www.stanfy.com)
+ */
+final class DownloadScheduler {
+
+  /** Orders entries by priority and then by sequence number. */
+  private static final Comparator<Entry> ORDER = new Comparator<Entry>() {
+    @Override
+    public int compare(final Entry lhs, final Entry rhs) {
+      if (lhs.request.getPriority() != rhs.request.getPriority()) {
+        return lhs.request.getPriority() > rhs.request.getPriority() ? -1 : 1;
+      }
+      return lhs.sequence < rhs.sequence ? -1 : (lhs.sequence == rhs.sequence ? 0 : 1);
+    }
+  };
+
+  /** Maximum number of running downloads. */
+  private final int maxRunning;
+  /** Maximum number of running downloads per host. */
+  private final int maxRunningPerHost;
+
+  /** Pending requests. */
+  private final TreeSet<Entry> pending = new TreeSet<Entry>(ORDER);
+  /** Running requests. */
+  private final ArrayList<Request> running = new ArrayList<Request>();
+  /** Running downloads count per host. */
+  private final HashMap<String, Integer> hosts = new HashMap<String, Integer>();
+
+  /** Sequence counter. */
+  private long sequence;
+
+  DownloadScheduler(final int maxRunning, final int maxRunningPerHost) {
+    if (maxRunning < 1 || maxRunningPerHost < 1) {
+      throw new IllegalArgumentException("Bad limits: " + maxRunning + ", " + maxRunningPerHost);
+    }
+    this.maxRunning = maxRunning;
+    this.maxRunningPerHost = maxRunningPerHost;
+  }
+
+  private static String host(final Request request) {
+    final String host = request.getUri() != null ? request.getUri().getHost() : null;
+    return host != null ? host : "";
+  }
+
+  private int runningFor(final String host) {
+    final Integer count = hosts.get(host);
+    return count != null ? count : 0;
+  }
+
+  /** @param request request to schedule */
+  void add(final Request request) {
+    pending.add(new Entry(request, sequence++));
+  }
+
+  /**
+   * Removes the next request that can be started from the queue and marks it as running.
+   * @return request to start, null if nothing can be started now
+   */
+  Request poll() {
+    if (running.size() >= maxRunning) { return null; }
+    final Iterator<Entry> i = pending.iterator();
+    while (i.hasNext()) {
+      final Request request = i.next().request;
+      final String host = host(request);
+      final int count = runningFor(host);
+      if (count < maxRunningPerHost) {
+        i.remove();
+        hosts.put(host, count + 1);
+        running.add(request);
+        return request;
+      }
+    }
+    return null;
+  }
+
+  /** @param request finished request */
+  void finished(final Request request) {
+    if (!running.remove(request)) { return; }
+    final String host = host(request);
+    final int count = runningFor(host) - 1;
+    if (count > 0) {
+      hosts.put(host, count);
+    } else {
+      hosts.remove(host);
+    }
+  }
+
+  /** @return whether there are no running or pending requests */
+  boolean isEmpty() { return running.isEmpty() && pending.isEmpty(); }
+
+  /** @return running requests followed by pending ones in the order they will be started */
+  List<Request> getRequests() {
+    final ArrayList<Request> result = new ArrayList<Request>(running.size() + pending.size());
+    result.addAll(running);
+    for (final Entry e : pending) {
+      result.add(e.request);
+    }
+    return result;
+  }
+
+  /** Queue entry. */
+  private static final class Entry {
+    /** Request. */
+    final Request request;
+    /** Sequence number. */
+    final long sequence;
+
+    Entry(final Request request, final long sequence) {
+      this.request = request;
+      this.sequence = sequence;
+    }
+  }
+
+}
@@ -0,0 +1,169 @@
+package com.stanfy.enroscar.download;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+
+import com.stanfy.enroscar.io.IoUtils;
+
+/**
+ * State of a partially downloaded file. It's stored next to the destination file
+ * while the download is not finished and is used to resume the download.
+ * @author Roman Mazur (Stanfy - http://www.stanfy.com)
+ */
+final class DownloadState {
+
+  /** Format version. */
+  private static final int VERSION = 1;
+
+  /** State file name suffix. */
+  static final String SUFFIX = ".download";
+
+  /** Entity validator (ETag or Last-Modified), may be null. */
+  final String validator;
+  /** Total length, -1 if unknown. */
+  final long totalLength;
+  /** Segments. */
+  final Segment[] segments;
+
+  DownloadState(final String validator, final long totalLength, final Segment[] segments) {
+    this.validator = validator;
+    this.totalLength = totalLength;
+    this.segments = segments;
+  }
+
+  /**
+   * @param validator entity validator
+   * @param totalLength total length, -1 if unknown
+   * @return state for a download performed with one connection
+   */
+  static DownloadState sequential(final String validator, final long totalLength) {
+    return new DownloadState(validator, totalLength, new Segment[] {new Segment(0, totalLength > 0 ? totalLength - 1 : -1, 0)});
+  }
+
+  /**
+   * @param validator entity validator
+   * @param totalLength total length
+   * @param count number of segments
+   * @return state for a download performed by several connections
+   */
+  static DownloadState segmented(final String validator, final long totalLength, final int count) {
+    final Segment[] segments = new Segment[count];
+    final long segmentLength = totalLength / count;
+    long start = 0;
+    for (int i = 0; i < count; i++) {
+      final long end = i == count - 1 ? totalLength - 1 : start + segmentLength - 1;
+      segments[i] = new Segment(start, end, start);
+      start = end + 1;
+    }
+    return new DownloadState(validator, totalLength, segments);
+  }
+
+  /** @param destination destination file @return state file */
+  static File getStateFile(final File destination) {
+    return new File(destination.getPath() + SUFFIX);
+  }
+
+  /** @return whether the download is performed by several connections */
+  boolean isSegmented() { return segments.length > 1; }
+
+  /** @return number of downloaded bytes */
+  long getDownloadedLength() {
+    long result = 0;
+    for (final Segment s : segments) {
+      result += s.position - s.start;
+    }
+    return result;
+  }
+
+  /**
+   * Segment positions are updated by download threads, the copy can be written without blocking them.
+   * @return copy of this state with the current segment positions
+   */
+  DownloadState snapshot() {
+    final Segment[] copy = new Segment[segments.length];
+    for (int i = 0; i < segments.length; i++) {
+      final Segment s = segments[i];
+      copy[i] = new Segment(s.start, s.end, s.position);
+    }
+    return new DownloadState(validator, totalLength, copy);
+  }
+
+  /**
+   * @param file state file
+   * @return saved state, null if the file does not exist or cannot be read
+   */
+  static DownloadState read(final File file) {
+    if (!file.exists()) { return null; }
+    DataInputStream in = null;
+    try {
+      in = new DataInputStream(new FileInputStream(file));
+      if (in.readInt() != VERSION) { return null; }
+      final String validator = in.readBoolean() ? in.readUTF() : null;
+      final long totalLength = in.readLong();
+      final int count = in.readInt();
+      if (count <= 0) { return null; }
+      final Segment[] segments = new Segment[count];
+      for (int i = 0; i < count; i++) {
+        segments[i] = new Segment(in.readLong(), in.readLong(), in.readLong());
+      }
+      return new DownloadState(validator, totalLength, segments);
+    } catch (final IOException e) {
+      return null;
+    } finally {
+      IoUtils.closeQuietly(in);
+    }
+  }
+
+  /**
+   * Atomically replaces the state file.
+   * @param file state file
+   * @throws IOException if an I/O error happens
+   */
+  synchronized void write(final File file) throws IOException {
+    final File tmp = new File(file.getPath() + ".tmp");
+    final DataOutputStream out = new DataOutputStream(new FileOutputStream(tmp));
+    try {
+      out.writeInt(VERSION);
+      out.writeBoolean(validator != null);
+      if (validator != null) { out.writeUTF(validator); }
+      out.writeLong(totalLength);
+      out.writeInt(segments.length);
+      for (final Segment s : segments) {
+        out.writeLong(s.start);
+        out.writeLong(s.end);
+        out.writeLong(s.position);
+      }
+    } finally {
+      IoUtils.closeQuietly(out);
+    }
+    if (!tmp.renameTo(file)) {
+      throw new IOException("Cannot write download state to " + file);
+    }
+  }
+
+  /**
+   * Byte range downloaded by one connection.
+   */
+  static final class Segment {
+    /** First byte position. */
+    final long start;
+    /** Last byte position (inclusive), -1 if unknown. */
+    final long end;
+    /** Position of the next byte to download. */
+    volatile long position;
+
+    Segment(final long start, final long end, final long position) {
+      this.start = start;
+      this.end = end;
+      this.position = position;
+    }
+
+    /** @return whether all the bytes of the segment are downloaded */
+    boolean isComplete() { return end >= 0 && position > end; }
+  }
+
+}
@@ -8,7 +8,7 @@ import android.content.Context;
 import android.content.Intent;
 import android.content.SharedPreferences;
 import android.net.Uri;
-import android.os.AsyncTask;
+import android.os.Handler;
 import android.os.IBinder;
 import android.os.Parcel;
 import android.os.Parcelable;
@@ -18,18 +18,51 @@ import android.util.Log;
 import com.stanfy.enroscar.io.BuffersPool;
 import com.stanfy.enroscar.io.IoUtils;
 import com.stanfy.enroscar.net.UrlConnectionBuilder;
+import com.stanfy.enroscar.net.UrlConnectionWrapper;
 
 import java.io.File;
 import java.io.FileOutputStream;
+import java.io.IOException;
 import java.io.InputStream;
+import java.io.InterruptedIOException;
 import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.net.HttpURLConnection;
 import java.net.URI;
 import java.net.URISyntaxException;
 import java.net.URLConnection;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
 import java.util.LinkedList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
  * Service that can be used instead of {@link android.app.DownloadManager} on older devices.
+ * <p>
+ *   Interrupted downloads are resumed with range requests: state of a partially downloaded file
+ *   is kept next to it in a file with {@value DownloadState#SUFFIX} suffix.
+ *   If {@link Request#setSegments(int)} is used, large files are downloaded by several connections at once.
+ *   At most {@link #getMaxRunningDownloads()} downloads ({@value #DEFAULT_MAX_RUNNING_DOWNLOADS} by default)
+ *   are performed simultaneously, and at most {@link #getMaxRunningDownloadsPerHost()}
+ *   ({@value #DEFAULT_MAX_RUNNING_DOWNLOADS_PER_HOST} by default) of them use the same host.
+ *   Requests with higher {@link Request#setPriority(int) priority} are started first.
+ *   Queue is stored in a file, so that downloads are continued after the service is restarted.
+ *   Progress notifications are updated at most once per {@link #NOTIFICATIONS_UPDATE_INTERVAL} ms.
+ * </p>
  * @author Roman Mazur (Stanfy - http://www.stanfy.com)
  */
 public class DownloadsService extends Service {
@@ -60,17 +93,82 @@ public class DownloadsService extends Service {
   /** Default buffer size. */
   private static final int DEFAULT_BUFFER_SIZE = 8192;
 
+  /** Default maximum number of downloads performed at once. */
+  public static final int DEFAULT_MAX_RUNNING_DOWNLOADS = 3;
+  /** Default maximum number of downloads performed at once for one host. */
+  public static final int DEFAULT_MAX_RUNNING_DOWNLOADS_PER_HOST = 2;
+
+  /** Minimum interval between notification updates (ms). */
+  public static final long NOTIFICATIONS_UPDATE_INTERVAL = 1000;
+
+  /** Queue file name. */
+  private static final String QUEUE_FILE = "downloads_queue";
+
+  /** Minimum length of one segment. */
+  static final long MIN_SEGMENT_LENGTH = 256 * 1024;
+
+  /** Maximum number of threads used to download segments. */
+  private static final int SEGMENT_THREADS_MAX = 8;
+  /** Keep alive time for segment threads (seconds). */
+  private static final int SEGMENT_THREADS_KEEP_ALIVE = 5;
+
+  /** Progress change that causes notification update. */
+  private static final float PROGRESS_MIN_DELTA = 0.05f;
+
+  /** Executor for additional segments. Segments that cannot be scheduled are downloaded by the download thread. */
+  private static final Executor SEGMENTS_EXECUTOR;
+  static {
+    final AtomicInteger threadCounter = new AtomicInteger(1);
+    ThreadFactory tFactory = new ThreadFactory() {
+      @Override
+      public Thread newThread(final Runnable r) {
+        return new Thread(r, "Download Segment Thread #" + threadCounter.getAndIncrement());
+      }
+    };
+    SEGMENTS_EXECUTOR = new ThreadPoolExecutor(0, SEGMENT_THREADS_MAX, SEGMENT_THREADS_KEEP_ALIVE, TimeUnit.SECONDS,
+        new SynchronousQueue<Runnable>(), tFactory, new ThreadPoolExecutor.CallerRunsPolicy());
+  }
+
   /** Buffers pool. */
   private final BuffersPool buffersPool = new BuffersPool(new int[][] {
       {4, DEFAULT_BUFFER_SIZE}
   });
 
-  /** tasks. */
+  /** Running tasks. Accessed from the main thread only. */
   private final LinkedList<DownloadTask> tasks = new LinkedList<DownloadsService.DownloadTask>();
 
+  /** Downloads scheduler. Accessed from the main thread only. */
+  private DownloadScheduler scheduler;
+  /** Queue store. */
+  private DownloadQueueStore queueStore;
+  /** Executor for queue store operations. */
+  private ExecutorService queueStoreExecutor;
+
+  /** Notification ID counter. */
+  private int notificationsCounter;
+
+  /** Whether notifications update is scheduled. */
+  private final AtomicBoolean notificationsUpdatePosted = new AtomicBoolean();
+  /** Updates progress notifications of running tasks. */
+  private final Runnable notificationsUpdater = new Runnable() {
+    @Override
+    public void run() {
+      notificationsUpdatePosted.set(false);
+      for (final DownloadTask task : tasks) {
+        task.refreshNotification();
+      }
+    }
+  };
+
   /** Notification manager. */
   private NotificationManager notificationManager;
 
+  /** Main thread handler. */
+  private Handler mainHandler;
+
+  /** Downloads executor. Number of running tasks is limited by the scheduler. */
+  private ExecutorService downloadsExecutor;
+
   /** @return next unique download ID */
   public static synchronized long nextId(final Context context) {
     final SharedPreferences counterStore = context.getSharedPreferences(PREF_NAME, 0);
@@ -88,10 +186,29 @@ public class DownloadsService extends Service {
   /** @return the notificationManager */
   protected NotificationManager getNotificationManager() { return notificationManager; }
 
+  /** @return maximum number of downloads performed at once */
+  protected int getMaxRunningDownloads() { return DEFAULT_MAX_RUNNING_DOWNLOADS; }
+
+  /** @return maximum number of downloads performed at once for one host */
+  protected int getMaxRunningDownloadsPerHost() { return DEFAULT_MAX_RUNNING_DOWNLOADS_PER_HOST; }
+
   @Override
   public void onCreate() {
     super.onCreate();
     notificationManager = (NotificationManager)getSystemService(Context.NOTIFICATION_SERVICE);
+    mainHandler = new Handler();
+    final AtomicInteger threadCounter = new AtomicInteger(1);
+    downloadsExecutor = Executors.newCachedThreadPool(new ThreadFactory() {
+      @Override
+      public Thread newThread(final Runnable r) {
+        return new Thread(r, "Download Thread #" + threadCounter.getAndIncrement());
+      }
+    });
+    queueStoreExecutor = Executors.newSingleThreadExecutor();
+    scheduler = new DownloadScheduler(getMaxRunningDownloads(), getMaxRunningDownloadsPerHost());
+
+    queueStore = new DownloadQueueStore(new File(getFilesDir(), QUEUE_FILE));
+    restoreQueue();
   }
 
   @Override
@@ -114,10 +231,19 @@ public class DownloadsService extends Service {
 
   @Override
   public void onDestroy() {
+    // stored queue is left untouched: unfinished downloads are continued when the service is created again
+    scheduler = null;
     if (!tasks.isEmpty()) {
       if (DEBUG) { Log.i(TAG, "Canceling current tasks"); }
-      for (final DownloadTask task : tasks) { task.cancel(true); }
+      for (final DownloadTask task : tasks) {
+        task.cancel();
+        notificationManager.cancel(task.request.notificationId);
+      }
+      tasks.clear();
     }
+    mainHandler.removeCallbacks(notificationsUpdater);
+    downloadsExecutor.shutdownNow();
+    queueStoreExecutor.shutdown();
     super.onDestroy();
   }
 
@@ -125,10 +251,72 @@ public class DownloadsService extends Service {
    * @param request request to add to the download queue
    */
   protected void enqueue(final Request request) {
-    final DownloadTask task = createDownloadTask();
-    tasks.add(task);
-    request.notificationId = NOTIFICATION_BASE_ID + tasks.size();
-    task.execute(request);
+    scheduler.add(request);
+    saveQueue();
+    startPendingTasks();
+  }
+
+  /**
+   * Start requests allowed by the scheduler.
+   */
+  private void startPendingTasks() {
+    Request request;
+    while ((request = scheduler.poll()) != null) {
+      final DownloadTask task = createDownloadTask();
+      request.notificationId = NOTIFICATION_BASE_ID + notificationsCounter++;
+      task.request = request;
+      tasks.add(task);
+      task.updateDownloadProgress(null);
+      downloadsExecutor.execute(task);
+    }
+  }
+
+  /**
+   * Read requests that were not finished in background and schedule them in the main thread.
+   */
+  private void restoreQueue() {
+    queueStoreExecutor.execute(new Runnable() {
+      @Override
+      public void run() {
+        final List<Request> saved = queueStore.read();
+        if (saved.isEmpty()) { return; }
+        mainHandler.post(new Runnable() {
+          @Override
+          public void run() {
+            if (scheduler == null) { return; } // destroyed
+            if (DEBUG) { Log.i(TAG, "Restored " + saved.size() + " downloads"); }
+            for (final Request request : saved) {
+              scheduler.add(request);
+            }
+            // requests enqueued meanwhile may have overwritten the stored queue
+            saveQueue();
+            startPendingTasks();
+          }
+        });
+      }
+    });
+  }
+
+  /**
+   * Store current queue in background.
+   */
+  private void saveQueue() {
+    final List<Request> requests = scheduler.getRequests();
+    queueStoreExecutor.execute(new Runnable() {
+      @Override
+      public void run() {
+        queueStore.write(requests);
+      }
+    });
+  }
+
+  /**
+   * Schedule notifications update. May be called from any thread.
+   */
+  void postNotificationsUpdate() {
+    if (notificationsUpdatePosted.compareAndSet(false, true)) {
+      mainHandler.postDelayed(notificationsUpdater, NOTIFICATIONS_UPDATE_INTERVAL);
+    }
   }
 
   /**
@@ -136,10 +324,14 @@ public class DownloadsService extends Service {
    * @param request download request instance
    */
   protected void onTaskFinish(final DownloadTask task, final Request request) {
+    if (scheduler == null) { return; } // destroyed
     notificationManager.cancel(request.notificationId);
     tasks.remove(task);
+    scheduler.finished(request);
+    saveQueue();
     sendBroadcast(new Intent(ACTION_DOWNLOAD_COMPLETE).putExtra(EXTRA_ID, request.id).putExtra(EXTRA_SUCCESS, request.success));
-    if (tasks.isEmpty()) { stopSelf(); }
+    startPendingTasks();
+    if (scheduler.isEmpty()) { stopSelf(); }
   }
 
   /**
@@ -168,6 +360,10 @@ public class DownloadsService extends Service {
     private Uri destinationUri;
     /** Success flag. */
     private boolean success;
+    /** Maximum number of connections used to download the file. */
+    private int segments = 1;
+    /** Priority. */
+    private int priority;
 
     /** Notification ID. */
     private int notificationId;
@@ -183,6 +379,8 @@ public class DownloadsService extends Service {
       this.uri = in.readParcelable(cl);
       this.destinationUri = in.readParcelable(cl);
       this.success = in.readInt() == 1;
+      this.segments = in.readInt();
+      this.priority = in.readInt();
     }
 
     @Override
@@ -195,6 +393,8 @@ public class DownloadsService extends Service {
       dest.writeParcelable(uri, flags);
       dest.writeParcelable(destinationUri, flags);
       dest.writeInt(success ? 1 : 0);
+      dest.writeInt(segments);
+      dest.writeInt(priority);
     }
 
     /** @return the id */
@@ -221,6 +421,21 @@ public class DownloadsService extends Service {
     public boolean isSuccess() { return success; }
     /** @param success the success to set */
     public void setSuccess(final boolean success) { this.success = success; }
+    /** @return maximum number of connections used to download the file */
+    public int getSegments() { return segments; }
+    /**
+     * Files that are large enough are downloaded by several connections at once
+     * if the server supports range requests.
+     * @param segments maximum number of connections used to download the file
+     */
+    public void setSegments(final int segments) {
+      if (segments < 1) { throw new IllegalArgumentException("Bad segments count " + segments); }
+      this.segments = segments;
+    }
+    /** @return priority */
+    public int getPriority() { return priority; }
+    /** @param priority requests with higher priority are started first, default is 0 */
+    public void setPriority(final int priority) { this.priority = priority; }
 
   }
 
@@ -228,7 +443,7 @@ public class DownloadsService extends Service {
    * Download task.
    * @author Roman Mazur (Stanfy - http://www.stanfy.com)
    */
-  public class DownloadTask extends AsyncTask<Request, Float, Void> {
+  public class DownloadTask implements Runnable {
     /** Notification ID. */
     private Request request;
     /** Click intent. */
@@ -236,101 +451,419 @@ public class DownloadsService extends Service {
     /** Notification time. */
     private long notificationTime = System.currentTimeMillis();
 
+    /** Canceled flag. */
+    private volatile boolean canceled;
+    /** Thread that performs the download. */
+    private volatile Thread runner;
+
+    /** Last reported progress. */
+    private float prevProgress;
+    /** Progress that should be displayed, negative for indeterminate progress. */
+    private volatile float displayProgress = -1;
+    /** Progress displayed in the notification. */
+    private float notifiedProgress = -1;
+
+    /** Notification builder. */
+    private NotificationCompat.Builder notificationBuilder;
+
+    /** Number of taken state snapshots, guarded by this task. */
+    private long stateSnapshotsCount;
+    /** Guards state file writes. */
+    private final Object stateFileLock = new Object();
+    /** Number of the last written state snapshot, guarded by {@link #stateFileLock}. */
+    private long writtenSnapshotNumber;
+
     /** @return the request */
     public Request getRequest() { return request; }
 
+    /** Cancel the download. Partially downloaded file is kept, so that the download can be resumed. */
+    public void cancel() {
+      canceled = true;
+      final Thread thread = runner;
+      if (thread != null) { thread.interrupt(); }
+    }
+
+    /** @return whether the task is canceled */
+    public boolean isCanceled() { return canceled; }
+
     /**
+     * Called from the main thread. Notification builder is created once and reused for progress updates.
      * @param progress current progress (value in [0;1] interval, may be null)
      */
     protected void updateDownloadProgress(final Float progress) {
       final float p = progress == null ? 0 : progress;
       final int max = 1000;
 
-      final Notification n = new NotificationCompat.Builder(DownloadsService.this)
-          .setWhen(notificationTime)
-          .setSmallIcon(android.R.drawable.stat_sys_download)
-          .setTicker(request.title)
-          .setContentTitle(request.title)
-          .setContentText(request.description)
-          .setContentIntent(PendingIntent.getBroadcast(DownloadsService.this, 0, clickIntent, PendingIntent.FLAG_CANCEL_CURRENT))
-          .setOngoing(true)
+      if (notificationBuilder == null) {
+        clickIntent.putExtra(EXTRA_ID, request.id);
+        notificationBuilder = new NotificationCompat.Builder(DownloadsService.this)
+            .setWhen(notificationTime)
+            .setSmallIcon(android.R.drawable.stat_sys_download)
+            .setTicker(request.title)
+            .setContentTitle(request.title)
+            .setContentText(request.description)
+            .setContentIntent(PendingIntent.getBroadcast(DownloadsService.this, 0, clickIntent, PendingIntent.FLAG_CANCEL_CURRENT))
+            .setOngoing(true);
+      }
+
+      final Notification n = notificationBuilder
           .setProgress(max, (int)(p * max), progress == null)
           .build();
 
       getNotificationManager().notify(request.notificationId, n);
+    }
 
-      publishProgress(p);
+    /**
+     * Update the notification if displayed progress has changed. Called from the main thread.
+     */
+    void refreshNotification() {
+      final float progress = displayProgress;
+      if (progress != notifiedProgress) {
+        notifiedProgress = progress;
+        updateDownloadProgress(progress < 0 ? null : progress);
+      }
     }
 
     @Override
-    protected Void doInBackground(final Request... params) {
-      final Request request = params[0];
-      request.success = false;
-
-      this.request = request;
-      clickIntent.putExtra(EXTRA_ID, request.id);
-      updateDownloadProgress(null);
+    public void run() {
+      runner = Thread.currentThread();
+      try {
+        if (!canceled) {
+          request.success = false;
+          request.success = download();
+        }
+      } catch (final InterruptedIOException e) {
+        if (DEBUG) { Log.i(TAG, "Download canceled " + request.uri); }
+      } catch (final Exception e) {
+        Log.e(TAG, "Cannot download " + request.uri, e);
+      } finally {
+        runner = null;
+        mainHandler.post(new Runnable() {
+          @Override
+          public void run() {
+            onTaskFinish(DownloadTask.this, request);
+          }
+        });
+      }
+    }
 
-      File destination;
+    /**
+     * @return whether download succeeded
+     * @throws IOException if an I/O error happens or the task is canceled
+     */
+    protected boolean download() throws IOException {
+      final File destination;
       try {
         destination = new File(new URI(request.destinationUri.toString()));
       } catch (final URISyntaxException e) {
         Log.e(TAG, "Bad URI", e);
-        return null;
+        return false;
+      }
+
+      final File stateFile = DownloadState.getStateFile(destination);
+      final DownloadState saved = destination.exists() ? DownloadState.read(stateFile) : null;
+      if (saved != null && saved.isSegmented()) {
+        return downloadSegments(destination, stateFile, saved);
+      }
+
+      final long offset = saved != null ? destination.length() : 0;
+      // range is also requested in order to check whether the download can be segmented
+      final long rangeStart = offset > 0 || request.segments > 1 ? offset : -1;
+      final URLConnection connection = openConnection(request.uri, rangeStart, -1, saved != null ? saved.validator : null);
+      final int code = getResponseCode(connection);
+      if (offset > 0 && code == HTTP_RANGE_NOT_SATISFIABLE) {
+        // file is already downloaded
+        deleteState(stateFile);
+        return true;
       }
+      final boolean partial = code == HttpURLConnection.HTTP_PARTIAL;
+      final long length = getTotalLength(connection, partial);
+      final String validator = getValidator(connection);
+
+      if (partial && offset == 0 && length > 0) {
+        final int count = (int) Math.min(request.segments, length / MIN_SEGMENT_LENGTH);
+        if (count > 1) {
+          disconnect(connection);
+          final DownloadState state = DownloadState.segmented(validator, length, count);
+          state.write(stateFile);
+          return downloadSegments(destination, stateFile, state);
+        }
+      }
+
+      final boolean append = partial && offset > 0;
+      final DownloadState state = DownloadState.sequential(validator, length);
+      final DownloadState.Segment segment = state.segments[0];
+      segment.position = append ? offset : 0;
 
       InputStream input = null;
       OutputStream output = null;
+      final byte[] buffer = buffersPool.get(DEFAULT_BUFFER_SIZE);
       try {
-        final URLConnection urlConnection = new UrlConnectionBuilder()
-          .setUrl(params[0].uri)
-          .create();
+        input = buffersPool.bufferize(connection.getInputStream());
+        destination.createNewFile();
+        state.write(stateFile);
+        output = new FileOutputStream(destination, append);
+        if (length > 0) { onBytesDownloaded(segment.position, length, null, null); }
 
-        urlConnection.connect();
+        int count;
+        while ((count = input.read(buffer)) != -1) {
+          checkCanceled();
+          output.write(buffer, 0, count);
+          segment.position += count;
+          if (length > 0) { onBytesDownloaded(segment.position, length, null, null); }
+        }
+      } finally {
+        buffersPool.release(buffer);
+        IoUtils.closeQuietly(input);
+        IoUtils.closeQuietly(output);
+      }
+      deleteState(stateFile);
+      return true;
+    }
 
-        destination.createNewFile();
-        output = new FileOutputStream(destination);
-        input = buffersPool.bufferize(urlConnection.getInputStream());
+    private boolean downloadSegments(final File destination, final File stateFile, final DownloadState state) throws IOException {
+      final RandomAccessFile file = new RandomAccessFile(destination, "rw");
+      final SegmentsRun run = new SegmentsRun(state, stateFile, file.getChannel());
+      try {
+        if (file.length() != state.totalLength) { file.setLength(state.totalLength); }
+        run.perform();
+      } catch (final IOException e) {
+        run.aborted = true;
+        saveState(state, stateFile);
+        throw e;
+      } catch (final RuntimeException e) {
+        run.aborted = true;
+        saveState(state, stateFile);
+        throw e;
+      } finally {
+        IoUtils.closeQuietly(file);
+      }
+      deleteState(stateFile);
+      return true;
+    }
 
-        final long length = urlConnection.getContentLength();
-        if (length > 0) { updateDownloadProgress(0f); }
+    private void checkCanceled() throws InterruptedIOException {
+      if (canceled) { throw new InterruptedIOException("Download canceled"); }
+    }
+
+    /**
+     * Updates notification when progress changes considerably.
+     * State file is written outside the progress lock, so that other segments are not blocked by I/O.
+     * @param downloaded downloaded bytes count
+     * @param total total length
+     * @param state state to save with progress update, may be null
+     * @param stateFile state file
+     */
+    private void onBytesDownloaded(final long downloaded, final long total,
+                                   final DownloadState state, final File stateFile) {
+      final DownloadState snapshot;
+      final long snapshotNumber;
+      synchronized (this) {
+        final float progress = (float) downloaded / total;
+        if (progress - prevProgress < PROGRESS_MIN_DELTA && prevProgress != 0) { return; }
+        prevProgress = progress;
+        displayProgress = progress;
+        postNotificationsUpdate();
+        if (state == null) { return; }
+        snapshot = state.snapshot();
+        snapshotNumber = ++stateSnapshotsCount;
+      }
+      synchronized (stateFileLock) {
+        // another segment may have already written a newer snapshot
+        if (snapshotNumber > writtenSnapshotNumber) {
+          writtenSnapshotNumber = snapshotNumber;
+          saveState(snapshot, stateFile);
+        }
+      }
+    }
+
+    /**
+     * Downloads segments in parallel. The first unfinished segment is downloaded by the calling thread.
+     */
+    private class SegmentsRun {
+      /** State. */
+      final DownloadState state;
+      /** State file. */
+      final File stateFile;
+      /** Destination channel. */
+      final FileChannel channel;
+      /** Downloaded bytes counter. */
+      final AtomicLong downloaded;
+      /** Set when one of segments fails. */
+      volatile boolean aborted;
+
+      SegmentsRun(final DownloadState state, final File stateFile, final FileChannel channel) {
+        this.state = state;
+        this.stateFile = stateFile;
+        this.channel = channel;
+        this.downloaded = new AtomicLong(state.getDownloadedLength());
+      }
+
+      void perform() throws IOException {
+        DownloadState.Segment first = null;
+        final ArrayList<FutureTask<Void>> tasks = new ArrayList<FutureTask<Void>>(state.segments.length);
+        for (final DownloadState.Segment segment : state.segments) {
+          if (segment.isComplete()) { continue; }
+          if (first == null) {
+            first = segment;
+            continue;
+          }
+          final FutureTask<Void> task = new FutureTask<Void>(new Callable<Void>() {
+            @Override
+            public Void call() throws IOException {
+              downloadSegment(segment);
+              return null;
+            }
+          });
+          tasks.add(task);
+          SEGMENTS_EXECUTOR.execute(task);
+        }
+
+        if (first == null) { return; }
+        try {
+          downloadSegment(first);
+          for (final FutureTask<Void> task : tasks) {
+            task.get();
+          }
+        } catch (final IOException e) {
+          aborted = true;
+          throw e;
+        } catch (final InterruptedException e) {
+          aborted = true;
+          throw new InterruptedIOException("Download canceled");
+        } catch (final ExecutionException e) {
+          aborted = true;
+          final Throwable cause = e.getCause();
+          if (cause instanceof IOException) { throw (IOException) cause; }
+          if (cause instanceof RuntimeException) { throw (RuntimeException) cause; }
+          throw new IOException("Segment download failed: " + cause);
+        } finally {
+          for (final FutureTask<Void> task : tasks) {
+            try {
+              task.get();
+            } catch (final Exception e) {
+              // already reported
+            }
+          }
+        }
+      }
+
+      void downloadSegment(final DownloadState.Segment segment) throws IOException {
+        final URLConnection connection = openConnection(request.uri, segment.position, segment.end, state.validator);
+        if (getResponseCode(connection) != HttpURLConnection.HTTP_PARTIAL) {
+          disconnect(connection);
+          // entity has changed or ranges are not supported anymore: start from scratch next time
+          deleteState(stateFile);
+          throw new IOException("Server did not return range " + segment.position + "-" + segment.end);
+        }
 
-        int count;
         final byte[] buffer = buffersPool.get(DEFAULT_BUFFER_SIZE);
-        int total = 0;
-        float prevProgress = 0;
-        final float minDelta = 0.05f;
-        do {
-          count = input.read(buffer);
-          if (count > 0) {
-            output.write(buffer, 0, count);
-            if (length > 0) {
-              total += count;
-              final float progress = (float)total / length;
-              if (progress - prevProgress >= minDelta) {
-                updateDownloadProgress(progress);
-                prevProgress = progress;
-              }
+        InputStream input = null;
+        try {
+          input = connection.getInputStream();
+          int count;
+          while (segment.position <= segment.end && (count = input.read(buffer)) != -1) {
+            if (aborted) { throw new InterruptedIOException("Segments download aborted"); }
+            checkCanceled();
+            final int length = (int) Math.min(count, segment.end - segment.position + 1);
+            final ByteBuffer data = ByteBuffer.wrap(buffer, 0, length);
+            long position = segment.position;
+            while (data.hasRemaining()) {
+              position += channel.write(data, position);
             }
+            segment.position = position;
+            onBytesDownloaded(downloaded.addAndGet(length), state.totalLength, state, stateFile);
           }
-        } while (count != -1);
-        request.success = true;
-        return null;
-      } catch (final Exception e) {
-        Log.e(TAG, "Cannot download " + request.uri, e);
-        return null;
-      } finally {
-        IoUtils.closeQuietly(input);
-        IoUtils.closeQuietly(output);
+        } finally {
+          buffersPool.release(buffer);
+          IoUtils.closeQuietly(input);
+        }
+        if (!segment.isComplete()) {
+          throw new IOException("Unexpected end of segment " + segment.start + "-" + segment.end);
+        }
       }
     }
-    @Override
-    protected void onCancelled() {
-      onTaskFinish(this, request);
+
+  }
+
+  /** HTTP status code: requested range not satisfiable. */
+  private static final int HTTP_RANGE_NOT_SATISFIABLE = 416;
+
+  /**
+   * @param uri resource URI
+   * @param offset first byte position, -1 if range should not be requested
+   * @param end last byte position, -1 to read till the end
+   * @param validator entity validator used for If-Range header, may be null
+   * @return connected URL connection
+   * @throws IOException if an I/O error happens
+   */
+  protected URLConnection openConnection(final Uri uri, final long offset, final long end, final String validator) throws IOException {
+    final URLConnection connection = new UrlConnectionBuilder()
+        .setUrl(uri)
+        .create();
+    if (offset >= 0) {
+      connection.setRequestProperty("Range", "bytes=" + offset + "-" + (end >= 0 ? String.valueOf(end) : ""));
+      if (validator != null) {
+        connection.setRequestProperty("If-Range", validator);
+      }
     }
-    @Override
-    protected void onPostExecute(final Void result) {
-      onTaskFinish(this, request);
+    connection.connect();
+    return connection;
+  }
+
+  private static int getResponseCode(final URLConnection connection) throws IOException {
+    final URLConnection core = UrlConnectionWrapper.unwrap(connection);
+    return core instanceof HttpURLConnection ? ((HttpURLConnection) core).getResponseCode() : HttpURLConnection.HTTP_OK;
+  }
+
+  private static void disconnect(final URLConnection connection) {
+    final URLConnection core = UrlConnectionWrapper.unwrap(connection);
+    if (core instanceof HttpURLConnection) {
+      ((HttpURLConnection) core).disconnect();
+    }
+  }
+
+  /**
+   * @param connection connection instance
+   * @param partial whether connection returned a range
+   * @return total entity length, -1 if unknown
+   */
+  static long getTotalLength(final URLConnection connection, final boolean partial) {
+    if (partial) {
+      // Content-Range: bytes 100-199/1000
+      final String range = connection.getHeaderField("Content-Range");
+      final int slash = range != null ? range.lastIndexOf('/') : -1;
+      if (slash == -1) { return -1; }
+      try {
+        return Long.parseLong(range.substring(slash + 1).trim());
+      } catch (final NumberFormatException e) {
+        return -1;
+      }
+    }
+    return connection.getContentLength();
+  }
+
+  /**
+   * @param connection connection instance
+   * @return strong ETag or Last-Modified value, null if the entity cannot be validated
+   */
+  static String getValidator(final URLConnection connection) {
+    final String etag = connection.getHeaderField("ETag");
+    if (etag != null && !etag.startsWith("W/")) { return etag; }
+    return connection.getHeaderField("Last-Modified");
+  }
+
+  private static void saveState(final DownloadState state, final File stateFile) {
+    try {
+      state.write(stateFile);
+    } catch (final IOException e) {
+      Log.w(TAG, "Cannot save download state", e);
+    }
+  }
+
+  private static void deleteState(final File stateFile) {
+    if (stateFile.exists() && !stateFile.delete()) {
+      Log.w(TAG, "Cannot delete " + stateFile);
     }
   }
 
@@ -20,6 +20,9 @@ public class ContentControlUrlConnection extends UrlConnectionWrapper {
   /** Model type. */
   private ModelTypeToken modelType;
 
+  /** Partial content listener. */
+  private PartialContentListener partialContentListener;
+
   public ContentControlUrlConnection(final URLConnection urlConnection) {
     super(urlConnection);
   }
@@ -38,6 +41,13 @@ public class ContentControlUrlConnection extends UrlConnectionWrapper {
     return modelType;
   }
 
+  public void setPartialContentListener(final PartialContentListener partialContentListener) {
+    this.partialContentListener = partialContentListener;
+  }
+  public PartialContentListener getPartialContentListener() {
+    return partialContentListener;
+  }
+
   @Override
   public Object getContent() throws IOException {
     EnroscarConnectionsEngine engine = EnroscarConnectionsEngine.get();
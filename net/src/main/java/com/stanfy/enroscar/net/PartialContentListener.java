@@ -0,0 +1,24 @@
+package com.stanfy.enroscar.net;
+
+import java.util.List;
+
+/**
+ * Receives parts of a list content before the whole response is parsed.
+ * Methods are called in the thread that parses the response.
+ * @author Roman Mazur (Stanfy - http://stanfy.com)
+ */
+public interface PartialContentListener {
+
+  /**
+   * Checked before each batch is built, so that content handler does not copy elements nobody is interested in.
+   * @return whether partial content is expected now
+   */
+  boolean acceptsPartialContent();
+
+  /**
+   * @param batch list of the same type as the final content with elements that follow already published ones
+   * @param offset index of the first batch element in the final content
+   */
+  void onListBatch(final List<?> batch, final int offset);
+
+}
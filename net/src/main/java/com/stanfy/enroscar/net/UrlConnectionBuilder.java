@@ -44,6 +44,8 @@ public class UrlConnectionBuilder {
   private String contentHandlerName;
   /** Model type. */
   private ModelTypeToken modelType;
+  /** Partial content listener. */
+  private PartialContentListener partialContentListener;
 
   /** SSL socket factory. */
   private SSLSocketFactory sslSF;
@@ -132,6 +134,15 @@ public class UrlConnectionBuilder {
     return modelType;
   }
 
+  public UrlConnectionBuilder setPartialContentListener(final PartialContentListener partialContentListener) {
+    this.partialContentListener = partialContentListener;
+    return this;
+  }
+
+  public PartialContentListener getPartialContentListener() {
+    return partialContentListener;
+  }
+
   public UrlConnectionBuilder setSslSocketFactory(final SSLSocketFactory factory) {
     this.sslSF = factory;
     return this;
@@ -206,6 +217,7 @@ public class UrlConnectionBuilder {
       final ContentControlUrlConnection control = new ContentControlUrlConnection(connection);
       control.setModelType(modelType);
       control.setContentHandlerName(contentHandlerName);
+      control.setPartialContentListener(partialContentListener);
       connection = control;
     }
 
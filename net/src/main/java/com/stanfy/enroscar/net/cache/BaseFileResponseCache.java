@@ -9,11 +9,13 @@ import com.stanfy.enroscar.beans.DestroyingBean;
 import com.stanfy.enroscar.beans.InitializingBean;
 import com.stanfy.enroscar.io.BuffersPool;
 import com.stanfy.enroscar.io.IoUtils;
+import com.stanfy.enroscar.io.MappedFileInputStream;
 import com.stanfy.enroscar.net.UrlConnectionWrapper;
 import com.stanfy.enroscar.net.cache.CacheEntry.CacheEntryListener;
 import com.stanfy.enroscar.net.cache.CacheEntry.CacheEntryRequest;
 
 import java.io.File;
+import java.io.FileInputStream;
 import java.io.FilterInputStream;
 import java.io.IOException;
 import java.io.InputStream;
@@ -55,6 +57,12 @@ public abstract class BaseFileResponseCache extends BaseSizeRestrictedCache
   /** Buffers pool. */
   private BuffersPool buffersPool;
 
+  /** Minimal size of a body that is mapped into memory, 0 means that mapping is disabled. */
+  private long mappedBodyThreshold;
+
+  /** In-memory index of entries. */
+  private final CacheIndex index = new CacheIndex(ENTRY_BODY);
+
   /** Sync point for cache installation. */
   private final CountDownLatch initSync = new CountDownLatch(1);
   
@@ -74,9 +82,41 @@ public abstract class BaseFileResponseCache extends BaseSizeRestrictedCache
     }
     
     diskCache = DiskLruCache.open(ensureWorkingDirectory(), version, ENTRIES_COUNT, getMaxSize());
+    index.setDirectory(diskCache.getDirectory());
     onCacheInstalled();
   }
 
+  /**
+   * Read headers of all the entries on disk into the in-memory index.
+   * Cache can be used while this method is running.
+   * Called from a working thread after {@link #install(int)}.
+   */
+  protected void loadIndex() {
+    if (diskCache == null || diskCache.isClosed()) { return; }
+    final String suffix = "." + ENTRY_METADATA;
+    final File[] files = diskCache.getDirectory().listFiles();
+    if (files != null) {
+      for (final File file : files) {
+        final String name = file.getName();
+        final int dot = name.indexOf('.');
+        if (dot <= 0 || !name.endsWith(suffix) || dot != name.length() - suffix.length()) {
+          continue;
+        }
+
+        final CacheEntry entry = newCacheEntry();
+        try {
+          entry.readHeaderFrom(buffersPool.bufferize(new FileInputStream(file)));
+          index.putIfAbsent(name.substring(0, dot), entry);
+        } catch (final IOException e) {
+          // entry is being removed or is broken
+          if (DEBUG) { Log.d(TAG, "Cannot index " + file + ": " + e.getMessage()); }
+        }
+      }
+    }
+    index.setLoaded();
+    if (DEBUG) { Log.d(TAG, "Index loaded for " + this + ", size=" + index.size()); }
+  }
+
   // this method is synchronized in order to avoid concurrent calls to mkdir
   private synchronized File ensureWorkingDirectory() throws IOException {
     File directory = getWorkingDirectory();
@@ -107,12 +147,32 @@ public abstract class BaseFileResponseCache extends BaseSizeRestrictedCache
   
   public void delete() throws IOException {
     if (DEBUG) { Log.d(TAG, "Delete cache workingDirectory=" + diskCache.getDirectory()); }
+    index.clear();
     diskCache.delete();
   }
 
   public DiskLruCache getDiskCache() { return diskCache; }
 
+  /** @return buffers pool instance */
+  protected BuffersPool getBuffersPool() { return buffersPool; }
+
+  /**
+   * Enable serving of cached bodies that are not less than the specified size as memory-mapped files.
+   * Such bodies are read via {@link MappedFileInputStream} and can be consumed as {@link java.nio.ByteBuffer}s
+   * without intermediate copies (see {@link IoUtils#getByteBuffer(InputStream)}).
+   * @param threshold minimal body size in bytes, 0 disables mapping (default)
+   */
+  public void setMappedBodyThreshold(final long threshold) {
+    this.mappedBodyThreshold = threshold;
+  }
+  public long getMappedBodyThreshold() { return mappedBodyThreshold; }
+
   private DiskLruCache.Snapshot readCacheInfo(final CacheEntry requestInfo, final CacheEntry entry) {
+    return readCacheInfo(requestInfo, entry, true);
+  }
+
+  private DiskLruCache.Snapshot readCacheInfo(final CacheEntry requestInfo, final CacheEntry entry,
+                                              final boolean withResponseHeaders) {
     if (!checkDiskCache()) { return null; }
 
     final String key = requestInfo.getCacheKey();
@@ -122,15 +182,21 @@ public abstract class BaseFileResponseCache extends BaseSizeRestrictedCache
     try {
       snapshot = diskCache.get(key);
       if (snapshot == null) {
+        index.remove(key);
         return null;
       }
       bufferedStream = buffersPool.bufferize(snapshot.getInputStream(ENTRY_METADATA));
-      entry.readFrom(bufferedStream);
+      if (withResponseHeaders) {
+        entry.readFrom(bufferedStream);
+      } else {
+        entry.readHeaderFrom(bufferedStream);
+      }
     } catch (final IOException e) {
       IoUtils.closeQuietly(bufferedStream);
       // Give up because the cache cannot be read.
       return null;
     }
+    index.put(key, entry);
     return snapshot;
   }
 
@@ -141,6 +207,15 @@ public abstract class BaseFileResponseCache extends BaseSizeRestrictedCache
    */
   protected CacheResponse get(final CacheEntry requestInfo) {
     if (!checkDiskCache()) { return null; }
+
+    // avoid disk reads for missing or stale entries
+    final CacheIndex.Record record = index.get(requestInfo.getCacheKey());
+    if (record == null) {
+      if (index.isLoaded()) { return null; }
+    } else if (!record.matches(requestInfo) || !record.canBeUsed()) {
+      return null;
+    }
+
     final CacheEntry entry = newCacheEntry();
     final DiskLruCache.Snapshot snapshot = readCacheInfo(requestInfo, entry);
     if (snapshot == null) { return null; }
@@ -192,7 +267,22 @@ public abstract class BaseFileResponseCache extends BaseSizeRestrictedCache
    * snapshot when the stream is closed.
    */
   private InputStream newBodyInputStream(final DiskLruCache.Snapshot snapshot) {
-    return new FilterInputStream(snapshot.getInputStream(ENTRY_BODY)) {
+    final InputStream body = snapshot.getInputStream(ENTRY_BODY);
+    if (mappedBodyThreshold > 0 && body instanceof FileInputStream
+        && snapshot.getLength(ENTRY_BODY) >= mappedBodyThreshold) {
+      try {
+        return new MappedFileInputStream(((FileInputStream) body).getChannel()) {
+          @Override public void close() throws IOException {
+            snapshot.close();
+            super.close();
+          }
+        };
+      } catch (final IOException e) {
+        Log.w(TAG, "Cannot map cached body, fall back to stream", e);
+      }
+    }
+
+    return new FilterInputStream(body) {
       @Override public void close() throws IOException {
         snapshot.close();
         super.close();
@@ -271,30 +361,59 @@ public abstract class BaseFileResponseCache extends BaseSizeRestrictedCache
     if (!checkDiskCache()) { return false; }
     final CacheEntry cacheEntry = createGetEntry(url);
     if (cacheEntry == null) { return false; }
-    return diskCache.remove(cacheEntry.getCacheKey());
+    final String key = cacheEntry.getCacheKey();
+    index.remove(key);
+    return diskCache.remove(key);
   }
 
   @Override
   public boolean contains(final String url) {
+    return contains(url, false);
+  }
+
+  /**
+   * @param url content URL
+   * @return true if GET response for the URL is cached and is not expired according to the cache time rules
+   */
+  public boolean containsActual(final String url) {
+    return contains(url, true);
+  }
+
+  private boolean contains(final String url, final boolean actual) {
     final CacheEntry requestInfo = createGetEntry(url);
     if (requestInfo == null) { return false; }
 
+    if (!checkDiskCache()) { return false; }
+    final String key = requestInfo.getCacheKey();
+    final CacheIndex.Record record = index.get(key);
+    if (record != null) { return record.matches(requestInfo) && (!actual || record.canBeUsed()); }
+    if (index.isLoaded()) { return false; }
+
     final CacheEntry entry = newCacheEntry();
-    final DiskLruCache.Snapshot snapshot = readCacheInfo(requestInfo, entry);
+    final DiskLruCache.Snapshot snapshot = readCacheInfo(requestInfo, entry, false);
     if (snapshot == null) { return false; }
     IoUtils.closeQuietly(snapshot);
 
-    return entry.matches(requestInfo);
+    return entry.matches(requestInfo) && (!actual || entry.canBeUsed());
   }
 
   @Override
   public String getLocalPath(final String url) {
-    final CacheEntry requestInfo = createGetEntry(url);
-    if (requestInfo == null) { return null; }
-    File f = new File(getWorkingDirectory(), requestInfo.getCacheKey() + "." + ENTRY_BODY);
+    final String key = getCacheKey(url);
+    if (key == null) { return null; }
+    File f = new File(getWorkingDirectory(), key + "." + ENTRY_BODY);
     return f.getAbsolutePath();
   }
 
+  /**
+   * @param url content URL
+   * @return key of GET entry for the specified URL, null if URL is bad
+   */
+  protected final String getCacheKey(final String url) {
+    final CacheEntry requestInfo = createGetEntry(url);
+    return requestInfo != null ? requestInfo.getCacheKey() : null;
+  }
+
   @Override
   public void onCacheEntryWriteAbort(final CacheEntryRequest request) {
     writeAbortCount.incrementAndGet();
@@ -302,6 +421,8 @@ public abstract class BaseFileResponseCache extends BaseSizeRestrictedCache
   @Override
   public void onCacheEntryWriteSuccess(final CacheEntryRequest request) {
     writeSuccessCount.incrementAndGet();
+    final CacheEntry entry = request.getCacheEntry();
+    index.put(entry.getCacheKey(), entry);
     try {
       diskCache.flush();
     } catch (final IOException e) {
@@ -334,6 +455,7 @@ public abstract class BaseFileResponseCache extends BaseSizeRestrictedCache
         } finally {
           initSync.countDown();
         }
+        loadIndex();
         return null;
       }
     }
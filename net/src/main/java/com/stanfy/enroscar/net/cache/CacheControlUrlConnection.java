@@ -6,12 +6,15 @@ import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
 import java.net.URLConnection;
+import java.nio.ByteBuffer;
 
 import javax.net.ssl.HttpsURLConnection;
 
 import android.os.Build;
 import android.util.Log;
 
+import com.stanfy.enroscar.io.ByteBufferSource;
+import com.stanfy.enroscar.io.IoUtils;
 import com.stanfy.enroscar.net.UrlConnectionWrapper;
 
 /**
@@ -27,6 +30,9 @@ public class CacheControlUrlConnection extends UrlConnectionWrapper {
   /** Flag that indicates that connections stack has been cleared. */
   private boolean done = false;
 
+  /** Whether the response has been accepted by the response cache. */
+  private boolean responseCached;
+
   public CacheControlUrlConnection(final URLConnection urlConnection, final String cacheManagerName) {
     super(urlConnection);
     this.cacheManagerName = cacheManagerName;
@@ -34,6 +40,15 @@ public class CacheControlUrlConnection extends UrlConnectionWrapper {
 
   public String getResponseCacheName() { return cacheManagerName; }
 
+  /**
+   * Check whether the response body is written to the cache while it's being read.
+   * Valid after the input stream is obtained. Writing can still be aborted, e.g. if the body is not read completely.
+   * @return true if the response has been accepted by the response cache
+   */
+  public boolean isResponseCached() { return responseCached; }
+
+  void setResponseCached(final boolean responseCached) { this.responseCached = responseCached; }
+
   /*
    * Note: this method is not synchronized since CacheControlUrlConnection must be accessed from one thread only.
    */
@@ -99,7 +114,7 @@ public class CacheControlUrlConnection extends UrlConnectionWrapper {
   /**
    * Stream that restores connections stack when it's closed.
    */
-  protected class CacheControlInputStream extends FilterInputStream {
+  protected class CacheControlInputStream extends FilterInputStream implements ByteBufferSource {
 
     /**
      * @throws IOException if an I/O error happens
@@ -108,6 +123,11 @@ public class CacheControlUrlConnection extends UrlConnectionWrapper {
       super(CacheControlUrlConnection.super.getInputStream());
     }
 
+    @Override
+    public ByteBuffer asByteBuffer() throws IOException {
+      return IoUtils.getByteBuffer(in);
+    }
+
     @Override
     public void close() throws IOException {
       try {
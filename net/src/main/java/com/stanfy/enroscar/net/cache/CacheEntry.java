@@ -65,6 +65,23 @@ public class CacheEntry {
     }
   };
 
+  /** First byte of the binary format. Legacy text format always starts with an ASCII character. */
+  private static final int FORMAT_MAGIC = 0xCE;
+  /** Version of the binary format. */
+  private static final int FORMAT_VERSION = 1;
+  /** Size of the timestamp field. */
+  private static final int TIMESTAMP_SIZE = 8;
+  /** Byte mask. */
+  private static final int BYTE_MASK = 0xFF;
+  /** Varint payload bits. */
+  private static final int VARINT_MASK = 0x7F;
+  /** Varint continuation bit. */
+  private static final int VARINT_MORE = 0x80;
+  /** Mask of unsigned integer bits. */
+  private static final long INT_MASK = 0xFFFFFFFFL;
+  /** Varint payload bits count. */
+  private static final int VARINT_SHIFT = 7;
+
   /** Request URI. */
   private String uri;
   /** Request method. */
@@ -162,44 +179,134 @@ public class CacheEntry {
     return "GET".equalsIgnoreCase(requestMethod);
   }
   
+  /**
+   * Read this entry. Both binary and legacy text formats are supported.
+   * Input stream is closed after this method invocation.
+   * @param in entry metadata input stream
+   * @throws IOException if error happens
+   */
   public final void readFrom(final InputStream in) throws IOException {
+    read(in, true);
+  }
+
+  /**
+   * Read only data required for {@link #matches(CacheEntry)} and {@link #canBeUsed()} checks,
+   * response headers are skipped.
+   * Input stream is closed after this method invocation.
+   * @param in entry metadata input stream
+   * @throws IOException if error happens
+   */
+  public final void readHeaderFrom(final InputStream in) throws IOException {
+    read(in, false);
+  }
+
+  private void read(final InputStream in, final boolean withResponseHeaders) throws IOException {
     try {
-      uri = readString(in);
-      requestMethod = readString(in);
-      timestamp = readLong(in);
-      encoding = readString(in);
-      statusLine = readString(in);
-      if (encoding.length() == 0) {
-        this.encoding = null;
+      final int first = in.read();
+      if (first == FORMAT_MAGIC) {
+        readBinary(in, withResponseHeaders);
+      } else {
+        readText(in, first);
       }
-      readMetaData(in);
     } finally {
       in.close();
     }
   }
 
+  private void readText(final InputStream in, final int first) throws IOException {
+    uri = readString(in, first);
+    requestMethod = readString(in);
+    timestamp = readLong(in);
+    encoding = readString(in);
+    statusLine = readString(in);
+    if (encoding.length() == 0) {
+      this.encoding = null;
+    }
+    readMetaData(in);
+  }
+
+  private void readBinary(final InputStream in, final boolean withResponseHeaders) throws IOException {
+    final int version = in.read();
+    if (version != FORMAT_VERSION) {
+      throw new IOException("Unsupported cache entry format version " + version);
+    }
+    final byte[] ts = new byte[TIMESTAMP_SIZE];
+    readFully(in, ts, TIMESTAMP_SIZE);
+    long time = 0;
+    for (int i = 0; i < TIMESTAMP_SIZE; i++) {
+      time = (time << Byte.SIZE) | (ts[i] & BYTE_MASK);
+    }
+    timestamp = time;
+    uri = readUtf8(in);
+    requestMethod = readUtf8(in);
+
+    final long headersLength = readVarLong(in);
+    if (withResponseHeaders) {
+      encoding = readUtf8(in);
+      statusLine = readUtf8(in);
+    } else {
+      skipFully(in, headersLength);
+    }
+
+    readBinaryMetaData(in);
+  }
+
   /**
    * Read some special metadata about this cache entry.
+   * Used for entries written in the legacy text format.
    * @param in cache entry input stream
    * @throws IOException if error happens
+   * @see #readBinaryMetaData(InputStream)
    */
   protected void readMetaData(final InputStream in) throws IOException {
     // nothing
   }
 
+  /**
+   * Read some special metadata about this cache entry written by {@link #writeBinaryMetaData(OutputStream)}.
+   * Default implementation delegates to {@link #readMetaData(InputStream)}.
+   * @param in cache entry input stream
+   * @throws IOException if error happens
+   */
+  protected void readBinaryMetaData(final InputStream in) throws IOException {
+    readMetaData(in);
+  }
+
+  /**
+   * Write this entry in the binary format.
+   * Layout: magic byte, format version, 8 bytes of timestamp, URI, request method,
+   * length of response headers block, response headers (encoding, status line), entry-specific metadata.
+   * Strings are written as varint length followed by UTF-8 bytes.
+   * Output stream is closed after this method invocation.
+   * @param out output stream
+   * @throws IOException if error happens
+   */
   public final void writeTo(final OutputStream out) throws IOException {
-    final Writer writer = new OutputStreamWriter(out, IoUtils.UTF_8);
-    writeString(writer, uri);
-    writeString(writer, requestMethod);
-    writeLong(writer, timestamp);
-    writeString(writer, encoding);
-    writeString(writer, statusLine);
-    writeMetaData(writer);
-    writer.close();
+    out.write(FORMAT_MAGIC);
+    out.write(FORMAT_VERSION);
+    final byte[] ts = new byte[TIMESTAMP_SIZE];
+    long time = timestamp;
+    for (int i = TIMESTAMP_SIZE - 1; i >= 0; i--) {
+      ts[i] = (byte) time;
+      time >>>= Byte.SIZE;
+    }
+    out.write(ts);
+    writeUtf8(out, uri);
+    writeUtf8(out, requestMethod);
+
+    final byte[] encodingBytes = encoding != null ? encoding.getBytes(IoUtils.UTF_8) : null;
+    final byte[] statusLineBytes = statusLine != null ? statusLine.getBytes(IoUtils.UTF_8) : null;
+    writeVarLong(out, utf8Length(encodingBytes) + utf8Length(statusLineBytes));
+    writeUtf8(out, encodingBytes);
+    writeUtf8(out, statusLineBytes);
+
+    writeBinaryMetaData(out);
+    out.close();
   }
 
   /**
    * Write some special metadata for this entry.
+   * Used by default {@link #writeBinaryMetaData(OutputStream)} implementation.
    * @param writer writer for this cache entry
    * @throws IOException if error happens
    */
@@ -207,6 +314,154 @@ public class CacheEntry {
     // nothing
   }
 
+  /**
+   * Write some special metadata for this entry.
+   * Default implementation delegates to {@link #writeMetaData(Writer)}.
+   * Override it together with {@link #readBinaryMetaData(InputStream)} using varint and UTF-8 helpers
+   * of this class in order to get more compact metadata.
+   * @param out output stream, must not be closed by this method
+   * @throws IOException if error happens
+   */
+  protected void writeBinaryMetaData(final OutputStream out) throws IOException {
+    final Writer writer = new OutputStreamWriter(out, IoUtils.UTF_8);
+    writeMetaData(writer);
+    writer.flush();
+  }
+
+  /**
+   * Write an unsigned variable-length number.
+   * @param out output stream
+   * @param value non-negative value
+   * @throws IOException if error happens
+   */
+  protected static void writeVarLong(final OutputStream out, final long value) throws IOException {
+    long rest = value;
+    while ((rest & ~VARINT_MASK) != 0) {
+      out.write((int) ((rest & VARINT_MASK) | VARINT_MORE));
+      rest >>>= VARINT_SHIFT;
+    }
+    out.write((int) rest);
+  }
+
+  /**
+   * @param in input stream
+   * @return unsigned variable-length number written by {@link #writeVarLong(OutputStream, long)}
+   * @throws IOException if error happens
+   */
+  protected static long readVarLong(final InputStream in) throws IOException {
+    long result = 0;
+    for (int shift = 0; shift < Long.SIZE; shift += VARINT_SHIFT) {
+      final int b = in.read();
+      if (b == -1) {
+        throw new EOFException();
+      }
+      result |= (long) (b & VARINT_MASK) << shift;
+      if ((b & VARINT_MORE) == 0) {
+        return result;
+      }
+    }
+    throw new IOException("Malformed varint");
+  }
+
+  /**
+   * Write a signed integer as a zigzag-encoded variable-length number, so that small negative values are compact too.
+   * @param out output stream
+   * @param value integer value
+   * @throws IOException if error happens
+   */
+  protected static void writeVarInt(final OutputStream out, final int value) throws IOException {
+    writeVarLong(out, ((value << 1) ^ (value >> (Integer.SIZE - 1))) & INT_MASK);
+  }
+
+  /**
+   * @param in input stream
+   * @return signed integer written by {@link #writeVarInt(OutputStream, int)}
+   * @throws IOException if error happens or value does not fit an integer
+   */
+  protected static int readVarInt(final InputStream in) throws IOException {
+    final long value = readVarLong(in);
+    if (value > INT_MASK) {
+      throw new IOException("expected an int but was " + value);
+    }
+    final int zigzag = (int) value;
+    return (zigzag >>> 1) ^ -(zigzag & 1);
+  }
+
+  /**
+   * Write a string as its UTF-8 bytes prefixed with a length. Null values are supported.
+   * @param out output stream
+   * @param value string value, may be null
+   * @throws IOException if error happens
+   */
+  protected static void writeUtf8(final OutputStream out, final String value) throws IOException {
+    writeUtf8(out, value != null ? value.getBytes(IoUtils.UTF_8) : null);
+  }
+
+  private static void writeUtf8(final OutputStream out, final byte[] bytes) throws IOException {
+    if (bytes == null) {
+      out.write(0);
+      return;
+    }
+    writeVarLong(out, bytes.length + 1);
+    out.write(bytes);
+  }
+
+  private static long utf8Length(final byte[] bytes) {
+    if (bytes == null) {
+      return 1;
+    }
+    final int length = bytes.length + 1;
+    int result = 1;
+    for (long rest = length >>> VARINT_SHIFT; rest != 0; rest >>>= VARINT_SHIFT) {
+      result++;
+    }
+    return result + bytes.length;
+  }
+
+  /**
+   * @param in input stream
+   * @return string written by {@link #writeUtf8(OutputStream, String)}
+   * @throws IOException if error happens
+   */
+  protected static String readUtf8(final InputStream in) throws IOException {
+    final long length = readVarLong(in);
+    if (length == 0) {
+      return null;
+    }
+    if (length > Integer.MAX_VALUE) {
+      throw new IOException("Bad string length " + length);
+    }
+    final byte[] bytes = new byte[(int) length - 1];
+    readFully(in, bytes, bytes.length);
+    return new String(bytes, IoUtils.UTF_8);
+  }
+
+  private static void readFully(final InputStream in, final byte[] buffer, final int length) throws IOException {
+    int offset = 0;
+    while (offset < length) {
+      final int cnt = in.read(buffer, offset, length - offset);
+      if (cnt == -1) {
+        throw new EOFException();
+      }
+      offset += cnt;
+    }
+  }
+
+  private static void skipFully(final InputStream in, final long count) throws IOException {
+    long rest = count;
+    while (rest > 0) {
+      final long skipped = in.skip(rest);
+      if (skipped <= 0) {
+        if (in.read() == -1) {
+          throw new EOFException();
+        }
+        rest--;
+      } else {
+        rest -= skipped;
+      }
+    }
+  }
+
   /**
    * @param in input stream
    * @return next line from the stream parsed as an integer
@@ -259,11 +514,15 @@ public class CacheEntry {
    * @throws IOException if error happens
    */
   protected static String readString(final InputStream in) throws IOException {
+    return readString(in, in.read());
+  }
+
+  private static String readString(final InputStream in, final int first) throws IOException {
     // TODO support UTF-8 here instead
 
     final StringBuilder result = new StringBuilder(80);
+    int c = first;
     while (true) {
-      final int c = in.read();
       if (c == -1) {
         throw new EOFException();
       } else if (c == '\n') {
@@ -271,6 +530,7 @@ public class CacheEntry {
       }
 
       result.append((char) c);
+      c = in.read();
     }
     final int length = result.length();
     if (length > 0 && result.charAt(length - 1) == '\r') {
@@ -298,11 +558,19 @@ public class CacheEntry {
   }
 
   public boolean canBeUsed() {
-    if (timeRules == null) { return true; }
+    final CacheTimeRule rule = getMatchingTimeRule();
+    return rule == null || rule.isActual(timestamp);
+  }
+
+  /**
+   * @return first time rule that matches this entry, null if there is no such a rule
+   */
+  public CacheTimeRule getMatchingTimeRule() {
+    if (timeRules == null) { return null; }
     for (final CacheTimeRule rule : timeRules) {
-      if (rule.matches(this)) { return rule.isActual(timestamp); }
+      if (rule.matches(this)) { return rule; }
     }
-    return true;
+    return null;
   }
 
   public CacheResponse newCacheResponse(final InputStream in) { return new CacheEntryResponse(in); }
@@ -402,6 +670,9 @@ public class CacheEntry {
     @Override
     public OutputStream getBody() throws IOException { return body; }
 
+    /** @return cache entry this request writes */
+    public CacheEntry getCacheEntry() { return CacheEntry.this; }
+
     @Override
     public void abort() {
       synchronized (CacheEntryRequest.this) {
@@ -0,0 +1,118 @@
+package com.stanfy.enroscar.net.cache;
+
+import java.io.File;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * In-memory index of file cache entries.
+ * Keeps data required for existence and freshness checks, so that they do not require disk reads.
+ * <p>
+ * {@link com.jakewharton.disklrucache.DiskLruCache} does not report evictions, that's why
+ * positive lookups are validated with a check for body file existence.
+ * Until the index is completely loaded, absence of a record does not mean absence of an entry.
+ * </p>
+ * @author Roman Mazur (Stanfy - http://stanfy.com)
+ */
+final class CacheIndex {
+
+  /** Records mapped by cache keys. */
+  private final ConcurrentHashMap<String, Record> records = new ConcurrentHashMap<String, Record>();
+
+  /** Whether all the entries on disk have been indexed. */
+  private volatile boolean loaded;
+
+  /** Suffix of body files. */
+  private final String bodySuffix;
+
+  /** Cache directory. */
+  private volatile File directory;
+
+  CacheIndex(final int bodyIndex) {
+    this.bodySuffix = "." + bodyIndex;
+  }
+
+  void setDirectory(final File directory) {
+    this.directory = directory;
+  }
+
+  void setLoaded() {
+    loaded = true;
+  }
+
+  boolean isLoaded() {
+    return loaded;
+  }
+
+  /**
+   * @param key cache key
+   * @return record for the entry or null if it's not indexed or was evicted
+   */
+  Record get(final String key) {
+    final Record record = records.get(key);
+    if (record == null) {
+      return null;
+    }
+    final File dir = directory;
+    if (dir != null && !new File(dir, key + bodySuffix).exists()) {
+      records.remove(key, record);
+      return null;
+    }
+    return record;
+  }
+
+  void put(final String key, final CacheEntry entry) {
+    records.put(key, new Record(entry));
+  }
+
+  /** Used while loading in order not to override data put by concurrent writes. */
+  void putIfAbsent(final String key, final CacheEntry entry) {
+    records.putIfAbsent(key, new Record(entry));
+  }
+
+  void remove(final String key) {
+    records.remove(key);
+  }
+
+  void clear() {
+    records.clear();
+  }
+
+  int size() {
+    return records.size();
+  }
+
+  /** Index record. */
+  static final class Record {
+
+    /** Request URI. */
+    final String uri;
+    /** Request method. */
+    final String requestMethod;
+    /** Time stamp. */
+    final long timestamp;
+    /** Time rule matched by the entry, null if there is no such a rule. */
+    final CacheTimeRule rule;
+
+    Record(final CacheEntry entry) {
+      this.uri = entry.getUri();
+      this.requestMethod = entry.getRequestMethod();
+      this.timestamp = entry.getTimestamp();
+      this.rule = entry.getMatchingTimeRule();
+    }
+
+    /**
+     * @param requestInfo request info
+     * @return same result as {@link CacheEntry#matches(CacheEntry)} of the indexed entry
+     */
+    boolean matches(final CacheEntry requestInfo) {
+      return uri.equals(requestInfo.getUri()) && requestMethod.equals(requestInfo.getRequestMethod());
+    }
+
+    /** @return same result as {@link CacheEntry#canBeUsed()} of the indexed entry */
+    boolean canBeUsed() {
+      return rule == null || rule.isActual(timestamp);
+    }
+
+  }
+
+}
@@ -131,7 +131,9 @@ public class ResponseCacheSwitcher extends ResponseCache {
     if (connection != null) {
       final ResponseCache cache = getResponseCacheBean(connection);
       if (cache != null) {
-        return cache.put(uri, connection);
+        final CacheRequest request = cache.put(uri, connection);
+        connection.setResponseCached(request != null);
+        return request;
       }
     }
     return defaultCache != null ? defaultCache.put(uri, conn) : null;
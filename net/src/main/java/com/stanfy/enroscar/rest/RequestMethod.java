@@ -1,19 +1,32 @@
 package com.stanfy.enroscar.rest;
 
 import java.io.IOException;
+import java.io.InputStream;
 import java.net.HttpURLConnection;
 import java.net.URLConnection;
+import java.util.Collections;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import android.content.Context;
 import android.support.v4.net.TrafficStatsCompat;
 import android.util.Log;
 
+import com.stanfy.enroscar.beans.BeansManager;
+import com.stanfy.enroscar.io.BuffersPool;
+import com.stanfy.enroscar.io.IoUtils;
 import com.stanfy.enroscar.net.UrlConnectionWrapper;
 import com.stanfy.enroscar.rest.request.RequestDescription;
 
 /**
  * Works with the server API method. Prepares HTTP request (URL and body),
  * executes this request and processes the response.
+ * <p>
+ *   By default connection is disconnected after each request that closes its socket.
+ *   In connection reuse mode (see {@link #setConnectionReuse(boolean)}) successful requests
+ *   only close the response stream, so that the platform can reuse the connection.
+ * </p>
  * @author Roman Mazur - Stanfy (http://www.stanfy.com)
  */
 public class RequestMethod {
@@ -21,6 +34,40 @@ public class RequestMethod {
   /** Logging tag. */
   private static final String TAG = "ReqMethod";
 
+  /** Maximum number of unread response bytes that are drained in order to reuse the connection. */
+  public static final int MAX_DRAIN_LENGTH = 4096;
+
+  /** Whether connections should be returned to the pool after successful requests. */
+  private volatile boolean connectionReuse;
+
+  /** Counters mapped by host names. */
+  private final ConcurrentHashMap<String, HostCounters> hostCounters = new ConcurrentHashMap<String, HostCounters>();
+
+  /**
+   * Enable or disable connection reuse mode.
+   * When enabled, connections of successful requests are not disconnected: their response streams are
+   * drained and closed so that connections return to the platform pool (HTTP keep-alive).
+   * Connections are still disconnected on errors or cancellation.
+   * @param connectionReuse whether to reuse connections
+   */
+  public void setConnectionReuse(final boolean connectionReuse) {
+    this.connectionReuse = connectionReuse;
+  }
+  public boolean isConnectionReuse() { return connectionReuse; }
+
+  /**
+   * @param host host name
+   * @return counters of connections to the specified host, null if there were no requests to this host
+   */
+  public HostCounters getHostCounters(final String host) {
+    return hostCounters.get(host);
+  }
+
+  /** @return unmodifiable map of counters by host names */
+  public Map<String, HostCounters> getHostCounters() {
+    return Collections.unmodifiableMap(hostCounters);
+  }
+
   /**
    * @param systemContext system context
    * @param description request description
@@ -33,6 +80,7 @@ public class RequestMethod {
     before(systemContext, description);
     
     URLConnection connection = null;
+    boolean success = false;
     try {
 
       // don't even make a connection if request is canceled
@@ -46,6 +94,7 @@ public class RequestMethod {
       
       // parse response
       final Object model = connection.getContent();
+      success = !description.isCanceled();
       // return parsed response and connection
       return new RequestResult(model, connection);
 
@@ -57,9 +106,13 @@ public class RequestMethod {
 
       after(systemContext, description);
       
-      // do as mom said
       if (connection != null) {
-        disconnect(connection);
+        if (success && connectionReuse) {
+          release(systemContext, connection);
+        } else {
+          // do as mom said
+          disconnect(connection);
+        }
       }
       if (Utils.isDebugRest(systemContext)) {
         Log.d(TAG, "Request time: " + (System.currentTimeMillis() - startTime) + " ms");
@@ -75,9 +128,81 @@ public class RequestMethod {
     final URLConnection http = UrlConnectionWrapper.unwrap(connection);
     if (http instanceof HttpURLConnection) {
       ((HttpURLConnection) http).disconnect();
+      countersFor(http).disconnected.incrementAndGet();
     }
   }
 
+  /**
+   * Complete successful request without closing the socket: drain and close the response stream
+   * so that the connection can be reused.
+   * Content handlers usually read the stream to its end and close it, in this case nothing has to be drained.
+   * If more than {@link #MAX_DRAIN_LENGTH} bytes are left, the connection is disconnected instead.
+   * @param systemContext system context
+   * @param connection connection instance (may be wrapped)
+   */
+  protected void release(final Context systemContext, final URLConnection connection) {
+    final URLConnection http = UrlConnectionWrapper.unwrap(connection);
+    if (!(http instanceof HttpURLConnection)) {
+      return;
+    }
+
+    InputStream stream;
+    try {
+      stream = http.getInputStream();
+    } catch (final IOException e) {
+      stream = ((HttpURLConnection) http).getErrorStream();
+    }
+    if (stream != null && !drain(stream, BeansManager.get(systemContext).getContainer().getBean(BuffersPool.class))) {
+      disconnect(connection);
+      return;
+    }
+    countersFor(http).released.incrementAndGet();
+  }
+
+  /**
+   * Read at most {@link #MAX_DRAIN_LENGTH} bytes and close the stream.
+   * @param stream response stream
+   * @param buffersPool buffers pool, may be null
+   * @return false if the stream has more bytes
+   */
+  private static boolean drain(final InputStream stream, final BuffersPool buffersPool) {
+    final byte[] buffer = buffersPool != null ? buffersPool.get(MAX_DRAIN_LENGTH) : new byte[MAX_DRAIN_LENGTH];
+    try {
+      int total = 0;
+      while (true) {
+        final int count = stream.read(buffer, 0, Math.min(buffer.length, MAX_DRAIN_LENGTH + 1 - total));
+        if (count == -1) {
+          return true;
+        }
+        total += count;
+        if (total > MAX_DRAIN_LENGTH) {
+          return false;
+        }
+      }
+    } catch (final IOException e) {
+      // stream is already closed by content handler
+      return true;
+    } finally {
+      IoUtils.closeQuietly(stream);
+      if (buffersPool != null) {
+        buffersPool.release(buffer);
+      }
+    }
+  }
+
+  private HostCounters countersFor(final URLConnection connection) {
+    final String host = connection.getURL().getHost();
+    HostCounters counters = hostCounters.get(host);
+    if (counters == null) {
+      counters = new HostCounters();
+      HostCounters prev = hostCounters.putIfAbsent(host, counters);
+      if (prev != null) {
+        counters = prev;
+      }
+    }
+    return counters;
+  }
+
   /**
    * Take actions before request is sent. Default implementation uses {@link TrafficStatsCompat#tagSocket(java.net.Socket)} in order to track network activity.
    * @param systemContext context instance
@@ -96,6 +221,24 @@ public class RequestMethod {
     TrafficStatsCompat.clearThreadStatsTag();
   }
   
+  /** Connection counters for one host. */
+  public static class HostCounters {
+    /** Number of connections returned to the pool. */
+    final AtomicInteger released = new AtomicInteger();
+    /** Number of disconnected connections. */
+    final AtomicInteger disconnected = new AtomicInteger();
+
+    /** @return number of connections that were returned to the pool and can be reused by the next requests */
+    public int getReleasedCount() { return released.get(); }
+    /** @return number of connections that were disconnected */
+    public int getDisconnectedCount() { return disconnected.get(); }
+
+    @Override
+    public String toString() {
+      return "released=" + released.get() + ", disconnected=" + disconnected.get();
+    }
+  }
+
   /** Request result. */
   public static class RequestResult {
     /** Model instance. */
@@ -21,9 +21,11 @@ import android.util.Log;
 import android.util.SparseArray;
 
 import com.stanfy.enroscar.content.loader.ResponseData;
+import com.stanfy.enroscar.io.SerialExecutor;
 import com.stanfy.enroscar.rest.DirectRequestExecutor;
 import com.stanfy.enroscar.rest.DirectRequestExecutorHooks;
 import com.stanfy.enroscar.rest.RequestMethod;
+import com.stanfy.enroscar.rest.request.OperationType;
 import com.stanfy.enroscar.rest.request.RequestDescription;
 
 /**
@@ -59,6 +61,9 @@ public class ApiMethods {
                            KEEP_ALIVE = 1,
                            MAX_QUEUE_LENGTH = 100;
 
+  /** Maximum number of queued requests processed within one thread pool dispatch. */
+  private static final int TASK_QUEUE_DRAIN_BATCH = 4;
+
   /** Threads pool. */
   private static final Executor THREAD_POOL_EXECUTOR;
   static {
@@ -109,7 +114,12 @@ public class ApiMethods {
   /** API callbacks. */
   private final ArrayList<ApiMethodCallback> apiCallbacks = new ArrayList<ApiMethodCallback>();
   /** Map of active requests by their IDs. */
-  private final SparseArray<RequestTracker> trackersMap = new SparseArray<RequestTracker>();
+  private final SparseArray<ActiveRequest> trackersMap = new SparseArray<ActiveRequest>();
+
+  /** Whether identical requests should share one execution. */
+  private volatile boolean requestsCoalescing;
+  /** Coalesced requests that are being executed, mapped by request signatures. Also guards their state. */
+  private final HashMap<String, CoalescedRequest> coalescedRequests = new HashMap<String, CoalescedRequest>();
 
   /**
    * Constructs remote API methods implementation.
@@ -124,7 +134,7 @@ public class ApiMethods {
     synchronized (TASK_QUEUE_EXECUTORS) {
       Executor exec = TASK_QUEUE_EXECUTORS.get(name);
       if (exec == null) {
-        exec = new TaskQueueExecutor();
+        exec = new SerialExecutor(THREAD_POOL_EXECUTOR, TASK_QUEUE_DRAIN_BATCH);
         TASK_QUEUE_EXECUTORS.put(name, exec);
       }
       return exec;
@@ -164,9 +174,41 @@ public class ApiMethods {
    * @return request tracker instance
    */
   protected RequestTracker createRequestTracker(final RequestDescription description) {
+    return createRequestTracker(description, commonProcessorHooks);
+  }
+
+  /**
+   * Look at request description and construct an appropriate tracker for it (either enqueue or do parallel processing).
+   * @param description request description to process
+   * @param hooks processing hooks
+   * @return request tracker instance
+   */
+  protected RequestTracker createRequestTracker(final RequestDescription description, final DirectRequestExecutorHooks hooks) {
     return description.isParallelMode()
-      ? new ParallelRequestTracker(description, commonProcessorHooks)   // request must be parallel
-      : new TaskQueueRequestTracker(description, commonProcessorHooks); // request must be enqueued
+      ? new ParallelRequestTracker(description, hooks)   // request must be parallel
+      : new TaskQueueRequestTracker(description, hooks); // request must be enqueued
+  }
+
+  /**
+   * Enable or disable requests coalescing.
+   * When enabled, concurrent requests that can be coalesced (see {@link #canBeCoalesced(RequestDescription)})
+   * and have equal signatures (see {@link RequestDescription#getSignature()}) share one execution.
+   * Its result is reported to callbacks for every request description, response data instance is shared.
+   * Shared execution is canceled only when all the coalesced requests are canceled.
+   * @param requestsCoalescing whether to coalesce identical requests
+   */
+  public void setRequestsCoalescing(final boolean requestsCoalescing) {
+    this.requestsCoalescing = requestsCoalescing;
+  }
+  public boolean isRequestsCoalescing() { return requestsCoalescing; }
+
+  /**
+   * @param description request description
+   * @return whether the request may share execution with identical ones, default implementation accepts simple GETs
+   */
+  protected boolean canBeCoalesced(final RequestDescription description) {
+    return description.getOperationType() == OperationType.SIMPLE_GET
+        && (description.getBinaryData() == null || description.getBinaryData().isEmpty());
   }
 
   // -------------------------------------------- Client-side API ------------------------------------------------
@@ -174,6 +216,11 @@ public class ApiMethods {
   public void performRequest(final RequestDescription description) {
     if (DEBUG) { Log.d(TAG, "Perform " + description + " " + this); }
 
+    if (requestsCoalescing && canBeCoalesced(description)) {
+      performCoalescedRequest(description);
+      return;
+    }
+
     final RequestTracker tracker = createRequestTracker(description);
     synchronized (trackersMap) {
       trackersMap.put(tracker.requestDescription.getId(), tracker);
@@ -181,8 +228,24 @@ public class ApiMethods {
     tracker.performRequest();
   }
 
+  private void performCoalescedRequest(final RequestDescription description) {
+    final String signature = description.getSignature();
+    final CoalescedRequest request;
+    synchronized (coalescedRequests) {
+      final CoalescedRequest active = coalescedRequests.get(signature);
+      if (active != null) {
+        active.join(description);
+        if (DEBUG) { Log.d(TAG, "Coalesce " + description + " with " + active.leader); }
+        return;
+      }
+      request = new CoalescedRequest(signature, description);
+      coalescedRequests.put(signature, request);
+    }
+    request.tracker.performRequest();
+  }
+
   public boolean cancelRequest(final int id) {
-    final RequestTracker tracker;
+    final ActiveRequest tracker;
     synchronized (trackersMap) {
       tracker = trackersMap.get(id);
     }
@@ -218,36 +281,139 @@ public class ApiMethods {
     abstract void report(final ApiMethodCallback callback, final RequestDescription requestDescription, final ResponseData<?> responseData);
   }
 
-  /** Executor for the task queue. */
-  private static class TaskQueueExecutor implements Executor {
-    /** Tasks queue. */
-    final LinkedBlockingQueue<Runnable> tasks = new LinkedBlockingQueue<Runnable>();
-    /** Active task. */
-    Runnable activeTask;
+  /**
+   * Member of a shared execution. It's started together with the execution, so it can only be canceled.
+   */
+  protected static class CoalescedRequestMember extends ActiveRequest {
+
+    /** Shared execution. */
+    final CoalescedRequest request;
+
+    /**
+     * @param rd request description
+     * @param request shared execution
+     */
+    public CoalescedRequestMember(final RequestDescription rd, final CoalescedRequest request) {
+      super(rd);
+      this.request = request;
+    }
 
     @Override
-    public synchronized void execute(final Runnable r) {
-      tasks.offer(new Runnable() {
-        @Override
-        public void run() {
-          try {
-            r.run();
-          } finally {
-            scheduleNext();
+    public boolean cancelRequest() {
+      return request.cancel(requestDescription);
+    }
+
+  }
+
+  /**
+   * One execution of identical requests.
+   * Acts as hooks for the executed (leader) request description and reports its results for every member.
+   * State is guarded by {@link #coalescedRequests}.
+   */
+  protected class CoalescedRequest implements DirectRequestExecutorHooks {
+
+    /** Request signature. */
+    final String signature;
+    /** Executed request description. */
+    final RequestDescription leader;
+    /** Tracker of the executed request. */
+    final RequestTracker tracker;
+
+    /** All the coalesced requests including the leader. */
+    private final ArrayList<RequestDescription> members = new ArrayList<RequestDescription>();
+    /** Canceled members. */
+    private final ArrayList<RequestDescription> canceledMembers = new ArrayList<RequestDescription>();
+
+    /** Whether results are being reported. New members cannot join after that. */
+    private boolean closed;
+
+    CoalescedRequest(final String signature, final RequestDescription leader) {
+      this.signature = signature;
+      this.leader = leader;
+      this.tracker = createRequestTracker(leader, this);
+      join(leader);
+    }
+
+    // must be called under coalescedRequests lock
+    void join(final RequestDescription description) {
+      members.add(description);
+      synchronized (trackersMap) {
+        trackersMap.put(description.getId(), new CoalescedRequestMember(description, this));
+      }
+    }
+
+    boolean cancel(final RequestDescription description) {
+      final boolean cancelExecution;
+      synchronized (coalescedRequests) {
+        if (closed || canceledMembers.contains(description)) { return false; }
+        canceledMembers.add(description);
+        cancelExecution = canceledMembers.size() == members.size();
+      }
+      if (description != leader) {
+        description.setCanceled(true);
+      }
+      if (cancelExecution) {
+        tracker.cancelRequest();
+      }
+      return true;
+    }
+
+    private ArrayList<RequestDescription> close() {
+      synchronized (coalescedRequests) {
+        if (!closed) {
+          closed = true;
+          if (coalescedRequests.get(signature) == this) {
+            coalescedRequests.remove(signature);
           }
         }
-      });
-      if (activeTask == null) {
-        scheduleNext();
+        return new ArrayList<RequestDescription>(members);
       }
     }
 
-    synchronized void scheduleNext() {
-      activeTask = tasks.poll();
-      if (activeTask != null) {
-        THREAD_POOL_EXECUTOR.execute(activeTask);
+    private boolean isCanceled(final RequestDescription description) {
+      synchronized (coalescedRequests) {
+        return canceledMembers.contains(description);
       }
     }
+
+    private void report(final ResponseData<?> responseData, final CallbackReporter reporter) {
+      final DirectRequestExecutorHooks hooks = commonProcessorHooks;
+      for (final RequestDescription member : close()) {
+        if (reporter == CANCEL_REPORTER || isCanceled(member)) {
+          hooks.onRequestCancel(member, reporter == CANCEL_REPORTER ? responseData : null);
+        } else if (reporter == SUCCESS_REPORTER) {
+          hooks.onRequestSuccess(member, responseData);
+        } else {
+          hooks.onRequestError(member, responseData);
+        }
+      }
+    }
+
+    @Override
+    public void beforeRequestProcessingStarted(final RequestDescription requestDescription, final RequestMethod requestMethod) {
+      commonProcessorHooks.beforeRequestProcessingStarted(requestDescription, requestMethod);
+    }
+
+    @Override
+    public void afterRequestProcessingFinished(final RequestDescription requestDescription, final RequestMethod requestMethod) {
+      for (final RequestDescription member : close()) {
+        commonProcessorHooks.afterRequestProcessingFinished(member, requestMethod);
+      }
+    }
+
+    @Override
+    public void onRequestSuccess(final RequestDescription requestDescription, final ResponseData<?> responseData) {
+      report(responseData, SUCCESS_REPORTER);
+    }
+    @Override
+    public void onRequestError(final RequestDescription requestDescription, final ResponseData<?> responseData) {
+      report(responseData, ERROR_REPORTER);
+    }
+    @Override
+    public void onRequestCancel(final RequestDescription requestDescription, final ResponseData<?> responseData) {
+      report(responseData, CANCEL_REPORTER);
+    }
+
   }
 
   /** Task that processes request description. */
@@ -288,16 +454,16 @@ public class ApiMethods {
   }
 
   /**
-   * Request tracker. It knows how to start or cancel request.
+   * Request that is being processed. It knows how to cancel request.
    */
-  protected abstract static class RequestTracker {
+  protected abstract static class ActiveRequest {
     /** Request description. */
     final RequestDescription requestDescription;
 
     /**
      * @param rd request description to process
      */
-    public RequestTracker(final RequestDescription rd) {
+    public ActiveRequest(final RequestDescription rd) {
       this.requestDescription = rd;
     }
 
@@ -306,8 +472,6 @@ public class ApiMethods {
       return requestDescription;
     }
 
-    /** Start a request. */
-    public abstract void performRequest();
     /**
      * Abort a request.
      * @return true id request was aborted
@@ -315,6 +479,22 @@ public class ApiMethods {
     public abstract boolean cancelRequest();
   }
 
+  /**
+   * Request tracker. It knows how to start or cancel request.
+   */
+  protected abstract static class RequestTracker extends ActiveRequest {
+
+    /**
+     * @param rd request description to process
+     */
+    public RequestTracker(final RequestDescription rd) {
+      super(rd);
+    }
+
+    /** Start a request. */
+    public abstract void performRequest();
+  }
+
   /**
    * Tracker for enqueued requests.
    * @author Roman Mazur (Stanfy - http://stanfy.com)
@@ -7,10 +7,18 @@ import android.util.Log;
 import com.stanfy.enroscar.content.OffsetInfoProvider;
 import com.stanfy.enroscar.content.loader.LoadmoreLoader;
 import com.stanfy.enroscar.content.loader.ResponseData;
+import com.stanfy.enroscar.net.PartialContentListener;
 import com.stanfy.enroscar.rest.request.ListRequestBuilder;
+import com.stanfy.enroscar.rest.request.RequestDescription;
+import com.stanfy.enroscar.rest.response.PartialContentDispatcher;
 
 /**
  * Request builder loader that can load more data.
+ * <p>
+ *   Loaded pages are appended to the list received before, unless the page list is an {@link OffsetInfoProvider}.
+ *   If partial results are enabled (see {@link #deliverPartialResults(boolean)}),
+ *   page elements are delivered in batches while the response is being parsed.
+ * </p>
  * @author Roman Mazur (Stanfy - http://stanfy.com)
  *
  * @param <MT> model type
@@ -36,6 +44,15 @@ public class LoadMoreListLoader<MT, LT extends List<MT>> extends RequestBuilderL
   /** Use limit parameter flag. */
   private boolean useLimitFlag;
 
+  /** Partial results flag. */
+  private boolean partialResults;
+  /** Listener of the current request partial content. */
+  private volatile BatchListener batchListener;
+  /** Items list size before the current page. */
+  private int pageStart;
+  /** Number of the current page elements delivered before the request is finished. */
+  private int partialCount;
+
   public LoadMoreListLoader(final ListRequestBuilder<LT, MT> requestBuilder) {
     super(requestBuilder);
     this.offset = requestBuilder.getOffset();
@@ -60,6 +77,15 @@ public class LoadMoreListLoader<MT, LT extends List<MT>> extends RequestBuilderL
     return this;
   }
 
+  /**
+   * @param flag whether page elements should be delivered before the whole page is parsed
+   * @return this instance for chaining
+   */
+  public LoadMoreListLoader<MT, LT> deliverPartialResults(final boolean flag) {
+    this.partialResults = flag;
+    return this;
+  }
+
   /** @return next 'offset' value */
   protected final String nextOffset() {
     if (offsetIncrementor == null) { return String.valueOf(Integer.parseInt(offset) + 1); }
@@ -90,6 +116,7 @@ public class LoadMoreListLoader<MT, LT extends List<MT>> extends RequestBuilderL
       }
 
       // error case
+      discardPartialItems();
       stopLoadMore = true;
       return data;
     }
@@ -104,10 +131,19 @@ public class LoadMoreListLoader<MT, LT extends List<MT>> extends RequestBuilderL
 
     } else {
 
-      if (itemsList != null) {
-        list.addAll(0, itemsList);
+      if (itemsList != null && !(list instanceof OffsetInfoProvider)) {
+        // append elements that have not been delivered yet
+        itemsList.addAll(list.subList(Math.min(partialCount, lastLoadedCount), lastLoadedCount));
+        data.setModel(itemsList);
+      } else {
+        // offset info is taken from the last page list
+        if (itemsList != null) {
+          discardPartialItems();
+          list.addAll(0, itemsList);
+        }
+        itemsList = list;
       }
-      itemsList = list;
+      partialCount = 0;
 
       OffsetInfoProvider oiProvider = null;
       if (data instanceof OffsetInfoProvider) {
@@ -123,6 +159,82 @@ public class LoadMoreListLoader<MT, LT extends List<MT>> extends RequestBuilderL
     return data;
   }
 
+  @Override
+  protected void onRequestStarted(final int requestId) {
+    // previous request may be canceled after its elements have been delivered
+    if (discardPartialItems()) {
+      deliverPartialResult(new ResponseData<LT>(itemsList));
+    }
+    pageStart = itemsList != null ? itemsList.size() : 0;
+    if (requestId == -1) {
+      onRequestFinished();
+    }
+  }
+
+  @Override
+  protected void onRequestPerforming(final RequestDescription requestDescription) {
+    // listener must be known before the request is converted to a connection
+    onRequestFinished();
+    if (partialResults) {
+      batchListener = new BatchListener(requestDescription.getId());
+      PartialContentDispatcher.register(requestDescription.getId(), batchListener);
+    }
+  }
+
+  @Override
+  protected void onRequestFinished() {
+    if (batchListener != null) {
+      PartialContentDispatcher.unregister(batchListener.requestId, batchListener);
+      batchListener = null;
+    }
+  }
+
+  @Override
+  protected void onCanceled(final ResponseData<LT> responseData) {
+    super.onCanceled(responseData);
+    if (discardPartialItems()) {
+      deliverPartialResult(new ResponseData<LT>(itemsList));
+      if (!isStarted() && !isReset()) {
+        // page has not been loaded completely, load it again when started
+        onContentChanged();
+      }
+    }
+  }
+
+  /**
+   * Called in the main thread.
+   * @param listener listener that received the batch
+   * @param batch page elements
+   * @param offset index of the first batch element in the page
+   */
+  void onListBatch(final BatchListener listener, final LT batch, final int offset) {
+    if (listener != batchListener || offset != partialCount) {
+      // request is finished or previous batch is missed
+      return;
+    }
+    if (itemsList == null) {
+      itemsList = batch;
+    } else {
+      itemsList.addAll(batch);
+    }
+    partialCount += batch.size();
+    // new response object is required by loader manager to notify about the same list
+    deliverPartialResult(new ResponseData<LT>(itemsList));
+  }
+
+  /**
+   * Remove elements of the current page delivered before the request finish.
+   * @return whether any elements have been removed
+   */
+  private boolean discardPartialItems() {
+    if (partialCount == 0) {
+      return false;
+    }
+    itemsList.subList(pageStart, pageStart + partialCount).clear();
+    partialCount = 0;
+    return true;
+  }
+
   @Override
   public void forceLoadMore() {
     final String nOffset = nextOffset();
@@ -149,6 +261,37 @@ public class LoadMoreListLoader<MT, LT extends List<MT>> extends RequestBuilderL
     return !stopLoadMore;
   }
 
+  /**
+   * Receives page batches in the working thread and passes them to the main thread.
+   */
+  private final class BatchListener implements PartialContentListener {
+
+    /** Request ID. */
+    final int requestId;
+
+    public BatchListener(final int requestId) {
+      this.requestId = requestId;
+    }
+
+    @Override
+    public boolean acceptsPartialContent() {
+      return batchListener == this;
+    }
+
+    @Override
+    public void onListBatch(final List<?> batch, final int offset) {
+      @SuppressWarnings("unchecked")
+      final LT list = (LT) batch;
+      deliverDispatchCallback(new Runnable() {
+        @Override
+        public void run() {
+          LoadMoreListLoader.this.onListBatch(BatchListener.this, list, offset);
+        }
+      });
+    }
+
+  }
+
   /**
    * Offset/limit incrementor.
    */
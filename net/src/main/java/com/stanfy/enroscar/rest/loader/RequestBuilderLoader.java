@@ -126,6 +126,7 @@ public class RequestBuilderLoader<MT> extends Loader<ResponseData<MT>> {
   }
 
   private void resetStateAfterComplete() {
+    onRequestFinished();
     apiSupport.unbindAndStopListening();
     requestId = -1;
     cancelingRequestId = -1;
@@ -164,6 +165,30 @@ public class RequestBuilderLoader<MT> extends Loader<ResponseData<MT>> {
     requestWaiting = false;
     requestId = requestBuilder.execute();
     if (DEBUG) { Log.v(TAG, "executeRequestNow, " + this); }
+    onRequestStarted(requestId);
+  }
+
+  /**
+   * Called in the main thread before the request is passed to the executor.
+   * @param requestDescription request description
+   */
+  protected void onRequestPerforming(final RequestDescription requestDescription) {
+    // nothing
+  }
+
+  /**
+   * Called in the main thread after the request has been passed to the executor.
+   * @param requestId request ID
+   */
+  protected void onRequestStarted(final int requestId) {
+    // nothing
+  }
+
+  /**
+   * Called in the main thread when request results are received, before they are accepted.
+   */
+  protected void onRequestFinished() {
+    // nothing
   }
 
   private void checkForUpdateRequest() {
@@ -203,6 +228,24 @@ public class RequestBuilderLoader<MT> extends Loader<ResponseData<MT>> {
     checkForUpdateRequest();
   }
 
+  /**
+   * Deliver data that is available before the request is finished.
+   * Must be called in the main thread.
+   * @param data partially loaded data
+   */
+  protected void deliverPartialResult(final ResponseData<MT> data) {
+    if (isReset()) {
+      onReleaseData(data);
+      return;
+    }
+    final ResponseData<MT> oldData = receivedResponse;
+    receivedResponse = data;
+    deliverResult(data);
+    if (oldData != null && oldData != data) {
+      onReleaseData(oldData);
+    }
+  }
+
   /**
    * @param data loaded data (rather likely it's null)
    */
@@ -415,6 +458,7 @@ public class RequestBuilderLoader<MT> extends Loader<ResponseData<MT>> {
     @Override
     public int performRequest(final RequestDescription description) {
       bindAndListen();
+      onRequestPerforming(description);
       return super.performRequest(description);
     }
 
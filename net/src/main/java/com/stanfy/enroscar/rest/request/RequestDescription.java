@@ -20,12 +20,13 @@ import com.stanfy.enroscar.rest.request.net.PayloadPostConverter;
 import com.stanfy.enroscar.rest.request.net.SimpleGetConverter;
 import com.stanfy.enroscar.rest.request.net.SimplePostConverter;
 import com.stanfy.enroscar.rest.request.net.UploadPostConverter;
-import com.stanfy.enroscar.rest.response.Model;
+import com.stanfy.enroscar.rest.response.ModelInfo;
 
 import java.io.IOException;
 import java.net.URLConnection;
 import java.nio.charset.Charset;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.LinkedList;
 
 /**
@@ -291,11 +292,7 @@ public class RequestDescription implements Parcelable {
   public String getContentAnalyzer() {
     synchronized (this) {
       if (contentAnalyzer == null && modelType != null) {
-        final Model modelAnnotation = modelType.getRawClass().getAnnotation(Model.class);
-        if (modelAnnotation != null) {
-          final String analyzer = modelAnnotation.analyzer();
-          if (analyzer.length() > 0) { contentAnalyzer = analyzer; }
-        }
+        contentAnalyzer = ModelInfo.of(modelType.getRawClass()).getAnalyzer();
       }
     }
     return contentAnalyzer;
@@ -382,6 +379,59 @@ public class RequestDescription implements Parcelable {
     this.headers = null;
   }
 
+  /**
+   * Builds a canonical signature of this request. Requests with equal signatures are expected to produce
+   * equal responses: signature includes operation type, URL, simple parameters, headers, cache name and
+   * everything that defines how the response is parsed.
+   * Binary data is not included.
+   * @return request signature
+   */
+  public String getSignature() {
+    final StringBuilder result = new StringBuilder(128)
+        .append(operationType).append('|').append(url)
+        .append('|').append(cacheName)
+        .append('|').append(contentType).append('|').append(contentLanguage).append('|').append(encoding.name())
+        .append('|').append(modelType != null ? modelType.getType() : null)
+        .append('|').append(contentHandler).append('|').append(getContentAnalyzer())
+        .append('|');
+    if (simpleParameters != null) {
+      appendSignature(result, simpleParameters);
+    }
+    result.append('|');
+    if (headers != null) {
+      final ArrayList<String> names = new ArrayList<String>(headers.keySet());
+      Collections.sort(names);
+      for (final String name : names) {
+        result.append(name).append(':').append(headers.getString(name)).append('\n');
+      }
+    }
+    return result.toString();
+  }
+
+  private static void appendSignature(final StringBuilder result, final Parameter parameter) {
+    appendLengthPrefixed(result, parameter.name);
+    if (parameter instanceof ParametersGroup) {
+      result.append('{');
+      for (final Parameter child : ((ParametersGroup) parameter).children) {
+        appendSignature(result, child);
+      }
+      result.append('}');
+    } else {
+      result.append('=');
+      appendLengthPrefixed(result, parameter instanceof ParameterValue
+          ? ((ParameterValue) parameter).value
+          : String.valueOf(parameter));
+    }
+  }
+
+  private static void appendLengthPrefixed(final StringBuilder result, final String value) {
+    if (value == null) {
+      result.append("-;");
+    } else {
+      result.append(value.length()).append(':').append(value).append(';');
+    }
+  }
+
   // ============================ HTTP REQUESTS ============================
 
   /**
@@ -443,16 +493,21 @@ public class RequestDescription implements Parcelable {
     }
     final BaseRequestDescriptionConverter converter = factory.createConverter(this, context);
 
-    // create instance
-    final URLConnection connection = converter.prepareConnectionInstance();
-    // setup headers
-    onURLConnectionPrepared(context, connection);
-    // make a connection
-    converter.connect(connection);
-    // send data, if required
-    converter.sendRequest(connection);
-
-    return connection;
+    boolean sent = false;
+    try {
+      // create instance
+      final URLConnection connection = converter.prepareConnectionInstance();
+      // setup headers
+      onURLConnectionPrepared(context, connection);
+      // make a connection
+      converter.connect(connection);
+      // send data, if required
+      converter.sendRequest(connection);
+      sent = true;
+      return connection;
+    } finally {
+      if (!sent) { converter.release(); }
+    }
   }
 
   @Override
@@ -13,6 +13,7 @@ import com.stanfy.enroscar.rest.request.OperationType;
 import com.stanfy.enroscar.rest.request.Parameter;
 import com.stanfy.enroscar.rest.request.ParameterValue;
 import com.stanfy.enroscar.rest.request.RequestDescription;
+import com.stanfy.enroscar.rest.response.PartialContentDispatcher;
 
 import java.io.IOException;
 import java.net.HttpURLConnection;
@@ -45,6 +46,14 @@ public abstract class BaseRequestDescriptionConverter {
 
   public abstract void sendRequest(final URLConnection connection) throws IOException;
 
+  /**
+   * Release resources allocated by {@link #prepareConnectionInstance()}.
+   * Called if the request cannot be sent. Does nothing by default.
+   */
+  public void release() {
+    // nothing
+  }
+
   private static String opertionTypeToString(final int type) {
     switch (type) {
     case OperationType.SIMPLE_GET: return "GET";
@@ -72,10 +81,15 @@ public abstract class BaseRequestDescriptionConverter {
     if (factory == null) {
       throw new IllegalStateException("UrlConnectionBuilderFactory bean is not defined.");
     }
-    return factory.newUrlConnectionBuilder()
+    final UrlConnectionBuilder builder = factory.newUrlConnectionBuilder()
         .setCacheManagerName(requestDescription.getCacheName())
         .setContentHandlerName(requestDescription.getContentHandler())
         .setModelType(requestDescription.getModelType());
+    // analyzer may change the model, partial content would be of a wrong type
+    if (requestDescription.getContentAnalyzer() == null && PartialContentDispatcher.hasListener(requestDescription.getId())) {
+      builder.setPartialContentListener(PartialContentDispatcher.forRequest(requestDescription.getId()));
+    }
+    return builder;
   }
 
   /**
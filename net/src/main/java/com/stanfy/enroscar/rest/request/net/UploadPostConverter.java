@@ -6,6 +6,8 @@ import android.util.Log;
 import com.stanfy.enroscar.beans.BeansManager;
 import com.stanfy.enroscar.io.BuffersPool;
 import com.stanfy.enroscar.io.IoUtils;
+import com.stanfy.enroscar.io.ProgressListenerOutputStream;
+import com.stanfy.enroscar.io.ProgressListenerOutputStream.ProgressListener;
 import com.stanfy.enroscar.rest.Utils;
 import com.stanfy.enroscar.rest.request.Parameter;
 import com.stanfy.enroscar.rest.request.ParameterValue;
@@ -16,16 +18,34 @@ import com.stanfy.enroscar.rest.request.net.multipart.StringPart;
 
 import org.apache.http.util.EncodingUtils;
 
+import java.io.File;
 import java.io.IOException;
+import java.io.InterruptedIOException;
 import java.io.OutputStream;
 import java.net.URLConnection;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
 import java.util.Random;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
  * Multipart upload converter.
+ * <p>
+ *   Parts that require preparation (e. g. bitmaps that have to be compressed) are prepared in parallel
+ *   before the connection is established, so that the content length is known without preparing any part twice.
+ *   Parts are sent sequentially. Upload progress can be tracked with {@link #setProgressListener(int, ProgressListener)}.
+ * </p>
  */
 public class UploadPostConverter extends PostConverter {
 
@@ -37,6 +57,29 @@ public class UploadPostConverter extends PostConverter {
     }
   };
 
+  /** Maximum number of threads used to prepare parts. */
+  private static final int PREPARE_THREADS_MAX = Math.max(2, Runtime.getRuntime().availableProcessors());
+  /** Keep alive time for preparation threads (seconds). */
+  private static final int PREPARE_KEEP_ALIVE = 5;
+
+  /** Executor used to prepare parts. Parts that cannot be scheduled are prepared by the calling thread. */
+  private static final Executor PREPARE_EXECUTOR;
+  static {
+    final AtomicInteger threadCounter = new AtomicInteger(1);
+    ThreadFactory tFactory = new ThreadFactory() {
+      @Override
+      public Thread newThread(final Runnable r) {
+        return new Thread(r, "Upload Parts Thread #" + threadCounter.getAndIncrement());
+      }
+    };
+    PREPARE_EXECUTOR = new ThreadPoolExecutor(0, PREPARE_THREADS_MAX, PREPARE_KEEP_ALIVE, TimeUnit.SECONDS,
+        new SynchronousQueue<Runnable>(), tFactory, new ThreadPoolExecutor.CallerRunsPolicy());
+  }
+
+  /** Upload progress listeners mapped by request identifiers. */
+  private static final ConcurrentHashMap<Integer, ProgressListener> PROGRESS_LISTENERS =
+      new ConcurrentHashMap<Integer, ProgressListener>();
+
   /**
    * The pool of ASCII chars to be used for generating a multipart boundary.
    */
@@ -48,6 +91,9 @@ public class UploadPostConverter extends PostConverter {
   /** Composed parts. */
   private Part[] parts;
 
+  /** Total content length, -1 if unknown. */
+  private long contentLength = -1;
+
   public UploadPostConverter(final RequestDescription requestDescription, final Context context) {
     super(requestDescription, context, null);
     this.boundary = generateMultipartBoundary();
@@ -80,6 +126,35 @@ public class UploadPostConverter extends PostConverter {
     return bytes;
   }
 
+  /**
+   * Register a listener for upload progress of the request.
+   * Listener is called from the thread that performs the request.
+   * It's removed when the request body is sent or the request fails.
+   * @param requestId request identifier
+   * @param listener progress listener
+   */
+  public static void setProgressListener(final int requestId, final ProgressListener listener) {
+    PROGRESS_LISTENERS.put(requestId, listener);
+  }
+
+  /**
+   * @param requestId request identifier
+   */
+  public static void removeProgressListener(final int requestId) {
+    PROGRESS_LISTENERS.remove(requestId);
+  }
+
+  /**
+   * @return upload progress listener for the current request, null if there is no listener
+   */
+  protected ProgressListener getProgressListener() {
+    return PROGRESS_LISTENERS.get(getRequestDescription().getId());
+  }
+
+  private BuffersPool getBuffersPool() {
+    return BeansManager.get(getContext()).getContainer().getBean(BuffersPool.class);
+  }
+
   @Override
   public URLConnection prepareConnectionInstance() throws IOException {
     final URLConnection connection = super.prepareConnectionInstance();
@@ -87,28 +162,164 @@ public class UploadPostConverter extends PostConverter {
 
     this.parts = composeParts(getContext(), getRequestDescription());
 
-    asHttp(connection).setFixedLengthStreamingMode((int)Part.getLengthOfParts(parts, boundary));
+    // parts are released by release() if preparation fails
+    prepareParts(parts, getBuffersPool(), getContext().getCacheDir());
+    contentLength = Part.getLengthOfParts(parts, boundary);
+
+    if (contentLength >= 0) {
+      asHttp(connection).setFixedLengthStreamingMode((int)contentLength);
+    } else {
+      asHttp(connection).setChunkedStreamingMode(0);
+    }
 
     return connection;
   }
 
   @Override
   public void sendRequest(final URLConnection connection) throws IOException {
-    final BuffersPool buffersPool = BeansManager.get(getContext()).getContainer().getBean(BuffersPool.class);
-    final OutputStream out = buffersPool.bufferize(connection.getOutputStream());
-
-    if (Utils.isDebugRest(getContext())) {
-      Log.d(TAG, "(" + getRequestDescription().getId() + ") Parts: " + Arrays.toString(parts));
-    }
-    
+    OutputStream out = null;
     try {
+      OutputStream connectionOut = connection.getOutputStream();
+      final ProgressListener listener = getProgressListener();
+      if (listener != null && contentLength > 0) {
+        connectionOut = new ProgressListenerOutputStream(connectionOut, listener, contentLength);
+      }
+      out = getBuffersPool().bufferize(connectionOut);
+
+      if (Utils.isDebugRest(getContext())) {
+        Log.d(TAG, "(" + getRequestDescription().getId() + ") Parts: " + Arrays.toString(parts));
+      }
+
       Part.sendParts(out, parts, boundary);
     } finally {
       IoUtils.closeQuietly(out);
+      release();
     }
 
   }
 
+  /** Releases prepared parts and removes the progress listener of the request. */
+  @Override
+  public void release() {
+    final Part[] parts = this.parts;
+    this.parts = null;
+    releaseParts(parts);
+    removeProgressListener(getRequestDescription().getId());
+  }
+
+  /**
+   * Prepares parts that require it in parallel. The first such part is prepared by the calling thread.
+   * @param parts parts to prepare
+   * @param buffersPool buffers pool
+   * @param spillDir directory for temporary files
+   * @throws IOException if preparation of any part fails
+   */
+  protected static void prepareParts(final Part[] parts, final BuffersPool buffersPool, final File spillDir) throws IOException {
+    Part first = null;
+    final ArrayList<PrepareTask> tasks = new ArrayList<PrepareTask>(parts.length);
+    for (final Part part : parts) {
+      if (!part.isPreparationRequired()) { continue; }
+      if (first == null) {
+        first = part;
+        continue;
+      }
+      final PrepareTask task = new PrepareTask(part, buffersPool, spillDir);
+      tasks.add(task);
+      PREPARE_EXECUTOR.execute(task.future);
+    }
+
+    if (first == null) { return; }
+    boolean success = false;
+    try {
+      first.prepare(buffersPool, spillDir);
+      for (final PrepareTask task : tasks) {
+        task.future.get();
+      }
+      success = true;
+    } catch (final InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new InterruptedIOException("Interrupted while preparing parts");
+    } catch (final ExecutionException e) {
+      final Throwable cause = e.getCause();
+      if (cause instanceof IOException) { throw (IOException) cause; }
+      if (cause instanceof RuntimeException) { throw (RuntimeException) cause; }
+      if (cause instanceof Error) { throw (Error) cause; }
+      throw new IOException("Cannot prepare part: " + cause);
+    } finally {
+      if (!success) {
+        // parts are released after this method fails, they must not be prepared concurrently
+        for (final PrepareTask task : tasks) {
+          task.abandonOrAwait();
+        }
+      }
+    }
+  }
+
+  /**
+   * Prepares a part in a background thread.
+   */
+  private static final class PrepareTask implements Callable<Void> {
+
+    /** Part to prepare. */
+    private final Part part;
+    /** Buffers pool. */
+    private final BuffersPool buffersPool;
+    /** Directory for temporary files. */
+    private final File spillDir;
+
+    /** Set when preparation starts or is abandoned. */
+    private final AtomicBoolean claimed = new AtomicBoolean();
+
+    /** Future that runs this task. */
+    final FutureTask<Void> future = new FutureTask<Void>(this);
+
+    PrepareTask(final Part part, final BuffersPool buffersPool, final File spillDir) {
+      this.part = part;
+      this.buffersPool = buffersPool;
+      this.spillDir = spillDir;
+    }
+
+    @Override
+    public Void call() throws IOException {
+      if (claimed.compareAndSet(false, true)) {
+        part.prepare(buffersPool, spillDir);
+      }
+      return null;
+    }
+
+    /**
+     * Make sure the part is not being prepared: either prevent preparation from starting
+     * or wait for the started one to finish.
+     */
+    void abandonOrAwait() {
+      if (claimed.compareAndSet(false, true)) {
+        return;
+      }
+      boolean interrupted = false;
+      while (true) {
+        try {
+          future.get();
+          break;
+        } catch (final InterruptedException e) {
+          interrupted = true;
+        } catch (final ExecutionException e) {
+          break; // caller reports the first error
+        }
+      }
+      if (interrupted) {
+        Thread.currentThread().interrupt();
+      }
+    }
+
+  }
+
+  private static void releaseParts(final Part[] parts) {
+    if (parts == null) { return; }
+    for (final Part part : parts) {
+      part.release();
+    }
+  }
+
   /**
    * @param context application context
    * @param requestDescription request description
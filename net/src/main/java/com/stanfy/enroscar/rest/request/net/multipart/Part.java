@@ -1,6 +1,7 @@
 package com.stanfy.enroscar.rest.request.net.multipart;
 
 import java.io.ByteArrayOutputStream;
+import java.io.File;
 import java.io.IOException;
 import java.io.OutputStream;
 
@@ -8,6 +9,7 @@ import org.apache.http.util.EncodingUtils;
 
 import android.util.Log;
 
+import com.stanfy.enroscar.io.BuffersPool;
 import com.stanfy.enroscar.rest.Utils;
 
 /**
@@ -137,6 +139,33 @@ public abstract class Part {
     return true;
   }
 
+  /**
+   * Tests whether this part has to be {@link #prepare(BuffersPool, File) prepared} before
+   * its length is calculated.
+   * @return <code>true</code> if preparation requires considerable work
+   */
+  public boolean isPreparationRequired() {
+    return false;
+  }
+
+  /**
+   * Prepare the part data, so that {@link #length()} and {@link #send(OutputStream)}
+   * do not repeat expensive work. Different parts may be prepared in parallel.
+   * @param buffersPool buffers pool, may be null
+   * @param spillDir directory for temporary files, may be null
+   * @throws IOException If an IO problem occurs.
+   */
+  public void prepare(final BuffersPool buffersPool, final File spillDir) throws IOException {
+    // nothing by default
+  }
+
+  /**
+   * Release resources allocated by {@link #prepare(BuffersPool, File)}.
+   */
+  public void release() {
+    // nothing by default
+  }
+
   /**
    * Write the start to the specified output stream.
    * @param out The output stream
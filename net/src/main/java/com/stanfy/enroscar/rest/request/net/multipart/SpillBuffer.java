@@ -0,0 +1,189 @@
+package com.stanfy.enroscar.rest.request.net.multipart;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+import com.stanfy.enroscar.io.BuffersPool;
+import com.stanfy.enroscar.io.IoUtils;
+
+/**
+ * Output stream that keeps written data in a pooled buffer and spills it to a temporary file
+ * when the data size exceeds the memory limit.
+ * Written data can be sent to another stream any number of times after this one is closed.
+ * {@link #release()} must be called when the data is not required anymore.
+ * @author Roman Mazur (Stanfy - http://stanfy.com)
+ */
+public class SpillBuffer extends OutputStream {
+
+  /** Default memory limit. */
+  public static final int DEFAULT_MEMORY_LIMIT = 512 * 1024;
+
+  /** Maximum size of a buffer taken from or returned to the pool, larger buffers are not pooled. */
+  public static final int MAX_POOLED_SIZE = 64 * 1024;
+
+  /** Initial buffer size. */
+  private static final int INITIAL_SIZE = IoUtils.BUFFER_SIZE_8K;
+
+  /** Buffers pool, may be null. */
+  private final BuffersPool buffersPool;
+  /** Directory for a temporary file, null if data must be kept in memory. */
+  private final File spillDir;
+  /** Memory limit. */
+  private final int memoryLimit;
+
+  /** Memory buffer. */
+  private byte[] buffer;
+  /** Whether the memory buffer should be returned to the pool. */
+  private boolean bufferPooled;
+  /** Total length. */
+  private long length;
+
+  /** Temporary file. */
+  private File file;
+  /** Temporary file output. */
+  private OutputStream fileOutput;
+
+  /**
+   * @param buffersPool buffers pool, may be null
+   * @param spillDir directory for temporary files, if null data is always kept in memory
+   * @param memoryLimit maximum number of bytes kept in memory
+   */
+  public SpillBuffer(final BuffersPool buffersPool, final File spillDir, final int memoryLimit) {
+    this.buffersPool = buffersPool;
+    this.spillDir = spillDir;
+    this.memoryLimit = memoryLimit;
+  }
+
+  /** @return number of written bytes */
+  public long length() { return length; }
+
+  /** @return whether data is written to a temporary file */
+  public boolean isSpilled() { return file != null; }
+
+  private byte[] getBuffer(final int minCapacity) {
+    return buffersPool != null ? buffersPool.get(minCapacity) : new byte[minCapacity];
+  }
+
+  private void setBuffer(final int minCapacity) {
+    bufferPooled = buffersPool != null && minCapacity <= MAX_POOLED_SIZE;
+    buffer = bufferPooled ? buffersPool.get(minCapacity) : new byte[minCapacity];
+  }
+
+  private void releaseBuffer() {
+    if (buffer != null && bufferPooled) {
+      buffersPool.release(buffer);
+    }
+    buffer = null;
+  }
+
+  @Override
+  public void write(final int oneByte) throws IOException {
+    write(new byte[] {(byte) oneByte}, 0, 1);
+  }
+
+  @Override
+  public void write(final byte[] data, final int offset, final int count) throws IOException {
+    if (fileOutput == null) {
+      final long required = length + count;
+      if (spillDir != null && required > memoryLimit) {
+        spill();
+      } else {
+        ensureCapacity((int) required);
+        System.arraycopy(data, offset, buffer, (int) length, count);
+        length = required;
+        return;
+      }
+    }
+    fileOutput.write(data, offset, count);
+    length += count;
+  }
+
+  private void ensureCapacity(final int required) {
+    if (buffer == null) {
+      setBuffer(Math.max(INITIAL_SIZE, required));
+      return;
+    }
+    if (buffer.length < required) {
+      final byte[] oldBuffer = buffer;
+      final boolean oldBufferPooled = bufferPooled;
+      setBuffer(Math.max(oldBuffer.length << 1, required));
+      System.arraycopy(oldBuffer, 0, buffer, 0, (int) length);
+      if (oldBufferPooled) {
+        buffersPool.release(oldBuffer);
+      }
+    }
+  }
+
+  private void spill() throws IOException {
+    file = File.createTempFile("part", ".tmp", spillDir);
+    final OutputStream out = new FileOutputStream(file);
+    fileOutput = buffersPool != null ? buffersPool.bufferize(out) : out;
+    if (length > 0) {
+      fileOutput.write(buffer, 0, (int) length);
+    }
+    releaseBuffer();
+  }
+
+  @Override
+  public void flush() throws IOException {
+    if (fileOutput != null) {
+      fileOutput.flush();
+    }
+  }
+
+  @Override
+  public void close() throws IOException {
+    if (fileOutput != null) {
+      fileOutput.close();
+    }
+  }
+
+  /**
+   * Write the data to another stream.
+   * @param out output stream
+   * @throws IOException if an I/O error happens
+   */
+  public void writeTo(final OutputStream out) throws IOException {
+    if (file == null) {
+      if (length > 0) {
+        out.write(buffer, 0, (int) length);
+      }
+      return;
+    }
+
+    final InputStream input = new FileInputStream(file);
+    final byte[] copyBuffer = getBuffer(IoUtils.BUFFER_SIZE_8K);
+    try {
+      int count;
+      while ((count = input.read(copyBuffer)) != -1) {
+        out.write(copyBuffer, 0, count);
+      }
+    } finally {
+      IoUtils.closeQuietly(input);
+      if (buffersPool != null) {
+        buffersPool.release(copyBuffer);
+      }
+    }
+  }
+
+  /**
+   * Release the memory buffer and delete the temporary file.
+   */
+  public void release() {
+    releaseBuffer();
+    if (file != null) {
+      IoUtils.closeQuietly(fileOutput);
+      if (!file.delete()) {
+        file.deleteOnExit();
+      }
+      file = null;
+      fileOutput = null;
+    }
+    length = 0;
+  }
+
+}
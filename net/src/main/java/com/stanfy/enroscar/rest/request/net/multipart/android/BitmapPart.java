@@ -1,5 +1,6 @@
 package com.stanfy.enroscar.rest.request.net.multipart.android;
 
+import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
@@ -8,12 +9,15 @@ import java.util.Locale;
 import android.graphics.Bitmap;
 import android.graphics.Bitmap.CompressFormat;
 
+import com.stanfy.enroscar.io.BuffersPool;
 import com.stanfy.enroscar.rest.request.net.multipart.FilePart;
 import com.stanfy.enroscar.rest.request.net.multipart.PartSource;
+import com.stanfy.enroscar.rest.request.net.multipart.SpillBuffer;
 import com.stanfy.enroscar.utils.Bitmaps;
 
 /**
  * {@link PartSource} based on {@link Bitmap} content.
+ * Bitmap is compressed once, when the part is prepared or its length is requested.
  * @author Roman Mazur (Stanfy - http://stanfy.com)
  *
  */
@@ -30,6 +34,9 @@ public class BitmapPart extends FilePart {
   /** Compress quality. */
   private int compressQuality = COMPRESS_QUALITY_DEFAULT;
 
+  /** Compressed bitmap data. */
+  private SpillBuffer compressed;
+
   public BitmapPart(final String name, final String fileName, final Bitmap bitmap) {
     super(name, new BitmapSource(fileName, Bitmaps.bitmapSize(bitmap)), "image/jpeg", null);
     this.bitmap = bitmap;
@@ -40,6 +47,7 @@ public class BitmapPart extends FilePart {
    */
   public void setCompressFormat(final CompressFormat compressFormat) {
     this.compressFormat = compressFormat;
+    release();
     setContentType("image/" + compressFormat.name().toLowerCase(Locale.US));
   }
   /**
@@ -47,12 +55,50 @@ public class BitmapPart extends FilePart {
    */
   public void setCompressQuality(final int compressQuality) {
     this.compressQuality = compressQuality;
+    release();
   }
 
   @Override
-  protected void sendData(final OutputStream out) throws IOException {
+  public boolean isPreparationRequired() {
+    return compressed == null;
+  }
+
+  /**
+   * Compresses the bitmap. Compressed data is kept in memory or in a temporary file in the spill directory.
+   */
+  @Override
+  public void prepare(final BuffersPool buffersPool, final File spillDir) throws IOException {
+    if (compressed != null) { return; }
     if (compressFormat == null) { throw new IllegalStateException("Compress format is not set"); }
-    bitmap.compress(compressFormat, compressQuality, out);
+    final SpillBuffer buffer = new SpillBuffer(buffersPool, spillDir, SpillBuffer.DEFAULT_MEMORY_LIMIT);
+    try {
+      bitmap.compress(compressFormat, compressQuality, buffer);
+      buffer.close();
+    } catch (final IOException e) {
+      buffer.release();
+      throw e;
+    }
+    compressed = buffer;
+  }
+
+  @Override
+  public void release() {
+    if (compressed != null) {
+      compressed.release();
+      compressed = null;
+    }
+  }
+
+  @Override
+  protected long lengthOfData() throws IOException {
+    prepare(null, null);
+    return compressed.length();
+  }
+
+  @Override
+  protected void sendData(final OutputStream out) throws IOException {
+    prepare(null, null);
+    compressed.writeTo(out);
   }
 
   /**
@@ -0,0 +1,86 @@
+package com.stanfy.enroscar.rest.response;
+
+import java.util.concurrent.ConcurrentHashMap;
+
+import android.util.Log;
+
+import com.google.gson.Gson;
+import com.google.gson.TypeAdapter;
+import com.google.gson.TypeAdapterFactory;
+import com.google.gson.reflect.TypeToken;
+
+/**
+ * Registry of precomputed type adapters for classes annotated with {@link Model}.
+ * <p>
+ *   Adapter factory for a model class may be either {@link #register(Class, TypeAdapterFactory) registered}
+ *   explicitly or provided by a class with name <code>ModelClassName$$GsonAdapter</code> that implements
+ *   {@link TypeAdapterFactory} and has a public no-arguments constructor.
+ *   Such classes are generated by the annotation processor from <code>enroscar-net-compiler</code> module.
+ *   Such a class is looked up only once per model class.
+ *   Models without precomputed adapters are handled by Gson reflective adapters.
+ * </p>
+ * @author Roman Mazur (Stanfy - http://stanfy.com)
+ */
+public final class ModelAdapters implements TypeAdapterFactory {
+
+  /** Suffix of adapter factory class names. */
+  public static final String ADAPTER_CLASS_SUFFIX = "$$GsonAdapter";
+
+  /** Logging tag. */
+  private static final String TAG = "ModelAdapters";
+
+  /** Instance. */
+  private static final ModelAdapters INSTANCE = new ModelAdapters();
+
+  /** Marks classes without precomputed adapters. */
+  private static final TypeAdapterFactory NONE = new TypeAdapterFactory() {
+    @Override
+    public <T> TypeAdapter<T> create(final Gson gson, final TypeToken<T> type) {
+      return null;
+    }
+  };
+
+  /** Adapter factories. */
+  private final ConcurrentHashMap<Class<?>, TypeAdapterFactory> factories = new ConcurrentHashMap<Class<?>, TypeAdapterFactory>();
+
+  private ModelAdapters() { /* hidden */ }
+
+  /** @return registry instance, should be passed to {@link com.google.gson.GsonBuilder#registerTypeAdapterFactory(TypeAdapterFactory)} */
+  public static ModelAdapters getInstance() { return INSTANCE; }
+
+  /**
+   * @param modelClass model class
+   * @param factory adapter factory for the model class
+   */
+  public void register(final Class<?> modelClass, final TypeAdapterFactory factory) {
+    if (factory == null) { throw new IllegalArgumentException("Factory must not be null"); }
+    factories.put(modelClass, factory);
+  }
+
+  @Override
+  public <T> TypeAdapter<T> create(final Gson gson, final TypeToken<T> type) {
+    final Class<? super T> rawType = type.getRawType();
+    TypeAdapterFactory factory = factories.get(rawType);
+    if (factory == null) {
+      factory = lookup(rawType);
+      final TypeAdapterFactory prev = factories.putIfAbsent(rawType, factory);
+      if (prev != null) { factory = prev; }
+    }
+    return factory.create(gson, type);
+  }
+
+  private static TypeAdapterFactory lookup(final Class<?> modelClass) {
+    if (!ModelInfo.of(modelClass).isModel()) { return NONE; }
+    final ClassLoader loader = modelClass.getClassLoader();
+    try {
+      final Class<?> adapterClass = Class.forName(modelClass.getName() + ADAPTER_CLASS_SUFFIX, true, loader);
+      return (TypeAdapterFactory) adapterClass.newInstance();
+    } catch (final ClassNotFoundException e) {
+      return NONE;
+    } catch (final Exception e) {
+      Log.w(TAG, "Cannot instantiate adapter factory for " + modelClass, e);
+      return NONE;
+    }
+  }
+
+}
@@ -0,0 +1,79 @@
+package com.stanfy.enroscar.rest.response;
+
+import java.lang.reflect.Type;
+import java.util.concurrent.ConcurrentHashMap;
+
+import com.stanfy.enroscar.rest.ModelTypeToken;
+
+/**
+ * Information provided by {@link Model} annotation.
+ * Annotation is looked up once per class, the result is cached.
+ * Generated code may also {@link #register(Class, Class, String) register} the information
+ * in advance, so that the annotation is not read at all.
+ * @author Roman Mazur (Stanfy - http://stanfy.com)
+ */
+public final class ModelInfo {
+
+  /** Information for classes without {@link Model} annotation. */
+  private static final ModelInfo NOT_MODEL = new ModelInfo(false, null, null);
+
+  /** Cache. */
+  private static final ConcurrentHashMap<Class<?>, ModelInfo> CACHE = new ConcurrentHashMap<Class<?>, ModelInfo>();
+
+  /** Whether class is annotated with {@link Model}. */
+  private final boolean model;
+  /** Wrapper class. */
+  private final Class<?> wrapper;
+  /** Content analyzer name. */
+  private final String analyzer;
+
+  private ModelInfo(final boolean model, final Class<?> wrapper, final String analyzer) {
+    this.model = model;
+    this.wrapper = wrapper == Model.class ? null : wrapper;
+    this.analyzer = analyzer == null || analyzer.length() == 0 ? null : analyzer;
+  }
+
+  /**
+   * @param modelClass model class
+   * @return model information
+   */
+  public static ModelInfo of(final Class<?> modelClass) {
+    ModelInfo info = CACHE.get(modelClass);
+    if (info == null) {
+      final Model annotation = modelClass.getAnnotation(Model.class);
+      info = annotation == null ? NOT_MODEL : new ModelInfo(true, annotation.wrapper(), annotation.analyzer());
+      final ModelInfo prev = CACHE.putIfAbsent(modelClass, info);
+      if (prev != null) { info = prev; }
+    }
+    return info;
+  }
+
+  /**
+   * Register model information without reading the annotation.
+   * @param modelClass model class
+   * @param wrapper wrapper class, may be null
+   * @param analyzer content analyzer name, may be null
+   */
+  public static void register(final Class<?> modelClass, final Class<?> wrapper, final String analyzer) {
+    CACHE.put(modelClass, new ModelInfo(true, wrapper, analyzer));
+  }
+
+  /** @return whether class is annotated with {@link Model} */
+  public boolean isModel() { return model; }
+
+  /** @return wrapper class, null if it is not defined */
+  public Class<?> getWrapper() { return wrapper; }
+
+  /** @return content analyzer bean name, null if it is not defined */
+  public String getAnalyzer() { return analyzer; }
+
+  /**
+   * @param modelType model type token
+   * @return type that should be used for parsing
+   */
+  public static Type getParsedType(final ModelTypeToken modelType) {
+    final Class<?> wrapper = of(modelType.getRawClass()).wrapper;
+    return wrapper != null ? wrapper : modelType.getType();
+  }
+
+}
@@ -0,0 +1,81 @@
+package com.stanfy.enroscar.rest.response;
+
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+
+import com.stanfy.enroscar.net.PartialContentListener;
+
+/**
+ * Routes partial content of requests to listeners registered for request identifiers.
+ * Works within one process only: partial content is not passed from a remote service.
+ * @author Roman Mazur (Stanfy - http://stanfy.com)
+ */
+public final class PartialContentDispatcher {
+
+  /** Registered listeners. */
+  private static final ConcurrentHashMap<Integer, PartialContentListener> LISTENERS =
+      new ConcurrentHashMap<Integer, PartialContentListener>();
+
+  private PartialContentDispatcher() { /* hidden */ }
+
+  /**
+   * @param requestId request identifier
+   * @param listener listener instance that replaces the previous one
+   */
+  public static void register(final int requestId, final PartialContentListener listener) {
+    LISTENERS.put(requestId, listener);
+  }
+
+  /**
+   * @param requestId request identifier
+   * @param listener listener instance, it's removed only if it is still registered for the request
+   */
+  public static void unregister(final int requestId, final PartialContentListener listener) {
+    LISTENERS.remove(requestId, listener);
+  }
+
+  /**
+   * @param requestId request identifier
+   * @return whether there is a listener registered for the request
+   */
+  public static boolean hasListener(final int requestId) {
+    return LISTENERS.containsKey(requestId);
+  }
+
+  /**
+   * Listener is looked up each time partial content is available,
+   * so that it can be replaced or unregistered while the request is running.
+   * @param requestId request identifier
+   * @return listener that delegates to the one registered for the request
+   */
+  public static PartialContentListener forRequest(final int requestId) {
+    return new RequestListener(requestId);
+  }
+
+  /** Delegates to the registered listener. */
+  private static final class RequestListener implements PartialContentListener {
+
+    /** Request identifier. */
+    private final int requestId;
+
+    public RequestListener(final int requestId) {
+      this.requestId = requestId;
+    }
+
+    @Override
+    public boolean acceptsPartialContent() {
+      final PartialContentListener listener = LISTENERS.get(requestId);
+      return listener != null && listener.acceptsPartialContent();
+    }
+
+    @Override
+    public void onListBatch(final List<?> batch, final int offset) {
+      final PartialContentListener listener = LISTENERS.get(requestId);
+      if (listener != null) {
+        listener.onListBatch(batch, offset);
+      }
+    }
+
+  }
+
+}
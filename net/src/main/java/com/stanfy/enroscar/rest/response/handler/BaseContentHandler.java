@@ -8,13 +8,16 @@ import com.stanfy.enroscar.beans.InitializingBean;
 import com.stanfy.enroscar.io.BuffersPool;
 import com.stanfy.enroscar.io.IoUtils;
 import com.stanfy.enroscar.net.ContentControlUrlConnection;
+import com.stanfy.enroscar.net.PartialContentListener;
 import com.stanfy.enroscar.net.UrlConnectionWrapper;
 import com.stanfy.enroscar.rest.ModelTypeToken;
 import com.stanfy.enroscar.rest.Utils;
 import com.stanfy.enroscar.rest.request.RequestDescription;
 import com.stanfy.enroscar.rest.response.Model;
+import com.stanfy.enroscar.rest.response.ModelInfo;
 
 import java.io.ByteArrayInputStream;
+import java.io.FilterInputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.lang.reflect.Type;
@@ -77,10 +80,18 @@ public abstract class BaseContentHandler extends ContentHandler implements Initi
 
     // we have input => wrap it for reading
 
-    InputStream source = IoUtils.getUncompressedInputStream(
-        connection.getContentEncoding(),
-        buffersPool.bufferize(responseStream)
-    );
+    final String encoding = connection.getContentEncoding();
+    InputStream source;
+    if (encoding == null && IoUtils.getByteBuffer(responseStream) != null) {
+      // memory-mapped cached body: subclasses may read it without copying
+      source = responseStream;
+    } else {
+      if (UrlConnectionWrapper.unwrap(connection) instanceof HttpURLConnection) {
+        // connection is either disconnected or drained and reused by RequestMethod
+        responseStream = new ResponseStream(responseStream);
+      }
+      source = IoUtils.getUncompressedInputStream(encoding, buffersPool.bufferize(responseStream));
+    }
 
     if (Utils.isDebugRestResponse(context)) {
       final String responseString = IoUtils.streamToString(source, buffersPool); // source is now closed, don't worry
@@ -91,7 +102,7 @@ public abstract class BaseContentHandler extends ContentHandler implements Initi
     try {
       return getContent(connection, source, connection.getModelType());
     } finally {
-      // do not forget to close the source
+      // do not forget to close the source, response stream is closed only if it's exhausted
       IoUtils.closeQuietly(source);
     }
   }
@@ -99,6 +110,7 @@ public abstract class BaseContentHandler extends ContentHandler implements Initi
   /**
    * Implementation must read the input stream and return an object of type specified by the token.
    * In order to get a Java type from the model type token, method {@link #getModelType(ModelTypeToken)} may be used.
+   * Source may expose its content as a byte buffer, see {@link IoUtils#getByteBuffer(InputStream)}.
    * @param connection connection instance
    * @param source input stream for the connection
    * @param modelType model type token
@@ -107,20 +119,23 @@ public abstract class BaseContentHandler extends ContentHandler implements Initi
    */
   protected abstract Object getContent(final URLConnection connection, final InputStream source, final ModelTypeToken modelType) throws IOException;
 
+  /**
+   * @param connection connection passed to {@link #getContent(URLConnection, InputStream, ModelTypeToken)}
+   * @return listener that may receive parts of list content before it's completely parsed, null if there is no listener
+   */
+  protected static PartialContentListener getPartialContentListener(final URLConnection connection) {
+    final ContentControlUrlConnection control = UrlConnectionWrapper.getWrapper(connection, ContentControlUrlConnection.class);
+    return control != null ? control.getPartialContentListener() : null;
+  }
+
   /**
    * Checks the raw type provided by the token an presence of {@link Model} annotation on it.
+   * Annotation information is cached, see {@link ModelInfo}.
    * @param modelType model type token
    * @return Java type
    */
   protected Type getModelType(final ModelTypeToken modelType) {
-    final Class<?> modelClass = modelType.getRawClass();
-
-    // check for wrappers
-    final Model modelAnnotation = modelClass.getAnnotation(Model.class);
-    if (modelAnnotation == null) { return modelType.getType(); }
-
-    final Class<?> wrapper = modelAnnotation.wrapper();
-    return wrapper != null && wrapper != Model.class ? wrapper : modelType.getType();
+    return ModelInfo.getParsedType(modelType);
   }
 
   public void setCharset(final Charset charset) { this.charset = charset; }
@@ -135,4 +150,38 @@ public abstract class BaseContentHandler extends ContentHandler implements Initi
     this.buffersPool = beansContainer.getBean(BuffersPool.class);
   }
 
+  /**
+   * Response stream that is closed only if it's read to the end.
+   * Closing not exhausted HTTP response stream would read the rest of the response.
+   */
+  private static final class ResponseStream extends FilterInputStream {
+
+    /** Whether the end of stream is reached. */
+    private boolean exhausted;
+
+    ResponseStream(final InputStream in) {
+      super(in);
+    }
+
+    @Override
+    public int read() throws IOException {
+      final int result = super.read();
+      if (result == -1) { exhausted = true; }
+      return result;
+    }
+
+    @Override
+    public int read(final byte[] buffer, final int offset, final int count) throws IOException {
+      final int result = super.read(buffer, offset, count);
+      if (result == -1) { exhausted = true; }
+      return result;
+    }
+
+    @Override
+    public void close() throws IOException {
+      if (exhausted) { super.close(); }
+    }
+
+  }
+
 }
@@ -1,21 +1,44 @@
 package com.stanfy.enroscar.rest.response.handler;
 
+import java.io.EOFException;
 import java.io.IOException;
 import java.io.InputStream;
-import java.io.InputStreamReader;
+import java.io.Reader;
+import java.lang.reflect.ParameterizedType;
+import java.lang.reflect.Type;
+import java.lang.reflect.TypeVariable;
+import java.lang.reflect.WildcardType;
 import java.net.URLConnection;
+import java.util.ArrayList;
+import java.util.List;
 
 import android.content.Context;
 
 import com.google.gson.Gson;
 import com.google.gson.GsonBuilder;
+import com.google.gson.JsonIOException;
+import com.google.gson.JsonSyntaxException;
+import com.google.gson.TypeAdapter;
+import com.google.gson.reflect.TypeToken;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import com.google.gson.stream.MalformedJsonException;
 import com.stanfy.enroscar.beans.BeansContainer;
 import com.stanfy.enroscar.beans.EnroscarBean;
+import com.stanfy.enroscar.io.IoUtils;
+import com.stanfy.enroscar.net.PartialContentListener;
 import com.stanfy.enroscar.rest.ModelTypeToken;
+import com.stanfy.enroscar.rest.response.ModelAdapters;
 
 /**
  * Implementation of {@link java.net.ContentHandler} that uses
  * <a href="http://code.google.com/p/google-gson/">Gson library</a>.
+ * <p>
+ *   If the model is a {@code List<E>} or {@code ArrayList<E>} read by Gson default collection adapter and the connection has
+ *   a {@link PartialContentListener}, JSON array is read element by element and decoded elements
+ *   are published in batches while the rest of the response is still being parsed.
+ *   Lists with custom type adapters are always parsed by these adapters.
+ * </p>
  * @author Roman Mazur (Stanfy - http://stanfy.com)
  */
 @EnroscarBean(value = GsonContentHandler.BEAN_NAME, contextDependent = true)
@@ -24,32 +47,137 @@ public class GsonContentHandler extends BaseContentHandler {
   /** Response handler. */
   public static final String BEAN_NAME = "GsonResponseHandler";
 
+  /** Default number of list elements published at once. */
+  public static final int DEFAULT_LIST_BATCH_SIZE = 20;
+
   /** Gson instance. */
   private Gson gson;
+  /** Class of the adapter used by Gson for collections by default. */
+  private Class<?> defaultListAdapterClass;
+
+  /** Number of list elements published at once, 0 disables streaming. */
+  private int listBatchSize = DEFAULT_LIST_BATCH_SIZE;
 
   public GsonContentHandler(final Context context) {
     super(context);
   }
   
   /**
+   * Created instance uses precomputed adapters from {@link ModelAdapters} when they are available.
    * @return Gson instance for parsing JSON
    */
   protected Gson createGson() {
-    return new GsonBuilder().setDateFormat(DEFAULT_DATE_FORMAT).create();
+    return new GsonBuilder().setDateFormat(DEFAULT_DATE_FORMAT)
+        .registerTypeAdapterFactory(ModelAdapters.getInstance()).create();
+  }
+
+  /**
+   * @param listBatchSize number of list elements published at once, 0 disables streaming lists parsing
+   */
+  public void setListBatchSize(final int listBatchSize) {
+    if (listBatchSize < 0) {
+      throw new IllegalArgumentException("Bad batch size " + listBatchSize);
+    }
+    this.listBatchSize = listBatchSize;
   }
+  public int getListBatchSize() { return listBatchSize; }
 
   @Override
   protected Object getContent(final URLConnection connection, final InputStream source, final ModelTypeToken modelType) throws IOException {
     if (gson == null) {
       throw new IllegalStateException("Gson object is not created");
     }
-    return gson.fromJson(new InputStreamReader(source, getCharset()), getModelType(modelType));
+    final Reader reader = IoUtils.newReader(source, getCharset());
+    final Type type = getModelType(modelType);
+
+    final PartialContentListener listener = getPartialContentListener(connection);
+    final Type elementType = listener != null && listBatchSize > 0 ? getStreamedElementType(type) : null;
+    if (elementType != null) {
+      return readList(new JsonReader(reader), elementType, listener);
+    }
+    return gson.fromJson(reader, type);
+  }
+
+  /**
+   * @param type model type
+   * @return element type if the model is an array list that is not handled by a custom type adapter, null otherwise
+   */
+  private Type getStreamedElementType(final Type type) {
+    if (!(type instanceof ParameterizedType)) { return null; }
+    final ParameterizedType listType = (ParameterizedType) type;
+    final Type rawType = listType.getRawType();
+    if (rawType != List.class && rawType != ArrayList.class
+        || gson.getAdapter(TypeToken.get(type)).getClass() != defaultListAdapterClass) {
+      return null;
+    }
+    final Type elementType = listType.getActualTypeArguments()[0];
+    if (elementType instanceof WildcardType) {
+      return ((WildcardType) elementType).getUpperBounds()[0];
+    }
+    return elementType instanceof TypeVariable ? null : elementType;
+  }
+
+  /**
+   * Read JSON array publishing decoded elements in batches.
+   * Errors are reported the same way as {@link Gson#fromJson(Reader, Type)} does.
+   * @param reader JSON reader
+   * @param elementType list element type
+   * @param listener partial content listener
+   * @return parsed list
+   */
+  private List<Object> readList(final JsonReader reader, final Type elementType, final PartialContentListener listener) {
+    final ArrayList<Object> result;
+    reader.setLenient(true);
+    try {
+      try {
+        reader.peek();
+      } catch (final EOFException e) {
+        return null; // empty document
+      }
+      if (reader.peek() == JsonToken.NULL) {
+        reader.nextNull();
+        return null;
+      }
+
+      final TypeAdapter<?> adapter = gson.getAdapter(TypeToken.get(elementType));
+      result = new ArrayList<Object>();
+      int published = 0;
+
+      reader.beginArray();
+      while (reader.hasNext()) {
+        result.add(adapter.read(reader));
+        final int size = result.size();
+        if (size - published >= listBatchSize && listener.acceptsPartialContent()) {
+          listener.onListBatch(new ArrayList<Object>(result.subList(published, size)), published);
+          published = size;
+        }
+      }
+      reader.endArray();
+
+    } catch (final IllegalStateException e) {
+      throw new JsonSyntaxException(e);
+    } catch (final IOException e) {
+      throw new JsonSyntaxException(e);
+    }
+
+    // the same check as Gson does after parsing a document
+    try {
+      if (reader.peek() != JsonToken.END_DOCUMENT) {
+        throw new JsonIOException("JSON document was not fully consumed.");
+      }
+    } catch (final MalformedJsonException e) {
+      throw new JsonSyntaxException(e);
+    } catch (final IOException e) {
+      throw new JsonIOException(e);
+    }
+    return result;
   }
 
   @Override
   public void onInitializationFinished(final BeansContainer beansContainer) {
     super.onInitializationFinished(beansContainer);
     this.gson = createGson();
+    this.defaultListAdapterClass = new Gson().getAdapter(List.class).getClass();
   }
 
 }
@@ -18,6 +18,7 @@ import com.google.gson.GsonBuilder;
 import com.stanfy.enroscar.beans.BeansContainer;
 import com.stanfy.enroscar.beans.EnroscarBean;
 import com.stanfy.enroscar.rest.ModelTypeToken;
+import com.stanfy.enroscar.rest.response.ModelAdapters;
 import com.stanfy.gsonxml.GsonXml;
 import com.stanfy.gsonxml.GsonXmlBuilder;
 import com.stanfy.gsonxml.XmlParserCreator;
@@ -53,10 +54,12 @@ public class XmlGsonContentHandler extends BaseContentHandler {
   }
   
   /**
+   * Created instance uses precomputed adapters from {@link ModelAdapters} when they are available.
    * @return {@link GsonXml} instance for parsing XML
    */
   protected GsonXml createGsonXml() {
-    GsonBuilder gsonBuilder = new GsonBuilder().setDateFormat(DEFAULT_DATE_FORMAT);
+    GsonBuilder gsonBuilder = new GsonBuilder().setDateFormat(DEFAULT_DATE_FORMAT)
+        .registerTypeAdapterFactory(ModelAdapters.getInstance());
     return new GsonXmlBuilder().setXmlParserCreator(PARSER_FACTORY).wrap(gsonBuilder).setSameNameLists(true).create();
   }
 
@@ -0,0 +1,82 @@
+package com.stanfy.enroscar.download;
+
+import static org.fest.assertions.api.Assertions.assertThat;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+
+import android.net.Uri;
+import android.os.Build;
+
+import com.stanfy.enroscar.download.DownloadsService.Request;
+
+/**
+ * Tests for {@link DownloadScheduler}.
+ */
+@RunWith(RobolectricTestRunner.class)
+@Config(emulateSdk = Build.VERSION_CODES.JELLY_BEAN_MR2)
+public class DownloadSchedulerTest {
+
+  private static Request request(final String url, final int priority) {
+    final Request request = new Request();
+    request.setUri(Uri.parse(url));
+    request.setPriority(priority);
+    return request;
+  }
+
+  @Test
+  public void shouldRespectLimits() {
+    final DownloadScheduler scheduler = new DownloadScheduler(2, 1);
+    final Request a1 = request("http://a.com/1", 0);
+    final Request a2 = request("http://a.com/2", 0);
+    final Request b1 = request("http://b.com/1", 0);
+    final Request c1 = request("http://c.com/1", 0);
+    scheduler.add(a1);
+    scheduler.add(a2);
+    scheduler.add(b1);
+    scheduler.add(c1);
+
+    assertThat(scheduler.poll()).isSameAs(a1);
+    // a2 has to wait for a1
+    assertThat(scheduler.poll()).isSameAs(b1);
+    // global limit
+    assertThat(scheduler.poll()).isNull();
+
+    scheduler.finished(a1);
+    assertThat(scheduler.poll()).isSameAs(a2);
+    assertThat(scheduler.poll()).isNull();
+
+    scheduler.finished(b1);
+    assertThat(scheduler.poll()).isSameAs(c1);
+    scheduler.finished(a2);
+    scheduler.finished(c1);
+    assertThat(scheduler.isEmpty()).isTrue();
+  }
+
+  @Test
+  public void shouldOrderByPriority() {
+    final DownloadScheduler scheduler = new DownloadScheduler(1, 1);
+    final Request low = request("http://a.com/low", -1);
+    final Request normal1 = request("http://a.com/n1", 0);
+    final Request normal2 = request("http://a.com/n2", 0);
+    final Request high = request("http://a.com/high", 10);
+    scheduler.add(low);
+    scheduler.add(normal1);
+    scheduler.add(normal2);
+    scheduler.add(high);
+
+    assertThat(scheduler.getRequests()).containsExactly(high, normal1, normal2, low);
+
+    assertThat(scheduler.poll()).isSameAs(high);
+    assertThat(scheduler.getRequests()).containsExactly(high, normal1, normal2, low);
+    scheduler.finished(high);
+    assertThat(scheduler.poll()).isSameAs(normal1);
+    scheduler.finished(normal1);
+    assertThat(scheduler.poll()).isSameAs(normal2);
+    scheduler.finished(normal2);
+    assertThat(scheduler.poll()).isSameAs(low);
+  }
+
+}
@@ -0,0 +1,88 @@
+package com.stanfy.enroscar.download;
+
+import static org.fest.assertions.api.Assertions.assertThat;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * Tests for {@link DownloadState}.
+ */
+public class DownloadStateTest {
+
+  @Rule
+  public TemporaryFolder tempFolder = new TemporaryFolder();
+
+  @Test
+  public void shouldSplitIntoSegments() {
+    final long total = 1000;
+    final DownloadState state = DownloadState.segmented("\"etag\"", total, 3);
+    assertThat(state.isSegmented()).isTrue();
+    assertThat(state.segments).hasSize(3);
+    assertThat(state.segments[0].start).isZero();
+    assertThat(state.segments[2].end).isEqualTo(total - 1);
+    for (int i = 1; i < state.segments.length; i++) {
+      assertThat(state.segments[i].start).isEqualTo(state.segments[i - 1].end + 1);
+    }
+    assertThat(state.getDownloadedLength()).isZero();
+  }
+
+  @Test
+  public void shouldSaveAndRead() throws IOException {
+    final File file = DownloadState.getStateFile(new File(tempFolder.getRoot(), "file.bin"));
+    final DownloadState state = DownloadState.segmented("\"etag\"", 100, 2);
+    state.segments[0].position = 10;
+    state.segments[1].position = state.segments[1].end + 1;
+    state.write(file);
+
+    final DownloadState read = DownloadState.read(file);
+    assertThat(read).isNotNull();
+    assertThat(read.validator).isEqualTo("\"etag\"");
+    assertThat(read.totalLength).isEqualTo(100);
+    assertThat(read.segments[0].position).isEqualTo(10);
+    assertThat(read.segments[0].isComplete()).isFalse();
+    assertThat(read.segments[1].isComplete()).isTrue();
+    assertThat(read.getDownloadedLength()).isEqualTo(10 + 50);
+  }
+
+  @Test
+  public void snapshotShouldNotChangeWithState() {
+    final DownloadState state = DownloadState.segmented(null, 100, 2);
+    state.segments[0].position = 10;
+    final DownloadState snapshot = state.snapshot();
+    state.segments[0].position = 20;
+
+    assertThat(snapshot.segments).hasSize(2);
+    assertThat(snapshot.segments[0].position).isEqualTo(10);
+    assertThat(snapshot.segments[1].start).isEqualTo(state.segments[1].start);
+    assertThat(snapshot.getDownloadedLength()).isEqualTo(10);
+    assertThat(snapshot.totalLength).isEqualTo(100);
+  }
+
+  @Test
+  public void sequentialStateWithUnknownLength() throws IOException {
+    final File file = tempFolder.newFile("state");
+    DownloadState.sequential(null, -1).write(file);
+    final DownloadState read = DownloadState.read(file);
+    assertThat(read.validator).isNull();
+    assertThat(read.isSegmented()).isFalse();
+    assertThat(read.segments[0].end).isEqualTo(-1);
+    assertThat(read.segments[0].isComplete()).isFalse();
+  }
+
+  @Test
+  public void shouldIgnoreBrokenState() throws IOException {
+    final File file = tempFolder.newFile("broken");
+    final FileOutputStream out = new FileOutputStream(file);
+    out.write(new byte[] {1, 2, 3});
+    out.close();
+    assertThat(DownloadState.read(file)).isNull();
+    assertThat(DownloadState.read(new File(tempFolder.getRoot(), "missing"))).isNull();
+  }
+
+}
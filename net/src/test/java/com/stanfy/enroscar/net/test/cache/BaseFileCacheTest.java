@@ -49,4 +49,20 @@ public class BaseFileCacheTest extends AbstractOneCacheTest {
 
   }
 
+  @Test
+  public void containsShouldFollowWritesAndDeletes() throws Exception {
+    final String text = "ABC";
+    getWebServer().enqueue(new MockResponse().setBody(text));
+
+    final URL url = getWebServer().getUrl("/contains");
+    assertThat(cache.contains(url.toString())).isFalse();
+
+    assertResponse(url.openConnection(), text, false);
+    assertThat(cache.contains(url.toString())).isTrue();
+
+    assertThat(cache.deleteGetEntry(url.toString())).isTrue();
+    assertThat(cache.contains(url.toString())).isFalse();
+    assertThat(cache.get(url.toURI(), "GET", null)).isNull();
+  }
+
 }
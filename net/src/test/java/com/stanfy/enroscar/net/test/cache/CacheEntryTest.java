@@ -0,0 +1,118 @@
+package com.stanfy.enroscar.net.test.cache;
+
+import static org.fest.assertions.api.Assertions.assertThat;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.URI;
+import java.util.Collections;
+import java.util.List;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+
+import com.stanfy.enroscar.net.cache.CacheEntry;
+import com.stanfy.enroscar.test.AbstractNetTest;
+
+/**
+ * Tests for {@link CacheEntry} serialization.
+ */
+@RunWith(RobolectricTestRunner.class)
+@Config(emulateSdk = 18)
+public class CacheEntryTest extends AbstractNetTest {
+
+  /** Test URL. */
+  private static final String URL = "http://example.com/test/url?q=1";
+
+  /** Cache entry. */
+  private TypedEntry entry;
+
+  @Before
+  public void createEntry() throws Exception {
+    entry = new TypedEntry();
+    entry.set(new URI(URL), "GET", Collections.<String, List<String>>emptyMap());
+    entry.type = -2;
+  }
+
+  private byte[] write(final CacheEntry entry) throws IOException {
+    final ByteArrayOutputStream out = new ByteArrayOutputStream();
+    entry.writeTo(out);
+    return out.toByteArray();
+  }
+
+  @Test
+  public void shouldReadWrittenEntry() throws IOException {
+    final TypedEntry read = new TypedEntry();
+    read.readFrom(new ByteArrayInputStream(write(entry)));
+    assertThat(read.getUri()).isEqualTo(URL);
+    assertThat(read.getRequestMethod()).isEqualTo("GET");
+    assertThat(read.getTimestamp()).isEqualTo(entry.getTimestamp());
+    assertThat(read.getEncoding()).isNull();
+    assertThat(read.type).isEqualTo(-2);
+    assertThat(read.matches(entry)).isTrue();
+  }
+
+  @Test
+  public void shouldReadHeaderOnly() throws IOException {
+    final TypedEntry read = new TypedEntry();
+    read.readHeaderFrom(new ByteArrayInputStream(write(entry)));
+    assertThat(read.getTimestamp()).isEqualTo(entry.getTimestamp());
+    assertThat(read.type).isEqualTo(-2);
+    assertThat(read.matches(entry)).isTrue();
+  }
+
+  @Test
+  public void shouldReadLegacyTextFormat() throws IOException {
+    final String legacy = URL + "\nGET\n123\ngzip\nHTTP/1.1 200 OK\n5\n";
+    final TypedEntry read = new TypedEntry();
+    read.readFrom(new ByteArrayInputStream(legacy.getBytes("UTF-8")));
+    assertThat(read.getUri()).isEqualTo(URL);
+    assertThat(read.getTimestamp()).isEqualTo(123);
+    assertThat(read.getEncoding()).isEqualTo("gzip");
+    assertThat(read.type).isEqualTo(5);
+    assertThat(read.matches(entry)).isTrue();
+  }
+
+  @Test
+  public void binaryFormatShouldBeCompact() throws IOException {
+    final CacheEntry plain = new CacheEntry();
+    plain.set(new URI(URL), "GET", Collections.<String, List<String>>emptyMap());
+    // magic + version + timestamp + uri + method + headers block
+    assertThat(write(plain).length).isEqualTo(2 + 8 + 1 + URL.length() + 1 + 3 + 1 + 2);
+  }
+
+  @Test(expected = IOException.class)
+  public void shouldRejectUnknownVersion() throws IOException {
+    final byte[] data = write(entry);
+    data[1] = 100;
+    new CacheEntry().readFrom(new ByteArrayInputStream(data));
+  }
+
+  /** Entry with custom metadata. */
+  private static class TypedEntry extends CacheEntry {
+    /** Type. */
+    int type;
+
+    @Override
+    protected void readMetaData(final InputStream in) throws IOException {
+      type = readInt(in);
+    }
+
+    @Override
+    protected void writeBinaryMetaData(final OutputStream out) throws IOException {
+      writeVarInt(out, type);
+    }
+
+    @Override
+    protected void readBinaryMetaData(final InputStream in) throws IOException {
+      type = readVarInt(in);
+    }
+  }
+
+}
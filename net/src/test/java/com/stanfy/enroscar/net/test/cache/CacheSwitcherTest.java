@@ -16,7 +16,10 @@ import com.google.mockwebserver.MockWebServer;
 import com.stanfy.enroscar.beans.BeansManager;
 import com.stanfy.enroscar.beans.BeansManager.Editor;
 import com.stanfy.enroscar.io.BuffersPool;
+import com.stanfy.enroscar.io.IoUtils;
 import com.stanfy.enroscar.net.UrlConnectionBuilder;
+import com.stanfy.enroscar.net.UrlConnectionWrapper;
+import com.stanfy.enroscar.net.cache.CacheControlUrlConnection;
 import com.stanfy.enroscar.net.cache.ResponseCacheSwitcher;
 import com.stanfy.enroscar.net.test.AbstractMockServerTest;
 import com.stanfy.enroscar.test.EnroscarNetConfig;
@@ -88,4 +91,23 @@ public class CacheSwitcherTest extends AbstractMockServerTest {
     perform("/2/", cache2, response2, true);
   }
 
+  private boolean isResponseCached(final String path, final SimpleFileCache cache) throws IOException {
+    final URLConnection connection = new UrlConnectionBuilder()
+        .setUrl(getWebServer().getUrl(path))
+        .setCacheManagerName(cache.getName())
+        .create();
+    IoUtils.consumeStream(connection.getInputStream(), null);
+    return UrlConnectionWrapper.getWrapper(connection, CacheControlUrlConnection.class).isResponseCached();
+  }
+
+  @Test
+  public void connectionShouldReportAcceptedResponse() throws IOException {
+    getWebServer().enqueue(new MockResponse().setBody("<response>"));
+
+    // network response => written to the cache
+    assertThat(isResponseCached("/accepted/", cache1)).isTrue();
+    // response from the cache => not written again
+    assertThat(isResponseCached("/accepted/", cache1)).isFalse();
+  }
+
 }
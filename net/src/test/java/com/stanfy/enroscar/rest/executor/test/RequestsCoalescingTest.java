@@ -0,0 +1,154 @@
+package com.stanfy.enroscar.rest.executor.test;
+
+import static org.fest.assertions.api.Assertions.assertThat;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.robolectric.annotation.Config;
+
+import android.content.Intent;
+
+import com.google.mockwebserver.Dispatcher;
+import com.google.mockwebserver.MockResponse;
+import com.google.mockwebserver.RecordedRequest;
+import com.stanfy.enroscar.beans.BeansManager.Editor;
+import com.stanfy.enroscar.content.loader.ResponseData;
+import com.stanfy.enroscar.net.test.AbstractMockServerTest;
+import com.stanfy.enroscar.rest.executor.ApiMethodCallback;
+import com.stanfy.enroscar.rest.executor.ApiMethods;
+import com.stanfy.enroscar.rest.executor.ApplicationService;
+import com.stanfy.enroscar.rest.request.RequestDescription;
+import com.stanfy.enroscar.rest.response.handler.StringContentHandler;
+import com.stanfy.enroscar.test.EnroscarNetConfig;
+
+/**
+ * Tests for requests coalescing in {@link ApiMethods}.
+ */
+@Config(emulateSdk = 18)
+@EnroscarNetConfig(connectionEngineRequired = true)
+public class RequestsCoalescingTest extends AbstractMockServerTest {
+
+  /** Response body. */
+  private static final String BODY = "coalesced";
+
+  /** Released when the server may respond. */
+  private final CountDownLatch responseAllowed = new CountDownLatch(1);
+
+  /** API methods. */
+  private ApiMethods apiMethods;
+
+  /** Callback. */
+  private RecordingCallback callback;
+
+  @Override
+  protected void configureBeansManager(final Editor editor) {
+    super.configureBeansManager(editor);
+    editor.put(StringContentHandler.class);
+  }
+
+  @Override
+  protected void whenBeansConfigured() {
+    super.whenBeansConfigured();
+    initContentHandler(StringContentHandler.BEAN_NAME);
+
+    final ApplicationService service = new ApplicationService();
+    service.onCreate();
+    apiMethods = ((ApplicationService.ApiMethodsBinder) service.onBind(new Intent().setAction(ApiMethods.class.getName())))
+        .getApiMethods();
+    apiMethods.setRequestsCoalescing(true);
+    callback = new RecordingCallback();
+    apiMethods.registerCallback(callback);
+  }
+
+  @Before
+  public void holdResponses() {
+    getWebServer().setDispatcher(new Dispatcher() {
+      @Override
+      public MockResponse dispatch(final RecordedRequest request) throws InterruptedException {
+        responseAllowed.await(3, TimeUnit.SECONDS);
+        return new MockResponse().setBody(BODY);
+      }
+    });
+  }
+
+  @After
+  public void releaseServer() {
+    responseAllowed.countDown();
+    apiMethods.removeCallback(callback);
+  }
+
+  private RequestDescription request() {
+    final MyRequestBuilder<String> rb = new MyRequestBuilder<String>(getApplication()) { };
+    rb.setUrl(getWebServer().getUrl("/coalesce").toString());
+    return rb.getResult();
+  }
+
+  @Test
+  public void identicalRequestsShouldShareOneNetworkCall() throws Exception {
+    final RequestDescription first = request(), second = request();
+    assertThat(first.getSignature()).isEqualTo(second.getSignature());
+
+    apiMethods.performRequest(first);
+    apiMethods.performRequest(second);
+    responseAllowed.countDown();
+
+    assertThat(callback.await()).isTrue();
+    assertThat(getWebServer().getRequestCount()).isEqualTo(1);
+    assertThat(callback.successes.get(first.getId())).isNotNull();
+    assertThat(callback.successes.get(second.getId())).isSameAs(callback.successes.get(first.getId()));
+    assertThat(callback.successes.get(first.getId()).getModel()).isEqualTo(BODY);
+  }
+
+  @Test
+  public void cancelingOneRequestShouldNotCancelAnother() throws Exception {
+    final RequestDescription first = request(), second = request();
+
+    apiMethods.performRequest(first);
+    apiMethods.performRequest(second);
+    assertThat(apiMethods.cancelRequest(first.getId())).isTrue();
+    responseAllowed.countDown();
+
+    assertThat(callback.await()).isTrue();
+    assertThat(getWebServer().getRequestCount()).isEqualTo(1);
+    assertThat(callback.canceled.containsKey(first.getId())).isTrue();
+    assertThat(callback.successes.containsKey(first.getId())).isFalse();
+    assertThat(callback.successes.get(second.getId()).getModel()).isEqualTo(BODY);
+  }
+
+  /** Records results of two requests. */
+  private static class RecordingCallback implements ApiMethodCallback {
+
+    /** Latch. */
+    private final CountDownLatch latch = new CountDownLatch(2);
+
+    /** Successful results. */
+    final ConcurrentHashMap<Integer, ResponseData<?>> successes = new ConcurrentHashMap<Integer, ResponseData<?>>();
+    /** Canceled requests. */
+    final ConcurrentHashMap<Integer, Boolean> canceled = new ConcurrentHashMap<Integer, Boolean>();
+
+    boolean await() throws InterruptedException {
+      return latch.await(3, TimeUnit.SECONDS);
+    }
+
+    @Override
+    public void reportSuccess(final RequestDescription requestDescription, final ResponseData<?> responseData) {
+      successes.put(requestDescription.getId(), responseData);
+      latch.countDown();
+    }
+    @Override
+    public void reportError(final RequestDescription requestDescription, final ResponseData<?> responseData) {
+      latch.countDown();
+    }
+    @Override
+    public void reportCancel(final RequestDescription requestDescription, final ResponseData<?> responseData) {
+      canceled.put(requestDescription.getId(), Boolean.TRUE);
+      latch.countDown();
+    }
+  }
+
+}
@@ -0,0 +1,119 @@
+package com.stanfy.enroscar.rest.request.net.multipart.test;
+
+import static org.fest.assertions.api.Assertions.assertThat;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import com.stanfy.enroscar.io.BuffersPool;
+import com.stanfy.enroscar.rest.request.net.multipart.SpillBuffer;
+
+/**
+ * Tests for {@link SpillBuffer}.
+ */
+public class SpillBufferTest {
+
+  /** Memory limit. */
+  private static final int LIMIT = 100;
+
+  @Rule
+  public TemporaryFolder tempFolder = new TemporaryFolder();
+
+  private BuffersPool pool;
+
+  private File dir;
+
+  @Before
+  public void init() throws IOException {
+    pool = new BuffersPool();
+    dir = tempFolder.newFolder("spill");
+  }
+
+  private static byte[] data(final int length) {
+    final byte[] result = new byte[length];
+    for (int i = 0; i < length; i++) {
+      result[i] = (byte) i;
+    }
+    return result;
+  }
+
+  private static byte[] contentOf(final SpillBuffer buffer) throws IOException {
+    final ByteArrayOutputStream out = new ByteArrayOutputStream();
+    buffer.writeTo(out);
+    return out.toByteArray();
+  }
+
+  @Test
+  public void shouldKeepSmallDataInMemory() throws IOException {
+    final SpillBuffer buffer = new SpillBuffer(pool, dir, LIMIT);
+    final byte[] data = data(LIMIT);
+    buffer.write(data, 0, LIMIT / 2);
+    buffer.write(data, LIMIT / 2, LIMIT / 2);
+    buffer.close();
+
+    assertThat(buffer.isSpilled()).isFalse();
+    assertThat(buffer.length()).isEqualTo(LIMIT);
+    assertThat(contentOf(buffer)).isEqualTo(data);
+    assertThat(contentOf(buffer)).isEqualTo(data);
+    assertThat(dir.list()).isEmpty();
+
+    buffer.release();
+    assertThat(pool.getUsedBuffersCount()).isZero();
+  }
+
+  @Test
+  public void shouldSpillLargeDataToFile() throws IOException {
+    final SpillBuffer buffer = new SpillBuffer(pool, dir, LIMIT);
+    final byte[] data = data(LIMIT * 3);
+    buffer.write(data, 0, LIMIT - 1);
+    buffer.write(data[LIMIT - 1]);
+    buffer.write(data, LIMIT, data.length - LIMIT);
+    buffer.close();
+
+    assertThat(buffer.isSpilled()).isTrue();
+    assertThat(buffer.length()).isEqualTo(data.length);
+    assertThat(contentOf(buffer)).isEqualTo(data);
+    assertThat(dir.list()).hasSize(1);
+
+    buffer.release();
+    assertThat(dir.list()).isEmpty();
+    assertThat(pool.getUsedBuffersCount()).isZero();
+  }
+
+  @Test
+  public void shouldNotSpillWithoutDirectory() throws IOException {
+    final SpillBuffer buffer = new SpillBuffer(null, null, LIMIT);
+    final byte[] data = data(LIMIT * 2);
+    buffer.write(data);
+    buffer.close();
+
+    assertThat(buffer.isSpilled()).isFalse();
+    assertThat(contentOf(buffer)).isEqualTo(data);
+  }
+
+  @Test
+  public void shouldNotReturnLargeBuffersToPool() throws IOException {
+    final SpillBuffer buffer = new SpillBuffer(pool, null, Integer.MAX_VALUE);
+    final byte[] data = data(SpillBuffer.MAX_POOLED_SIZE * 2);
+    final int chunk = 1024;
+    for (int offset = 0; offset < data.length; offset += chunk) {
+      buffer.write(data, offset, chunk);
+    }
+    buffer.close();
+    assertThat(contentOf(buffer)).isEqualTo(data);
+
+    buffer.release();
+    assertThat(pool.getUsedBuffersCount()).isZero();
+    // only small buffers are kept by the pool
+    final int allocated = pool.getAllocatedBuffersCount();
+    pool.get(SpillBuffer.MAX_POOLED_SIZE + 1);
+    assertThat(pool.getAllocatedBuffersCount()).isEqualTo(allocated + 1);
+  }
+
+}
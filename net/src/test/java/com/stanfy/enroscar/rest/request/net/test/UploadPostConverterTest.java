@@ -0,0 +1,146 @@
+package com.stanfy.enroscar.rest.request.net.test;
+
+import static org.fest.assertions.api.Assertions.assertThat;
+import static org.junit.Assert.fail;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+import org.robolectric.annotation.Config;
+
+import android.content.Context;
+import android.os.Parcelable;
+
+import com.stanfy.enroscar.io.BuffersPool;
+import com.stanfy.enroscar.net.test.AbstractMockServerTest;
+import com.stanfy.enroscar.rest.request.OperationType;
+import com.stanfy.enroscar.rest.request.binary.BinaryData;
+import com.stanfy.enroscar.rest.request.net.UploadPostConverter;
+import com.stanfy.enroscar.rest.request.net.multipart.Part;
+
+/**
+ * Tests for {@link UploadPostConverter}.
+ */
+@Config(emulateSdk = 18)
+public class UploadPostConverterTest extends AbstractMockServerTest {
+
+  @Test
+  public void failedPreparationShouldWaitForOtherParts() throws Exception {
+    final CountDownLatch slowStarted = new CountDownLatch(1);
+    final TestPart slow = new TestPart() {
+      @Override
+      public void prepare(final BuffersPool buffersPool, final File spillDir) throws IOException {
+        slowStarted.countDown();
+        try {
+          //CHECKSTYLE:OFF
+          Thread.sleep(200);
+          //CHECKSTYLE:ON
+        } catch (final InterruptedException e) {
+          throw new IOException(e.getMessage());
+        }
+        prepared = true;
+      }
+    };
+    final TestPart failing = new TestPart() {
+      @Override
+      public void prepare(final BuffersPool buffersPool, final File spillDir) throws IOException {
+        try {
+          slowStarted.await(1, TimeUnit.SECONDS);
+        } catch (final InterruptedException e) {
+          throw new IOException(e.getMessage());
+        }
+        throw new IOException("test");
+      }
+    };
+
+    boolean failed = false;
+    try {
+      Converter.prepare(new Part[] {failing, slow});
+    } catch (final IOException e) {
+      failed = true;
+    }
+
+    assertThat(failed).isTrue();
+    // parts are released after this point, preparation must not be running
+    assertThat(slow.prepared).isTrue();
+  }
+
+  @Test
+  public void failedConnectionShouldReleaseParts() throws Exception {
+    final TestPart part = new TestPart() { };
+    final MyRequestBuilder<String> rb = new MyRequestBuilder<String>(getApplication()) { };
+    // nothing listens on this port
+    rb.setUrl("http://localhost:1/upload").setOperationType(OperationType.UPLOAD_POST);
+    rb.getResult().addBinaryData(new PartBinaryData(part));
+
+    try {
+      makeConnection(rb);
+      fail("Connection must fail");
+    } catch (final IOException e) {
+      // expected
+    }
+
+    assertThat(part.prepared).isTrue();
+    assertThat(part.released).isTrue();
+  }
+
+  /** Exposes parts preparation. */
+  private abstract static class Converter extends UploadPostConverter {
+    Converter() {
+      super(null, null);
+    }
+    static void prepare(final Part[] parts) throws IOException {
+      prepareParts(parts, new BuffersPool(), null);
+    }
+  }
+
+  /** Part that requires preparation. */
+  private abstract static class TestPart extends Part {
+    /** Preparation flag. */
+    volatile boolean prepared;
+    /** Release flag. */
+    volatile boolean released;
+
+    @Override
+    public void prepare(final BuffersPool buffersPool, final File spillDir) throws IOException {
+      prepared = true;
+    }
+    @Override
+    public void release() { released = true; }
+
+    @Override
+    public boolean isPreparationRequired() { return true; }
+    @Override
+    public String getName() { return "test"; }
+    @Override
+    public String getContentType() { return null; }
+    @Override
+    public String getCharSet() { return null; }
+    @Override
+    public String getTransferEncoding() { return null; }
+    @Override
+    protected void sendData(final OutputStream out) { }
+    @Override
+    protected long lengthOfData() { return 0; }
+  }
+
+  /** Binary data that provides a given part. */
+  private static class PartBinaryData extends BinaryData<Parcelable> {
+    /** Part. */
+    private final Part part;
+
+    PartBinaryData(final Part part) {
+      this.part = part;
+    }
+
+    @Override
+    public Part createHttpPart(final Context context) { return part; }
+    @Override
+    public void writeContentTo(final Context context, final OutputStream stream) { }
+  }
+
+}
@@ -2,27 +2,48 @@ package com.stanfy.enroscar.rest.response.handler.test;
 
 import static org.fest.assertions.api.Assertions.assertThat;
 
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.InputStream;
 import java.net.HttpURLConnection;
 import java.net.ResponseCache;
 import java.net.URLConnection;
+import java.util.ArrayList;
+import java.util.LinkedList;
+import java.util.List;
 
 import org.junit.Test;
 import org.robolectric.Robolectric;
 
 import org.robolectric.annotation.Config;
 
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+import com.google.gson.JsonParseException;
+import com.google.gson.TypeAdapter;
+import com.google.gson.reflect.TypeToken;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonWriter;
 import com.google.mockwebserver.MockResponse;
 import com.stanfy.enroscar.beans.BeansManager;
 import com.stanfy.enroscar.beans.BeansManager.Editor;
 import com.stanfy.enroscar.io.BuffersPool;
+import com.stanfy.enroscar.io.IoUtils;
+import com.stanfy.enroscar.io.MappedFileInputStream;
+import com.stanfy.enroscar.net.ContentControlUrlConnection;
+import com.stanfy.enroscar.net.PartialContentListener;
 import com.stanfy.enroscar.net.UrlConnectionBuilderFactory;
 import com.stanfy.enroscar.net.UrlConnectionWrapper;
 import com.stanfy.enroscar.net.test.AbstractMockServerTest;
+import com.stanfy.enroscar.rest.ModelTypeToken;
 import com.stanfy.enroscar.rest.RemoteServerApiConfiguration;
 import com.stanfy.enroscar.rest.request.OperationType;
 import com.stanfy.enroscar.rest.request.net.BaseRequestDescriptionConverter;
+import com.stanfy.enroscar.rest.response.PartialContentDispatcher;
 import com.stanfy.enroscar.rest.response.handler.BaseContentHandler;
+import com.stanfy.enroscar.rest.response.handler.GsonContentHandler;
 import com.stanfy.enroscar.rest.response.handler.StringContentHandler;
 
 
@@ -38,7 +59,8 @@ public class ContentHandlerTest extends AbstractMockServerTest {
       .put(BuffersPool.class)
       .put(RemoteServerApiConfiguration.class)
       .put(BaseRequestDescriptionConverter.CONNECTION_BUILDER_FACTORY_NAME, UrlConnectionBuilderFactory.DEFAULT)
-      .put(StringContentHandler.class);
+      .put(StringContentHandler.class)
+      .put(GsonContentHandler.class);
   }
 
   private String scheduleBadMethodResponse() {
@@ -91,4 +113,225 @@ public class ContentHandlerTest extends AbstractMockServerTest {
     assertThat(response).isEqualTo(expected);
   }
 
+  @Test
+  public void gsonHandlerShouldPublishListBatches() throws Exception {
+    getWebServer().enqueue(new MockResponse().setBody("[1, 2, 3, 4, 5]"));
+
+    final MyRequestBuilder<List<Integer>> rb = new MyRequestBuilder<List<Integer>>(Robolectric.application) { };
+    rb.setUrl(getWebServer().getUrl("/list").toString()).setFormat("json");
+
+    final GsonContentHandler contentHandler = BeansManager.get(getApplication())
+        .getContainer().getBean(GsonContentHandler.BEAN_NAME, GsonContentHandler.class);
+    contentHandler.setListBatchSize(2);
+
+    final RecordingListener listener = new RecordingListener();
+    final int requestId = rb.getResult().getId();
+    PartialContentDispatcher.register(requestId, listener);
+    try {
+      final List<?> response = (List<?>) contentHandler.getContent(makeConnection(rb));
+      getWebServer().takeRequest();
+
+      assertThat(response).containsExactly(1, 2, 3, 4, 5);
+      assertThat(listener.batches).hasSize(2);
+      assertThat(listener.batches.get(0)).containsExactly(1, 2);
+      assertThat(listener.batches.get(1)).containsExactly(3, 4);
+      assertThat(listener.offsets).containsExactly(0, 2);
+    } finally {
+      PartialContentDispatcher.unregister(requestId, listener);
+    }
+  }
+
+  @Test
+  public void streamedListShouldRejectNotConsumedDocument() throws Exception {
+    getWebServer().enqueue(new MockResponse().setBody("[1, 2, 3] 4"));
+
+    final MyRequestBuilder<List<Integer>> rb = new MyRequestBuilder<List<Integer>>(Robolectric.application) { };
+    rb.setUrl(getWebServer().getUrl("/list").toString()).setFormat("json");
+
+    final GsonContentHandler contentHandler = BeansManager.get(getApplication())
+        .getContainer().getBean(GsonContentHandler.BEAN_NAME, GsonContentHandler.class);
+    contentHandler.setListBatchSize(2);
+
+    final RecordingListener listener = new RecordingListener();
+    final int requestId = rb.getResult().getId();
+    PartialContentDispatcher.register(requestId, listener);
+    boolean failed = false;
+    try {
+      contentHandler.getContent(makeConnection(rb));
+    } catch (final JsonParseException e) {
+      // Gson.fromJson fails the same way
+      failed = true;
+    } finally {
+      PartialContentDispatcher.unregister(requestId, listener);
+    }
+    getWebServer().takeRequest();
+    assertThat(failed).isTrue();
+    assertThat(listener.batches).hasSize(1);
+  }
+
+  @Test
+  public void gsonHandlerShouldUseCustomListAdapter() throws Exception {
+    getWebServer().enqueue(new MockResponse().setBody("[1, 2, 3, 4, 5]"));
+
+    final MyRequestBuilder<List<Integer>> rb = new MyRequestBuilder<List<Integer>>(Robolectric.application) { };
+    rb.setUrl(getWebServer().getUrl("/list").toString()).setFormat("json");
+
+    final ReversedListGsonContentHandler contentHandler = new ReversedListGsonContentHandler();
+    contentHandler.onInitializationFinished(getBeansManager().getContainer());
+    contentHandler.setListBatchSize(2);
+
+    final RecordingListener listener = new RecordingListener();
+    final int requestId = rb.getResult().getId();
+    PartialContentDispatcher.register(requestId, listener);
+    try {
+      final List<?> response = (List<?>) contentHandler.getContent(makeConnection(rb));
+      getWebServer().takeRequest();
+
+      assertThat(response).containsExactly(5, 4, 3, 2, 1);
+      assertThat(listener.batches).isEmpty();
+    } finally {
+      PartialContentDispatcher.unregister(requestId, listener);
+    }
+  }
+
+  @Test
+  public void partialContentListenerShouldBeAttachedOnlyWhenRegistered() throws Exception {
+    getWebServer().enqueue(new MockResponse().setBody("[1, 2, 3, 4, 5]"));
+
+    final MyRequestBuilder<List<Integer>> rb = new MyRequestBuilder<List<Integer>>(Robolectric.application) { };
+    rb.setUrl(getWebServer().getUrl("/list").toString()).setFormat("json");
+
+    final URLConnection connection = makeConnection(rb);
+    final ContentControlUrlConnection control = UrlConnectionWrapper.getWrapper(connection, ContentControlUrlConnection.class);
+    assertThat(control).isNotNull();
+    assertThat(control.getPartialContentListener()).isNull();
+    IoUtils.consumeStream(connection.getInputStream(), null);
+    getWebServer().takeRequest();
+  }
+
+  @Test
+  public void gsonHandlerShouldParseMappedBody() throws Exception {
+    //CHECKSTYLE:OFF
+    final int count = 2000;
+    //CHECKSTYLE:ON
+    final StringBuilder json = new StringBuilder("[");
+    for (int i = 0; i < count; i++) {
+      if (i > 0) { json.append(','); }
+      json.append("\"\u0434\u0430\u043d\u0456 ").append(i).append('"');
+    }
+    json.append("]\n");
+
+    final File file = File.createTempFile("mapped", "json");
+    try {
+      final FileOutputStream output = new FileOutputStream(file);
+      output.write(json.toString().getBytes(IoUtils.UTF_8_NAME));
+      output.close();
+
+      final MappedGsonContentHandler handler = new MappedGsonContentHandler();
+      handler.onInitializationFinished(getBeansManager().getContainer());
+      final List<?> result = (List<?>) handler.parse(
+          new MappedFileInputStream(new FileInputStream(file).getChannel()),
+          ModelTypeToken.fromModelType(new TypeToken<List<String>>() { }.getType())
+      );
+      assertThat(result).hasSize(count);
+      assertThat(result.get(count - 1)).isEqualTo("\u0434\u0430\u043d\u0456 " + (count - 1));
+    } finally {
+      //noinspection ResultOfMethodCallIgnored
+      file.delete();
+    }
+  }
+
+  @Test
+  public void partiallyReadResponseShouldNotBeDrained() throws Exception {
+    //CHECKSTYLE:OFF
+    final byte[] body = new byte[128 * 1024];
+    //CHECKSTYLE:ON
+    getWebServer().enqueue(new MockResponse().setBody(body));
+
+    final URLConnection connection = makeConnection(
+        new MyRequestBuilder<String>(Robolectric.application) { }
+          .setUrl(getWebServer().getUrl("/large").toString())
+          .setOperationType(OperationType.SIMPLE_GET)
+    );
+    final FirstByteContentHandler handler = new FirstByteContentHandler();
+    handler.onInitializationFinished(getBeansManager().getContainer());
+    assertThat(handler.getContent(connection)).isEqualTo(0);
+    getWebServer().takeRequest();
+
+    // only the handler buffer is read, the rest is left to RequestMethod (disconnect or drain)
+    final InputStream rest = UrlConnectionWrapper.unwrap(connection).getInputStream();
+    final byte[] buffer = new byte[IoUtils.BUFFER_SIZE_8K];
+    int left = 0;
+    for (int count = rest.read(buffer); count != -1; count = rest.read(buffer)) {
+      left += count;
+    }
+    rest.close();
+    assertThat(left).isGreaterThanOrEqualTo(body.length - IoUtils.BUFFER_SIZE_8K);
+  }
+
+  /** Records list batches. */
+  private static class RecordingListener implements PartialContentListener {
+    /** Batches. */
+    final List<List<?>> batches = new ArrayList<List<?>>();
+    /** Batch offsets. */
+    final List<Integer> offsets = new ArrayList<Integer>();
+
+    @Override
+    public boolean acceptsPartialContent() {
+      return true;
+    }
+    @Override
+    public void onListBatch(final List<?> batch, final int offset) {
+      batches.add(batch);
+      offsets.add(offset);
+    }
+  }
+
+  /** Registers a custom adapter that reverses integer lists. */
+  private static class ReversedListGsonContentHandler extends GsonContentHandler {
+    public ReversedListGsonContentHandler() {
+      super(Robolectric.application);
+    }
+    @Override
+    protected Gson createGson() {
+      return new GsonBuilder().registerTypeAdapter(new TypeToken<List<Integer>>() { }.getType(), new TypeAdapter<List<Integer>>() {
+        @Override
+        public void write(final JsonWriter out, final List<Integer> value) throws IOException {
+          throw new UnsupportedOperationException();
+        }
+        @Override
+        public List<Integer> read(final JsonReader in) throws IOException {
+          final LinkedList<Integer> result = new LinkedList<Integer>();
+          in.beginArray();
+          while (in.hasNext()) {
+            result.addFirst(in.nextInt());
+          }
+          in.endArray();
+          return result;
+        }
+      }).create();
+    }
+  }
+
+  /** Reads the first byte only. */
+  private static class FirstByteContentHandler extends BaseContentHandler {
+    public FirstByteContentHandler() {
+      super(Robolectric.application);
+    }
+    @Override
+    protected Object getContent(final URLConnection connection, final InputStream source, final ModelTypeToken modelType) throws IOException {
+      return source.read();
+    }
+  }
+
+  /** Exposes parsing method. */
+  private static class MappedGsonContentHandler extends GsonContentHandler {
+    public MappedGsonContentHandler() {
+      super(Robolectric.application);
+    }
+    Object parse(final InputStream source, final ModelTypeToken modelType) throws IOException {
+      return getContent(null, source, modelType);
+    }
+  }
+
 }
@@ -0,0 +1,142 @@
+package com.stanfy.enroscar.rest.response.test;
+
+import static org.fest.assertions.api.Assertions.assertThat;
+
+import java.io.IOException;
+
+import org.junit.Test;
+
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+import com.google.gson.TypeAdapter;
+import com.google.gson.TypeAdapterFactory;
+import com.google.gson.reflect.TypeToken;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonWriter;
+import com.stanfy.enroscar.rest.ModelTypeToken;
+import com.stanfy.enroscar.rest.response.Model;
+import com.stanfy.enroscar.rest.response.ModelAdapters;
+import com.stanfy.enroscar.rest.response.ModelInfo;
+
+/**
+ * Tests for {@link ModelAdapters} and {@link ModelInfo}.
+ */
+public class ModelAdaptersTest {
+
+  private final Gson gson = new GsonBuilder().registerTypeAdapterFactory(ModelAdapters.getInstance()).create();
+
+  @Test
+  public void shouldUseGeneratedAdapter() {
+    final Generated result = gson.fromJson("{\"value\":\"abc\"}", Generated.class);
+    assertThat(result.value).isEqualTo("generated:abc");
+  }
+
+  @Test
+  public void shouldFallBackToReflection() {
+    final Plain result = gson.fromJson("{\"value\":\"abc\"}", Plain.class);
+    assertThat(result.value).isEqualTo("abc");
+  }
+
+  @Test
+  public void shouldUseRegisteredAdapter() {
+    ModelAdapters.getInstance().register(Registered.class, new ValueAdapterFactory<Registered>(Registered.class, "registered:"));
+    final Registered result = gson.fromJson("{\"value\":\"abc\"}", Registered.class);
+    assertThat(result.value).isEqualTo("registered:abc");
+  }
+
+  @Test
+  public void shouldCacheModelInfo() {
+    final ModelInfo info = ModelInfo.of(Wrapped.class);
+    assertThat(info.isModel()).isTrue();
+    assertThat(info.getWrapper()).isEqualTo(Generated.class);
+    assertThat(info.getAnalyzer()).isEqualTo("analyzer");
+    assertThat(ModelInfo.of(Wrapped.class)).isSameAs(info);
+
+    assertThat(ModelInfo.of(Plain.class).isModel()).isFalse();
+    assertThat(ModelInfo.of(Generated.class).getWrapper()).isNull();
+    assertThat(ModelInfo.of(Generated.class).getAnalyzer()).isNull();
+
+    assertThat(ModelInfo.getParsedType(ModelTypeToken.fromModelType(Wrapped.class))).isEqualTo(Generated.class);
+    assertThat(ModelInfo.getParsedType(ModelTypeToken.fromModelType(Plain.class))).isEqualTo(Plain.class);
+  }
+
+  /** Base model. */
+  abstract static class ValueModel {
+    String value;
+  }
+
+  /** Model with generated adapter. */
+  @Model
+  static class Generated extends ValueModel {
+  }
+
+  // CHECKSTYLE:OFF
+  /** Adapter for {@link Generated} named the way annotation processor would do it. */
+  public static class Generated$$GsonAdapter extends ValueAdapterFactory<Generated> {
+    public Generated$$GsonAdapter() {
+      super(Generated.class, "generated:");
+    }
+  }
+  // CHECKSTYLE:ON
+
+  /** Model with registered adapter. */
+  @Model
+  static class Registered extends ValueModel {
+  }
+
+  /** Model without annotation. */
+  static class Plain extends ValueModel {
+  }
+
+  /** Wrapped model. */
+  @Model(wrapper = Generated.class, analyzer = "analyzer")
+  static class Wrapped extends ValueModel {
+  }
+
+  /** Reads 'value' field adding a prefix. */
+  static class ValueAdapterFactory<M extends ValueModel> implements TypeAdapterFactory {
+
+    final Class<M> modelClass;
+    final String prefix;
+
+    ValueAdapterFactory(final Class<M> modelClass, final String prefix) {
+      this.modelClass = modelClass;
+      this.prefix = prefix;
+    }
+
+    @SuppressWarnings("unchecked")
+    @Override
+    public <T> TypeAdapter<T> create(final Gson gson, final TypeToken<T> type) {
+      if (type.getRawType() != modelClass) { return null; }
+      return (TypeAdapter<T>) new TypeAdapter<M>() {
+        @Override
+        public void write(final JsonWriter out, final M value) throws IOException {
+          out.beginObject().name("value").value(value.value).endObject();
+        }
+
+        @Override
+        public M read(final JsonReader in) throws IOException {
+          try {
+            final M result = modelClass.newInstance();
+            in.beginObject();
+            while (in.hasNext()) {
+              if ("value".equals(in.nextName())) {
+                result.value = prefix + in.nextString();
+              } else {
+                in.skipValue();
+              }
+            }
+            in.endObject();
+            return result;
+          } catch (final InstantiationException e) {
+            throw new IOException(e);
+          } catch (final IllegalAccessException e) {
+            throw new IOException(e);
+          }
+        }
+      };
+    }
+
+  }
+
+}
@@ -0,0 +1,82 @@
+package com.stanfy.enroscar.rest.test;
+
+import static org.fest.assertions.api.Assertions.assertThat;
+
+import java.io.IOException;
+import java.net.HttpURLConnection;
+import java.net.URLConnection;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.robolectric.annotation.Config;
+
+import android.content.Context;
+
+import com.google.mockwebserver.MockResponse;
+import com.stanfy.enroscar.io.IoUtils;
+import com.stanfy.enroscar.net.test.AbstractMockServerTest;
+import com.stanfy.enroscar.rest.RequestMethod;
+
+/**
+ * Tests for connection reuse in {@link RequestMethod}.
+ */
+@Config(emulateSdk = 18)
+public class RequestMethodTest extends AbstractMockServerTest {
+
+  /** Request method. */
+  private TestRequestMethod requestMethod;
+
+  @Before
+  public void createRequestMethod() {
+    requestMethod = new TestRequestMethod();
+  }
+
+  private HttpURLConnection open(final String path) throws IOException {
+    final HttpURLConnection connection = (HttpURLConnection) getWebServer().getUrl(path).openConnection();
+    assertThat(connection.getResponseCode()).isEqualTo(HttpURLConnection.HTTP_OK);
+    return connection;
+  }
+
+  private void assertSecondRequestReusesConnection(final boolean reused) throws Exception {
+    assertThat(IoUtils.streamToString(open("/second").getInputStream(), null)).isEqualTo("second");
+    assertThat(getWebServer().takeRequest().getSequenceNumber()).isEqualTo(0);
+    assertThat(getWebServer().takeRequest().getSequenceNumber()).isEqualTo(reused ? 1 : 0);
+  }
+
+  @Test
+  public void drainedConnectionShouldBeReused() throws Exception {
+    getWebServer().enqueue(new MockResponse().setBody("unread body"));
+    getWebServer().enqueue(new MockResponse().setBody("second"));
+
+    requestMethod.releaseConnection(getApplication(), open("/first"));
+
+    assertSecondRequestReusesConnection(true);
+    final RequestMethod.HostCounters counters = requestMethod.getHostCounters(getWebServer().getHostName());
+    assertThat(counters.getReleasedCount()).isEqualTo(1);
+    assertThat(counters.getDisconnectedCount()).isZero();
+  }
+
+  @Test
+  public void largeLeftoverShouldNotBeRead() throws Exception {
+    //CHECKSTYLE:OFF
+    final byte[] body = new byte[RequestMethod.MAX_DRAIN_LENGTH * 64];
+    //CHECKSTYLE:ON
+    getWebServer().enqueue(new MockResponse().setBody(body));
+    getWebServer().enqueue(new MockResponse().setBody("second"));
+
+    requestMethod.releaseConnection(getApplication(), open("/large"));
+
+    assertSecondRequestReusesConnection(false);
+    final RequestMethod.HostCounters counters = requestMethod.getHostCounters(getWebServer().getHostName());
+    assertThat(counters.getReleasedCount()).isZero();
+    assertThat(counters.getDisconnectedCount()).isEqualTo(1);
+  }
+
+  /** Exposes release method. */
+  private static class TestRequestMethod extends RequestMethod {
+    void releaseConnection(final Context context, final URLConnection connection) {
+      release(context, connection);
+    }
+  }
+
+}
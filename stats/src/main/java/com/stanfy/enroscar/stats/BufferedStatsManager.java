@@ -0,0 +1,487 @@
+package com.stanfy.enroscar.stats;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.LockSupport;
+
+import android.app.Activity;
+import android.content.Context;
+import android.os.Process;
+import android.util.Log;
+
+import com.stanfy.enroscar.beans.BeansContainer;
+import com.stanfy.enroscar.beans.DestroyingBean;
+import com.stanfy.enroscar.beans.InitializingBean;
+
+/**
+ * Stats manager that records events and errors asynchronously and passes them to another
+ * stats manager in batches.
+ * <p>
+ *   {@link #event(String, Map)} and {@link #error(String, Throwable)} only put a record into a lock-free ring buffer.
+ *   Building parameter maps and formatting stack traces happen in a background thread.
+ *   Formatted records are appended to a journal file in the application files directory and delivered
+ *   to the delegate when a batch is full or when batch delay expires.
+ *   Records that were not delivered before process death are delivered on the next start.
+ *   A record may be delivered twice if the process dies right after delivery.
+ * </p>
+ * <p>
+ *   Session start and screen callbacks are passed to the delegate immediately.
+ *   Session end is queued after the buffered records: the background thread delivers pending records
+ *   and then passes the session end to the delegate.
+ *   When a {@link #TAG_FATAL} error is reported, pending records are delivered in the calling thread,
+ *   so that they are not lost if the process is killed.
+ *   Errors are passed to the delegate as already formatted throwables, so delegates should use
+ *   {@link #readException(Throwable, int)} and {@link #errorClassName(Throwable)} to report them.
+ *   Event parameters must not be modified after they are passed to this manager.
+ *   If the buffer is full, new records are dropped.
+ * </p>
+ * <p>
+ *   Register an instance of this class with {@code BeansManager.Editor.put(bean)}.
+ * </p>
+ * @author Roman Mazur (Stanfy - http://www.stanfy.com)
+ */
+public class BufferedStatsManager extends StatsManager implements InitializingBean, DestroyingBean {
+
+  /** Default buffer capacity. */
+  public static final int DEFAULT_CAPACITY = 256;
+  /** Default batch size. */
+  public static final int DEFAULT_BATCH_SIZE = 32;
+  /** Default interval between journal writes in milliseconds. */
+  public static final long DEFAULT_FLUSH_INTERVAL = 1000;
+  /** Default max batch delay in milliseconds. */
+  public static final long DEFAULT_MAX_BATCH_DELAY = 30000;
+
+  /** Journal file name. */
+  private static final String JOURNAL_NAME = "enroscar-stats.journal";
+  /** Max length of a formatted error. */
+  private static final int MAX_ERROR_LENGTH = 1024;
+  /** Max length of a persisted string. */
+  private static final int MAX_STRING_LENGTH = 8192;
+
+  /** Delegate. */
+  private final StatsManager delegate;
+  /** Records buffer. */
+  private final RecordsBuffer buffer;
+  /** Journal file. */
+  private final File journal;
+
+  /** Batch size. */
+  private int batchSize = DEFAULT_BATCH_SIZE;
+  /** Interval between journal writes. */
+  private long flushInterval = DEFAULT_FLUSH_INTERVAL;
+  /** Max batch delay. */
+  private long maxBatchDelay = DEFAULT_MAX_BATCH_DELAY;
+
+  /** Count of dropped records. */
+  private final AtomicInteger droppedCount = new AtomicInteger();
+
+  /** Worker thread. */
+  private volatile Thread worker;
+  /** Running flag. */
+  private volatile boolean running;
+  /** Delivery request flag. */
+  private volatile boolean deliveryRequested;
+
+  /** Records that are persisted but not delivered. Guarded by this. */
+  private final ArrayList<Entry> pending = new ArrayList<Entry>();
+  /** Whether the journal left by a previous process has been read. Guarded by this. */
+  private boolean journalRestored;
+  /** Time of the oldest pending record. Guarded by this. */
+  private long pendingSince;
+  /** Record used to read the buffer. Guarded by this. */
+  private final RecordsBuffer.Record record = new RecordsBuffer.Record();
+
+  public BufferedStatsManager(final Context context, final StatsManager delegate) {
+    this(context, delegate, DEFAULT_CAPACITY);
+  }
+
+  /**
+   * @param context context instance
+   * @param delegate stats manager that reports to an analytics service
+   * @param capacity buffer capacity, rounded up to a power of two
+   */
+  public BufferedStatsManager(final Context context, final StatsManager delegate, final int capacity) {
+    if (delegate == null) { throw new IllegalArgumentException("Delegate must not be null"); }
+    this.delegate = delegate;
+    this.buffer = new RecordsBuffer(capacity);
+    this.journal = new File(context.getFilesDir(), JOURNAL_NAME);
+  }
+
+  /** @param batchSize count of records that are delivered to the delegate at once */
+  public void setBatchSize(final int batchSize) { this.batchSize = batchSize; }
+
+  /** @param flushInterval interval between journal writes in milliseconds */
+  public void setFlushInterval(final long flushInterval) { this.flushInterval = flushInterval; }
+
+  /** @param maxBatchDelay max time a record waits for delivery in milliseconds */
+  public void setMaxBatchDelay(final long maxBatchDelay) { this.maxBatchDelay = maxBatchDelay; }
+
+  /** @return stats manager that receives records */
+  public StatsManager getDelegate() { return delegate; }
+
+  /** @return count of records dropped because the buffer was full */
+  public int getDroppedCount() { return droppedCount.get(); }
+
+  @Override
+  public void onInitializationFinished(final BeansContainer beansContainer) {
+    start();
+  }
+
+  @Override
+  public void onDestroy(final BeansContainer beansContainer) {
+    stop();
+  }
+
+  /** Start the worker thread. Records persisted by a previous process are delivered first. */
+  public synchronized void start() {
+    if (running) { return; }
+    running = true;
+    final Thread thread = new Thread(new Worker(), "BufferedStatsManager");
+    worker = thread;
+    thread.start();
+  }
+
+  /** Stop the worker thread. Buffered records are delivered before the thread finishes. */
+  public void stop() {
+    running = false;
+    final Thread thread = worker;
+    if (thread != null) { LockSupport.unpark(thread); }
+  }
+
+  /**
+   * Process all buffered records and deliver them to the delegate in the calling thread.
+   * Performs disk I/O.
+   */
+  public void flush() {
+    process(true);
+  }
+
+  @Override
+  public void onStartSession(final Activity activity) {
+    delegate.onStartSession(activity);
+  }
+
+  @Override
+  public void onStartScreen(final Activity activity) {
+    delegate.onStartScreen(activity);
+  }
+
+  @Override
+  public void onComeToScreen(final Activity activity) {
+    delegate.onComeToScreen(activity);
+  }
+
+  @Override
+  public void onLeaveScreen(final Activity activity) {
+    delegate.onLeaveScreen(activity);
+  }
+
+  /**
+   * Session end is passed to the delegate in the background thread after pending records are delivered.
+   * If the manager is not started, it's passed on {@link #flush()}.
+   */
+  @Override
+  public void onEndSession(final Activity activity) {
+    if (!buffer.offer(RecordsBuffer.TYPE_END_SESSION, null, activity)) {
+      // buffer is full, session end must not be lost
+      flush();
+      endSession(activity);
+      return;
+    }
+    wakeUp();
+  }
+
+  /** {@link #TAG_FATAL} errors are delivered in the calling thread together with pending records. */
+  @Override
+  public void error(final String tag, final Throwable e) {
+    final boolean fatal = TAG_FATAL.equals(tag);
+    if (!offer(RecordsBuffer.TYPE_ERROR, tag, e) && fatal) {
+      // make room for the fatal error
+      flush();
+      offer(RecordsBuffer.TYPE_ERROR, tag, e);
+    }
+    if (fatal) { flush(); }
+  }
+
+  @Override
+  public void event(final String tag, final Map<String, String> params) {
+    offer(RecordsBuffer.TYPE_EVENT, tag, params);
+  }
+
+  @Override
+  public void event(final String tag) {
+    offer(RecordsBuffer.TYPE_EVENT, tag, null);
+  }
+
+  @Override
+  public void event(final String tag, final String[][] tuples) {
+    offer(RecordsBuffer.TYPE_EVENT, tag, tuples);
+  }
+
+  private boolean offer(final int type, final String tag, final Object payload) {
+    final RecordsBuffer buffer = this.buffer;
+    if (!buffer.offer(type, tag, payload)) {
+      droppedCount.incrementAndGet();
+      if (DEBUG) { Log.w(TAG, "Stats buffer is full, dropping " + tag); }
+      wakeUp();
+      return false;
+    }
+    if (buffer.size() == buffer.capacity() >> 1) { wakeUp(); }
+    return true;
+  }
+
+  private void wakeUp() {
+    final Thread thread = worker;
+    if (thread != null) { LockSupport.unpark(thread); }
+  }
+
+  /**
+   * Drain the buffer, persist new records and deliver a batch if it's time.
+   * @param deliver whether to deliver all the pending records
+   */
+  private synchronized void process(final boolean deliver) {
+    if (!journalRestored) { readJournal(); }
+    final ArrayList<Entry> pending = this.pending;
+    int start = pending.size();
+    final RecordsBuffer.Record record = this.record;
+    while (buffer.poll(record)) {
+      if (record.type == RecordsBuffer.TYPE_END_SESSION) {
+        final Activity activity = (Activity) record.payload;
+        persist(start);
+        deliverPending();
+        start = 0;
+        endSession(activity);
+        continue;
+      }
+      if (pending.isEmpty()) { pendingSince = record.time; }
+      pending.add(format(record));
+    }
+    record.tag = null;
+    record.payload = null;
+
+    persist(start);
+
+    if (pending.isEmpty()) { return; }
+    if (deliver || deliveryRequested || pending.size() >= batchSize
+        || System.currentTimeMillis() - pendingSince >= maxBatchDelay) {
+      deliverPending();
+    }
+  }
+
+  /** @param start index of the first pending record that is not written to the journal */
+  private void persist(final int start) {
+    final ArrayList<Entry> pending = this.pending;
+    if (pending.size() > start) {
+      write(pending.subList(start, pending.size()));
+      onRecordsWritten(pending.size() - start);
+    }
+  }
+
+  private void deliverPending() {
+    deliveryRequested = false;
+    if (pending.isEmpty()) { return; }
+    deliver(pending);
+    pending.clear();
+    if (journal.exists() && !journal.delete() && DEBUG) { Log.w(TAG, "Cannot delete " + journal); }
+  }
+
+  private void endSession(final Activity activity) {
+    try {
+      delegate.onEndSession(activity);
+    } catch (final RuntimeException e) {
+      Log.e(TAG, "Cannot end stats session", e);
+    }
+  }
+
+  /**
+   * Called after new records are appended to the journal. Does nothing by default.
+   * @param count count of written records
+   */
+  protected void onRecordsWritten(final int count) {
+    // nothing
+  }
+
+  private Entry format(final RecordsBuffer.Record record) {
+    final Entry entry = new Entry();
+    entry.type = record.type;
+    entry.tag = record.tag;
+    final Object payload = record.payload;
+    if (record.type == RecordsBuffer.TYPE_ERROR) {
+      final Throwable e = (Throwable) payload;
+      entry.values = new String[] {
+        e != null ? errorClassName(e) : Throwable.class.getName(),
+        readException(e, MAX_ERROR_LENGTH)
+      };
+    } else if (payload instanceof String[][]) {
+      final String[][] tuples = (String[][]) payload;
+      final String[] values = new String[tuples.length << 1];
+      for (int i = 0; i < tuples.length; i++) {
+        values[i << 1] = tuples[i][0];
+        values[(i << 1) + 1] = tuples[i][1];
+      }
+      entry.values = values;
+    } else if (payload != null) {
+      @SuppressWarnings("unchecked")
+      final Map<String, String> params = (Map<String, String>) payload;
+      final String[] values = new String[params.size() << 1];
+      int i = 0;
+      for (final Map.Entry<String, String> param : params.entrySet()) {
+        values[i++] = param.getKey();
+        values[i++] = param.getValue();
+      }
+      entry.values = values;
+    }
+    return entry;
+  }
+
+  private void deliver(final ArrayList<Entry> entries) {
+    if (DEBUG) { Log.d(TAG, "Delivering " + entries.size() + " stats records"); }
+    for (final Entry entry : entries) {
+      try {
+        final String[] values = entry.values;
+        if (entry.type == RecordsBuffer.TYPE_ERROR) {
+          delegate.error(entry.tag, new RecordedError(values[0], values[1]));
+        } else if (values == null || values.length == 0) {
+          delegate.event(entry.tag, Collections.<String, String>emptyMap());
+        } else {
+          final HashMap<String, String> params = new HashMap<String, String>(values.length);
+          for (int i = 0; i < values.length; i += 2) {
+            params.put(values[i], values[i + 1]);
+          }
+          delegate.event(entry.tag, params);
+        }
+      } catch (final RuntimeException e) {
+        Log.e(TAG, "Cannot deliver stats record " + entry.tag, e);
+      }
+    }
+  }
+
+  private void write(final Iterable<Entry> entries) {
+    DataOutputStream out = null;
+    try {
+      out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(journal, true)));
+      for (final Entry entry : entries) {
+        out.writeByte(entry.type);
+        writeString(out, entry.tag);
+        final String[] values = entry.values;
+        final int count = values != null ? values.length : 0;
+        out.writeShort(count);
+        for (int i = 0; i < count; i++) {
+          writeString(out, values[i]);
+        }
+      }
+    } catch (final IOException e) {
+      Log.e(TAG, "Cannot write stats journal", e);
+    } finally {
+      close(out);
+    }
+  }
+
+  private static void writeString(final DataOutputStream out, final String value) throws IOException {
+    out.writeBoolean(value != null);
+    if (value != null) {
+      out.writeUTF(value.length() > MAX_STRING_LENGTH ? value.substring(0, MAX_STRING_LENGTH) : value);
+    }
+  }
+
+  private static String readString(final DataInputStream in) throws IOException {
+    return in.readBoolean() ? in.readUTF() : null;
+  }
+
+  /** Read records left by a previous process. */
+  private void readJournal() {
+    journalRestored = true;
+    if (!journal.exists()) { return; }
+    final ArrayList<Entry> restored = new ArrayList<Entry>();
+    DataInputStream in = null;
+    try {
+      in = new DataInputStream(new BufferedInputStream(new FileInputStream(journal)));
+      while (true) {
+        final Entry entry = new Entry();
+        entry.type = in.readByte();
+        entry.tag = readString(in);
+        final int count = in.readShort();
+        if (count > 0) {
+          entry.values = new String[count];
+          for (int i = 0; i < count; i++) {
+            entry.values[i] = readString(in);
+          }
+        }
+        restored.add(entry);
+      }
+    } catch (final EOFException e) {
+      // end of journal, the last record may be incomplete
+    } catch (final IOException e) {
+      Log.e(TAG, "Cannot read stats journal", e);
+    } finally {
+      close(in);
+    }
+    if (DEBUG) { Log.d(TAG, "Restored " + restored.size() + " stats records"); }
+    // rewrite the journal to get rid of an incomplete record
+    journal.delete();
+    if (restored.isEmpty()) { return; }
+    write(restored);
+    pending.addAll(0, restored);
+    pendingSince = System.currentTimeMillis();
+    deliveryRequested = true;
+  }
+
+  private static void close(final Closeable closeable) {
+    if (closeable == null) { return; }
+    try {
+      closeable.close();
+    } catch (final IOException e) {
+      // ignore
+    }
+  }
+
+  /**
+   * Formatted record.
+   */
+  private static final class Entry {
+    /** Record type. */
+    int type;
+    /** Tag. */
+    String tag;
+    /** Error class name and message or event parameters as key-value pairs. */
+    String[] values;
+  }
+
+  /**
+   * Worker that drains the buffer.
+   */
+  private final class Worker implements Runnable {
+    @Override
+    public void run() {
+      Process.setThreadPriority(Process.THREAD_PRIORITY_BACKGROUND);
+      while (running) {
+        try {
+          process(false);
+        } catch (final RuntimeException e) {
+          Log.e(TAG, "Cannot process stats records", e);
+        }
+        if (running) { LockSupport.parkNanos(TimeUnit.MILLISECONDS.toNanos(flushInterval)); }
+      }
+      try {
+        process(true);
+      } catch (final RuntimeException e) {
+        Log.e(TAG, "Cannot process stats records", e);
+      }
+    }
+  }
+
+}
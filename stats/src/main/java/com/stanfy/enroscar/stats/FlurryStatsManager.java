@@ -58,7 +58,7 @@ public class FlurryStatsManager extends StatsManager {
   @Override
   public void error(final String tag, final Throwable e) {
     final int max = 255;
-    FlurryAgent.onError(tag, readException(e, max), e.getClass().getName());
+    FlurryAgent.onError(tag, readException(e, max), errorClassName(e));
   }
 
   /**
@@ -73,7 +73,7 @@ public class FlurryStatsManager extends StatsManager {
 
     @Override
     public void uncaughtException(final Thread thread, final Throwable ex) {
-      error("FATAL", ex);
+      error(TAG_FATAL, ex);
       handler.uncaughtException(thread, ex);
     }
   }
@@ -0,0 +1,31 @@
+package com.stanfy.enroscar.stats;
+
+/**
+ * Error restored from a persisted stats record. It contains an already formatted error message
+ * and the original error class name.
+ * @see StatsManager#readException(Throwable, int)
+ * @see StatsManager#errorClassName(Throwable)
+ * @author Roman Mazur (Stanfy - http://www.stanfy.com)
+ */
+final class RecordedError extends Throwable {
+
+  /** serialVersionUID. */
+  private static final long serialVersionUID = 4364913254431347620L;
+
+  /** Original class name. */
+  private final String className;
+
+  RecordedError(final String className, final String formattedMessage) {
+    super(formattedMessage);
+    this.className = className;
+  }
+
+  String getClassName() { return className; }
+
+  @Override
+  public synchronized Throwable fillInStackTrace() {
+    // stack trace of this instance is meaningless
+    return this;
+  }
+
+}
@@ -0,0 +1,119 @@
+package com.stanfy.enroscar.stats;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Bounded lock-free ring buffer of stats records.
+ * Any thread can offer records, only one thread at a time can poll them.
+ * Record slots are preallocated, offering a record does not allocate memory.
+ * @author Roman Mazur (Stanfy - http://www.stanfy.com)
+ */
+final class RecordsBuffer {
+
+  /** Record types. */
+  static final int TYPE_EVENT = 1, TYPE_ERROR = 2;
+  /** Session end marker, its payload is an activity. It's not persisted. */
+  static final int TYPE_END_SESSION = 3;
+
+  /** Slots. */
+  private final Record[] records;
+  /** Slot sequences: a slot is free for position p when sequence is p, filled when it's p + 1. */
+  private final AtomicLongArray sequences;
+  /** Index mask. */
+  private final int mask;
+
+  /** Next position to write. */
+  private final AtomicLong tail = new AtomicLong();
+  /** Next position to read. */
+  private volatile long head;
+
+  /** @param capacity buffer capacity, rounded up to a power of two */
+  RecordsBuffer(final int capacity) {
+    int size = 1;
+    while (size < capacity) { size <<= 1; }
+    this.mask = size - 1;
+    this.records = new Record[size];
+    this.sequences = new AtomicLongArray(size);
+    for (int i = 0; i < size; i++) {
+      records[i] = new Record();
+      sequences.set(i, i);
+    }
+  }
+
+  int capacity() { return records.length; }
+
+  /** @return approximate count of records in the buffer */
+  int size() {
+    final long size = tail.get() - head;
+    return size < 0 ? 0 : (int) size;
+  }
+
+  /**
+   * @param type record type
+   * @param tag record tag
+   * @param payload record payload
+   * @return false if buffer is full
+   */
+  boolean offer(final int type, final String tag, final Object payload) {
+    long position = tail.get();
+    while (true) {
+      final int index = (int) position & mask;
+      final long diff = sequences.get(index) - position;
+      if (diff == 0) {
+        if (tail.compareAndSet(position, position + 1)) {
+          final Record record = records[index];
+          record.type = type;
+          record.tag = tag;
+          record.payload = payload;
+          record.time = System.currentTimeMillis();
+          // publish
+          sequences.set(index, position + 1);
+          return true;
+        }
+        position = tail.get();
+      } else if (diff < 0) {
+        return false;
+      } else {
+        position = tail.get();
+      }
+    }
+  }
+
+  /**
+   * Take the next record. Must not be called concurrently.
+   * @param out record to copy values to
+   * @return false if buffer is empty
+   */
+  boolean poll(final Record out) {
+    final long position = head;
+    final int index = (int) position & mask;
+    if (sequences.get(index) != position + 1) { return false; }
+    final Record record = records[index];
+    out.type = record.type;
+    out.tag = record.tag;
+    out.payload = record.payload;
+    out.time = record.time;
+    record.tag = null;
+    record.payload = null;
+    head = position + 1;
+    // free the slot for the next round
+    sequences.set(index, position + records.length);
+    return true;
+  }
+
+  /**
+   * Mutable stats record.
+   */
+  static final class Record {
+    /** Type. */
+    int type;
+    /** Tag. */
+    String tag;
+    /** Event parameters (map or tuples) or error. */
+    Object payload;
+    /** Time. */
+    long time;
+  }
+
+}
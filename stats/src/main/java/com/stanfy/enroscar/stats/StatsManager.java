@@ -23,6 +23,9 @@ public abstract class StatsManager implements Bean {
   /** Bean name. */
   public static final String BEAN_NAME = "StatsManager";
 
+  /** Tag of errors reported by an uncaught exceptions handler. */
+  public static final String TAG_FATAL = "FATAL";
+
   /** Logging tag. */
   protected static final String TAG = "Stats";
   /** Debug flag. */
@@ -100,12 +103,25 @@ public abstract class StatsManager implements Bean {
    */
   public String readException(final Throwable e, final int maxTotalLength) {
     if (e == null) { return "-NULL-"; }
+    if (e instanceof RecordedError) {
+      // already formatted
+      final String message = e.getMessage();
+      return message.length() > maxTotalLength ? message.substring(0, maxTotalLength) : message;
+    }
     final StringWriter sw = new StringWriter();
     e.printStackTrace(new PrintWriter(sw));
     final String resultStr = trimStackTrace(sw.toString());
     return resultStr.length() > maxTotalLength ? resultStr.substring(0, maxTotalLength) : resultStr;
   }
 
+  /**
+   * @param e exception instance
+   * @return class name of the error (original class name for errors restored by {@link BufferedStatsManager})
+   */
+  public static String errorClassName(final Throwable e) {
+    return e instanceof RecordedError ? ((RecordedError) e).getClassName() : e.getClass().getName();
+  }
+
   @SuppressWarnings("unchecked")
   private static <K, V> Map<K, V> tuples(final Object[][] tuples) {
     final Map<K, V> result = new HashMap<K, V>(tuples.length);
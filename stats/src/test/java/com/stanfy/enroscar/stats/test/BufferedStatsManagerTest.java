@@ -0,0 +1,174 @@
+package com.stanfy.enroscar.stats.test;
+
+import static org.fest.assertions.api.Assertions.assertThat;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.Robolectric;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+
+import android.app.Activity;
+import android.content.Context;
+
+import com.stanfy.enroscar.stats.BufferedStatsManager;
+import com.stanfy.enroscar.stats.EmptyStatsManager;
+import com.stanfy.enroscar.stats.StatsManager;
+
+/**
+ * Tests for {@link BufferedStatsManager}.
+ * @author Roman Mazur (Stanfy - http://www.stanfy.com)
+ */
+@RunWith(RobolectricTestRunner.class)
+@Config(emulateSdk = 18)
+public class BufferedStatsManagerTest {
+
+  /** Context. */
+  private Context context;
+  /** Thread that has ended the session. */
+  private volatile Thread endThread;
+
+  @Before
+  public void init() {
+    context = Robolectric.application;
+    new File(context.getFilesDir(), "enroscar-stats.journal").delete();
+  }
+
+  @Test
+  public void shouldDeliverRecordsOnFlush() {
+    final RecordingStatsManager delegate = new RecordingStatsManager();
+    final BufferedStatsManager manager = new BufferedStatsManager(context, delegate);
+    manager.event("a", new String[][] {{"k", "v"}});
+    manager.event("b");
+    manager.error("c", new IllegalStateException("test"));
+    assertThat(delegate.records).isEmpty();
+
+    manager.flush();
+    assertThat(delegate.records).containsExactly("a{k=v}", "b{}", "c:java.lang.IllegalStateException");
+    assertThat(delegate.messages.get(0)).startsWith("IllegalStateException");
+  }
+
+  @Test
+  public void shouldDropRecordsWhenBufferIsFull() {
+    final RecordingStatsManager delegate = new RecordingStatsManager();
+    final BufferedStatsManager manager = new BufferedStatsManager(context, delegate, 2);
+    manager.event("a");
+    manager.event("b");
+    manager.event("c");
+    assertThat(manager.getDroppedCount()).isEqualTo(1);
+    manager.flush();
+    assertThat(delegate.records).containsExactly("a{}", "b{}");
+  }
+
+  @Test
+  public void persistedRecordsShouldBeDeliveredByNextInstance() throws Exception {
+    final RecordingStatsManager first = new RecordingStatsManager();
+    final CountDownLatch written = new CountDownLatch(2);
+    final BufferedStatsManager manager = new BufferedStatsManager(context, first) {
+      @Override
+      protected void onRecordsWritten(final int count) {
+        for (int i = 0; i < count; i++) {
+          written.countDown();
+        }
+      }
+    };
+    manager.setFlushInterval(1);
+    manager.start();
+    manager.event("a", new String[][] {{"k", "v"}});
+    manager.error("b", new IllegalStateException("test"));
+
+    // wait for the journal
+    //CHECKSTYLE:OFF
+    assertThat(written.await(5, TimeUnit.SECONDS)).isTrue();
+    //CHECKSTYLE:ON
+    assertThat(first.records).isEmpty();
+
+    // process restart
+    final RecordingStatsManager second = new RecordingStatsManager();
+    new BufferedStatsManager(context, second).flush();
+    assertThat(second.records).containsExactly("a{k=v}", "b:java.lang.IllegalStateException");
+    manager.stop();
+  }
+
+  @Test
+  public void pendingRecordsShouldBeDeliveredBeforeSessionEnd() throws Exception {
+    final CountDownLatch ended = new CountDownLatch(1);
+    final RecordingStatsManager delegate = new RecordingStatsManager() {
+      @Override
+      public void onEndSession(final Activity activity) {
+        super.onEndSession(activity);
+        endThread = Thread.currentThread();
+        ended.countDown();
+      }
+    };
+    final BufferedStatsManager manager = new BufferedStatsManager(context, delegate);
+    manager.start();
+    manager.event("a");
+    manager.onEndSession(null);
+    manager.event("b");
+
+    //CHECKSTYLE:OFF
+    assertThat(ended.await(5, TimeUnit.SECONDS)).isTrue();
+    //CHECKSTYLE:ON
+    assertThat(delegate.records).startsWith("a{}", "end");
+    // session end is not passed in the calling thread
+    assertThat(endThread).isNotSameAs(Thread.currentThread());
+    manager.stop();
+  }
+
+  @Test
+  public void sessionEndShouldBePassedOnFlushIfNotStarted() {
+    final RecordingStatsManager delegate = new RecordingStatsManager();
+    final BufferedStatsManager manager = new BufferedStatsManager(context, delegate);
+    manager.event("a");
+    manager.onEndSession(null);
+    assertThat(delegate.records).isEmpty();
+
+    manager.flush();
+    assertThat(delegate.records).containsExactly("a{}", "end");
+  }
+
+  @Test
+  public void fatalErrorsShouldBeDeliveredImmediately() {
+    final RecordingStatsManager delegate = new RecordingStatsManager();
+    final BufferedStatsManager manager = new BufferedStatsManager(context, delegate, 2);
+    manager.event("a");
+    manager.event("b");
+    manager.error(StatsManager.TAG_FATAL, new IllegalStateException("test"));
+    assertThat(delegate.records).containsExactly("a{}", "b{}", "FATAL:java.lang.IllegalStateException");
+  }
+
+  /** Delegate that remembers records. */
+  private static class RecordingStatsManager extends EmptyStatsManager {
+    /** Records. */
+    final List<String> records = Collections.synchronizedList(new ArrayList<String>());
+    /** Error messages. */
+    final List<String> messages = Collections.synchronizedList(new ArrayList<String>());
+
+    @Override
+    public void event(final String tag, final Map<String, String> params) {
+      records.add(tag + params);
+    }
+
+    @Override
+    public void error(final String tag, final Throwable e) {
+      records.add(tag + ":" + errorClassName(e));
+      messages.add(readException(e, 255));
+    }
+
+    @Override
+    public void onEndSession(final Activity activity) {
+      records.add("end");
+    }
+  }
+
+}
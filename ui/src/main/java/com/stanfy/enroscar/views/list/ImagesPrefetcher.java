@@ -0,0 +1,239 @@
+package com.stanfy.enroscar.views.list;
+
+import android.os.SystemClock;
+import android.util.SparseArray;
+import android.widget.AbsListView;
+import android.widget.AbsListView.OnScrollListener;
+
+import com.stanfy.enroscar.images.ImagePrefetch;
+import com.stanfy.enroscar.images.ImagesManager;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Scroll listener that prefetches images of list items that are about to become visible.
+ * The count of prefetched items depends on the scroll velocity: the faster user scrolls,
+ * the further ahead images are loaded. Prefetches of items that leave this window are canceled.
+ * <p>
+ *   Set it with {@link AbsListView#setOnScrollListener(OnScrollListener)}, use
+ *   {@link #setDelegate(OnScrollListener)} if you need your own scroll listener.
+ * </p>
+ * @author Roman Mazur (Stanfy - http://www.stanfy.com)
+ */
+public class ImagesPrefetcher implements OnScrollListener {
+
+  /** Default minimum count of items to prefetch. */
+  public static final int DEFAULT_MIN_AHEAD = 3;
+  /** Default maximum count of items to prefetch. */
+  public static final int DEFAULT_MAX_AHEAD = 30;
+  /** Default lookahead time in milliseconds. */
+  public static final long DEFAULT_LOOKAHEAD_TIME = 700;
+
+  /** Weight of the previous velocity value. */
+  private static final float VELOCITY_SMOOTHING = 0.6f;
+  /** Milliseconds in second. */
+  private static final float MILLIS = 1000f;
+
+  /**
+   * Provides image URLs for list items.
+   */
+  public interface ImageUrlsProvider {
+    /**
+     * @param position item position in the list view (header views are included)
+     * @param urls list to put image URLs to
+     */
+    void collectImageUrls(int position, List<String> urls);
+  }
+
+  /** Images manager. */
+  private final ImagesManager imagesManager;
+  /** URLs provider. */
+  private final ImageUrlsProvider provider;
+
+  /** Delegate listener. */
+  private OnScrollListener delegate;
+
+  /** Images size. */
+  private int imageWidth, imageHeight;
+  /** Prefetch window bounds. */
+  private int minAhead = DEFAULT_MIN_AHEAD, maxAhead = DEFAULT_MAX_AHEAD;
+  /** Lookahead time. */
+  private long lookaheadTime = DEFAULT_LOOKAHEAD_TIME;
+
+  /** Running prefetches. */
+  private final SparseArray<List<ImagePrefetch>> prefetches = new SparseArray<List<ImagePrefetch>>();
+  /** URLs buffer. */
+  private final ArrayList<String> urls = new ArrayList<String>();
+
+  /** Last first visible position. */
+  private int lastFirst = -1;
+  /** Time of the last first visible position change. */
+  private long lastTime;
+  /** Smoothed velocity in items per second, negative when scrolling up. */
+  private float velocity;
+  /** Last scroll direction. */
+  private boolean up;
+
+  public ImagesPrefetcher(final ImagesManager imagesManager, final ImageUrlsProvider provider) {
+    this.imagesManager = imagesManager;
+    this.provider = provider;
+  }
+
+  /** @param delegate listener that receives all scroll events */
+  public void setDelegate(final OnScrollListener delegate) { this.delegate = delegate; }
+
+  /**
+   * Set size of prefetched images. It should be the same as size of image views in list items,
+   * otherwise views will not be able to reuse prefetched images.
+   * Screen size is used if size is not set.
+   * @param width image width
+   * @param height image height
+   */
+  public void setImageSize(final int width, final int height) {
+    this.imageWidth = width;
+    this.imageHeight = height;
+  }
+
+  /**
+   * @param minAhead count of items to prefetch when list is not scrolled
+   * @param maxAhead max count of items to prefetch
+   */
+  public void setAheadBounds(final int minAhead, final int maxAhead) {
+    if (minAhead < 0 || maxAhead < minAhead) {
+      throw new IllegalArgumentException("Bad bounds " + minAhead + ", " + maxAhead);
+    }
+    this.minAhead = minAhead;
+    this.maxAhead = maxAhead;
+  }
+
+  /** @param lookaheadTime time in milliseconds, items that may become visible during this time are prefetched */
+  public void setLookaheadTime(final long lookaheadTime) { this.lookaheadTime = lookaheadTime; }
+
+  /** @return current scroll velocity in items per second */
+  public float getVelocity() { return velocity; }
+
+  @Override
+  public void onScrollStateChanged(final AbsListView view, final int scrollState) {
+    if (delegate != null) {
+      delegate.onScrollStateChanged(view, scrollState);
+    }
+    if (scrollState == SCROLL_STATE_IDLE) {
+      velocity = 0;
+      update(view.getFirstVisiblePosition(), view.getChildCount(), view.getCount());
+    }
+  }
+
+  @Override
+  public void onScroll(final AbsListView view, final int firstVisibleItem, final int visibleItemCount, final int totalItemCount) {
+    if (delegate != null) {
+      delegate.onScroll(view, firstVisibleItem, visibleItemCount, totalItemCount);
+    }
+    if (firstVisibleItem == lastFirst) { return; }
+
+    final long now = uptimeMillis();
+    if (lastFirst >= 0 && now > lastTime) {
+      final float current = (firstVisibleItem - lastFirst) * MILLIS / (now - lastTime);
+      velocity = velocity * VELOCITY_SMOOTHING + current * (1 - VELOCITY_SMOOTHING);
+    }
+    if (velocity != 0) {
+      up = velocity < 0;
+    }
+    lastFirst = firstVisibleItem;
+    lastTime = now;
+
+    update(firstVisibleItem, visibleItemCount, totalItemCount);
+  }
+
+  /** @return time used to measure scroll velocity */
+  long uptimeMillis() {
+    return SystemClock.uptimeMillis();
+  }
+
+  /** Cancel all running prefetches. Must be called from the main thread. */
+  public void cancelAll() {
+    final int count = prefetches.size();
+    for (int i = 0; i < count; i++) {
+      cancel(prefetches.valueAt(i));
+    }
+    prefetches.clear();
+  }
+
+  /**
+   * @param velocity scroll velocity (items per second)
+   * @param lookaheadTime lookahead time in milliseconds
+   * @param min min count
+   * @param max max count
+   * @return count of items to prefetch
+   */
+  static int aheadCount(final float velocity, final long lookaheadTime, final int min, final int max) {
+    final int count = min + Math.round(Math.abs(velocity) * lookaheadTime / MILLIS);
+    return Math.min(count, max);
+  }
+
+  private void update(final int first, final int visibleCount, final int total) {
+    if (total <= 0) {
+      cancelAll();
+      return;
+    }
+
+    final int ahead = aheadCount(velocity, lookaheadTime, minAhead, maxAhead);
+    int from, to;
+    if (up) {
+      to = first - 1;
+      from = Math.max(0, to - ahead + 1);
+    } else {
+      from = first + visibleCount;
+      to = Math.min(total - 1, from + ahead - 1);
+    }
+
+    // cancel prefetches that are out of the window (already visible items are joined by their views)
+    for (int i = prefetches.size() - 1; i >= 0; i--) {
+      final int position = prefetches.keyAt(i);
+      if (position < from || position > to) {
+        cancel(prefetches.valueAt(i));
+        prefetches.removeAt(i);
+      }
+    }
+
+    // nearest items first
+    if (up) {
+      for (int position = to; position >= from; position--) {
+        prefetch(position);
+      }
+    } else {
+      for (int position = from; position <= to; position++) {
+        prefetch(position);
+      }
+    }
+  }
+
+  private void prefetch(final int position) {
+    if (prefetches.get(position) != null) { return; }
+
+    final ArrayList<String> urls = this.urls;
+    urls.clear();
+    provider.collectImageUrls(position, urls);
+
+    final int count = urls.size();
+    final ArrayList<ImagePrefetch> list = new ArrayList<ImagePrefetch>(count);
+    //noinspection ForLoopReplaceableByForEach
+    for (int i = 0; i < count; i++) {
+      final ImagePrefetch prefetch = imagesManager.prefetchImage(urls.get(i), imageWidth, imageHeight);
+      if (prefetch != null) {
+        list.add(prefetch);
+      }
+    }
+    urls.clear();
+    // empty lists are stored too: do not ask provider again
+    prefetches.put(position, list);
+  }
+
+  private static void cancel(final List<ImagePrefetch> list) {
+    //noinspection ForLoopReplaceableByForEach
+    for (int i = 0; i < list.size(); i++) {
+      list.get(i).cancel();
+    }
+  }
+
+}
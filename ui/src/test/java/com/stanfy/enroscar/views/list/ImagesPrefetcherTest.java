@@ -0,0 +1,184 @@
+package com.stanfy.enroscar.views.list;
+
+import android.os.Build;
+
+import com.stanfy.enroscar.images.ImagePrefetch;
+import com.stanfy.enroscar.images.ImagesManager;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.fest.assertions.api.Assertions.assertThat;
+import static org.mockito.Matchers.anyInt;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+/**
+ * Tests for {@link ImagesPrefetcher}.
+ */
+@RunWith(RobolectricTestRunner.class)
+@Config(emulateSdk = Build.VERSION_CODES.JELLY_BEAN_MR2)
+public class ImagesPrefetcherTest {
+
+  /** Items count. */
+  private static final int TOTAL = 100;
+  /** Visible items count. */
+  private static final int VISIBLE = 5;
+
+  /** Started prefetches mapped by item positions, in the order of start. */
+  private final Map<Integer, TestPrefetch> started = new LinkedHashMap<Integer, TestPrefetch>();
+
+  /** Current time. */
+  private long time = 1000;
+
+  /** Prefetcher. */
+  private ImagesPrefetcher prefetcher;
+
+  @Before
+  public void init() {
+    ImagesManager imagesManager = mock(ImagesManager.class);
+    when(imagesManager.prefetchImage(anyString(), anyInt(), anyInt())).thenAnswer(new Answer<ImagePrefetch>() {
+      @Override
+      public ImagePrefetch answer(final InvocationOnMock invocation) {
+        TestPrefetch prefetch = new TestPrefetch();
+        started.put(Integer.parseInt((String) invocation.getArguments()[0]), prefetch);
+        return prefetch;
+      }
+    });
+
+    prefetcher = new ImagesPrefetcher(imagesManager, new ImagesPrefetcher.ImageUrlsProvider() {
+      @Override
+      public void collectImageUrls(final int position, final List<String> urls) {
+        urls.add(String.valueOf(position));
+      }
+    }) {
+      @Override
+      long uptimeMillis() {
+        return time;
+      }
+    };
+    prefetcher.setAheadBounds(2, 10);
+    //CHECKSTYLE:OFF
+    prefetcher.setLookaheadTime(1000);
+    //CHECKSTYLE:ON
+  }
+
+  private void scroll(final int first, final long delay) {
+    time += delay;
+    prefetcher.onScroll(null, first, VISIBLE, TOTAL);
+  }
+
+  private List<Integer> activePositions() {
+    ArrayList<Integer> result = new ArrayList<Integer>();
+    for (Map.Entry<Integer, TestPrefetch> entry : started.entrySet()) {
+      if (!entry.getValue().canceled) {
+        result.add(entry.getKey());
+      }
+    }
+    return result;
+  }
+
+  @Test
+  public void aheadCountShouldDependOnVelocity() {
+    //CHECKSTYLE:OFF
+    assertThat(ImagesPrefetcher.aheadCount(0, 500, 3, 30)).isEqualTo(3);
+    assertThat(ImagesPrefetcher.aheadCount(10, 500, 3, 30)).isEqualTo(8);
+    assertThat(ImagesPrefetcher.aheadCount(-10, 500, 3, 30)).isEqualTo(8);
+    assertThat(ImagesPrefetcher.aheadCount(100, 500, 3, 30)).isEqualTo(30);
+    //CHECKSTYLE:ON
+  }
+
+  @Test
+  public void shouldPrefetchItemsBelowVisibleOnes() {
+    scroll(0, 0);
+    assertThat(started.keySet()).containsExactly(5, 6);
+  }
+
+  //CHECKSTYLE:OFF
+  @Test
+  public void windowShouldGrowWithVelocity() {
+    scroll(0, 0);
+    // 10 items per second, smoothed velocity is 4
+    scroll(1, 100);
+    assertThat(Math.round(prefetcher.getVelocity())).isEqualTo(4);
+    assertThat(activePositions()).containsExactly(6, 7, 8, 9, 10, 11);
+  }
+
+  @Test
+  public void shouldCancelPrefetchesOutOfWindow() {
+    scroll(0, 0);
+    scroll(10, 1000);
+    // 5 and 6 are far behind now
+    assertThat(started.get(5).canceled).isTrue();
+    assertThat(started.get(6).canceled).isTrue();
+    assertThat(activePositions()).containsExactly(15, 16, 17, 18, 19, 20);
+  }
+
+  @Test
+  public void directionChangeShouldCancelPrefetchesAhead() {
+    scroll(50, 0);
+    scroll(51, 100);
+    assertThat(activePositions()).containsExactly(56, 57, 58, 59, 60, 61);
+
+    // scroll up: 20 items per second back, smoothed velocity is 4 * 0.6 - 20 * 0.4 = -5.6
+    scroll(49, 100);
+    for (int position = 56; position <= 61; position++) {
+      assertThat(started.get(position).canceled).isTrue();
+    }
+    // nearest items are requested first
+    assertThat(activePositions()).containsExactly(48, 47, 46, 45, 44, 43, 42, 41);
+  }
+  //CHECKSTYLE:ON
+
+  @Test
+  public void shouldNotRestartPrefetchesInWindow() {
+    scroll(0, 0);
+    TestPrefetch first = started.get(5);
+    scroll(0, 100);
+    assertThat(started.get(5)).isSameAs(first);
+    assertThat(first.canceled).isFalse();
+  }
+
+  @Test
+  public void cancelAllShouldCancelEverything() {
+    scroll(0, 0);
+    prefetcher.cancelAll();
+    assertThat(activePositions()).isEmpty();
+  }
+
+  @Test
+  public void emptyListShouldCancelEverything() {
+    scroll(0, 0);
+    time += 100;
+    prefetcher.onScroll(null, 1, 0, 0);
+    assertThat(activePositions()).isEmpty();
+  }
+
+  /** Prefetch handle. */
+  private static class TestPrefetch implements ImagePrefetch {
+    /** Canceled flag. */
+    boolean canceled;
+
+    @Override
+    public boolean cancel() {
+      canceled = true;
+      return true;
+    }
+    @Override
+    public boolean isDone() {
+      return canceled;
+    }
+  }
+
+}